@@ -1,6 +1,7 @@
 package brooklyn.entity.rebind;
 
 import brooklyn.entity.Entity;
+import brooklyn.event.AttributeSensor;
 import brooklyn.location.Location;
 import brooklyn.policy.Policy;
 
@@ -18,6 +19,7 @@ public interface ChangeListener {
         @Override public void onManaged(Entity entity) {}
         @Override public void onUnmanaged(Entity entity) {}
         @Override public void onChanged(Entity entity) {}
+        @Override public void onAttributeChanged(Entity entity, AttributeSensor<?> attribute) {}
         @Override public void onManaged(Location location) {}
         @Override public void onUnmanaged(Location location) {}
         @Override public void onChanged(Location location) {}
@@ -30,6 +32,12 @@ public interface ChangeListener {
     
     void onChanged(Entity entity);
     
+    /**
+     * Indicates that only the given attribute of the entity has changed (so the listener may
+     * choose to persist just that, rather than the whole entity).
+     */
+    void onAttributeChanged(Entity entity, AttributeSensor<?> attribute);
+    
     void onManaged(Location location);
 
     void onUnmanaged(Location location);
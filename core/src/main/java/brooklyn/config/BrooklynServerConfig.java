@@ -1,5 +1,7 @@
 package brooklyn.config;
 
+import static brooklyn.entity.basic.ConfigKeys.newConfigKey;
+import static brooklyn.entity.basic.ConfigKeys.newIntegerConfigKey;
 import static brooklyn.entity.basic.ConfigKeys.newStringConfigKey;
 
 import java.io.File;
@@ -12,7 +14,9 @@ import org.slf4j.LoggerFactory;
 import brooklyn.management.ManagementContext;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.os.Os;
+import brooklyn.util.task.TaskTags;
 import brooklyn.util.text.Strings;
+import brooklyn.util.time.Duration;
 
 /** config keys for the brooklyn server */
 public class BrooklynServerConfig {
@@ -34,6 +38,67 @@ public class BrooklynServerConfig {
         "brooklyn.persistence.dir", "Directory for writing brooklyn persisted state; if not absolute, taken relative to mgmt base", 
         Os.mergePaths("brooklyn-persisted-state", "data"));
 
+    public static final String PERSISTENCE_FORMAT_MULTI_FILE = "multiFile";
+    public static final String PERSISTENCE_FORMAT_JOURNAL = "journal";
+    
+    public static final ConfigKey<String> PERSISTENCE_FORMAT = newStringConfigKey(
+        "brooklyn.persistence.format", "How persisted state is written: '"+PERSISTENCE_FORMAT_MULTI_FILE+"' (a file per entity, location and policy, " +
+        "rewritten on each change) or '"+PERSISTENCE_FORMAT_JOURNAL+"' (changes appended to a journal, compacted into snapshots in the background; " +
+        "see BrooklynMementoPersisterToJournal); a persistence directory must be read with the format it was written with", 
+        PERSISTENCE_FORMAT_MULTI_FILE);
+
+    public static final String PERSISTENCE_SERIALIZER_XML = "xml";
+    public static final String PERSISTENCE_SERIALIZER_BINARY = "binary";
+
+    public static final ConfigKey<String> PERSISTENCE_SERIALIZER = newStringConfigKey(
+        "brooklyn.persistence.serializer", "How each persisted item is encoded: '"+PERSISTENCE_SERIALIZER_XML+"' (XStream XML) or '" +
+        PERSISTENCE_SERIALIZER_BINARY+"' (a compact binary form, see BinaryMementoSerializer); the binary serializer also reads XML, " +
+        "and existing state can be converted with MementoFormatMigrator",
+        PERSISTENCE_SERIALIZER_XML);
+
+    public static final String EXECUTION_MODE_UNBOUNDED = "unbounded";
+    public static final String EXECUTION_MODE_BOUNDED = "bounded";
+    public static final String EXECUTION_MODE_VIRTUAL = "virtual";
+    
+    public static final ConfigKey<String> EXECUTION_MODE = newStringConfigKey(
+        "brooklyn.executionManager.mode", "How the execution manager runs tasks: '"+EXECUTION_MODE_UNBOUNDED+"' (a thread per concurrent task), " +
+        "'"+EXECUTION_MODE_BOUNDED+"' (bounded pools for general and for blocking tasks; see BoundedTaskExecutorStrategy), " +
+        "or '"+EXECUTION_MODE_VIRTUAL+"' (a virtual thread per task, if the JVM supports them, otherwise as "+EXECUTION_MODE_UNBOUNDED+")", 
+        EXECUTION_MODE_UNBOUNDED);
+
+    public static final ConfigKey<Integer> EXECUTION_MAX_THREADS = newIntegerConfigKey(
+        "brooklyn.executionManager.maxThreads", "Maximum threads for general tasks, in bounded execution mode (plus one for each such thread waiting for another task)", 
+        64);
+
+    public static final ConfigKey<Integer> EXECUTION_MAX_BLOCKING_THREADS = newIntegerConfigKey(
+        "brooklyn.executionManager.maxBlockingThreads", "Maximum threads for tasks which block on I/O (e.g. ssh, http or jmx), in bounded execution mode (plus one for each such thread waiting for another task)", 
+        256);
+
+    public static final ConfigKey<String> EXECUTION_BLOCKING_TASK_TAGS = newStringConfigKey(
+        "brooklyn.executionManager.blockingTaskTags", "Comma-separated task tags identifying tasks which block on I/O, in bounded execution mode", 
+        TaskTags.BLOCKING_IO_TASK);
+
+    public static final String FEED_SCHEDULER_TASK = "task";
+    public static final String FEED_SCHEDULER_SHARED = "shared";
+
+    public static final ConfigKey<String> FEED_SCHEDULER = newStringConfigKey(
+        "brooklyn.feed.scheduler", "How feeds schedule their polls: '"+FEED_SCHEDULER_TASK+"' (a scheduled task per poller, creating a task for each poll) " +
+        "or '"+FEED_SCHEDULER_SHARED+"' (a timing wheel shared by all feeds, with jitter, coalescing of identical polls and skipping of overrunning polls; " +
+        "see FeedScheduler); with the shared scheduler, poll jobs cannot queue sub-tasks", 
+        FEED_SCHEDULER_TASK);
+
+    public static final ConfigKey<Integer> HTTP_POLL_MAX_CONNECTIONS = newIntegerConfigKey(
+        "brooklyn.feed.http.maxConnections", "Maximum concurrent connections of all http feeds; further polls wait for a connection", 
+        1000);
+
+    public static final ConfigKey<Integer> HTTP_POLL_MAX_CONNECTIONS_PER_ROUTE = newIntegerConfigKey(
+        "brooklyn.feed.http.maxConnectionsPerRoute", "Maximum concurrent connections of all http feeds to any one host and port; further polls wait for a connection", 
+        5);
+
+    public static final ConfigKey<Duration> HTTP_POLL_CONNECTION_REQUEST_TIMEOUT = newConfigKey(Duration.class,
+        "brooklyn.feed.http.connectionRequestTimeout", "How long an http feed's poll waits for a connection, when at the maximum connections, before failing", 
+        Duration.THIRTY_SECONDS);
+
     public static String getMgmtBaseDir(ManagementContext mgmt) {
         return getMgmtBaseDir(mgmt.getConfig());
     }
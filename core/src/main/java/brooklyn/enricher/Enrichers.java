@@ -10,6 +10,7 @@ import java.util.Set;
 
 import brooklyn.enricher.basic.Aggregator;
 import brooklyn.enricher.basic.Combiner;
+import brooklyn.enricher.basic.IncrementalAggregation;
 import brooklyn.enricher.basic.Propagator;
 import brooklyn.enricher.basic.Transformer;
 import brooklyn.entity.Entity;
@@ -124,9 +125,10 @@ public class Enrichers {
         @SuppressWarnings({ "unchecked", "rawtypes" })
         public B computingSum() {
             // relies of TypeCoercion of result from Number to T, and type erasure for us to get away with it!
-            Function<Collection<S>, Number> function = new Function<Collection<S>, Number>()  {
-                @Override public Number apply(Collection<S> input) {
-                    return sum((Collection)input, (Number)defaultValueForUnreportedSensors, (Number)valueToReportIfNoSensors, (TypeToken) publishing.getTypeToken());
+            // reads the defaults when the aggregator starts, as they may be set after this is called
+            Function<Collection<Number>, Number> function = new IncrementalAggregation<Number, Number>()  {
+                @Override public Accumulator<Number, Number> newAccumulator() {
+                    return IncrementalAggregation.sum((Number)defaultValueForUnreportedSensors, (Number)valueToReportIfNoSensors).newAccumulator();
                 }};
             this.computing((Function)function);
             return self();
@@ -134,13 +136,29 @@ public class Enrichers {
         @SuppressWarnings({ "unchecked", "rawtypes" })
         public B computingAverage() {
             // relies of TypeCoercion of result from Number to T, and type erasure for us to get away with it!
-            Function<Collection<S>, Number> function = new Function<Collection<S>, Number>() {
-                @Override public Number apply(Collection<S> input) {
-                    return average((Collection)input, (Number)defaultValueForUnreportedSensors, (Number)valueToReportIfNoSensors, (TypeToken) publishing.getTypeToken());
+            Function<Collection<Number>, Number> function = new IncrementalAggregation<Number, Number>()  {
+                @Override public Accumulator<Number, Number> newAccumulator() {
+                    return IncrementalAggregation.mean((Number)defaultValueForUnreportedSensors, (Number)valueToReportIfNoSensors).newAccumulator();
                 }};
             this.computing((Function)function);
             return self();
         }
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        public B computingMin() {
+            this.computing((Function)IncrementalAggregation.min());
+            return self();
+        }
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        public B computingMax() {
+            this.computing((Function)IncrementalAggregation.max());
+            return self();
+        }
+        /** @see IncrementalAggregation#quantile(double, double) */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        public B computingQuantile(double quantile, double relativeAccuracy) {
+            this.computing((Function)IncrementalAggregation.quantile(quantile, relativeAccuracy));
+            return self();
+        }
         public B defaultValueForUnreportedSensors(S val) {
             this.defaultValueForUnreportedSensors = val;
             return self();
@@ -241,7 +259,8 @@ public class Enrichers {
         public B computingSum() {
             Function<Collection<S>, Number> function = new Function<Collection<S>, Number>() {
                 @Override public Number apply(Collection<S> input) {
-                    return sum((Collection)input, (Number)defaultValueForUnreportedSensors, (Number)valueToReportIfNoSensors, (TypeToken) publishing.getTypeToken());
+                    Number result = IncrementalAggregation.sum((Number)defaultValueForUnreportedSensors, (Number)valueToReportIfNoSensors).apply((Collection)input);
+                    return cast(result, (TypeToken) publishing.getTypeToken());
                 }};
             this.computing((Function)function);
             return self();
@@ -250,7 +269,8 @@ public class Enrichers {
         public B computingAverage() {
             Function<Collection<S>, Number> function = new Function<Collection<S>, Number>() {
                 @Override public Number apply(Collection<S> input) {
-                    return average((Collection)input, (Number)defaultValueForUnreportedSensors, (Number)valueToReportIfNoSensors, (TypeToken) publishing.getTypeToken());
+                    Number result = IncrementalAggregation.mean((Number)defaultValueForUnreportedSensors, (Number)valueToReportIfNoSensors).apply((Collection)input);
+                    return cast(result, (TypeToken) publishing.getTypeToken());
                 }};
             this.computing((Function)function);
             return self();
@@ -440,46 +460,11 @@ public class Enrichers {
         }
     }
 
-    protected static <T extends Number> T average(Collection<T> vals, Number defaultValueForUnreportedSensors, Number valueToReportIfNoSensors, TypeToken<T> type) {
-        Double doubleValueToReportIfNoSensors = (valueToReportIfNoSensors == null) ? null : valueToReportIfNoSensors.doubleValue();
-        int count = count(vals, defaultValueForUnreportedSensors!=null);
-        Double result = (count==0) ? doubleValueToReportIfNoSensors : 
-            (Double) ((sum(vals, defaultValueForUnreportedSensors, 0, TypeToken.of(Double.class)) / count));
-        
-        return cast(result, type);
-    }
-    
     @SuppressWarnings("unchecked")
     protected static <N extends Number> N cast(Number n, TypeToken<? extends N> numberType) {
         return (N) TypeCoercions.castPrimitive(n, numberType.getRawType());
     }
 
-    protected static <N extends Number> N sum(Iterable<? extends Number> vals, Number valueIfNull, Number valueIfNone, TypeToken<N> type) {
-        double result = 0d;
-        int count = 0;
-        if (vals!=null) {
-            for (Number val : vals) { 
-                if (val!=null) {
-                    result += val.doubleValue();
-                    count++;
-                } else if (valueIfNull!=null) {
-                    result += valueIfNull.doubleValue();
-                    count++;
-                }
-            }
-        }
-        if (count==0) return cast(valueIfNone, type);
-        return cast(result, type);
-    }
-    
-    protected static int count(Iterable<? extends Object> vals, boolean includeNullValues) {
-        int result = 0;
-        if (vals != null) 
-            for (Object val : vals) 
-                if (val!=null || includeNullValues) result++;
-        return result;
-    }
-    
     private static <T> Map<T,T> newIdentityMap(Set<T> keys) {
         Map<T,T> result = Maps.newLinkedHashMap();
         for (T key : keys) {
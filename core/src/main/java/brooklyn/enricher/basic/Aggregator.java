@@ -28,6 +28,7 @@ import brooklyn.util.collections.MutableMap;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.flags.TypeCoercions;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
@@ -38,6 +39,14 @@ public class Aggregator<T,U> extends AbstractEnricher implements SensorEventList
 
     private static final Logger LOG = LoggerFactory.getLogger(Aggregator.class);
 
+    /**
+     * The minimum number of removals from the {@link #accumulator} before it is rebuilt from the current values,
+     * discarding any error accumulated (e.g. floating point drift in a sum). It is rebuilt after at least as many
+     * removals as there are values, so the cost is amortised to O(1) per update.
+     */
+    @VisibleForTesting
+    static final int RECALCULATE_AFTER_REMOVALS = 1000;
+
     public static final ConfigKey<Function<? super Collection<?>, ?>> TRANSFORMATION = ConfigKeys.newConfigKey(new TypeToken<Function<? super Collection<?>, ?>>() {}, "enricher.transformation");
 
     public static final ConfigKey<Entity> PRODUCER = ConfigKeys.newConfigKey(Entity.class, "enricher.producer");
@@ -76,6 +85,14 @@ public class Aggregator<T,U> extends AbstractEnricher implements SensorEventList
     // We use a synchronizedMap over a ConcurrentHashMap for entities that store null values.
     protected final Map<Entity, T> values = Collections.synchronizedMap(new LinkedHashMap<Entity, T>());
 
+    /**
+     * If the transformation is an {@link IncrementalAggregation}, the aggregate of the (filtered) values,
+     * updated on each change so that the transformation need not be applied to all values;
+     * guarded by synchronizing on values.
+     */
+    protected IncrementalAggregation.Accumulator<T, ?> accumulator;
+    private int removalsSinceRecalculated;
+
     public Aggregator() {
     }
 
@@ -93,6 +110,9 @@ public class Aggregator<T,U> extends AbstractEnricher implements SensorEventList
         this.fromChildren = getConfig(FROM_CHILDREN);
         this.entityFilter = (Predicate<? super Entity>) (getConfig(ENTITY_FILTER) == null ? Predicates.alwaysTrue() : getConfig(ENTITY_FILTER));
         this.valueFilter = (Predicate<? super T>) (getConfig(VALUE_FILTER) == null ? Predicates.alwaysTrue() : getConfig(VALUE_FILTER));
+        if (transformation instanceof IncrementalAggregation) {
+            this.accumulator = ((IncrementalAggregation) transformation).newAccumulator();
+        }
 
         if (fromHardcodedProducers == null && producer == null) producer = entity;
         checkState(fromHardcodedProducers != null ^ producer != null, "must specify one of %s (%s) or %s (%s)", 
@@ -176,7 +196,7 @@ public class Aggregator<T,U> extends AbstractEnricher implements SensorEventList
                 } else {
                     initialVal = null;
                 }
-                values.put(producer, initialVal != null ? initialVal : defaultMemberValue);
+                putValue(producer, initialVal != null ? initialVal : defaultMemberValue);
                 //we might skip in onEvent in the short window while !values.containsKey(producer)
                 //but that's okay because the put which would have been done there is done here now
             } else {
@@ -192,7 +212,12 @@ public class Aggregator<T,U> extends AbstractEnricher implements SensorEventList
     
     // TODO If producer removed but then get (queued) event from it after this method returns,  
     protected T onProducerRemoved(Entity producer) {
-        T removed = values.remove(producer);
+        T removed;
+        synchronized (values) {
+            boolean present = values.containsKey(producer);
+            removed = values.remove(producer);
+            if (present && accumulator != null && valueFilter.apply(removed)) removeFromAccumulator(removed);
+        }
         onUpdated();
         return removed;
     }
@@ -202,7 +227,7 @@ public class Aggregator<T,U> extends AbstractEnricher implements SensorEventList
         Entity e = event.getSource();
         synchronized (values) {
             if (values.containsKey(e)) {
-                values.put(e, event.getValue());
+                putValue(e, event.getValue());
             } else {
                 if (LOG.isDebugEnabled()) LOG.debug("{} received event for unknown producer ({}); presumably that producer has recently been removed", this, e);
             }
@@ -210,6 +235,36 @@ public class Aggregator<T,U> extends AbstractEnricher implements SensorEventList
         onUpdated();
     }
 
+    /** must be called when synchronized on values */
+    private void putValue(Entity producer, T val) {
+        boolean present = values.containsKey(producer);
+        T old = values.put(producer, val);
+        if (accumulator != null) {
+            boolean recalculated = present && valueFilter.apply(old) && removeFromAccumulator(old);
+            if (!recalculated && valueFilter.apply(val)) accumulator.add(val);
+        }
+    }
+
+    /**
+     * Removes the value from the accumulator, or periodically rebuilds the accumulator from the current values instead.
+     * Must be called when synchronized on values, after the value has been replaced or removed in values.
+     * 
+     * @return true if the accumulator was rebuilt (so already includes any replacement value)
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private boolean removeFromAccumulator(T val) {
+        if (++removalsSinceRecalculated < Math.max(values.size(), RECALCULATE_AFTER_REMOVALS)) {
+            accumulator.remove(val);
+            return false;
+        }
+        accumulator = ((IncrementalAggregation) transformation).newAccumulator();
+        for (T v : Iterables.filter(values.values(), valueFilter)) {
+            accumulator.add(v);
+        }
+        removalsSinceRecalculated = 0;
+        return true;
+    }
+
     /**
      * Called whenever the values for the set of producers changes (e.g. on an event, or on a member added/removed).
      */
@@ -225,6 +280,9 @@ public class Aggregator<T,U> extends AbstractEnricher implements SensorEventList
     
     public U compute() {
         synchronized (values) {
+            if (accumulator != null) {
+                return TypeCoercions.coerce(accumulator.get(), targetSensor.getTypeToken());
+            }
             // TODO Could avoid copying when filter not needed
             List<T> vs = MutableList.copyOf(Iterables.filter(values.values(), valueFilter));
             Object result = transformation.apply(vs);
@@ -0,0 +1,283 @@
+package brooklyn.enricher.basic;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Function;
+
+/**
+ * An aggregation function which can also be computed incrementally: an {@link Aggregator} whose
+ * transformation is an {@code IncrementalAggregation} keeps an {@link Accumulator}, updated as each
+ * member's value changes, rather than re-applying the function to all members' values on every event.
+ * <p>
+ * As a {@link Function}, it can still be applied to a whole collection of values (e.g. by other enrichers).
+ * <p>
+ * Null values are ignored, unless a value to use in their place is given.
+ */
+public abstract class IncrementalAggregation<T, U> implements Function<Collection<T>, U> {
+
+    /**
+     * The state of an aggregation over a changing set of values. Not thread-safe; callers must
+     * synchronize (as {@link Aggregator} does).
+     */
+    public interface Accumulator<T, U> {
+        void add(T value);
+        /** removes a value previously added */
+        void remove(T value);
+        U get();
+    }
+
+    public abstract Accumulator<T, U> newAccumulator();
+
+    @Override
+    public U apply(Collection<T> input) {
+        Accumulator<T, U> accumulator = newAccumulator();
+        if (input != null) {
+            for (T val : input) {
+                accumulator.add(val);
+            }
+        }
+        return accumulator.get();
+    }
+
+    /** the sum of the values as a double, or valueIfNone if there are no (non-null) values */
+    public static IncrementalAggregation<Number, Number> sum(final Number valueIfNull, final Number valueIfNone) {
+        return new IncrementalAggregation<Number, Number>() {
+            @Override public Accumulator<Number, Number> newAccumulator() {
+                return new SumAccumulator(valueIfNull) {
+                    @Override public Number get() {
+                        return (count == 0) ? valueIfNone : Double.valueOf(sum());
+                    }
+                };
+            }
+        };
+    }
+
+    /** the mean of the values as a double, or valueIfNone if there are no (non-null) values */
+    public static IncrementalAggregation<Number, Number> mean(final Number valueIfNull, final Number valueIfNone) {
+        return new IncrementalAggregation<Number, Number>() {
+            @Override public Accumulator<Number, Number> newAccumulator() {
+                return new SumAccumulator(valueIfNull) {
+                    @Override public Number get() {
+                        return (count == 0) ? (valueIfNone == null ? null : Double.valueOf(valueIfNone.doubleValue())) : Double.valueOf(sum() / count);
+                    }
+                };
+            }
+        };
+    }
+
+    /** the number of non-null values */
+    public static IncrementalAggregation<Object, Integer> count() {
+        return new IncrementalAggregation<Object, Integer>() {
+            @Override public Accumulator<Object, Integer> newAccumulator() {
+                return new Accumulator<Object, Integer>() {
+                    int count = 0;
+                    @Override public void add(Object value) {
+                        if (value != null) count++;
+                    }
+                    @Override public void remove(Object value) {
+                        if (value != null) count--;
+                    }
+                    @Override public Integer get() {
+                        return count;
+                    }
+                };
+            }
+        };
+    }
+
+    /** the minimum of the values as a double, or null if there are none */
+    public static IncrementalAggregation<Number, Number> min() {
+        return new IncrementalAggregation<Number, Number>() {
+            @Override public Accumulator<Number, Number> newAccumulator() {
+                return new SortedAccumulator() {
+                    @Override public Number get() {
+                        return counts.isEmpty() ? null : counts.firstKey();
+                    }
+                };
+            }
+        };
+    }
+
+    /** the maximum of the values as a double, or null if there are none */
+    public static IncrementalAggregation<Number, Number> max() {
+        return new IncrementalAggregation<Number, Number>() {
+            @Override public Accumulator<Number, Number> newAccumulator() {
+                return new SortedAccumulator() {
+                    @Override public Number get() {
+                        return counts.isEmpty() ? null : counts.lastKey();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * An approximation of the given quantile (e.g. 0.95) of the values, or null if there are none.
+     * <p>
+     * Values are counted in logarithmically sized buckets, so the result is within the given relative
+     * accuracy (e.g. 0.01 for 1%) of a value in the set, and each change costs O(log buckets) regardless
+     * of the number of values; retrieving the quantile costs O(buckets).
+     */
+    public static IncrementalAggregation<Number, Number> quantile(final double quantile, final double relativeAccuracy) {
+        checkArgument(quantile >= 0 && quantile <= 1, "quantile must be in [0,1]: %s", quantile);
+        checkArgument(relativeAccuracy > 0 && relativeAccuracy < 1, "relativeAccuracy must be in (0,1): %s", relativeAccuracy);
+        return new IncrementalAggregation<Number, Number>() {
+            @Override public Accumulator<Number, Number> newAccumulator() {
+                return new QuantileSketch(quantile, relativeAccuracy);
+            }
+        };
+    }
+
+    /**
+     * Sums integral values exactly in a long (wrapping on overflow is harmless: adds and removes are
+     * exact modulo 2^64, so the result is right whenever the true sum fits), and other values as a double.
+     * The double sum drifts as values are added and removed, so {@link Aggregator} periodically rebuilds
+     * the accumulator from the current values.
+     */
+    private abstract static class SumAccumulator implements Accumulator<Number, Number> {
+        final Number valueIfNull;
+        long integralSum = 0;
+        double fractionalSum = 0;
+        int fractionalCount = 0;
+        int count = 0;
+
+        SumAccumulator(Number valueIfNull) {
+            this.valueIfNull = valueIfNull;
+        }
+        @Override public void add(Number value) {
+            update(value, 1);
+        }
+        @Override public void remove(Number value) {
+            update(value, -1);
+        }
+        private void update(Number value, int delta) {
+            if (value == null) value = valueIfNull;
+            if (value == null) return;
+            if (isIntegral(value)) {
+                integralSum += delta * value.longValue();
+            } else {
+                fractionalSum += delta * value.doubleValue();
+                fractionalCount += delta;
+                // avoid keeping floating point error once all such values are gone
+                if (fractionalCount == 0) fractionalSum = 0;
+            }
+            count += delta;
+        }
+        double sum() {
+            return integralSum + fractionalSum;
+        }
+        private static boolean isIntegral(Number value) {
+            return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+                    || value instanceof AtomicInteger || value instanceof AtomicLong;
+        }
+    }
+
+    /** a sorted multiset of the values */
+    private abstract static class SortedAccumulator implements Accumulator<Number, Number> {
+        final TreeMap<Double, Integer> counts = new TreeMap<Double, Integer>();
+
+        @Override public void add(Number value) {
+            if (value == null) return;
+            Double key = value.doubleValue();
+            Integer count = counts.get(key);
+            counts.put(key, (count == null) ? 1 : count+1);
+        }
+        @Override public void remove(Number value) {
+            if (value == null) return;
+            Double key = value.doubleValue();
+            Integer count = counts.get(key);
+            if (count == null) return;
+            if (count <= 1) {
+                counts.remove(key);
+            } else {
+                counts.put(key, count-1);
+            }
+        }
+    }
+
+    /**
+     * Counts values in buckets whose bounds grow geometrically by gamma = (1+a)/(1-a), so every value
+     * in a bucket is within relative accuracy a of the bucket's representative value. Negative values
+     * are counted (by magnitude) in a separate set of buckets.
+     */
+    private static class QuantileSketch implements Accumulator<Number, Number> {
+        private static final double MIN_MAGNITUDE = 1e-9;
+
+        final double quantile;
+        final double gamma;
+        final double logGamma;
+        final TreeMap<Integer, Integer> positive = new TreeMap<Integer, Integer>();
+        final TreeMap<Integer, Integer> negative = new TreeMap<Integer, Integer>();
+        int zeros = 0;
+        int count = 0;
+
+        QuantileSketch(double quantile, double relativeAccuracy) {
+            this.quantile = quantile;
+            this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+            this.logGamma = Math.log(gamma);
+        }
+
+        private int bucket(double magnitude) {
+            return (int) Math.ceil(Math.log(magnitude) / logGamma);
+        }
+
+        /** the value within the relative accuracy of every value in the bucket */
+        private double representative(int bucket) {
+            return 2 * Math.pow(gamma, bucket) / (gamma + 1);
+        }
+
+        @Override public void add(Number value) {
+            update(value, 1);
+        }
+        @Override public void remove(Number value) {
+            update(value, -1);
+        }
+
+        private void update(Number value, int delta) {
+            if (value == null) return;
+            double v = value.doubleValue();
+            if (Double.isNaN(v)) return;
+            if (Math.abs(v) < MIN_MAGNITUDE) {
+                zeros += delta;
+            } else {
+                increment((v > 0) ? positive : negative, bucket(Math.abs(v)), delta);
+            }
+            count += delta;
+        }
+
+        private static void increment(TreeMap<Integer, Integer> buckets, int bucket, int delta) {
+            Integer current = buckets.get(bucket);
+            int updated = ((current == null) ? 0 : current) + delta;
+            if (updated == 0) {
+                buckets.remove(bucket);
+            } else {
+                buckets.put(bucket, updated);
+            }
+        }
+
+        @Override public Number get() {
+            if (count <= 0) return null;
+            long rank = (long) Math.floor(quantile * (count - 1));
+            long seen = 0;
+            // in ascending order of value: negatives by descending magnitude, then zeros, then positives
+            for (Map.Entry<Integer, Integer> entry : negative.descendingMap().entrySet()) {
+                seen += entry.getValue();
+                if (seen > rank) return -representative(entry.getKey());
+            }
+            seen += zeros;
+            if (seen > rank) return 0d;
+            for (Map.Entry<Integer, Integer> entry : positive.entrySet()) {
+                seen += entry.getValue();
+                if (seen > rank) return representative(entry.getKey());
+            }
+            // only if adds and removes did not match
+            return positive.isEmpty() ? null : representative(positive.lastKey());
+        }
+    }
+}
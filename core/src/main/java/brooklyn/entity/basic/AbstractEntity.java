@@ -438,7 +438,8 @@ public abstract class AbstractEntity implements EntityLocal, EntityInternal {
         }
         refreshInheritedConfig();
         
-        attributesInternal = new AttributeMap(this, managementContext.getStorage().<Collection<String>, Object>getMap(id+"-attributes"));
+        attributesInternal = new AttributeMap(this, managementContext.getStorage().<Collection<String>, Object>getMap(id+"-attributes"),
+                managementContext.getStorage().isLocal());
         if (oldAttribs.asRawMap().size() > 0) {
             for (Map.Entry<Collection<String>,Object> entry : oldAttribs.asRawMap().entrySet()) {
                 attributesInternal.update(entry.getKey(), entry.getValue());
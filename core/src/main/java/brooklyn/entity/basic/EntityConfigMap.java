@@ -3,11 +3,15 @@ package brooklyn.entity.basic;
 import static brooklyn.util.GroovyJavaMethods.elvis;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,6 +22,7 @@ import brooklyn.config.ConfigMap;
 import brooklyn.event.basic.StructuredConfigKey;
 import brooklyn.management.ExecutionContext;
 import brooklyn.management.Task;
+import brooklyn.management.TaskAdaptable;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.config.ConfigBag;
 import brooklyn.util.flags.FlagUtils;
@@ -30,6 +35,7 @@ import brooklyn.util.task.DeferredSupplier;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.reflect.TypeToken;
 
 public class EntityConfigMap implements ConfigMap {
 
@@ -50,6 +56,28 @@ public class EntityConfigMap implements ConfigMap {
     private final ConfigBag localConfigBag;
     private final ConfigBag inheritedConfigBag;
 
+    /**
+     * Values already resolved and coerced by {@link #getConfig(ConfigKey, Object)}, for keys whose value
+     * is a constant (i.e. not a task, future or other deferred value, nor a collection which might contain
+     * one). Cleared whenever this entity's own or inherited config changes.
+     * <p>
+     * Keys are equal by name alone, but the value is coerced to the key's type, so each entry records the
+     * type it was resolved for; a lookup through a key of another type misses (and replaces it).
+     */
+    private final ConcurrentMap<ConfigKey<?>, Resolved> resolvedCache = new ConcurrentHashMap<ConfigKey<?>, Resolved>();
+    
+    /** incremented on each change to the config, before clearing {@link #resolvedCache} */
+    private final AtomicLong generation = new AtomicLong();
+    
+    private static class Resolved {
+        final TypeToken<?> type;
+        final Object value;
+        Resolved(TypeToken<?> type, Object value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+
     public EntityConfigMap(AbstractEntity entity, Map<ConfigKey<?>, Object> storage) {
         this.entity = checkNotNull(entity, "entity must be specified");
         this.ownConfig = checkNotNull(storage, "storage map must be specified");
@@ -73,6 +101,57 @@ public class EntityConfigMap implements ConfigMap {
     
     @SuppressWarnings("unchecked")
     public <T> T getConfig(ConfigKey<T> key, T defaultValue) {
+        if (defaultValue != null) {
+            // the caller's default might be used, so not cached
+            return getConfigUncached(key, defaultValue);
+        }
+        Resolved cached = resolvedCache.get(key);
+        if (cached != null && cached.type.equals(key.getTypeToken())) {
+            return (T) cached.value;
+        }
+        
+        long generationBefore = generation.get();
+        T result = getConfigUncached(key, null);
+        // mutable results are not shared between callers
+        if (!(result instanceof Map || result instanceof Collection) && isConstant(key)) {
+            Resolved toCache = new Resolved(key.getTypeToken(), result);
+            resolvedCache.put(key, toCache);
+            // if the config changed while resolving, the value may be stale; the change may have cleared the cache already
+            if (generation.get() != generationBefore) {
+                resolvedCache.remove(key, toCache);
+            }
+        }
+        return result;
+    }
+
+    /** whether the value that would be used for the key is a constant, so resolving it always gives the same result */
+    private boolean isConstant(ConfigKey<?> key) {
+        // as for getConfigUncached, the entity type may override the key (e.g. with a different default)
+        ConfigKey<?> ownKey = (ConfigKey<?>) elvis(entity.getEntityType().getConfigKey(key.getName()), key);
+        if (key instanceof StructuredConfigKey || ownKey instanceof StructuredConfigKey) return false;
+        Object rawval;
+        if (ownConfig.containsKey(ownKey)) {
+            rawval = ownConfig.get(ownKey);
+        } else if (inheritedConfig.containsKey(ownKey)) {
+            rawval = inheritedConfig.get(ownKey);
+        } else if (localConfigBag.containsKey(ownKey) || inheritedConfigBag.containsKey(ownKey)) {
+            // not cached, so the bag records the key as used on every lookup
+            return false;
+        } else {
+            rawval = ownKey.getDefaultValue();
+        }
+        return !(rawval instanceof TaskAdaptable || rawval instanceof Future || rawval instanceof DeferredSupplier
+                || rawval instanceof Map || rawval instanceof Collection);
+    }
+
+    /** must be called after every change to the config */
+    private void invalidateResolved() {
+        generation.incrementAndGet();
+        resolvedCache.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T getConfigUncached(ConfigKey<T> key, T defaultValue) {
         // FIXME What about inherited task in config?!
         //              alex says: think that should work, no?
         // FIXME What if someone calls getConfig on a task, before setting parent app?
@@ -187,6 +266,7 @@ public class EntityConfigMap implements ConfigMap {
         } else {
             oldVal = ownConfig.put(key, val);
         }
+        invalidateResolved();
         entity.refreshInheritedConfigOfChildren();
         return oldVal;
     }
@@ -194,6 +274,7 @@ public class EntityConfigMap implements ConfigMap {
     public void setLocalConfig(Map<ConfigKey<?>, ? extends Object> vals) {
         ownConfig.clear();
         ownConfig.putAll(vals);
+        invalidateResolved();
     }
     
     public void setInheritedConfig(Map<ConfigKey<?>, ? extends Object> vals, ConfigBag configBagVals) {
@@ -236,15 +317,18 @@ public class EntityConfigMap implements ConfigMap {
                 inheritedConfigBag.putStringKey(name, value);
             }
         }
+        invalidateResolved();
     }
     
     public void addToLocalBag(Map<String,?> vals) {
         localConfigBag.putAll(vals);
+        invalidateResolved();
     }
 
     public void clearInheritedConfig() {
         inheritedConfig.clear();
         inheritedConfigBag.clear();
+        invalidateResolved();
     }
 
     @Override
@@ -5,6 +5,7 @@ import java.util.Map;
 
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.EntityInternal;
+import brooklyn.event.AttributeSensor;
 import brooklyn.location.Location;
 import brooklyn.location.basic.LocationInternal;
 import brooklyn.mementos.BrooklynMementoPersister;
@@ -43,6 +44,11 @@ public class ImmediateDeltaChangeListener implements ChangeListener {
         }
     }
     
+    @Override
+    public void onAttributeChanged(Entity entity, AttributeSensor<?> attribute) {
+        onChanged(entity);
+    }
+    
     @Override
     public void onChanged(Entity entity) {
         if (running && persister != null) {
@@ -1,21 +1,39 @@
 package brooklyn.entity.rebind;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.rebind.dto.EntityAttributesPatch;
+import brooklyn.entity.rebind.persister.PatchingMementoPersister;
+import brooklyn.event.AttributeSensor;
 import brooklyn.location.Location;
 import brooklyn.location.basic.LocationInternal;
 import brooklyn.management.ExecutionManager;
 import brooklyn.management.Task;
 import brooklyn.mementos.BrooklynMementoPersister;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.mementos.LocationMemento;
+import brooklyn.mementos.PolicyMemento;
 import brooklyn.policy.Policy;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.task.BasicTask;
@@ -24,7 +42,8 @@ import brooklyn.util.time.Duration;
 import brooklyn.util.time.Time;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * A "simple" implementation that periodically persists all entities/locations/policies that have changed
@@ -35,6 +54,19 @@ import com.google.common.collect.Sets;
  * prevent hammering the persister when a bunch of entity attributes change (e.g. when the entity
  * has just polled over JMX/http/etc). Such a scheduled-write approach would be similar to the 
  * Nagle buffering algorithm in TCP (see tcp_nodelay).
+ * <p>
+ * Change notifications do not lock the listener: they add to concurrent sets in the current
+ * {@link DeltaCollector}, which {@link #persistNow()} swaps for a fresh one. Mementos are then
+ * generated on a small pool of threads, within a per-cycle time budget; anything not generated
+ * in time is carried forward to the next cycle. If a cycle overruns the period, the next cycle
+ * is delayed by the overrun, so persistence never uses more than about half of the time when
+ * it cannot keep up.
+ * <p>
+ * Where the persister is a {@link PatchingMementoPersister}, an entity whose only changes in a cycle
+ * were to attributes is persisted as an {@link EntityAttributesPatch} of just those attributes, rather
+ * than as its complete memento, provided its complete memento has been persisted since this listener
+ * started. A complete memento is still written every {@link #MAX_PATCHES_BEFORE_FULL} patches, so that
+ * the patches to replay on rebind are bounded.
  * 
  * @author aled
  *
@@ -43,18 +75,56 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(PeriodicDeltaChangeListener.class);
 
+    /** the time budget for generating mementos in a cycle, when the period is shorter than this */
+    public static final Duration MIN_CYCLE_BUDGET = Duration.ONE_SECOND;
+    
+    /** when there are fewer changed items than this, mementos are generated on the persisting thread */
+    private static final int MIN_ITEMS_FOR_PARALLEL_GENERATION = 16;
+    
+    /** number of consecutive patches persisted for an entity, after which its complete memento is persisted instead */
+    public static final int MAX_PATCHES_BEFORE_FULL = 50;
+
     private static class DeltaCollector {
-        Set<Location> locations = Sets.newLinkedHashSet();
-        Set<Entity> entities = Sets.newLinkedHashSet();
-        Set<Policy> policies = Sets.newLinkedHashSet();
-        Set<String> removedLocationIds = Sets.newLinkedHashSet();
-        Set<String> removedEntityIds = Sets.newLinkedHashSet();
-        Set<String> removedPolicyIds = Sets.newLinkedHashSet();
+        final Set<Location> locations = newConcurrentSet();
+        final Set<Entity> entities = newConcurrentSet();
+        final Set<Policy> policies = newConcurrentSet();
+        final Set<String> removedLocationIds = newConcurrentSet();
+        final Set<String> removedEntityIds = newConcurrentSet();
+        final Set<String> removedPolicyIds = newConcurrentSet();
+        final ConcurrentMap<Entity, Set<AttributeSensor<?>>> changedAttributes = new ConcurrentHashMap<Entity, Set<AttributeSensor<?>>>();
+        
+        /** number of threads currently adding to this collector; see {@link PeriodicDeltaChangeListener#beginUpdate()} */
+        final AtomicInteger updaters = new AtomicInteger();
         
         public boolean isEmpty() {
-            return locations.isEmpty() && entities.isEmpty() && policies.isEmpty() && 
+            return locations.isEmpty() && entities.isEmpty() && policies.isEmpty() && changedAttributes.isEmpty() && 
                     removedEntityIds.isEmpty() && removedLocationIds.isEmpty() && removedPolicyIds.isEmpty();
         }
+        
+        void addChangedAttributes(Entity entity, Collection<? extends AttributeSensor<?>> attributes) {
+            Set<AttributeSensor<?>> existing = changedAttributes.get(entity);
+            if (existing == null) {
+                Set<AttributeSensor<?>> newSet = newConcurrentSet();
+                existing = changedAttributes.putIfAbsent(entity, newSet);
+                if (existing == null) existing = newSet;
+            }
+            existing.addAll(attributes);
+        }
+        
+        private static <T> Set<T> newConcurrentSet() {
+            return Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+        }
+    }
+    
+    /** an entity whose changed attributes are to be persisted as a patch */
+    private static class PendingPatch {
+        final Entity entity;
+        final Set<AttributeSensor<?>> attributes;
+        
+        PendingPatch(Entity entity, Set<AttributeSensor<?>> attributes) {
+            this.entity = entity;
+            this.attributes = attributes;
+        }
     }
     
     private final ExecutionManager executionManager;
@@ -63,9 +133,29 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
 
     private final Duration period;
     
+    private final Duration cycleBudget;
+    
+    private final ThreadPoolExecutor generationExecutor;
+    
     private final AtomicLong writeCount = new AtomicLong();
     
-    private DeltaCollector deltaCollector = new DeltaCollector();
+    private final AtomicReference<DeltaCollector> deltaCollector = new AtomicReference<DeltaCollector>(new DeltaCollector());
+
+    /** set when a cycle overruns the period, to delay the next cycle */
+    private volatile long nextCycleNotBefore = 0;
+    
+    private final AtomicLong overrunCount = new AtomicLong();
+    
+    private final AtomicLong carriedForwardCount = new AtomicLong();
+    
+    /**
+     * For entities whose complete memento has been persisted, the number of patches persisted since;
+     * only updated by the persisting thread (including removal of unmanaged entities, so a concurrent
+     * cycle cannot re-add them).
+     */
+    private final ConcurrentMap<String, Integer> patchesSinceFull = new ConcurrentHashMap<String, Integer>();
+    
+    private final AtomicLong patchCount = new AtomicLong();
 
     private volatile boolean running = false;
 
@@ -74,9 +164,20 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
     private volatile ScheduledTask scheduledTask;
 
     public PeriodicDeltaChangeListener(ExecutionManager executionManager, BrooklynMementoPersister persister, long periodMillis) {
+        this(executionManager, persister, periodMillis, Runtime.getRuntime().availableProcessors());
+    }
+    
+    public PeriodicDeltaChangeListener(ExecutionManager executionManager, BrooklynMementoPersister persister, long periodMillis, int generationThreads) {
         this.executionManager = executionManager;
         this.persister = persister;
         this.period = Duration.of(periodMillis, TimeUnit.MILLISECONDS);
+        this.cycleBudget = (period.compareTo(MIN_CYCLE_BUDGET) < 0) ? MIN_CYCLE_BUDGET : period;
+        
+        // threads are only created when there is a large delta, and time out when idle
+        this.generationExecutor = new ThreadPoolExecutor(generationThreads, generationThreads, 60, TimeUnit.SECONDS, 
+                new LinkedBlockingQueue<Runnable>(), 
+                new ThreadFactoryBuilder().setNameFormat("brooklyn-persist-memento-%d").setDaemon(true).build());
+        this.generationExecutor.allowCoreThreadTimeOut(true);
     }
     
     public void start() {
@@ -108,11 +209,10 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         stopped = true;
         running = false;
         if (scheduledTask != null) scheduledTask.cancel();
+        generationExecutor.shutdownNow();
 
         // Discard all state that was waiting to be persisted
-        synchronized (this) {
-            deltaCollector = new DeltaCollector();
-        }
+        deltaCollector.set(new DeltaCollector());
     }
     
     /**
@@ -157,46 +257,111 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         return stopped || executionManager.isShutdown();
     }
     
+    /** number of cycles that took longer than the period (so delayed the next cycle) */
+    public long getOverrunCount() {
+        return overrunCount.get();
+    }
+    
+    /** number of entity changes persisted as patches of their attributes, rather than as complete mementos */
+    public long getPatchCount() {
+        return patchCount.get();
+    }
+    
+    /** number of entities whose count of patches since their complete memento is tracked */
+    @VisibleForTesting
+    int getPatchTrackedEntityCount() {
+        return patchesSinceFull.size();
+    }
+    
+    /** number of items whose memento was not generated within its cycle's budget, so was deferred to the next cycle */
+    public long getCarriedForwardCount() {
+        return carriedForwardCount.get();
+    }
+    
+    /**
+     * Returns the collector to add a change to, which must be passed to {@link #endUpdate(DeltaCollector)}
+     * once done. Rather than locking, this marks the collector as being updated; {@link #swapDeltaCollector()}
+     * waits for such updates to finish, so that no change is added to a collector after it has been persisted.
+     */
+    private DeltaCollector beginUpdate() {
+        while (true) {
+            DeltaCollector result = deltaCollector.get();
+            result.updaters.incrementAndGet();
+            if (deltaCollector.get() == result) return result;
+            // swapped concurrently; use the new one
+            result.updaters.decrementAndGet();
+        }
+    }
+    
+    private void endUpdate(DeltaCollector collector) {
+        collector.updaters.decrementAndGet();
+    }
+    
+    /** Atomically switches the delta, so subsequent modifications will be done in the next scheduled persist */
+    private DeltaCollector swapDeltaCollector() {
+        DeltaCollector result = deltaCollector.getAndSet(new DeltaCollector());
+        while (result.updaters.get() > 0) {
+            // updates only add to sets, so will be very quick
+            Thread.yield();
+        }
+        return result;
+    }
+    
     private void persistNow() {
         if (isActive()) {
+            long startTime = System.currentTimeMillis();
+            if (startTime < nextCycleNotBefore) {
+                if (LOG.isTraceEnabled()) LOG.trace("Delaying persistence, after previous cycle overran its period");
+                return;
+            }
+            boolean complete = true;
             try {
-                // Atomically switch the delta, so subsequent modifications will be done in the
-                // next scheduled persist
-                DeltaCollector prevDeltaCollector;
-                synchronized (this) {
-                    prevDeltaCollector = deltaCollector;
-                    deltaCollector = new DeltaCollector();
-                }
+                DeltaCollector prevDeltaCollector = swapDeltaCollector();
                 
                 // Generate mementos for everything that has changed in this time period
                 if (prevDeltaCollector.isEmpty()) {
                     if (LOG.isTraceEnabled()) LOG.trace("No changes to persist since last delta");
                 } else {
-                    PersisterDeltaImpl persisterDelta = new PersisterDeltaImpl();
-                    for (Location location : prevDeltaCollector.locations) {
-                        try {
-                            persisterDelta.locations.add(((LocationInternal)location).getRebindSupport().getMemento());
-                        } catch (Exception e) {
-                            handleGenerateMementoException(e, "location "+location.getClass().getSimpleName()+"("+location.getId()+")");
-                        }
-                    }
+                    // FIXME How to let the policy/location tell us about changes? Don't do this every time!
                     for (Entity entity : prevDeltaCollector.entities) {
-                        try {
-                            persisterDelta.entities.add(((EntityInternal)entity).getRebindSupport().getMemento());
-                        } catch (Exception e) {
-                            handleGenerateMementoException(e, "entity "+entity.getEntityType().getSimpleName()+"("+entity.getId()+")");
+                        for (Location location : entity.getLocations()) {
+                            prevDeltaCollector.locations.addAll(TreeUtils.findLocationsInHierarchy(location));
                         }
                     }
-                    for (Policy policy : prevDeltaCollector.policies) {
-                        try {
-                            persisterDelta.policies.add(policy.getRebindSupport().getMemento());
-                        } catch (Exception e) {
-                            handleGenerateMementoException(e, "location "+policy.getClass().getSimpleName()+"("+policy.getId()+")");
+                    
+                    List<Object> items = Lists.newArrayListWithCapacity(prevDeltaCollector.locations.size() + 
+                            prevDeltaCollector.entities.size() + prevDeltaCollector.changedAttributes.size() + prevDeltaCollector.policies.size());
+                    items.addAll(prevDeltaCollector.locations);
+                    items.addAll(prevDeltaCollector.entities);
+                    for (Map.Entry<Entity, Set<AttributeSensor<?>>> entry : prevDeltaCollector.changedAttributes.entrySet()) {
+                        Entity entity = entry.getKey();
+                        if (prevDeltaCollector.entities.contains(entity)) continue;
+                        Integer patches = patchesSinceFull.get(entity.getId());
+                        if (patches != null && patches < MAX_PATCHES_BEFORE_FULL) {
+                            items.add(new PendingPatch(entity, entry.getValue()));
+                        } else {
+                            items.add(entity);
                         }
                     }
+                    items.addAll(prevDeltaCollector.policies);
+                    
+                    PersisterDeltaImpl persisterDelta = new PersisterDeltaImpl();
+                    List<Object> notGenerated = generateMementos(items, persisterDelta, startTime + cycleBudget.toMilliseconds());
                     persisterDelta.removedLocationIds = prevDeltaCollector.removedLocationIds;
                     persisterDelta.removedEntityIds = prevDeltaCollector.removedEntityIds;
                     persisterDelta.removedPolicyIds = prevDeltaCollector.removedPolicyIds;
+                    // after generation, so a memento generated this cycle for a removed entity is not counted again
+                    for (String id : prevDeltaCollector.removedEntityIds) {
+                        patchesSinceFull.remove(id);
+                    }
+                    
+                    if (!notGenerated.isEmpty()) {
+                        complete = false;
+                        carriedForwardCount.addAndGet(notGenerated.size());
+                        LOG.debug("Persistence cycle exceeded budget of {}; deferring {} of {} items to next cycle", 
+                                new Object[] {cycleBudget, notGenerated.size(), items.size()});
+                        carryForward(notGenerated);
+                    }
                     
                     /*
                      * Need to guarantee "happens before", with any thread that subsequently reads
@@ -218,9 +383,131 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
                     LOG.debug("Problem persisting, but no longer active (ignoring)", e);
                 }
             } finally {
-                writeCount.incrementAndGet();
+                long endTime = System.currentTimeMillis();
+                long overrun = (endTime - startTime) - period.toMilliseconds();
+                if (overrun > 0) {
+                    overrunCount.incrementAndGet();
+                    nextCycleNotBefore = endTime + overrun;
+                    if (LOG.isDebugEnabled()) LOG.debug("Persistence cycle overran period of {} by {}; delaying next cycle", 
+                            period, Time.makeTimeStringRounded(overrun));
+                }
+                // a cycle that deferred items is not a complete write, for waitForPendingComplete
+                if (complete) writeCount.incrementAndGet();
+            }
+        }
+    }
+    
+    /**
+     * Generates the mementos for the given locations, entities and policies, adding them to the delta.
+     * Stops at the deadline, returning the items not yet generated.
+     */
+    private List<Object> generateMementos(final List<Object> items, PersisterDeltaImpl persisterDelta, final long deadline) throws InterruptedException {
+        final Object[] mementos = new Object[items.size()];
+        final AtomicInteger nextIndex = new AtomicInteger();
+        Callable<Void> worker = new Callable<Void>() {
+            @Override public Void call() {
+                while (System.currentTimeMillis() < deadline && isActive()) {
+                    int i = nextIndex.getAndIncrement();
+                    if (i >= items.size()) break;
+                    mementos[i] = generateMemento(items.get(i));
+                }
+                return null;
+            }
+        };
+        
+        int numWorkers = Math.min(generationExecutor.getMaximumPoolSize(), items.size() / MIN_ITEMS_FOR_PARALLEL_GENERATION);
+        if (numWorkers <= 1) {
+            try {
+                worker.call();
+            } catch (Exception e) {
+                throw Exceptions.propagate(e);
+            }
+        } else {
+            List<Future<Void>> futures = generationExecutor.invokeAll(Collections.nCopies(numWorkers, worker));
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw Exceptions.propagate(e.getCause());
+                }
+            }
+        }
+        
+        // every index claimed by a worker has been generated (or failed, and been logged)
+        int numGenerated = Math.min(nextIndex.get(), items.size());
+        for (int i = 0; i < numGenerated; i++) {
+            Object memento = mementos[i];
+            if (memento instanceof LocationMemento) {
+                persisterDelta.locations.add((LocationMemento) memento);
+            } else if (memento instanceof EntityMemento) {
+                persisterDelta.entities.add((EntityMemento) memento);
+                patchesSinceFull.put(((EntityMemento) memento).getId(), 0);
+            } else if (memento instanceof EntityAttributesPatch) {
+                EntityAttributesPatch patch = (EntityAttributesPatch) memento;
+                persisterDelta.entityPatches.add(patch);
+                Integer patches = patchesSinceFull.get(patch.getEntityId());
+                if (patches != null) patchesSinceFull.replace(patch.getEntityId(), patches, patches+1);
+                patchCount.incrementAndGet();
+            } else if (memento instanceof PolicyMemento) {
+                persisterDelta.policies.add((PolicyMemento) memento);
             }
         }
+        return items.subList(numGenerated, items.size());
+    }
+    
+    /** @return the memento, or null if it could not be generated */
+    private Object generateMemento(Object item) {
+        if (item instanceof Location) {
+            Location location = (Location) item;
+            try {
+                return ((LocationInternal)location).getRebindSupport().getMemento();
+            } catch (Exception e) {
+                handleGenerateMementoException(e, "location "+location.getClass().getSimpleName()+"("+location.getId()+")");
+            }
+        } else if (item instanceof Entity) {
+            Entity entity = (Entity) item;
+            try {
+                return ((EntityInternal)entity).getRebindSupport().getMemento();
+            } catch (Exception e) {
+                handleGenerateMementoException(e, "entity "+entity.getEntityType().getSimpleName()+"("+entity.getId()+")");
+            }
+        } else if (item instanceof PendingPatch) {
+            PendingPatch patch = (PendingPatch) item;
+            try {
+                return EntityAttributesPatch.newInstance(patch.entity, patch.attributes);
+            } catch (Exception e) {
+                handleGenerateMementoException(e, "attributes of entity "+patch.entity.getEntityType().getSimpleName()+"("+patch.entity.getId()+")");
+            }
+        } else if (item instanceof Policy) {
+            Policy policy = (Policy) item;
+            try {
+                return policy.getRebindSupport().getMemento();
+            } catch (Exception e) {
+                handleGenerateMementoException(e, "policy "+policy.getClass().getSimpleName()+"("+policy.getId()+")");
+            }
+        }
+        return null;
+    }
+    
+    /** Adds the items back, to be persisted in the next cycle (unless removed in the meantime) */
+    private void carryForward(List<Object> items) {
+        DeltaCollector collector = beginUpdate();
+        try {
+            for (Object item : items) {
+                if (item instanceof Location) {
+                    if (!collector.removedLocationIds.contains(((Location) item).getId())) collector.locations.add((Location) item);
+                } else if (item instanceof Entity) {
+                    if (!collector.removedEntityIds.contains(((Entity) item).getId())) collector.entities.add((Entity) item);
+                } else if (item instanceof PendingPatch) {
+                    PendingPatch patch = (PendingPatch) item;
+                    if (!collector.removedEntityIds.contains(patch.entity.getId())) collector.addChangedAttributes(patch.entity, patch.attributes);
+                } else if (item instanceof Policy) {
+                    if (!collector.removedPolicyIds.contains(((Policy) item).getId())) collector.policies.add((Policy) item);
+                }
+            }
+        } finally {
+            endUpdate(collector);
+        }
     }
     
     protected void handleGenerateMementoException(Exception e, String context) {
@@ -233,7 +520,7 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
     }
     
     @Override
-    public synchronized void onManaged(Entity entity) {
+    public void onManaged(Entity entity) {
         if (LOG.isTraceEnabled()) LOG.trace("onManaged: {}", entity);
         if (!isStopped()) {
             onChanged(entity);
@@ -241,7 +528,7 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
     }
 
     @Override
-    public synchronized void onManaged(Location location) {
+    public void onManaged(Location location) {
         if (LOG.isTraceEnabled()) LOG.trace("onManaged: {}", location);
         if (!isStopped()) {
             onChanged(location);
@@ -249,14 +536,15 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
     }
     
     @Override
-    public synchronized void onChanged(Entity entity) {
+    public void onChanged(Entity entity) {
         if (LOG.isTraceEnabled()) LOG.trace("onChanged: {}", entity);
         if (!isStopped()) {
-            deltaCollector.entities.add(entity);
-
-            // FIXME How to let the policy/location tell us about changes? Don't do this every time!
-            for (Location location : entity.getLocations()) {
-                deltaCollector.locations.addAll(TreeUtils.findLocationsInHierarchy(location));
+            DeltaCollector collector = beginUpdate();
+            try {
+                // the entity's locations are added when persisting, rather than on every change
+                collector.entities.add(entity);
+            } finally {
+                endUpdate(collector);
             }
 
             // FIXME Not including policies, because lots of places regiser anonymous inner class policies
@@ -270,36 +558,72 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
     }
     
     @Override
-    public synchronized void onUnmanaged(Entity entity) {
+    public void onAttributeChanged(Entity entity, AttributeSensor<?> attribute) {
+        if (LOG.isTraceEnabled()) LOG.trace("onAttributeChanged: {}, {}", entity, attribute);
+        if (!(persister instanceof PatchingMementoPersister)) {
+            onChanged(entity);
+        } else if (!isStopped()) {
+            DeltaCollector collector = beginUpdate();
+            try {
+                collector.addChangedAttributes(entity, Collections.singleton(attribute));
+            } finally {
+                endUpdate(collector);
+            }
+        }
+    }
+    
+    @Override
+    public void onUnmanaged(Entity entity) {
         if (LOG.isTraceEnabled()) LOG.trace("onUnmanaged: {}", entity);
         if (!isStopped()) {
-            deltaCollector.removedEntityIds.add(entity.getId());
-            deltaCollector.entities.remove(entity);
+            DeltaCollector collector = beginUpdate();
+            try {
+                collector.removedEntityIds.add(entity.getId());
+                collector.entities.remove(entity);
+                collector.changedAttributes.remove(entity);
+            } finally {
+                endUpdate(collector);
+            }
         }
     }
 
     @Override
-    public synchronized void onUnmanaged(Location location) {
+    public void onUnmanaged(Location location) {
         if (LOG.isTraceEnabled()) LOG.trace("onUnmanaged: {}", location);
         if (!isStopped()) {
-            deltaCollector.removedLocationIds.add(location.getId());
-            deltaCollector.locations.remove(location);
+            DeltaCollector collector = beginUpdate();
+            try {
+                collector.removedLocationIds.add(location.getId());
+                collector.locations.remove(location);
+            } finally {
+                endUpdate(collector);
+            }
         }
     }
 
     @Override
-    public synchronized void onChanged(Location location) {
+    public void onChanged(Location location) {
         if (LOG.isTraceEnabled()) LOG.trace("onChanged: {}", location);
         if (!isStopped()) {
-            deltaCollector.locations.add(location);
+            DeltaCollector collector = beginUpdate();
+            try {
+                collector.locations.add(location);
+            } finally {
+                endUpdate(collector);
+            }
         }
     }
     
     @Override
-    public synchronized void onChanged(Policy policy) {
+    public void onChanged(Policy policy) {
         if (LOG.isTraceEnabled()) LOG.trace("onChanged: {}", policy);
         if (!isStopped()) {
-            deltaCollector.policies.add(policy);
+            DeltaCollector collector = beginUpdate();
+            try {
+                collector.policies.add(policy);
+            } finally {
+                endUpdate(collector);
+            }
         }
     }
 }
@@ -2,20 +2,22 @@ package brooklyn.entity.rebind;
 
 import java.util.Collection;
 
-import brooklyn.mementos.BrooklynMementoPersister.Delta;
+import brooklyn.entity.rebind.dto.EntityAttributesPatch;
+import brooklyn.entity.rebind.persister.PatchingMementoPersister.PatchingDelta;
 import brooklyn.mementos.EntityMemento;
 import brooklyn.mementos.LocationMemento;
 import brooklyn.mementos.PolicyMemento;
 
 import com.google.common.collect.Sets;
 
-class PersisterDeltaImpl implements Delta {
+class PersisterDeltaImpl implements PatchingDelta {
     Collection<LocationMemento> locations = Sets.newLinkedHashSet();
     Collection<EntityMemento> entities = Sets.newLinkedHashSet();
     Collection<PolicyMemento> policies = Sets.newLinkedHashSet();
     Collection <String> removedLocationIds = Sets.newLinkedHashSet();
     Collection <String> removedEntityIds = Sets.newLinkedHashSet();
     Collection <String> removedPolicyIds = Sets.newLinkedHashSet();
+    Collection<EntityAttributesPatch> entityPatches = Sets.newLinkedHashSet();
     
     @Override
     public Collection<LocationMemento> locations() {
@@ -46,4 +48,9 @@ class PersisterDeltaImpl implements Delta {
     public Collection<String> removedPolicyIds() {
         return removedPolicyIds;
     }
+
+    @Override
+    public Collection<EntityAttributesPatch> entityPatches() {
+        return entityPatches;
+    }
 }
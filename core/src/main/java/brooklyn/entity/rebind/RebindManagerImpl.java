@@ -5,8 +5,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.io.IOException;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -26,6 +28,9 @@ import brooklyn.entity.proxying.EntityProxy;
 import brooklyn.entity.proxying.EntitySpec;
 import brooklyn.entity.proxying.InternalEntityFactory;
 import brooklyn.entity.proxying.InternalLocationFactory;
+import brooklyn.entity.rebind.persister.StreamingMementoPersister;
+import brooklyn.entity.rebind.persister.StreamingMementoPersister.MementoVisitor;
+import brooklyn.event.AttributeSensor;
 import brooklyn.location.Location;
 import brooklyn.location.LocationSpec;
 import brooklyn.location.basic.LocationInternal;
@@ -48,9 +53,13 @@ import brooklyn.util.time.Duration;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 
 public class RebindManagerImpl implements RebindManager {
 
@@ -131,6 +140,11 @@ public class RebindManagerImpl implements RebindManager {
     public ChangeListener getChangeListener() {
         return changeListener;
     }
+
+    @VisibleForTesting
+    public PeriodicDeltaChangeListener getPeriodicDeltaChangeListener() {
+        return realChangeListener;
+    }
     
     @Override
     public List<Application> rebind() throws IOException {
@@ -142,10 +156,10 @@ public class RebindManagerImpl implements RebindManager {
         checkNotNull(classLoader, "classLoader");
         
         try {
-            Reflections reflections = new Reflections(classLoader);
-            Map<String,Entity> entities = Maps.newLinkedHashMap();
-            Map<String,Location> locations = Maps.newLinkedHashMap();
-            Map<String,Policy> policies = Maps.newLinkedHashMap();
+            final Reflections reflections = new Reflections(classLoader);
+            final Map<String,Entity> entities = Maps.newLinkedHashMap();
+            final Map<String,Location> locations = Maps.newLinkedHashMap();
+            final Map<String,Policy> policies = Maps.newLinkedHashMap();
             
             final RebindContextImpl rebindContext = new RebindContextImpl(classLoader);
     
@@ -210,67 +224,76 @@ public class RebindManagerImpl implements RebindManager {
             // entity), then second phase might try to reconstitute an entity that has not been put in
             // the rebindContext. This should not affect normal production usage, because rebind is run
             // against a data-store that is not being written to by other brooklyn instance(s).
-            BrooklynMemento mementoHeaders = persister.loadMemento(dummyLookupContext);
+            //
+            // Where the persister supports it, each memento is instantiated / reconstructed as soon as it
+            // is loaded, rather than first loading the complete BrooklynMemento.
+            loadMemento(dummyLookupContext, new MementoVisitor() {
+                @Override public void visit(LocationMemento locMemento) {
+                    if (LOG.isTraceEnabled()) LOG.trace("RebindManager instantiating location {}", locMemento);
+                    
+                    Location location = newLocation(locMemento, reflections);
+                    locations.put(locMemento.getId(), location);
+                    rebindContext.registerLocation(locMemento.getId(), location);
+                }
+                @Override public void visit(PolicyMemento policyMemento) {
+                    if (LOG.isDebugEnabled()) LOG.debug("RebindManager instantiating policy {}", policyMemento);
+                    
+                    Policy policy = newPolicy(policyMemento, reflections);
+                    policies.put(policyMemento.getId(), policy);
+                    rebindContext.registerPolicy(policyMemento.getId(), policy);
+                }
+                @Override public void visit(EntityMemento entityMemento) {
+                    if (LOG.isDebugEnabled()) LOG.debug("RebindManager instantiating entity {}", entityMemento);
+                    
+                    Entity entity = newEntity(entityMemento, reflections);
+                    entities.put(entityMemento.getId(), entity);
+                    rebindContext.registerEntity(entityMemento.getId(), entity);
+                }
+            });
+            LOG.info("RebindManager instantiated locations: {}", locations.keySet());
+            LOG.info("RebindManager instantiated policies: {}", policies.keySet());
+            LOG.info("RebindManager instantiated entities: {}", entities.keySet());
     
-            // Instantiate locations
-            LOG.info("RebindManager instantiating locations: {}", mementoHeaders.getLocationIds());
-            for (LocationMemento locMemento : mementoHeaders.getLocationMementos().values()) {
-                if (LOG.isTraceEnabled()) LOG.trace("RebindManager instantiating location {}", locMemento);
-                
-                Location location = newLocation(locMemento, reflections);
-                locations.put(locMemento.getId(), location);
-                rebindContext.registerLocation(locMemento.getId(), location);
-            }
-            
-            // Instantiate entities
-            LOG.info("RebindManager instantiating entities: {}", mementoHeaders.getEntityIds());
-            for (EntityMemento entityMemento : mementoHeaders.getEntityMementos().values()) {
-                if (LOG.isDebugEnabled()) LOG.debug("RebindManager instantiating entity {}", entityMemento);
-                
-                Entity entity = newEntity(entityMemento, reflections);
-                entities.put(entityMemento.getId(), entity);
-                rebindContext.registerEntity(entityMemento.getId(), entity);
-            }
-            
-            // Instantiate policies
-            LOG.info("RebindManager instantiating policies: {}", mementoHeaders.getPolicyIds());
-            for (PolicyMemento policyMemento : mementoHeaders.getPolicyMementos().values()) {
-                if (LOG.isDebugEnabled()) LOG.debug("RebindManager instantiating policy {}", policyMemento);
-                
-                Policy policy = newPolicy(policyMemento, reflections);
-                policies.put(policyMemento.getId(), policy);
-                rebindContext.registerPolicy(policyMemento.getId(), policy);
-            }
+            final ParentFirstReconstructor<LocationMemento> locationReconstructor = new ParentFirstReconstructor<LocationMemento>(locations.keySet()) {
+                @Override protected void reconstruct(LocationMemento locMemento) {
+                    Location location = rebindContext.getLocation(locMemento.getId());
+                    if (LOG.isDebugEnabled()) LOG.debug("RebindManager reconstructing location {}", locMemento);
+        
+                    ((LocationInternal)location).getRebindSupport().reconstruct(rebindContext, locMemento);
+                }
+            };
+            final ParentFirstReconstructor<EntityMemento> entityReconstructor = new ParentFirstReconstructor<EntityMemento>(entities.keySet()) {
+                @Override protected void reconstruct(EntityMemento entityMemento) {
+                    Entity entity = rebindContext.getEntity(entityMemento.getId());
+                    if (LOG.isDebugEnabled()) LOG.debug("RebindManager reconstructing entity {}", entityMemento);
+        
+                    entityMemento.injectTypeClass(entity.getClass());
+                    ((EntityInternal)entity).getRebindSupport().reconstruct(rebindContext, entityMemento);
+                }
+            };
+            final List<String> applicationIds = Lists.newArrayList();
             
-            BrooklynMemento memento = persister.loadMemento(realLookupContext);
-    
-            // Reconstruct locations
-            LOG.info("RebindManager reconstructing locations");
-            for (LocationMemento locMemento : sortParentFirst(memento.getLocationMementos()).values()) {
-                Location location = rebindContext.getLocation(locMemento.getId());
-                if (LOG.isDebugEnabled()) LOG.debug("RebindManager reconstructing location {}", locMemento);
-    
-                ((LocationInternal)location).getRebindSupport().reconstruct(rebindContext, locMemento);
-            }
-    
-            // Reconstruct policies
-            LOG.info("RebindManager reconstructing policies");
-            for (PolicyMemento policyMemento : memento.getPolicyMementos().values()) {
-                Policy policy = rebindContext.getPolicy(policyMemento.getId());
-                if (LOG.isDebugEnabled()) LOG.debug("RebindManager reconstructing policy {}", policyMemento);
-    
-                policy.getRebindSupport().reconstruct(rebindContext, policyMemento);
-            }
-    
-            // Reconstruct entities
-            LOG.info("RebindManager reconstructing entities");
-            for (EntityMemento entityMemento : sortParentFirst(memento.getEntityMementos()).values()) {
-                Entity entity = rebindContext.getEntity(entityMemento.getId());
-                if (LOG.isDebugEnabled()) LOG.debug("RebindManager reconstructing entity {}", entityMemento);
-    
-                entityMemento.injectTypeClass(entity.getClass());
-                ((EntityInternal)entity).getRebindSupport().reconstruct(rebindContext, entityMemento);
-            }
+            // Reconstruct locations, then policies, then entities (which adds the entity's policies)
+            LOG.info("RebindManager reconstructing locations, policies and entities");
+            loadMemento(realLookupContext, new MementoVisitor() {
+                @Override public void visit(LocationMemento locMemento) {
+                    locationReconstructor.add(locMemento);
+                }
+                @Override public void visit(PolicyMemento policyMemento) {
+                    locationReconstructor.finish();
+                    Policy policy = rebindContext.getPolicy(policyMemento.getId());
+                    if (LOG.isDebugEnabled()) LOG.debug("RebindManager reconstructing policy {}", policyMemento);
+        
+                    policy.getRebindSupport().reconstruct(rebindContext, policyMemento);
+                }
+                @Override public void visit(EntityMemento entityMemento) {
+                    locationReconstructor.finish();
+                    if (entityMemento.isTopLevelApp()) applicationIds.add(entityMemento.getId());
+                    entityReconstructor.add(entityMemento);
+                }
+            });
+            locationReconstructor.finish();
+            entityReconstructor.finish();
             
             LOG.info("RebindManager managing locations");
             for (Location location: locations.values()) {
@@ -283,17 +306,17 @@ public class RebindManagerImpl implements RebindManager {
             
             // Manage the top-level apps (causing everything under them to become managed)
             LOG.info("RebindManager managing entities");
-            for (String appId : memento.getApplicationIds()) {
+            for (String appId : applicationIds) {
                 Entities.startManagement((Application)rebindContext.getEntity(appId), managementContext);
             }
             
             // Return the top-level applications
             List<Application> apps = Lists.newArrayList();
-            for (String appId : memento.getApplicationIds()) {
+            for (String appId : applicationIds) {
                 apps.add((Application)rebindContext.getEntity(appId));
             }
             
-            LOG.info("RebindManager complete; return apps: {}", memento.getApplicationIds());
+            LOG.info("RebindManager complete; return apps: {}", applicationIds);
             return apps;
         } catch (Exception e) {
             LOG.warn("Problem during rebind (rethrowing)", e);
@@ -301,6 +324,93 @@ public class RebindManagerImpl implements RebindManager {
         }
     }
     
+    /**
+     * Passes each memento to the visitor: as it is loaded, if the persister supports that; otherwise
+     * from the complete {@link BrooklynMemento}. Either way, locations come first, then policies, then entities.
+     */
+    private void loadMemento(LookupContext lookupContext, MementoVisitor visitor) throws IOException {
+        if (persister instanceof StreamingMementoPersister) {
+            ((StreamingMementoPersister)persister).loadMemento(lookupContext, visitor);
+        } else {
+            BrooklynMemento memento = persister.loadMemento(lookupContext);
+            for (LocationMemento locMemento : memento.getLocationMementos().values()) {
+                visitor.visit(locMemento);
+            }
+            for (PolicyMemento policyMemento : memento.getPolicyMementos().values()) {
+                visitor.visit(policyMemento);
+            }
+            for (EntityMemento entityMemento : memento.getEntityMementos().values()) {
+                visitor.visit(entityMemento);
+            }
+        }
+    }
+    
+    /**
+     * Reconstructs nodes as they are added, except that a node whose parent is known (i.e. was
+     * instantiated) but not yet reconstructed is held back until its parent has been.
+     * Call {@link #finish()} once all nodes are added, to reconstruct any whose parent never arrived.
+     * 
+     * Gives the same guarantee as {@link RebindManagerImpl#sortParentFirst(Map)}, without needing
+     * all the nodes up front.
+     */
+    @VisibleForTesting
+    static abstract class ParentFirstReconstructor<T extends TreeNode> {
+        private final Set<String> knownIds;
+        private final Set<String> reconstructedIds = Sets.newHashSet();
+        private final Map<String, T> waiting = Maps.newLinkedHashMap();
+        private final Multimap<String, T> waitingByParent = LinkedHashMultimap.create();
+        
+        ParentFirstReconstructor(Set<String> knownIds) {
+            this.knownIds = knownIds;
+        }
+        
+        protected abstract void reconstruct(T node);
+        
+        void add(T node) {
+            String parentId = node.getParent();
+            if (parentId != null && knownIds.contains(parentId) && !reconstructedIds.contains(parentId)) {
+                waiting.put(node.getId(), node);
+                waitingByParent.put(parentId, node);
+            } else {
+                reconstructWithWaitingDescendants(node);
+            }
+        }
+        
+        void finish() {
+            if (waiting.isEmpty()) return;
+            for (String parentId : ImmutableList.copyOf(waitingByParent.keySet())) {
+                if (!waiting.containsKey(parentId) && waitingByParent.containsKey(parentId)) {
+                    // parent was not loaded this time (e.g. deleted since first loaded); treat as missing
+                    for (T node : ImmutableList.copyOf(waitingByParent.removeAll(parentId))) {
+                        waiting.remove(node.getId());
+                        reconstructWithWaitingDescendants(node);
+                    }
+                }
+            }
+            // anything left is part of a cycle, so there is no parent-first order
+            for (T node : ImmutableList.copyOf(waiting.values())) {
+                if (waiting.remove(node.getId()) != null) {
+                    waitingByParent.remove(node.getParent(), node);
+                    reconstructWithWaitingDescendants(node);
+                }
+            }
+        }
+        
+        private void reconstructWithWaitingDescendants(T node) {
+            Deque<T> queue = new ArrayDeque<T>();
+            queue.add(node);
+            while (!queue.isEmpty()) {
+                T next = queue.poll();
+                reconstruct(next);
+                reconstructedIds.add(next.getId());
+                for (T child : waitingByParent.removeAll(next.getId())) {
+                    waiting.remove(child.getId());
+                    queue.add(child);
+                }
+            }
+        }
+    }
+    
     /**
      * Sorts the map of nodes, so that a node's parent is guaranteed to come before that node
      * (unless the parent is missing).
@@ -530,6 +640,15 @@ public class RebindManagerImpl implements RebindManager {
             }
         }
         
+        @Override
+        public void onAttributeChanged(Entity entity, AttributeSensor<?> attribute) {
+            try {
+                delegate.onAttributeChanged(entity, attribute);
+            } catch (Throwable t) {
+                LOG.error("Error persisting mememento onAttributeChanged("+entity+", "+attribute+"); continuing.", t);
+            }
+        }
+        
         @Override
         public void onUnmanaged(Entity entity) {
             try {
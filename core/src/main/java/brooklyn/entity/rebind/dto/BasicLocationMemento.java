@@ -54,6 +54,11 @@ public class BasicLocationMemento extends AbstractTreeNodeMemento implements Loc
 	private Set<String> locationConfigUnused;
 	private String locationConfigDescription;
 
+    // for de-serialization
+    @SuppressWarnings("unused")
+    private BasicLocationMemento() {
+    }
+
     // Trusts the builder to not mess around with mutability after calling build()
 	protected BasicLocationMemento(Builder builder) {
 	    super(builder);
@@ -41,6 +41,11 @@ public class BasicPolicyMemento extends AbstractMemento implements PolicyMemento
 	private Map<String,Object> flags;
     private Map<String, Object> fields;
 
+    // for de-serialization
+    @SuppressWarnings("unused")
+    private BasicPolicyMemento() {
+    }
+
     // Trusts the builder to not mess around with mutability after calling build()
 	protected BasicPolicyMemento(Builder builder) {
 	    flags = toPersistedMap(builder.flags);
@@ -0,0 +1,105 @@
+package brooklyn.entity.rebind.dto;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.codehaus.jackson.annotate.JsonAutoDetect;
+import org.codehaus.jackson.annotate.JsonAutoDetect.Visibility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.EntityTypes;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.Sensor;
+import brooklyn.mementos.EntityMemento;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+
+/**
+ * The new values of some of an entity's attributes, to be applied to the entity's last persisted
+ * {@link EntityMemento}; so that a change to one attribute does not require persisting the whole entity.
+ * <p>
+ * As for {@link BasicEntityMemento}, attributes are stored by name, with the sensor itself only
+ * stored if it is not statically defined on the entity type.
+ */
+@JsonAutoDetect(fieldVisibility=Visibility.ANY, getterVisibility=Visibility.NONE)
+public class EntityAttributesPatch implements Serializable {
+
+    private static final long serialVersionUID = -2841593012759375702L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(EntityAttributesPatch.class);
+
+    /**
+     * Captures the current values of the given attributes of the entity.
+     */
+    public static EntityAttributesPatch newInstance(Entity entity, Collection<? extends AttributeSensor<?>> attributes) {
+        EntityAttributesPatch result = new EntityAttributesPatch();
+        result.entityId = entity.getId();
+        Map<String, Sensor<?>> staticSensors = EntityTypes.getDefinedSensors(entity.getClass());
+        for (AttributeSensor<?> attribute : attributes) {
+            if (!attribute.equals(staticSensors.get(attribute.getName()))) {
+                result.attributeKeys.put(attribute.getName(), attribute);
+            }
+            result.attributes.put(attribute.getName(), entity.getAttribute(attribute));
+        }
+        return result;
+    }
+
+    private String entityId;
+    private Map<String, Object> attributes = Maps.newLinkedHashMap();
+    private Map<String, AttributeSensor<?>> attributeKeys = Maps.newLinkedHashMap();
+
+    // for de-serialization
+    private EntityAttributesPatch() {
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    /** the new attribute values, by sensor name */
+    public Map<String, Object> getAttributes() {
+        return Collections.unmodifiableMap(attributes);
+    }
+
+    /**
+     * Returns a memento with this patch's attribute values in place of those of the given memento
+     * (which must be for the same entity).
+     */
+    @SuppressWarnings("unchecked")
+    public EntityMemento applyTo(EntityMemento base) {
+        if (!entityId.equals(base.getId())) {
+            throw new IllegalArgumentException("Cannot apply patch for entity "+entityId+" to memento of entity "+base.getId());
+        }
+        Map<String, Sensor<?>> staticSensors = (base.getTypeClass() != null)
+                ? EntityTypes.getDefinedSensors((Class<? extends Entity>) base.getTypeClass())
+                : EntityTypes.getDefinedSensors(base.getType());
+
+        BasicEntityMemento.Builder builder = BasicEntityMemento.builder().from(base);
+        for (Iterator<AttributeSensor> iter = builder.attributes.keySet().iterator(); iter.hasNext();) {
+            AttributeSensor<?> existing = iter.next();
+            if (existing == null || attributes.containsKey(existing.getName())) iter.remove();
+        }
+        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+            String name = entry.getKey();
+            AttributeSensor<?> key = attributeKeys.get(name);
+            if (key == null && staticSensors.get(name) instanceof AttributeSensor) key = (AttributeSensor<?>) staticSensors.get(name);
+            if (key == null) {
+                LOG.warn("Ignoring persisted change to attribute {} of entity {} ({}); sensor not known", new Object[] {name, entityId, base.getType()});
+                continue;
+            }
+            builder.attributes.put(key, entry.getValue());
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("entityId", entityId).add("attributes", attributes.keySet()).toString();
+    }
+}
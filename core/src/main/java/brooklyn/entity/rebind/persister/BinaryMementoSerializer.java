@@ -0,0 +1,767 @@
+package brooklyn.entity.rebind.persister;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.Entity;
+import brooklyn.entity.rebind.dto.EntityAttributesPatch;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.Sensor;
+import brooklyn.event.basic.BasicAttributeSensor;
+import brooklyn.event.basic.BasicConfigKey;
+import brooklyn.location.Location;
+import brooklyn.management.Task;
+import brooklyn.mementos.BrooklynMementoPersister.LookupContext;
+import brooklyn.mementos.Memento;
+import brooklyn.util.exceptions.Exceptions;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableCollection;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Primitives;
+import com.google.common.reflect.TypeToken;
+
+/**
+ * A compact binary alternative to {@link XmlMementoSerializer}.
+ * <p>
+ * Mementos are written field by field (found by reflection, as XStream does, and cached per class),
+ * each field tagged with its name and declaring class, and each value tagged with its type. Reading is
+ * therefore tolerant of changes to the memento classes: fields no longer present are skipped, new fields
+ * keep the value given by the no-arg constructor, and values no longer assignable to the field are dropped.
+ * Class and field names are written once per memento and then referred to by index.
+ * <p>
+ * Strings, numbers, booleans, enums, dates, entity and location references, basic config keys and
+ * attribute sensors, attribute patches, and standard collections and maps of these are written natively.
+ * Any other value (e.g. a custom POJO in an attribute, or a config key of a specialised type) is embedded
+ * as XStream XML, so anything the XML format can persist can be persisted here.
+ * <p>
+ * Data starts with a magic number and format version. Data without the magic number is read as XML,
+ * so a persistence store can be switched to this format (or migrated with {@link MementoFormatMigrator})
+ * without first converting every file.
+ */
+public class BinaryMementoSerializer<T> implements MementoSerializer<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BinaryMementoSerializer.class);
+
+    private static final byte[] MAGIC = new byte[] {'B', 'R', 'K', 'M'};
+
+    /**
+     * incremented for incompatible changes; readers reject data with a later version
+     * (version 2 added config keys, attribute sensors and generic types)
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte TRUE = 2;
+    private static final byte FALSE = 3;
+    private static final byte INT = 4;
+    private static final byte LONG = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte FLOAT = 7;
+    private static final byte SHORT = 8;
+    private static final byte BYTE = 9;
+    private static final byte CHAR = 10;
+    private static final byte ENUM = 11;
+    private static final byte CLASS = 12;
+    private static final byte BIG_INTEGER = 13;
+    private static final byte BIG_DECIMAL = 14;
+    private static final byte DATE = 15;
+    private static final byte LIST = 16;
+    private static final byte SET = 17;
+    private static final byte MAP = 18;
+    private static final byte ENTITY_REF = 19;
+    private static final byte LOCATION_REF = 20;
+    private static final byte OBJECT = 21;
+    private static final byte XML = 22;
+    private static final byte CONFIG_KEY = 23;
+    private static final byte ATTRIBUTE_SENSOR = 24;
+
+    /** tags of the types of config keys and sensors */
+    private static final byte TYPE_CLASS = 0;
+    private static final byte TYPE_PARAMETERIZED = 1;
+
+    private static final Object NOT_INSTANTIABLE = new Object();
+
+    private final ClassLoader classLoader;
+    private final XmlMementoSerializer<Object> xmlSerializer;
+    private LookupContext lookupContext;
+
+    private final ConcurrentMap<Class<?>, Field[]> fieldsByClass = new ConcurrentHashMap<Class<?>, Field[]>();
+    private final ConcurrentMap<Class<?>, Map<String, Field>> fieldsByQualifiedName = new ConcurrentHashMap<Class<?>, Map<String, Field>>();
+    private final ConcurrentMap<Class<?>, Object> constructors = new ConcurrentHashMap<Class<?>, Object>();
+    private final ConcurrentMap<String, Class<?>> classes = new ConcurrentHashMap<String, Class<?>>();
+
+    public BinaryMementoSerializer(ClassLoader classLoader) {
+        this.classLoader = checkNotNull(classLoader, "classLoader");
+        this.xmlSerializer = new XmlMementoSerializer<Object>(classLoader);
+    }
+
+    /** @return true if the data is in this format (rather than XML) */
+    public static boolean isBinary(byte[] bytes) {
+        if (bytes.length < MAGIC.length) return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void setLookupContext(LookupContext lookupContext) {
+        this.lookupContext = checkNotNull(lookupContext, "lookupContext");
+        xmlSerializer.setLookupContext(lookupContext);
+    }
+
+    @Override
+    public void unsetLookupContext() {
+        this.lookupContext = null;
+        xmlSerializer.unsetLookupContext();
+    }
+
+    /** base64 of {@link #toBytes(Object)}, for callers requiring a string */
+    @Override
+    public String toString(T memento) {
+        return BaseEncoding.base64().encode(toBytes(memento));
+    }
+
+    @Override
+    public T fromString(String string) {
+        if (string.trim().startsWith("<")) return fromBytes(string.getBytes(Charsets.UTF_8));
+        return fromBytes(BaseEncoding.base64().decode(string));
+    }
+
+    @Override
+    public byte[] toBytes(T memento) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Output out = new Output(new DataOutputStream(bytes));
+            out.data.write(MAGIC);
+            out.data.writeByte(FORMAT_VERSION);
+            writeValue(out, memento);
+            out.data.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // writing to a byte array
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T fromBytes(byte[] bytes) {
+        if (!isBinary(bytes)) {
+            return (T) xmlSerializer.fromString(new String(bytes, Charsets.UTF_8));
+        }
+        try {
+            Input in = new Input(new DataInputStream(new ByteArrayInputStream(bytes)));
+            in.data.skipBytes(MAGIC.length);
+            int version = in.data.readUnsignedByte();
+            if (version > FORMAT_VERSION) {
+                throw new IllegalStateException("Cannot read memento in binary format version "+version+
+                        "; only versions up to "+FORMAT_VERSION+" are supported");
+            }
+            return (T) readValue(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid binary memento", e);
+        }
+    }
+
+    /** output stream, plus the names already written (which are subsequently written as an index) */
+    private static class Output {
+        final DataOutputStream data;
+        final Map<String, Integer> names = Maps.newHashMap();
+        Output(DataOutputStream data) {
+            this.data = data;
+        }
+    }
+
+    private static class Input {
+        final DataInputStream data;
+        final List<String> names = Lists.newArrayList();
+        Input(DataInputStream data) {
+            this.data = data;
+        }
+    }
+
+    private void writeValue(Output out, Object val) throws IOException {
+        DataOutputStream data = out.data;
+        if (val == null) {
+            data.writeByte(NULL);
+        } else if (val instanceof String) {
+            data.writeByte(STRING);
+            writeString(data, (String) val);
+        } else if (val instanceof Boolean) {
+            data.writeByte(((Boolean) val) ? TRUE : FALSE);
+        } else if (val instanceof Integer) {
+            data.writeByte(INT);
+            writeVarLong(data, zigZag((Integer) val));
+        } else if (val instanceof Long) {
+            data.writeByte(LONG);
+            writeVarLong(data, zigZag((Long) val));
+        } else if (val instanceof Double) {
+            data.writeByte(DOUBLE);
+            data.writeDouble((Double) val);
+        } else if (val instanceof Float) {
+            data.writeByte(FLOAT);
+            data.writeFloat((Float) val);
+        } else if (val instanceof Short) {
+            data.writeByte(SHORT);
+            data.writeShort((Short) val);
+        } else if (val instanceof Byte) {
+            data.writeByte(BYTE);
+            data.writeByte((Byte) val);
+        } else if (val instanceof Character) {
+            data.writeByte(CHAR);
+            data.writeChar((Character) val);
+        } else if (val instanceof Enum) {
+            data.writeByte(ENUM);
+            writeName(out, ((Enum<?>) val).getDeclaringClass().getName());
+            writeName(out, ((Enum<?>) val).name());
+        } else if (val instanceof Class) {
+            data.writeByte(CLASS);
+            writeName(out, ((Class<?>) val).getName());
+        } else if (val.getClass() == BigInteger.class) {
+            data.writeByte(BIG_INTEGER);
+            writeString(data, val.toString());
+        } else if (val.getClass() == BigDecimal.class) {
+            data.writeByte(BIG_DECIMAL);
+            writeString(data, val.toString());
+        } else if (val.getClass() == Date.class) {
+            data.writeByte(DATE);
+            data.writeLong(((Date) val).getTime());
+        } else if (val instanceof Entity) {
+            data.writeByte(ENTITY_REF);
+            writeString(data, ((Entity) val).getId());
+        } else if (val instanceof Location) {
+            data.writeByte(LOCATION_REF);
+            writeString(data, ((Location) val).getId());
+        } else if (val instanceof Task) {
+            // as for XmlMementoSerializer: the result if available, otherwise nothing
+            writeValue(out, getTaskResultOrNull((Task<?>) val));
+        } else if ((val instanceof Collection || val instanceof Map) && isNativeCollection(val)) {
+            if (val instanceof Map) {
+                data.writeByte(MAP);
+                writeName(out, val.getClass().getName());
+                Map<?, ?> map = (Map<?, ?>) val;
+                writeVarLong(data, map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeValue(out, entry.getKey());
+                    writeValue(out, entry.getValue());
+                }
+            } else {
+                data.writeByte((val instanceof Set) ? SET : LIST);
+                writeName(out, val.getClass().getName());
+                Collection<?> collection = (Collection<?>) val;
+                writeVarLong(data, collection.size());
+                for (Object element : collection) {
+                    writeValue(out, element);
+                }
+            }
+        } else if (val.getClass() == BasicConfigKey.class && isNativeType(((ConfigKey<?>) val).getTypeToken().getType())) {
+            ConfigKey<?> key = (ConfigKey<?>) val;
+            data.writeByte(CONFIG_KEY);
+            writeString(data, key.getName());
+            writeType(out, key.getTypeToken().getType());
+            writeValue(out, key.getDescription());
+            writeValue(out, key.getDefaultValue());
+            data.writeBoolean(key.isReconfigurable());
+        } else if (val.getClass() == BasicAttributeSensor.class && isNativeType(((Sensor<?>) val).getTypeToken().getType())) {
+            Sensor<?> sensor = (Sensor<?>) val;
+            data.writeByte(ATTRIBUTE_SENSOR);
+            writeString(data, sensor.getName());
+            writeType(out, sensor.getTypeToken().getType());
+            writeValue(out, sensor.getDescription());
+        } else if ((val instanceof Memento || val instanceof EntityAttributesPatch) && getNoArgConstructor(val.getClass()) != null) {
+            data.writeByte(OBJECT);
+            writeName(out, val.getClass().getName());
+            Field[] fields = getSerializableFields(val.getClass());
+            writeVarLong(data, fields.length);
+            for (Field field : fields) {
+                writeName(out, field.getDeclaringClass().getName());
+                writeName(out, field.getName());
+                try {
+                    writeValue(out, field.get(val));
+                } catch (IllegalAccessException e) {
+                    throw Exceptions.propagate(e);
+                }
+            }
+        } else {
+            data.writeByte(XML);
+            writeString(data, xmlSerializer.toString(val));
+        }
+    }
+
+    private Object readValue(Input in) throws IOException {
+        DataInputStream data = in.data;
+        byte tag = data.readByte();
+        switch (tag) {
+            case NULL: return null;
+            case STRING: return readString(data);
+            case TRUE: return Boolean.TRUE;
+            case FALSE: return Boolean.FALSE;
+            case INT: return (int) unZigZag(readVarLong(data));
+            case LONG: return unZigZag(readVarLong(data));
+            case DOUBLE: return data.readDouble();
+            case FLOAT: return data.readFloat();
+            case SHORT: return data.readShort();
+            case BYTE: return data.readByte();
+            case CHAR: return data.readChar();
+            case ENUM: return readEnum(in);
+            case CLASS: return loadClass(readName(in));
+            case BIG_INTEGER: return new BigInteger(readString(data));
+            case BIG_DECIMAL: return new BigDecimal(readString(data));
+            case DATE: return new Date(data.readLong());
+            case LIST:
+            case SET: return readCollection(in, tag == SET);
+            case MAP: return readMap(in);
+            case ENTITY_REF: return lookupEntity(readString(data));
+            case LOCATION_REF: return lookupLocation(readString(data));
+            case OBJECT: return readObject(in);
+            case XML: return xmlSerializer.fromString(readString(data));
+            case CONFIG_KEY: return readConfigKey(in);
+            case ATTRIBUTE_SENSOR: return readAttributeSensor(in);
+            default: throw new IllegalStateException("Invalid binary memento: unknown value type "+tag);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Object readEnum(Input in) throws IOException {
+        String className = readName(in);
+        String name = readName(in);
+        Class<?> clazz = loadClass(className);
+        if (clazz == null || !clazz.isEnum()) {
+            LOG.warn("Cannot deserialize enum value {}.{}; class not found; using null", className, name);
+            return null;
+        }
+        try {
+            return Enum.valueOf((Class) clazz, name);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Cannot deserialize enum value {}.{}; no such value; using null", className, name);
+            return null;
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private ConfigKey<?> readConfigKey(Input in) throws IOException {
+        String name = readString(in.data);
+        TypeToken type = TypeToken.of(readType(in));
+        String description = (String) readValue(in);
+        Object defaultValue = readValue(in);
+        boolean reconfigurable = in.data.readBoolean();
+        if (defaultValue != null && !type.getRawType().isInstance(defaultValue)) {
+            LOG.warn("Ignoring persisted default value {} of config key {}; incompatible with type {}", new Object[] {defaultValue, name, type});
+            defaultValue = null;
+        }
+        return BasicConfigKey.builder(type).name(name).description(description).defaultValue(defaultValue).reconfigurable(reconfigurable).build();
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private AttributeSensor<?> readAttributeSensor(Input in) throws IOException {
+        String name = readString(in.data);
+        TypeToken type = TypeToken.of(readType(in));
+        String description = (String) readValue(in);
+        return new BasicAttributeSensor(type, name, description);
+    }
+
+    /** whether the type is a class or a parameterized type (recursively) of classes, so can be written by {@link #writeType(Output, Type)} */
+    private static boolean isNativeType(Type type) {
+        if (type instanceof Class) return true;
+        if (!(type instanceof ParameterizedType)) return false;
+        ParameterizedType parameterized = (ParameterizedType) type;
+        if (parameterized.getOwnerType() != null && !isNativeType(parameterized.getOwnerType())) return false;
+        for (Type arg : parameterized.getActualTypeArguments()) {
+            if (!isNativeType(arg)) return false;
+        }
+        return isNativeType(parameterized.getRawType());
+    }
+
+    private static void writeType(Output out, Type type) throws IOException {
+        if (type instanceof Class) {
+            out.data.writeByte(TYPE_CLASS);
+            writeName(out, ((Class<?>) type).getName());
+        } else {
+            ParameterizedType parameterized = (ParameterizedType) type;
+            out.data.writeByte(TYPE_PARAMETERIZED);
+            writeName(out, ((Class<?>) parameterized.getRawType()).getName());
+            out.data.writeBoolean(parameterized.getOwnerType() != null);
+            if (parameterized.getOwnerType() != null) writeType(out, parameterized.getOwnerType());
+            Type[] args = parameterized.getActualTypeArguments();
+            writeVarLong(out.data, args.length);
+            for (Type arg : args) {
+                writeType(out, arg);
+            }
+        }
+    }
+
+    private Type readType(Input in) throws IOException {
+        byte tag = in.data.readByte();
+        String className = readName(in);
+        Class<?> clazz = loadClass(className);
+        if (clazz == null) {
+            LOG.warn("Cannot deserialize type {} of config key or sensor; class not found; using Object", className);
+            clazz = Object.class;
+        }
+        if (tag == TYPE_CLASS) return clazz;
+        if (tag != TYPE_PARAMETERIZED) throw new IllegalStateException("Invalid binary memento: unknown type tag "+tag);
+
+        Type owner = in.data.readBoolean() ? readType(in) : null;
+        Type[] args = new Type[(int) readVarLong(in.data)];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = readType(in);
+        }
+        if (clazz.getTypeParameters().length != args.length) {
+            LOG.warn("Cannot deserialize type {}<{}> of config key or sensor; type parameters changed; using {}", new Object[] {className, Arrays.toString(args), className});
+            return clazz;
+        }
+        return new ParameterizedTypeImpl(clazz, owner, args);
+    }
+
+    /** a {@link ParameterizedType}, equal to the JDK's (and Guava's) implementations of the same type */
+    private static class ParameterizedTypeImpl implements ParameterizedType {
+        private final Class<?> rawType;
+        private final Type ownerType;
+        private final Type[] args;
+
+        ParameterizedTypeImpl(Class<?> rawType, Type ownerType, Type[] args) {
+            this.rawType = rawType;
+            this.ownerType = (ownerType != null) ? ownerType : rawType.getDeclaringClass();
+            this.args = args;
+        }
+        @Override public Type getRawType() {
+            return rawType;
+        }
+        @Override public Type getOwnerType() {
+            return ownerType;
+        }
+        @Override public Type[] getActualTypeArguments() {
+            return args.clone();
+        }
+        @Override public boolean equals(Object obj) {
+            if (!(obj instanceof ParameterizedType)) return false;
+            ParameterizedType o = (ParameterizedType) obj;
+            return rawType.equals(o.getRawType()) && Objects.equal(ownerType, o.getOwnerType())
+                    && Arrays.equals(args, o.getActualTypeArguments());
+        }
+        @Override public int hashCode() {
+            // as for the JDK's implementation
+            return Arrays.hashCode(args) ^ (ownerType == null ? 0 : ownerType.hashCode()) ^ rawType.hashCode();
+        }
+        @Override public String toString() {
+            StringBuilder result = new StringBuilder(rawType.getName()).append("<");
+            for (int i = 0; i < args.length; i++) {
+                if (i > 0) result.append(", ");
+                result.append((args[i] instanceof Class) ? ((Class<?>) args[i]).getName() : args[i].toString());
+            }
+            return result.append(">").toString();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readCollection(Input in, boolean isSet) throws IOException {
+        String className = readName(in);
+        int size = (int) readVarLong(in.data);
+        Class<?> clazz = loadClass(className);
+        Object instance = newInstance(clazz);
+        Collection<Object> result = (instance instanceof Collection) ? (Collection<Object>) instance
+                : (isSet ? new LinkedHashSet<Object>(size) : new ArrayList<Object>(size));
+        boolean hasNull = false;
+        for (int i = 0; i < size; i++) {
+            Object element = readValue(in);
+            hasNull |= (element == null);
+            result.add(element);
+        }
+        if (instance instanceof Collection) return result;
+
+        // not directly instantiable (e.g. immutable or unmodifiable); reconstruct an equivalent
+        if (clazz != null && ImmutableCollection.class.isAssignableFrom(clazz) && !hasNull) {
+            return isSet ? ImmutableSet.copyOf(result) : ImmutableList.copyOf(result);
+        } else if (className.contains("Unmodifiable") || className.contains("Immutable")) {
+            return isSet ? Collections.unmodifiableSet((Set<Object>) result) : Collections.unmodifiableList((List<Object>) result);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object readMap(Input in) throws IOException {
+        String className = readName(in);
+        int size = (int) readVarLong(in.data);
+        Class<?> clazz = loadClass(className);
+        Object instance = newInstance(clazz);
+        Map<Object, Object> result = (instance instanceof Map) ? (Map<Object, Object>) instance : new LinkedHashMap<Object, Object>();
+        boolean hasNull = false;
+        for (int i = 0; i < size; i++) {
+            Object key = readValue(in);
+            Object value = readValue(in);
+            hasNull |= (key == null || value == null);
+            result.put(key, value);
+        }
+        if (instance instanceof Map) return result;
+
+        if (clazz != null && ImmutableMap.class.isAssignableFrom(clazz) && !hasNull) {
+            return ImmutableMap.copyOf(result);
+        } else if (className.contains("Unmodifiable") || className.contains("Immutable")) {
+            return Collections.unmodifiableMap(result);
+        }
+        return result;
+    }
+
+    private Object readObject(Input in) throws IOException {
+        String className = readName(in);
+        Class<?> clazz = loadClass(className);
+        Object result = newInstance(clazz);
+        if (result == null) {
+            LOG.warn("Cannot deserialize memento of type {}; class not found or not instantiable; using null", className);
+        }
+        Map<String, Field> fields = (result != null) ? getFieldsByQualifiedName(clazz) : null;
+
+        int numFields = (int) readVarLong(in.data);
+        for (int i = 0; i < numFields; i++) {
+            String declaringClass = readName(in);
+            String fieldName = readName(in);
+            Object value = readValue(in);
+            if (result == null) continue;
+
+            Field field = fields.get(declaringClass+"."+fieldName);
+            if (field == null) field = fields.get(fieldName);
+            if (field == null) {
+                if (LOG.isDebugEnabled()) LOG.debug("Ignoring persisted field {}.{} of {}; no longer present", new Object[] {declaringClass, fieldName, className});
+                continue;
+            }
+            if (value == null ? field.getType().isPrimitive() : !Primitives.wrap(field.getType()).isInstance(value)) {
+                LOG.warn("Ignoring persisted field {} of {}; value {} incompatible with type {}", new Object[] {fieldName, className, value, field.getType()});
+                continue;
+            }
+            try {
+                field.set(result, value);
+            } catch (IllegalAccessException e) {
+                throw Exceptions.propagate(e);
+            }
+        }
+        return result;
+    }
+
+    private Entity lookupEntity(String id) {
+        if (lookupContext == null) {
+            LOG.warn("Cannot unmarshall from persisted binary entity {}; no lookup context supplied!", id);
+            return null;
+        }
+        return lookupContext.lookupEntity(Entity.class, id);
+    }
+
+    private Location lookupLocation(String id) {
+        if (lookupContext == null) {
+            LOG.warn("Cannot unmarshall from persisted binary location {}; no lookup context supplied!", id);
+            return null;
+        }
+        return lookupContext.lookupLocation(Location.class, id);
+    }
+
+    private Object getTaskResultOrNull(Task<?> task) {
+        if (!task.isDone() || task.isError()) return null;
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        } catch (ExecutionException e) {
+            LOG.warn("Unexpected exception getting done (and non-error) task result for "+task+"; continuing", e);
+            return null;
+        }
+    }
+
+    /**
+     * Whether the collection or map can be written natively: i.e. it is a standard type which can be
+     * reconstructed from its class name and elements alone (so not e.g. sorted with a comparator).
+     */
+    private boolean isNativeCollection(Object val) {
+        String className = val.getClass().getName();
+        if (val instanceof ImmutableCollection || val instanceof ImmutableMap) {
+            // not e.g. ImmutableMultiset or ImmutableSortedSet (which has a comparator)
+            return (val instanceof ImmutableSet || val instanceof ImmutableList || val instanceof ImmutableMap) && !(val instanceof SortedSet || val instanceof SortedMap);
+        }
+        if (!(className.startsWith("java.util.") || className.startsWith("brooklyn.util.collections.Mutable"))) {
+            return false;
+        }
+        if (val instanceof EnumSet || val instanceof EnumMap) return false;
+        if (val instanceof SortedSet) return ((SortedSet<?>) val).comparator() == null && getNoArgConstructor(val.getClass()) != null;
+        if (val instanceof SortedMap) return ((SortedMap<?, ?>) val).comparator() == null && getNoArgConstructor(val.getClass()) != null;
+        return (val instanceof Set || val instanceof List || val instanceof Map);
+    }
+
+    private Field[] getSerializableFields(Class<?> clazz) {
+        Field[] result = fieldsByClass.get(clazz);
+        if (result == null) {
+            List<Field> fields = Lists.newArrayList();
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) continue;
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            result = fields.toArray(new Field[fields.size()]);
+            fieldsByClass.putIfAbsent(clazz, result);
+        }
+        return result;
+    }
+
+    /** fields keyed by declaring-class-qualified name, and also by simple name where unambiguous */
+    private Map<String, Field> getFieldsByQualifiedName(Class<?> clazz) {
+        Map<String, Field> result = fieldsByQualifiedName.get(clazz);
+        if (result == null) {
+            result = Maps.newHashMap();
+            Set<String> ambiguous = new LinkedHashSet<String>();
+            for (Field field : getSerializableFields(clazz)) {
+                result.put(field.getDeclaringClass().getName()+"."+field.getName(), field);
+                if (result.put(field.getName(), field) != null) ambiguous.add(field.getName());
+            }
+            for (String name : ambiguous) result.remove(name);
+            fieldsByQualifiedName.putIfAbsent(clazz, result);
+        }
+        return result;
+    }
+
+    private Constructor<?> getNoArgConstructor(Class<?> clazz) {
+        Object result = constructors.get(clazz);
+        if (result == null) {
+            try {
+                Constructor<?> constructor = clazz.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                result = constructor;
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                result = NOT_INSTANTIABLE;
+            }
+            constructors.putIfAbsent(clazz, result);
+        }
+        return (result == NOT_INSTANTIABLE) ? null : (Constructor<?>) result;
+    }
+
+    private Object newInstance(Class<?> clazz) {
+        if (clazz == null || Modifier.isAbstract(clazz.getModifiers())) return null;
+        Constructor<?> constructor = getNoArgConstructor(clazz);
+        if (constructor == null) return null;
+        try {
+            return constructor.newInstance();
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            if (LOG.isDebugEnabled()) LOG.debug("Cannot instantiate "+clazz+" (continuing)", e);
+            return null;
+        }
+    }
+
+    private Class<?> loadClass(String className) {
+        Class<?> result = classes.get(className);
+        if (result == null) {
+            try {
+                result = Class.forName(className, false, classLoader);
+                classes.putIfAbsent(className, result);
+            } catch (ClassNotFoundException e) {
+                if (LOG.isDebugEnabled()) LOG.debug("Class {} not found, deserializing binary memento", className);
+                return null;
+            }
+        }
+        return result;
+    }
+
+    /** writes a class or field name, or a reference to where it was previously written */
+    private static void writeName(Output out, String name) throws IOException {
+        Integer index = out.names.get(name);
+        if (index != null) {
+            writeVarLong(out.data, index + 1);
+        } else {
+            out.names.put(name, out.names.size());
+            writeVarLong(out.data, 0);
+            writeString(out.data, name);
+        }
+    }
+
+    private static String readName(Input in) throws IOException {
+        int ref = (int) readVarLong(in.data);
+        if (ref == 0) {
+            String result = readString(in.data);
+            in.names.add(result);
+            return result;
+        }
+        return in.names.get(ref - 1);
+    }
+
+    private static void writeString(DataOutputStream data, String val) throws IOException {
+        // not writeUTF, which is limited to 64k
+        byte[] bytes = val.getBytes(Charsets.UTF_8);
+        writeVarLong(data, bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(data)];
+        data.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static long zigZag(long val) {
+        return (val << 1) ^ (val >> 63);
+    }
+
+    private static long unZigZag(long val) {
+        return (val >>> 1) ^ -(val & 1);
+    }
+
+    /** unsigned LEB128, so small values (lengths, indexes, most ints) take a single byte */
+    private static void writeVarLong(DataOutputStream data, long val) throws IOException {
+        while ((val & ~0x7FL) != 0) {
+            data.writeByte((int) ((val & 0x7F) | 0x80));
+            val >>>= 7;
+        }
+        data.writeByte((int) val);
+    }
+
+    private static long readVarLong(DataInputStream data) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = data.readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IOException("Invalid binary memento: malformed variable-length number");
+    }
+}
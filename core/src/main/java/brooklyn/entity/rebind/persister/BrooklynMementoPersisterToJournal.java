@@ -0,0 +1,776 @@
+package brooklyn.entity.rebind.persister;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.rebind.dto.BrooklynMementoImpl;
+import brooklyn.entity.rebind.dto.EntityAttributesPatch;
+import brooklyn.mementos.BrooklynMemento;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.mementos.LocationMemento;
+import brooklyn.mementos.PolicyMemento;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.time.Time;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.Callables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Persists mementos by appending each delta to a write-ahead journal, rather than rewriting a file per
+ * entity, location and policy (as {@link BrooklynMementoPersisterToMultiFile} does).
+ * <p>
+ * The journal is a sequence of segment files ({@code journal/segment-<n>}), each a sequence of frames;
+ * a frame holds all the changes of one delta (or checkpoint), with a length and CRC so that a frame torn
+ * by a crash is detected and ignored on replay. Frames are appended by a single writer thread, which
+ * writes everything queued since its last pass and then forces the file to disk once, so the cost of the
+ * fsync is shared by all deltas in the batch. A new segment is started on each restart and when the
+ * current one exceeds the configured size. If writing a batch fails, the segment (whose tail may now be a
+ * partial frame) is abandoned, and the batch is written again to a new segment, on the next flush or after
+ * a short delay.
+ * <p>
+ * When enough segments have been sealed, they are compacted in the background: the latest snapshot
+ * ({@code snapshot-<n>}, holding the state as of the end of segment n) and the sealed segments are folded
+ * into a new snapshot, written to a temporary file and renamed into place, after which the files it
+ * replaces are deleted. At every point the directory holds a consistent snapshot plus the segments after it,
+ * which is what {@link #loadMemento(LookupContext)} replays.
+ * <p>
+ * Changes to just some of an entity's attributes can be journalled as {@link EntityAttributesPatch patches},
+ * which are much smaller than the entity's memento. On replay (and through compaction) an entity's patches
+ * are kept with its last complete memento, and applied to it in order when loading.
+ */
+public class BrooklynMementoPersisterToJournal implements StreamingMementoPersister, PatchingMementoPersister {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BrooklynMementoPersisterToJournal.class);
+
+    private static final int SHUTDOWN_TIMEOUT_MS = 10*1000;
+    private static final int MAX_SERIALIZATION_ATTEMPTS = 5;
+    private static final long WRITE_RETRY_DELAY_MS = 1000;
+
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 16*1024*1024;
+    public static final int DEFAULT_COMPACT_AFTER_SEGMENTS = 4;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final byte ENTITY = 1;
+    private static final byte LOCATION = 2;
+    private static final byte POLICY = 3;
+    private static final byte REMOVED_ENTITY = 4;
+    private static final byte REMOVED_LOCATION = 5;
+    private static final byte REMOVED_POLICY = 6;
+    private static final byte PATCH_ENTITY = 7;
+
+    /**
+     * the state as replayed from snapshot and journal: per type, the serialized memento by id;
+     * and for entities, the serialized patches since that memento
+     */
+    private static class State {
+        final Map<String, byte[]> entities = new LinkedHashMap<String, byte[]>();
+        final Map<String, List<byte[]>> entityPatches = new LinkedHashMap<String, List<byte[]>>();
+        final Map<String, byte[]> locations = new LinkedHashMap<String, byte[]>();
+        final Map<String, byte[]> policies = new LinkedHashMap<String, byte[]>();
+
+        void apply(byte type, String id, byte[] value) {
+            switch (type) {
+                case ENTITY: entities.put(id, value); entityPatches.remove(id); break;
+                case LOCATION: locations.put(id, value); break;
+                case POLICY: policies.put(id, value); break;
+                case REMOVED_ENTITY: entities.remove(id); entityPatches.remove(id); break;
+                case REMOVED_LOCATION: locations.remove(id); break;
+                case REMOVED_POLICY: policies.remove(id); break;
+                case PATCH_ENTITY:
+                    if (entities.containsKey(id)) {
+                        List<byte[]> patches = entityPatches.get(id);
+                        if (patches == null) {
+                            patches = Lists.newArrayList();
+                            entityPatches.put(id, patches);
+                        }
+                        patches.add(value);
+                    } else {
+                        // the entity's memento was lost (e.g. a failed write), so nothing to patch; its next complete memento will replace it
+                        LOG.debug("Ignoring journalled patch for entity {}, which has no persisted memento", id);
+                    }
+                    break;
+                default: throw new IllegalStateException("Unknown journal record type "+type);
+            }
+        }
+    }
+
+    private final File dir;
+    private final File journalDir;
+    private final long maxSegmentBytes;
+    private final int compactAfterSegments;
+
+    private final MementoSerializer<Object> serializer;
+
+    private final ScheduledExecutorService writer;
+    private final ExecutorService compactor;
+    private final Queue<byte[]> pendingFrames = new ConcurrentLinkedQueue<byte[]>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    /**
+     * frames queued, and frames written and forced to disk (the latter guarded by this, for waiters);
+     * frames given up on when stopping also count as synced, so that waiters are not blocked
+     */
+    private final AtomicLong framesQueued = new AtomicLong();
+    private long framesSynced = 0;
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong syncCount = new AtomicLong();
+    private final AtomicLong compactionCount = new AtomicLong();
+
+    // only accessed by the writer thread
+    private long currentSegment;
+    private FileOutputStream currentOut;
+    private long currentSegmentBytes;
+    /** frames whose write failed, in order; written (before any frames queued since) on the next flush */
+    private final Deque<byte[]> failedFrames = new ArrayDeque<byte[]>();
+    private boolean retryScheduled;
+
+    private volatile boolean running = true;
+
+    public BrooklynMementoPersisterToJournal(File dir, ClassLoader classLoader) {
+        this(dir, classLoader, DEFAULT_MAX_SEGMENT_BYTES, DEFAULT_COMPACT_AFTER_SEGMENTS);
+    }
+
+    /**
+     * @param maxSegmentBytes size after which a new journal segment is started
+     * @param compactAfterSegments number of sealed segments which triggers compaction into a new snapshot
+     */
+    public BrooklynMementoPersisterToJournal(File dir, ClassLoader classLoader, long maxSegmentBytes, int compactAfterSegments) {
+        this(dir, new XmlMementoSerializer<Object>(classLoader), maxSegmentBytes, compactAfterSegments);
+    }
+
+    /**
+     * @param rawSerializer the format for the journal records, e.g. {@link XmlMementoSerializer} or {@link BinaryMementoSerializer}
+     */
+    public BrooklynMementoPersisterToJournal(File dir, MementoSerializer<Object> rawSerializer, long maxSegmentBytes, int compactAfterSegments) {
+        checkArgument(maxSegmentBytes > 0, "maxSegmentBytes must be positive");
+        checkArgument(compactAfterSegments > 0, "compactAfterSegments must be positive");
+        this.dir = checkNotNull(dir, "dir");
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.compactAfterSegments = compactAfterSegments;
+        this.serializer = new RetryingMementoSerializer<Object>(checkNotNull(rawSerializer, "serializer"), MAX_SERIALIZATION_ATTEMPTS);
+
+        checkDirIsAccessible(dir);
+        journalDir = new File(dir, "journal");
+        journalDir.mkdir();
+        checkDirIsAccessible(journalDir);
+
+        // never append to an existing segment, as its tail may be torn; start the one after the latest
+        long latest = 0;
+        for (long segment : listSequenced(journalDir, SEGMENT_PREFIX)) latest = Math.max(latest, segment);
+        for (long snapshot : listSequenced(dir, SNAPSHOT_PREFIX)) latest = Math.max(latest, snapshot);
+        currentSegment = latest;
+
+        ScheduledThreadPoolExecutor writer = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder().setNameFormat("brooklyn-journal-writer").setDaemon(true).build());
+        // a pending retry is superseded by the final flush on stop
+        writer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.writer = writer;
+        this.compactor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("brooklyn-journal-compactor").setDaemon(true).build());
+
+        LOG.info("Memento-persister will use journal in directory {}", dir);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (!writer.isShutdown()) {
+            writer.submit(new Runnable() {
+                @Override public void run() {
+                    flush(true);
+                    closeSegment();
+                }});
+        }
+        writer.shutdown();
+        compactor.shutdown();
+        try {
+            writer.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            compactor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    @Override
+    public BrooklynMemento loadMemento(LookupContext lookupContext) throws IOException {
+        final BrooklynMementoImpl.Builder builder = BrooklynMementoImpl.builder();
+        loadMemento(lookupContext, new MementoVisitor() {
+            @Override public void visit(LocationMemento memento) {
+                builder.location(memento);
+            }
+            @Override public void visit(PolicyMemento memento) {
+                builder.policy(memento);
+            }
+            @Override public void visit(EntityMemento memento) {
+                builder.entity(memento);
+                if (memento.isTopLevelApp()) {
+                    builder.applicationId(memento.getId());
+                }
+            }
+        });
+        return builder.build();
+    }
+
+    /**
+     * Replays the snapshot and journal, then deserializes the resulting records concurrently
+     * (see {@link ParallelMementoLoader}), passing each memento to the visitor as soon as it is ready.
+     */
+    @Override
+    public void loadMemento(LookupContext lookupContext, MementoVisitor visitor) throws IOException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+
+        State state = new State();
+        long snapshot = latestSnapshot();
+        if (snapshot > 0) readFrames(snapshotFile(snapshot), state);
+        List<Long> segments = segmentsAfter(snapshot, Long.MAX_VALUE);
+        for (long segment : segments) {
+            readFrames(segmentFile(segment), state);
+        }
+
+        LOG.info("Loading memento from {} (snapshot {}, {} journal segments); {} entities, {} locations, {} policies",
+                new Object[] {dir, snapshot, segments.size(), state.entities.size(), state.locations.size(), state.policies.size()});
+
+        serializer.setLookupContext(lookupContext);
+        try {
+            ParallelMementoLoader loader = new ParallelMementoLoader(serializer, ParallelMementoLoader.DEFAULT_THREADS);
+            loader.loadMementos(visitor, ImmutableList.of(
+                    records(loader, state.locations.values()), records(loader, state.policies.values()), entityRecords(state)));
+
+            if (LOG.isDebugEnabled()) LOG.debug("Loaded memento; took {}", Time.makeTimeStringRounded(stopwatch.elapsed(TimeUnit.MILLISECONDS)));
+
+        } finally {
+            serializer.unsetLookupContext();
+        }
+    }
+
+    private static List<Callable<Object>> records(ParallelMementoLoader loader, Collection<byte[]> records) {
+        List<Callable<Object>> result = Lists.newArrayListWithCapacity(records.size());
+        for (byte[] bytes : records) {
+            result.add(loader.deserializing(Callables.returning(bytes)));
+        }
+        return result;
+    }
+
+    /** as {@link #records(ParallelMementoLoader, Collection)}, but also applying each entity's patches to its memento */
+    private List<Callable<Object>> entityRecords(State state) {
+        List<Callable<Object>> result = Lists.newArrayListWithCapacity(state.entities.size());
+        for (Map.Entry<String, byte[]> entry : state.entities.entrySet()) {
+            final byte[] bytes = entry.getValue();
+            final List<byte[]> patches = state.entityPatches.containsKey(entry.getKey())
+                    ? state.entityPatches.get(entry.getKey()) : ImmutableList.<byte[]>of();
+            result.add(new Callable<Object>() {
+                @Override public Object call() throws IOException {
+                    EntityMemento memento = (EntityMemento) serializer.fromBytes(bytes);
+                    for (byte[] patch : patches) {
+                        memento = ((EntityAttributesPatch) serializer.fromBytes(patch)).applyTo(memento);
+                    }
+                    return memento;
+                }});
+        }
+        return result;
+    }
+
+    @Override
+    public void checkpoint(BrooklynMemento newMemento) {
+        if (!running) {
+            if (LOG.isDebugEnabled()) LOG.debug("Ignoring checkpointing entire memento, because not running");
+            return;
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("Checkpointing entire memento");
+
+        append(newMemento.getEntityMementos().values(), newMemento.getLocationMementos().values(), newMemento.getPolicyMementos().values(),
+                ImmutableList.<EntityAttributesPatch>of(), ImmutableList.<String>of(), ImmutableList.<String>of(), ImmutableList.<String>of());
+    }
+
+    @Override
+    public void delta(Delta delta) {
+        if (!running) {
+            if (LOG.isDebugEnabled()) LOG.debug("Ignoring checkpointed delta of memento, because not running");
+            return;
+        }
+        if (LOG.isDebugEnabled()) LOG.debug("Checkpointed delta of memento; updating {} entities, {} locations and {} policies; " +
+                "removing {} entities, {} locations and {} policies",
+                new Object[] {delta.entities(), delta.locations(), delta.policies(),
+                delta.removedEntityIds(), delta.removedLocationIds(), delta.removedPolicyIds()});
+
+        Collection<EntityAttributesPatch> patches = (delta instanceof PatchingDelta)
+                ? ((PatchingDelta) delta).entityPatches() : ImmutableList.<EntityAttributesPatch>of();
+        append(delta.entities(), delta.locations(), delta.policies(), patches,
+                delta.removedEntityIds(), delta.removedLocationIds(), delta.removedPolicyIds());
+    }
+
+    @VisibleForTesting
+    public File getDir() {
+        return dir;
+    }
+
+    /** bytes appended to the journal since this persister was created */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /** number of times the journal was forced to disk; each covers all deltas queued at that point */
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    public long getCompactionCount() {
+        return compactionCount.get();
+    }
+
+    @Override
+    @VisibleForTesting
+    public void waitForWritesCompleted(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        long target = framesQueued.get();
+        long maxEndTime = (timeout > 0) ? (System.currentTimeMillis() + unit.toMillis(timeout)) : Long.MAX_VALUE;
+        synchronized (this) {
+            while (framesSynced < target) {
+                long remaining = maxEndTime - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TimeoutException("Timeout waiting for journal writes to complete, after "+Time.makeTimeStringRounded(timeout, unit));
+                }
+                wait(remaining);
+            }
+        }
+    }
+
+    protected void checkDirIsAccessible(File dir) {
+        if (!(dir.exists() && dir.isDirectory() && dir.canRead() && dir.canWrite())) {
+            throw new IllegalStateException("Invalid directory "+dir+" because "+
+                    (!dir.exists() ? "does not exist" :
+                        (!dir.isDirectory() ? "not a directory" :
+                            (!dir.canRead() ? "not readable" :
+                                (!dir.canWrite() ? "not writable" : "unknown reason")))));
+        }
+    }
+
+    /** serializes the changes (on the caller's thread) into a single frame, and queues it for the writer */
+    private void append(Collection<? extends EntityMemento> entities, Collection<? extends LocationMemento> locations,
+            Collection<? extends PolicyMemento> policies, Collection<EntityAttributesPatch> patches, Collection<String> removedEntityIds,
+            Collection<String> removedLocationIds, Collection<String> removedPolicyIds) {
+        int count = entities.size() + locations.size() + policies.size() + patches.size() + removedEntityIds.size()
+                + removedLocationIds.size() + removedPolicyIds.size();
+        if (count == 0) return;
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(count);
+            for (EntityMemento m : entities) writeRecord(out, ENTITY, m.getId(), serializer.toBytes(m));
+            for (LocationMemento m : locations) writeRecord(out, LOCATION, m.getId(), serializer.toBytes(m));
+            for (PolicyMemento m : policies) writeRecord(out, POLICY, m.getId(), serializer.toBytes(m));
+            // after the entities, so that a patch is applied to the memento in the same delta (if any)
+            for (EntityAttributesPatch p : patches) writeRecord(out, PATCH_ENTITY, p.getEntityId(), serializer.toBytes(p));
+            for (String id : removedEntityIds) writeRecord(out, REMOVED_ENTITY, id, null);
+            for (String id : removedLocationIds) writeRecord(out, REMOVED_LOCATION, id, null);
+            for (String id : removedPolicyIds) writeRecord(out, REMOVED_POLICY, id, null);
+            out.flush();
+            pendingFrames.add(toFrame(bytes.toByteArray()));
+        } catch (IOException e) {
+            // writing to a byte array
+            throw Exceptions.propagate(e);
+        }
+        framesQueued.incrementAndGet();
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            writer.submit(new Runnable() {
+                @Override public void run() {
+                    flushScheduled.set(false);
+                    flush(false);
+                }});
+        }
+    }
+
+    /**
+     * Writes all queued frames (first any whose write previously failed), then forces them to disk; runs
+     * in the writer thread.
+     * <p>
+     * On failure the current segment is abandoned, as it may now end with a partial frame (and replay stops
+     * at the first bad frame of a segment), and the frames of this batch are kept to write again to a new
+     * segment. Unless this is the final flush when stopping, in which case they are lost.
+     */
+    private void flush(boolean finalFlush) {
+        List<byte[]> batch = Lists.newArrayList();
+        try {
+            byte[] frame;
+            while ((frame = nextFrame()) != null) {
+                batch.add(frame);
+                if (currentOut == null || currentSegmentBytes >= maxSegmentBytes) {
+                    rollSegment();
+                }
+                currentOut.write(frame);
+                currentSegmentBytes += frame.length;
+                bytesWritten.addAndGet(frame.length);
+            }
+            if (batch.size() > 0) {
+                currentOut.getChannel().force(false);
+                syncCount.incrementAndGet();
+                framesSynced(batch.size());
+            }
+        } catch (Throwable t) {
+            abandonSegment();
+            if (finalFlush) {
+                int lost = batch.size() + failedFrames.size();
+                failedFrames.clear();
+                while (pendingFrames.poll() != null) lost++;
+                LOG.error("Error writing to journal in "+journalDir+" when stopping; "+lost+" deltas lost", t);
+                framesSynced(lost);
+            } else {
+                LOG.warn("Error writing to journal in "+journalDir+"; will write "+batch.size()+" deltas again to a new segment", t);
+                // the batch was taken from the head of failedFrames, so goes back in front of what remains there
+                for (int i = batch.size()-1; i >= 0; i--) {
+                    failedFrames.addFirst(batch.get(i));
+                }
+                scheduleRetry();
+            }
+            Exceptions.propagateIfFatal(t);
+        }
+    }
+
+    private byte[] nextFrame() {
+        byte[] result = failedFrames.poll();
+        return (result != null) ? result : pendingFrames.poll();
+    }
+
+    private void framesSynced(long count) {
+        synchronized (this) {
+            framesSynced += count;
+            notifyAll();
+        }
+    }
+
+    /** retries failed frames even if nothing more is queued; a flush for newly queued frames will also write them */
+    private void scheduleRetry() {
+        if (retryScheduled || !running) return;
+        try {
+            writer.schedule(new Runnable() {
+                @Override public void run() {
+                    retryScheduled = false;
+                    flush(false);
+                }}, WRITE_RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+            retryScheduled = true;
+        } catch (RejectedExecutionException e) {
+            // stopping; the final flush writes them
+        }
+    }
+
+    /** stops writing to the current segment, without forcing it to disk; the next write starts a new segment */
+    private void abandonSegment() {
+        if (currentOut != null) {
+            try {
+                currentOut.close();
+            } catch (IOException e) {
+                LOG.debug("Error closing abandoned journal segment "+currentSegment+" in "+journalDir, e);
+            }
+            currentOut = null;
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        closeSegment();
+        currentSegment++;
+        currentOut = openSegment(segmentFile(currentSegment));
+        currentSegmentBytes = 0;
+        forceDirectory(journalDir);
+        if (LOG.isDebugEnabled()) LOG.debug("Started journal segment {} in {}", currentSegment, journalDir);
+
+        if (running && segmentsAfter(latestSnapshot(), currentSegment-1).size() >= compactAfterSegments
+                && compactionScheduled.compareAndSet(false, true)) {
+            final long upToSegment = currentSegment-1;
+            compactor.submit(new Callable<Void>() {
+                @Override public Void call() {
+                    try {
+                        compact(upToSegment);
+                    } catch (Throwable t) {
+                        // harmless; the previous snapshot and segments are still in place
+                        LOG.warn("Error compacting journal in "+dir+"; will retry on a later segment", t);
+                        Exceptions.propagateIfFatal(t);
+                    } finally {
+                        compactionScheduled.set(false);
+                    }
+                    return null;
+                }});
+        }
+    }
+
+    @VisibleForTesting
+    FileOutputStream openSegment(File file) throws IOException {
+        return new FileOutputStream(file, true);
+    }
+
+    private void closeSegment() {
+        if (currentOut != null) {
+            try {
+                currentOut.getChannel().force(false);
+                currentOut.close();
+            } catch (IOException e) {
+                LOG.warn("Error closing journal segment "+currentSegment+" in "+journalDir, e);
+            }
+            currentOut = null;
+        }
+    }
+
+    /**
+     * Folds the latest snapshot and the (sealed) segments up to the given one into a new snapshot,
+     * then deletes those files. Runs in the compactor thread.
+     */
+    @VisibleForTesting
+    void compact(long upToSegment) throws IOException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        long previousSnapshot = latestSnapshot();
+        List<Long> segments = segmentsAfter(previousSnapshot, upToSegment);
+        if (segments.isEmpty()) return;
+
+        State state = new State();
+        if (previousSnapshot > 0) readFrames(snapshotFile(previousSnapshot), state);
+        for (long segment : segments) {
+            readFrames(segmentFile(segment), state);
+        }
+
+        File snapshot = snapshotFile(upToSegment);
+        File tmp = new File(dir, snapshot.getName()+TMP_SUFFIX);
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            writeSnapshotFrame(out, ENTITY, state.entities);
+            writeSnapshotPatchesFrame(out, state.entityPatches);
+            writeSnapshotFrame(out, LOCATION, state.locations);
+            writeSnapshotFrame(out, POLICY, state.policies);
+            out.getChannel().force(false);
+        } finally {
+            Closeables.close(out, true);
+        }
+        if (!tmp.renameTo(snapshot)) {
+            throw new IOException("Failed to rename "+tmp+" to "+snapshot);
+        }
+        // the rename must be on disk before the files the snapshot replaces are deleted
+        forceDirectory(dir);
+
+        // the new snapshot is in place, so the files it covers are no longer needed
+        if (previousSnapshot > 0) snapshotFile(previousSnapshot).delete();
+        for (long segment : segments) {
+            segmentFile(segment).delete();
+        }
+        compactionCount.incrementAndGet();
+
+        if (LOG.isDebugEnabled()) LOG.debug("Compacted journal in {} up to segment {} ({} segments); took {}",
+                new Object[] {dir, upToSegment, segments.size(), Time.makeTimeStringRounded(stopwatch)});
+    }
+
+    private void writeSnapshotFrame(FileOutputStream out, byte type, Map<String, byte[]> mementos) throws IOException {
+        if (mementos.isEmpty()) return;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(mementos.size());
+        for (Map.Entry<String, byte[]> entry : mementos.entrySet()) {
+            writeRecord(data, type, entry.getKey(), entry.getValue());
+        }
+        data.flush();
+        out.write(toFrame(bytes.toByteArray()));
+    }
+
+    /** patches are kept as they are, rather than applied, as that would need the lookup context for deserializing */
+    private void writeSnapshotPatchesFrame(FileOutputStream out, Map<String, List<byte[]>> patches) throws IOException {
+        int count = 0;
+        for (List<byte[]> patchesOfEntity : patches.values()) count += patchesOfEntity.size();
+        if (count == 0) return;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(count);
+        for (Map.Entry<String, List<byte[]>> entry : patches.entrySet()) {
+            for (byte[] patch : entry.getValue()) {
+                writeRecord(data, PATCH_ENTITY, entry.getKey(), patch);
+            }
+        }
+        data.flush();
+        out.write(toFrame(bytes.toByteArray()));
+    }
+
+    /**
+     * Forces the directory's entries to disk, so that files created or renamed in it survive a crash.
+     * This needs Java 7 (to open a directory as a channel), so is done reflectively; where unsupported
+     * (e.g. on Java 6, or on Windows) it is skipped.
+     */
+    private static void forceDirectory(File directory) {
+        FileChannel channel;
+        try {
+            Class<?> pathClass = Class.forName("java.nio.file.Path");
+            Class<?> openOptionClass = Class.forName("java.nio.file.OpenOption");
+            @SuppressWarnings({ "unchecked", "rawtypes" })
+            Object read = Enum.valueOf((Class) Class.forName("java.nio.file.StandardOpenOption"), "READ");
+            Object options = Array.newInstance(openOptionClass, 1);
+            Array.set(options, 0, read);
+            Object path = File.class.getMethod("toPath").invoke(directory);
+            channel = (FileChannel) FileChannel.class.getMethod("open", pathClass, options.getClass()).invoke(null, path, options);
+        } catch (Exception e) {
+            if (LOG.isTraceEnabled()) LOG.trace("Cannot force directory "+directory+" to disk; skipping", e);
+            return;
+        }
+        try {
+            try {
+                channel.force(true);
+            } finally {
+                Closeables.close(channel, true);
+            }
+        } catch (IOException e) {
+            LOG.debug("Error forcing directory "+directory+" to disk", e);
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte type, String id, byte[] value) throws IOException {
+        out.writeByte(type);
+        out.writeUTF(id);
+        if (value != null) {
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    /** frame is: payload length, CRC32 of payload, payload */
+    private static byte[] toFrame(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 12);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(payload.length);
+        out.writeLong(crc.getValue());
+        out.write(payload);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Applies the frames in the file to the state, stopping at the first incomplete or corrupt frame
+     * (which can only be the tail of a segment being written during a crash, so was never acknowledged).
+     */
+    private static void readFrames(File file, State state) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            DataInputStream data = new DataInputStream(in);
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = data.readInt();
+                    long expectedCrc = data.readLong();
+                    if (length < 0 || length > file.length()) {
+                        LOG.warn("Invalid frame length {} in {}; ignoring remainder of file", length, file);
+                        return;
+                    }
+                    payload = new byte[length];
+                    data.readFully(payload);
+                    CRC32 crc = new CRC32();
+                    crc.update(payload);
+                    if (crc.getValue() != expectedCrc) {
+                        LOG.warn("Checksum mismatch in {}; ignoring remainder of file", file);
+                        return;
+                    }
+                } catch (EOFException e) {
+                    // end of file, or a frame torn mid-write
+                    return;
+                }
+
+                DataInputStream records = new DataInputStream(new ByteArrayInputStream(payload));
+                int count = records.readInt();
+                for (int i = 0; i < count; i++) {
+                    byte type = records.readByte();
+                    String id = records.readUTF();
+                    byte[] value = null;
+                    if (type == ENTITY || type == LOCATION || type == POLICY || type == PATCH_ENTITY) {
+                        value = new byte[records.readInt()];
+                        records.readFully(value);
+                    }
+                    state.apply(type, id, value);
+                }
+            }
+        } finally {
+            Closeables.close(in, true);
+        }
+    }
+
+    private long latestSnapshot() {
+        long result = 0;
+        for (long snapshot : listSequenced(dir, SNAPSHOT_PREFIX)) result = Math.max(result, snapshot);
+        return result;
+    }
+
+    /** segment numbers in (afterExclusive, upToInclusive], in order */
+    private List<Long> segmentsAfter(long afterExclusive, long upToInclusive) {
+        List<Long> result = Lists.newArrayList();
+        for (long segment : listSequenced(journalDir, SEGMENT_PREFIX)) {
+            if (segment > afterExclusive && segment <= upToInclusive) result.add(segment);
+        }
+        return result;
+    }
+
+    private static List<Long> listSequenced(File directory, final String prefix) {
+        String[] names = directory.list(new FilenameFilter() {
+            @Override public boolean accept(File d, String name) {
+                return name.startsWith(prefix) && !name.endsWith(TMP_SUFFIX);
+            }});
+        List<Long> result = Lists.newArrayList();
+        if (names == null) return result;
+        for (String name : names) {
+            try {
+                result.add(Long.parseLong(name.substring(prefix.length())));
+            } catch (NumberFormatException e) {
+                LOG.debug("Ignoring unexpected file {} in {}", name, directory);
+            }
+        }
+        Long[] sorted = result.toArray(new Long[result.size()]);
+        Arrays.sort(sorted);
+        return Arrays.asList(sorted);
+    }
+
+    private File segmentFile(long segment) {
+        return new File(journalDir, SEGMENT_PREFIX+String.format("%016d", segment));
+    }
+
+    private File snapshotFile(long snapshot) {
+        return new File(dir, SNAPSHOT_PREFIX+String.format("%016d", snapshot));
+    }
+}
@@ -1,10 +1,13 @@
 package brooklyn.entity.rebind.persister;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
@@ -16,7 +19,6 @@ import org.slf4j.LoggerFactory;
 
 import brooklyn.entity.rebind.dto.BrooklynMementoImpl;
 import brooklyn.mementos.BrooklynMemento;
-import brooklyn.mementos.BrooklynMementoPersister;
 import brooklyn.mementos.EntityMemento;
 import brooklyn.mementos.LocationMemento;
 import brooklyn.mementos.PolicyMemento;
@@ -24,13 +26,14 @@ import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.time.Time;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Charsets;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 
-public class BrooklynMementoPersisterToMultiFile implements BrooklynMementoPersister {
+public class BrooklynMementoPersisterToMultiFile implements StreamingMementoPersister {
 
     private static final Logger LOG = LoggerFactory.getLogger(BrooklynMementoPersisterToMultiFile.class);
 
@@ -53,11 +56,19 @@ public class BrooklynMementoPersisterToMultiFile implements BrooklynMementoPersi
     
     private volatile boolean running = true;
 
+    private volatile int loadThreads = ParallelMementoLoader.DEFAULT_THREADS;
+
     public BrooklynMementoPersisterToMultiFile(File dir, ClassLoader classLoader) {
+        this(dir, new XmlMementoSerializer<Object>(classLoader));
+    }
+    
+    /**
+     * @param rawSerializer the format for the files, e.g. {@link XmlMementoSerializer} or {@link BinaryMementoSerializer}
+     */
+    public BrooklynMementoPersisterToMultiFile(File dir, MementoSerializer<Object> rawSerializer) {
         this.dir = checkNotNull(dir, "dir");
-        MementoSerializer<Object> rawSerializer = new XmlMementoSerializer<Object>(classLoader);
 //        this.serializer = new JsonMementoSerializer(classLoader);
-        this.serializer = new RetryingMementoSerializer<Object>(rawSerializer, MAX_SERIALIZATION_ATTEMPTS);
+        this.serializer = new RetryingMementoSerializer<Object>(checkNotNull(rawSerializer, "serializer"), MAX_SERIALIZATION_ATTEMPTS);
         
         checkDirIsAccessible(dir);
         
@@ -91,6 +102,30 @@ public class BrooklynMementoPersisterToMultiFile implements BrooklynMementoPersi
     
     @Override
     public BrooklynMemento loadMemento(LookupContext lookupContext) throws IOException {
+        final BrooklynMementoImpl.Builder builder = BrooklynMementoImpl.builder();
+        loadMemento(lookupContext, new MementoVisitor() {
+            @Override public void visit(LocationMemento memento) {
+                builder.location(memento);
+            }
+            @Override public void visit(PolicyMemento memento) {
+                builder.policy(memento);
+            }
+            @Override public void visit(EntityMemento memento) {
+                builder.entity(memento);
+                if (memento.isTopLevelApp()) {
+                    builder.applicationId(memento.getId());
+                }
+            }
+        });
+        return builder.build();
+    }
+
+    /**
+     * Reads and deserializes the files concurrently (see {@link ParallelMementoLoader}), passing each
+     * memento to the visitor as soon as it is ready.
+     */
+    @Override
+    public void loadMemento(LookupContext lookupContext, MementoVisitor visitor) throws IOException {
         Stopwatch stopwatch = Stopwatch.createStarted();
 
         FileFilter fileFilter = new FileFilter() {
@@ -105,34 +140,39 @@ public class BrooklynMementoPersisterToMultiFile implements BrooklynMementoPersi
         LOG.info("Loading memento from {}; {} entities, {} locations, {} policies", 
                 new Object[] {dir, entityFiles.length, locationFiles.length, policyFiles.length});
         
-        BrooklynMementoImpl.Builder builder = BrooklynMementoImpl.builder();
-        
         serializer.setLookupContext(lookupContext);
         try {
-            for (File file : entityFiles) {
-                EntityMemento memento = (EntityMemento) serializer.fromString(readFile(file));
-                builder.entity(memento);
-                if (memento.isTopLevelApp()) {
-                    builder.applicationId(memento.getId());
-                }
-            }
-            for (File file : locationFiles) {
-                LocationMemento memento = (LocationMemento) serializer.fromString(readFile(file));
-                builder.location(memento);
-            }
-            for (File file : policyFiles) {
-                PolicyMemento memento = (PolicyMemento) serializer.fromString(readFile(file));
-                builder.policy(memento);
-            }
+            new ParallelMementoLoader(serializer, loadThreads).load(visitor, ImmutableList.of(
+                    readingFiles(locationFiles), readingFiles(policyFiles), readingFiles(entityFiles)));
             
             if (LOG.isDebugEnabled()) LOG.debug("Loaded memento; took {}", Time.makeTimeStringRounded(stopwatch.elapsed(TimeUnit.MILLISECONDS))); 
-            return builder.build();
             
         } finally {
             serializer.unsetLookupContext();
         }
     }
     
+    private List<Callable<byte[]>> readingFiles(File[] files) {
+        List<Callable<byte[]>> result = Lists.newArrayListWithCapacity(files.length);
+        for (final File file : files) {
+            result.add(new Callable<byte[]>() {
+                @Override public byte[] call() throws IOException {
+                    return readFile(file);
+                }
+            });
+        }
+        return result;
+    }
+    
+    /**
+     * Sets the number of threads used to read and deserialize files in {@link #loadMemento(LookupContext)};
+     * defaults to the number of processors.
+     */
+    public void setLoadThreads(int val) {
+        checkArgument(val > 0, "loadThreads must be positive");
+        this.loadThreads = val;
+    }
+    
     @Override
     public void checkpoint(BrooklynMemento newMemento) {
         if (!running) {
@@ -212,8 +252,8 @@ public class BrooklynMementoPersisterToMultiFile implements BrooklynMementoPersi
         }
     }
 
-    private String readFile(File file) throws IOException {
-        return Files.asCharSource(file, Charsets.UTF_8).read();
+    private byte[] readFile(File file) throws IOException {
+        return Files.toByteArray(file);
     }
     
     private void persist(EntityMemento entity) {
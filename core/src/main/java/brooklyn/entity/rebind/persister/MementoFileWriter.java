@@ -16,7 +16,6 @@ import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.time.Time;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Charsets;
 import com.google.common.base.Stopwatch;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -211,7 +210,7 @@ public class MementoFileWriter<T> {
         Stopwatch stopwatch = Stopwatch.createStarted();
         
         // Write to the temp file, then atomically move it to the permanent file location
-        Files.write(serializer.toString(val), tmpFile, Charsets.UTF_8);
+        Files.write(serializer.toBytes(val), tmpFile);
         Files.move(tmpFile, file);
 
         modCount.incrementAndGet();
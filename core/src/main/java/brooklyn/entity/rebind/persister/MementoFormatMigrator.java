@@ -0,0 +1,144 @@
+package brooklyn.entity.rebind.persister;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.Entity;
+import brooklyn.location.Location;
+import brooklyn.mementos.BrooklynMementoPersister.LookupContext;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+/**
+ * Rewrites a persisted state directory (as written by {@link BrooklynMementoPersisterToMultiFile})
+ * from one serialization format to another, e.g. from XML to {@link BinaryMementoSerializer binary}
+ * or back again.
+ * <p>
+ * Each file is converted in place (via a temp file and rename); entity and location references are
+ * preserved by id without needing the referenced items to exist. Files already in the target format
+ * are left unchanged, so a partially completed migration can safely be re-run. Brooklyn must not be
+ * running against the directory at the time.
+ * <p>
+ * A journal directory ({@link BrooklynMementoPersisterToJournal}) need not be migrated: its existing
+ * records are read in either format, and each item is written in the configured format when it next changes.
+ */
+public class MementoFormatMigrator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MementoFormatMigrator.class);
+
+    public static final String FORMAT_XML = "xml";
+    public static final String FORMAT_BINARY = "binary";
+
+    private final File dir;
+    private final ClassLoader classLoader;
+
+    public MementoFormatMigrator(File dir, ClassLoader classLoader) {
+        this.dir = checkNotNull(dir, "dir");
+        this.classLoader = checkNotNull(classLoader, "classLoader");
+    }
+
+    /**
+     * Usage: {@code MementoFormatMigrator <persistence-dir> <xml|binary>}
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: "+MementoFormatMigrator.class.getSimpleName()+" <persistence-dir> <"+FORMAT_XML+"|"+FORMAT_BINARY+">");
+            System.exit(1);
+        }
+        int count = new MementoFormatMigrator(new File(args[0]), MementoFormatMigrator.class.getClassLoader()).migrateTo(args[1]);
+        System.out.println("Migrated "+count+" file"+(count == 1 ? "" : "s")+" in "+args[0]+" to "+args[1]);
+    }
+
+    /**
+     * @return the number of files rewritten
+     */
+    public int migrateTo(String format) throws IOException {
+        checkArgument(dir.isDirectory(), "Persistence directory %s does not exist", dir);
+        boolean toBinary;
+        if (FORMAT_BINARY.equalsIgnoreCase(format)) {
+            toBinary = true;
+        } else if (FORMAT_XML.equalsIgnoreCase(format)) {
+            toBinary = false;
+        } else {
+            throw new IllegalArgumentException("Unknown format '"+format+"'; expected "+FORMAT_XML+" or "+FORMAT_BINARY);
+        }
+
+        // the binary serializer reads both formats
+        MementoSerializer<Object> reader = new BinaryMementoSerializer<Object>(classLoader);
+        MementoSerializer<Object> writer = toBinary ? reader : new XmlMementoSerializer<Object>(classLoader);
+        LookupContext lookupContext = new PlaceholderLookupContext();
+        reader.setLookupContext(lookupContext);
+        writer.setLookupContext(lookupContext);
+
+        int count = 0;
+        for (String subdir : ImmutableList.of("entities", "locations", "policies")) {
+            File[] files = new File(dir, subdir).listFiles();
+            if (files == null) continue;
+            for (File file : files) {
+                if (file.getName().endsWith(".tmp")) continue;
+                byte[] bytes = Files.toByteArray(file);
+                if (BinaryMementoSerializer.isBinary(bytes) == toBinary) continue;
+
+                File tmpFile = new File(file.getParentFile(), file.getName()+".tmp");
+                Files.write(writer.toBytes(reader.fromBytes(bytes)), tmpFile);
+                if (!tmpFile.renameTo(file)) {
+                    // e.g. on Windows, where rename does not replace an existing file
+                    Files.copy(tmpFile, file);
+                    tmpFile.delete();
+                }
+                count++;
+            }
+        }
+        LOG.info("Migrated {} memento file(s) in {} to format {}", new Object[] {count, dir, format});
+        return count;
+    }
+
+    /**
+     * Resolves references to placeholders that know only their id, which is all that is
+     * needed to write the reference out again.
+     */
+    private static class PlaceholderLookupContext implements LookupContext {
+        @Override
+        public Entity lookupEntity(Class<?> type, String id) {
+            return (Entity) newPlaceholder(Entity.class, type, id);
+        }
+        @Override
+        public Location lookupLocation(Class<?> type, String id) {
+            return (Location) newPlaceholder(Location.class, type, id);
+        }
+        private Object newPlaceholder(Class<?> baseType, Class<?> type, final String id) {
+            Set<Class<?>> interfaces = Sets.<Class<?>>newLinkedHashSet();
+            interfaces.add(baseType);
+            ClassLoader loader = baseType.getClassLoader();
+            if (type != null && type.isInterface() && baseType.isAssignableFrom(type)) {
+                interfaces.add(type);
+                loader = type.getClassLoader();
+            }
+            return Proxy.newProxyInstance(loader, interfaces.toArray(new Class<?>[interfaces.size()]), new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if (name.equals("getId")) return id;
+                    if (name.equals("hashCode")) return id.hashCode();
+                    if (name.equals("toString")) return "placeholder["+id+"]";
+                    if (name.equals("equals")) {
+                        return args[0] != null && Proxy.isProxyClass(args[0].getClass()) && args[0].toString().equals(proxy.toString());
+                    }
+                    throw new UnsupportedOperationException("Placeholder "+id+" does not support "+name);
+                }
+            });
+        }
+    }
+}
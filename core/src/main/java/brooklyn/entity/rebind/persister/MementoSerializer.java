@@ -5,6 +5,9 @@ import brooklyn.mementos.BrooklynMementoPersister.LookupContext;
 public interface MementoSerializer<T> {
     String toString(T memento);
     T fromString(String string);
+    /** the form written to disk; for text formats, the UTF-8 encoding of {@link #toString(Object)} */
+    byte[] toBytes(T memento);
+    T fromBytes(byte[] bytes);
     void setLookupContext(LookupContext lookupContext);
     void unsetLookupContext();
-}
\ No newline at end of file
+}
@@ -0,0 +1,134 @@
+package brooklyn.entity.rebind.persister;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import brooklyn.entity.rebind.persister.StreamingMementoPersister.MementoVisitor;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.mementos.LocationMemento;
+import brooklyn.mementos.PolicyMemento;
+import brooklyn.util.exceptions.Exceptions;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Reads and deserializes mementos on a pool of threads, passing each to a {@link MementoVisitor}
+ * on the calling thread as soon as it is ready.
+ * <p>
+ * Only a bounded number of mementos are in flight at a time, so memory use does not grow
+ * with the number of items persisted.
+ */
+class ParallelMementoLoader {
+
+    static final int DEFAULT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /** items in flight per thread, so that threads are not left idle while the caller visits */
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    private final MementoSerializer<Object> serializer;
+    private final int threads;
+
+    ParallelMementoLoader(MementoSerializer<Object> serializer, int threads) {
+        this.serializer = checkNotNull(serializer, "serializer");
+        this.threads = threads;
+    }
+
+    /**
+     * Loads the given kinds of memento in turn (e.g. all locations, then all policies); within
+     * each kind, mementos are visited in the order they finish loading.
+     *
+     * @param sources per kind of memento, the suppliers of each memento's serialized form
+     */
+    void load(MementoVisitor visitor, List<? extends Iterable<? extends Callable<byte[]>>> sources) throws IOException {
+        List<Iterable<Callable<Object>>> deserializingSources = Lists.newArrayListWithCapacity(sources.size());
+        for (Iterable<? extends Callable<byte[]>> kind : sources) {
+            deserializingSources.add(Iterables.transform(kind, new Function<Callable<byte[]>, Callable<Object>>() {
+                @Override public Callable<Object> apply(Callable<byte[]> source) {
+                    return deserializing(source);
+                }}));
+        }
+        loadMementos(visitor, deserializingSources);
+    }
+
+    /**
+     * As {@link #load(MementoVisitor, List)}, but where each source produces the memento itself
+     * (e.g. by deserializing and then combining several records).
+     */
+    void loadMementos(MementoVisitor visitor, List<? extends Iterable<? extends Callable<?>>> sources) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat("brooklyn-rebind-load-%d")
+                .setDaemon(true)
+                .build());
+        try {
+            CompletionService<Object> completionService = new ExecutorCompletionService<Object>(executor);
+            for (Iterable<? extends Callable<?>> kind : sources) {
+                Iterator<? extends Callable<?>> iter = kind.iterator();
+                int inFlight = 0;
+                while (inFlight < threads*IN_FLIGHT_PER_THREAD && iter.hasNext()) {
+                    submit(completionService, iter.next());
+                    inFlight++;
+                }
+                while (inFlight > 0) {
+                    Object memento = takeResult(completionService);
+                    inFlight--;
+                    if (iter.hasNext()) {
+                        submit(completionService, iter.next());
+                        inFlight++;
+                    }
+                    visit(visitor, memento);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** a source which deserializes the record supplied by the given source */
+    Callable<Object> deserializing(final Callable<byte[]> source) {
+        return new Callable<Object>() {
+            @Override public Object call() throws Exception {
+                return serializer.fromBytes(source.call());
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void submit(CompletionService<Object> completionService, Callable<?> source) {
+        completionService.submit((Callable<Object>) source);
+    }
+
+    private static Object takeResult(CompletionService<Object> completionService) throws IOException {
+        try {
+            return completionService.take().get();
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw Exceptions.propagate(e.getCause());
+        }
+    }
+
+    private static void visit(MementoVisitor visitor, Object memento) {
+        if (memento instanceof LocationMemento) {
+            visitor.visit((LocationMemento) memento);
+        } else if (memento instanceof PolicyMemento) {
+            visitor.visit((PolicyMemento) memento);
+        } else if (memento instanceof EntityMemento) {
+            visitor.visit((EntityMemento) memento);
+        } else {
+            throw new IllegalStateException("Unexpected memento type "+(memento == null ? null : memento.getClass())+": "+memento);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package brooklyn.entity.rebind.persister;
+
+import java.util.Collection;
+
+import brooklyn.entity.rebind.dto.EntityAttributesPatch;
+import brooklyn.mementos.BrooklynMementoPersister;
+
+/**
+ * A persister that can record changes to individual attributes of an entity, as
+ * {@link EntityAttributesPatch patches} against the entity's last persisted memento,
+ * rather than always requiring the entity's complete memento.
+ */
+public interface PatchingMementoPersister extends BrooklynMementoPersister {
+
+    /**
+     * A delta which may include attribute patches. Passed to {@link #delta(Delta)} only for
+     * persisters that implement {@link PatchingMementoPersister}.
+     */
+    public static interface PatchingDelta extends Delta {
+        /**
+         * Patches to entities which have previously been persisted in full (and which are not also
+         * in {@link #entities()} or {@link #removedEntityIds()}); applied after the entities.
+         */
+        Collection<EntityAttributesPatch> entityPatches();
+    }
+}
@@ -55,6 +55,41 @@ public class RetryingMementoSerializer<T> implements MementoSerializer<T> {
         throw lastException;
     }
 
+    @Override
+    public byte[] toBytes(T memento) {
+        RuntimeException lastException = null;
+        int attempt = 0;
+        do {
+            attempt++;
+            try {
+                return delegate.toBytes(memento);
+            } catch (RuntimeException e) {
+                LOG.warn("Error serializing memento (attempt "+attempt+" of "+maxAttempts+") for "+memento+
+                        "; expected sometimes if attribute value modified", e);
+                lastException = e;
+            }
+        } while (attempt < maxAttempts);
+        
+        throw lastException;
+    }
+    
+    @Override
+    public T fromBytes(byte[] bytes) {
+        RuntimeException lastException = null;
+        int attempt = 0;
+        do {
+            attempt++;
+            try {
+                return delegate.fromBytes(bytes);
+            } catch (RuntimeException e) {
+                LOG.warn("Error deserializing memento (attempt "+attempt+" of "+maxAttempts+")", e);
+                lastException = e;
+            }
+        } while (attempt < maxAttempts);
+        
+        throw lastException;
+    }
+
     @Override
     public void setLookupContext(LookupContext lookupContext) {
         delegate.setLookupContext(lookupContext);
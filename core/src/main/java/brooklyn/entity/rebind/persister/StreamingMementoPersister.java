@@ -0,0 +1,35 @@
+package brooklyn.entity.rebind.persister;
+
+import java.io.IOException;
+
+import brooklyn.mementos.BrooklynMemento;
+import brooklyn.mementos.BrooklynMementoPersister;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.mementos.LocationMemento;
+import brooklyn.mementos.PolicyMemento;
+
+/**
+ * A persister that can hand back each memento as soon as it is loaded, rather than first
+ * building the complete {@link BrooklynMemento}; used by rebind where available, so that
+ * items can be instantiated and reconstructed while the remainder are still being read.
+ */
+public interface StreamingMementoPersister extends BrooklynMementoPersister {
+
+    public static interface MementoVisitor {
+        void visit(LocationMemento memento);
+        void visit(PolicyMemento memento);
+        void visit(EntityMemento memento);
+    }
+
+    /**
+     * Loads the persisted state, passing each memento to the visitor.
+     * <p>
+     * All locations are visited first, then all policies, then all entities (the order in
+     * which rebind reconstructs them). Within each kind the order is unspecified; in
+     * particular a parent may be visited after its children. The visitor is only ever called
+     * from the calling thread.
+     * <p>
+     * Note that this method is *not* thread safe.
+     */
+    void loadMemento(LookupContext lookupContext, MementoVisitor visitor) throws IOException;
+}
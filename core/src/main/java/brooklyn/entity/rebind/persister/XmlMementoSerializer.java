@@ -12,6 +12,7 @@ import org.slf4j.LoggerFactory;
 import brooklyn.entity.Entity;
 import brooklyn.entity.rebind.dto.BasicEntityMemento;
 import brooklyn.entity.rebind.dto.BasicLocationMemento;
+import brooklyn.entity.rebind.dto.EntityAttributesPatch;
 import brooklyn.entity.rebind.dto.MutableBrooklynMemento;
 import brooklyn.entity.trait.Identifiable;
 import brooklyn.event.basic.BasicAttributeSensor;
@@ -22,9 +23,9 @@ import brooklyn.mementos.BrooklynMementoPersister.LookupContext;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.xstream.XmlSerializer;
 
+import com.google.common.base.Charsets;
 import com.thoughtworks.xstream.converters.Converter;
 import com.thoughtworks.xstream.converters.MarshallingContext;
-import com.thoughtworks.xstream.converters.SingleValueConverter;
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
 import com.thoughtworks.xstream.core.util.HierarchicalStreams;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
@@ -42,13 +43,14 @@ public class XmlMementoSerializer<T> extends XmlSerializer<T> implements Memento
 
     @SuppressWarnings("unused")
     private final ClassLoader classLoader;
-    private LookupContext lookupContext;
+    private volatile LookupContext lookupContext;
 
     public XmlMementoSerializer(ClassLoader classLoader) {
         this.classLoader = checkNotNull(classLoader, "classLoader");
         xstream.alias("brooklyn", MutableBrooklynMemento.class);
         xstream.alias("entity", BasicEntityMemento.class);
         xstream.alias("location", BasicLocationMemento.class);
+        xstream.alias("entityPatch", EntityAttributesPatch.class);
         xstream.alias("configKey", BasicConfigKey.class);
         xstream.alias("attributeSensor", BasicAttributeSensor.class);
         
@@ -78,6 +80,16 @@ public class XmlMementoSerializer<T> extends XmlSerializer<T> implements Memento
         }
     }
 
+    @Override
+    public byte[] toBytes(T memento) {
+        return toString(memento).getBytes(Charsets.UTF_8);
+    }
+
+    @Override
+    public T fromBytes(byte[] bytes) {
+        return fromString(new String(bytes, Charsets.UTF_8));
+    }
+
     @Override
     public void setLookupContext(LookupContext lookupContext) {
         this.lookupContext = checkNotNull(lookupContext, "lookupContext");
@@ -127,42 +139,45 @@ public class XmlMementoSerializer<T> extends XmlSerializer<T> implements Memento
         }
     }
 
-    public abstract class IdentifiableConverter<T extends Identifiable> implements SingleValueConverter {
+    /**
+     * Writes an entity or location as its id, and reads it back via the {@link LookupContext}.
+     * <p>
+     * Stateless, so that one serializer can be used to deserialize on several threads at once:
+     * the type to look up is taken from the {@link UnmarshallingContext} of each call.
+     */
+    public abstract class IdentifiableConverter<T extends Identifiable> implements Converter {
         private final Class<T> clazz;
         
-        /*
-         * Ugly hack so we know what type to deserialize the string as. Remember the last call to canConvert!
-         * This is needed for RebindManager's two-phase approach, where in the first phase we create a 
-         * dynamic proxy to represent the Entity/Location (can't return null as ImmutableList etc won't accept
-         * null values).
-         */
-        private Class<?> toClazz;
-        
         IdentifiableConverter(Class<T> clazz) {
             this.clazz = clazz;
         }
         @Override
         public boolean canConvert(Class type) {
-            boolean result = clazz.isAssignableFrom(type);
-            toClazz = (result) ? type : null;
-            return result;
+            return clazz.isAssignableFrom(type);
         }
 
         @Override
-        public String toString(Object obj) {
-            return obj == null ? null : ((Identifiable)obj).getId();
+        public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+            writer.setValue(((Identifiable)source).getId());
         }
         @Override
-        public Object fromString(String str) {
+        public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+            /*
+             * The required type is needed for RebindManager's two-phase approach, where in the first phase we
+             * create a dynamic proxy to represent the Entity/Location (can't return null as ImmutableList etc
+             * won't accept null values).
+             */
+            String id = reader.getValue();
+            LookupContext lookupContext = XmlMementoSerializer.this.lookupContext;
             if (lookupContext == null) {
-                LOG.warn("Cannot unmarshall from persisted xml {} {}; no lookup context supplied!", clazz.getSimpleName(), str);
+                LOG.warn("Cannot unmarshall from persisted xml {} {}; no lookup context supplied!", clazz.getSimpleName(), id);
                 return null;
             } else {
-                return lookup(toClazz, str);
+                return lookup(lookupContext, context.getRequiredType(), id);
             }
         }
         
-        protected abstract T lookup(Class<?> type, String id);
+        protected abstract T lookup(LookupContext lookupContext, Class<?> type, String id);
     }
 
     public class LocationConverter extends IdentifiableConverter<Location> {
@@ -170,7 +185,7 @@ public class XmlMementoSerializer<T> extends XmlSerializer<T> implements Memento
             super(Location.class);
         }
         @Override
-        protected Location lookup(Class<?> type, String id) {
+        protected Location lookup(LookupContext lookupContext, Class<?> type, String id) {
             return lookupContext.lookupLocation(type, id);
         }
     }
@@ -180,7 +195,7 @@ public class XmlMementoSerializer<T> extends XmlSerializer<T> implements Memento
             super(Entity.class);
         }
         @Override
-        protected Entity lookup(Class<?> type, String id) {
+        protected Entity lookup(LookupContext lookupContext, Class<?> type, String id) {
             return lookupContext.lookupEntity(type, id);
         }
     }
@@ -2,9 +2,12 @@ package brooklyn.event.basic;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,6 +24,13 @@ import com.google.common.collect.Maps;
 
 /**
  * A {@link Map} of {@link Entity} attribute values.
+ * <p>
+ * Values are written through to the storage map (keyed by the attribute's name parts). Where that storage
+ * is local (so is only changed through this map), they are also held in an array indexed by the attribute's
+ * slot (see {@link AttributeSlots}, shared by all entities of the same type), and reads of them use only the
+ * array, so they neither lock nor hash the name parts. Attributes without a slot (beyond the type's limit),
+ * and all attributes where the storage is shared (e.g. a data grid), are read from the storage. Writes are
+ * synchronized, so that the array and the storage map agree.
  */
 public final class AttributeMap implements Serializable {
 
@@ -30,20 +40,60 @@ public final class AttributeMap implements Serializable {
         NULL;
     }
     
+    private static final Joiner DOTS = Joiner.on('.');
+
     private final AbstractEntity entity;
 
-    // Note that we synchronize on the top-level map, to handle concurrent updates and and gets (ENGR-2111)
+    // Writes synchronize on this, to handle concurrent updates and gets (ENGR-2111)
     private final Map<Collection<String>, Object> values;
 
+    private final boolean storageIsLocal;
+    
+    /** null if the storage is not local */
+    private transient AttributeSlots slots;
+    
+    /** the values by slot; null if not set, and {@link Marker#NULL} if set to null. Replaced when it needs to grow. */
+    private transient volatile AtomicReferenceArray<Object> slotValues;
+
     /**
-     * Creates a new AttributeMap.
+     * Creates a new AttributeMap, whose storage is local.
      *
      * @param entity the EntityLocal this AttributeMap belongs to.
      * @throws IllegalArgumentException if entity is null
      */
     public AttributeMap(AbstractEntity entity, Map<Collection<String>, Object> storage) {
+        this(entity, storage, true);
+    }
+
+    /**
+     * Creates a new AttributeMap.
+     *
+     * @param entity the EntityLocal this AttributeMap belongs to.
+     * @param storageIsLocal whether the storage is only changed through this map, rather than shared (e.g. in a data grid)
+     * @throws IllegalArgumentException if entity is null
+     */
+    public AttributeMap(AbstractEntity entity, Map<Collection<String>, Object> storage, boolean storageIsLocal) {
         this.entity = checkNotNull(entity, "entity must be specified");
         this.values = checkNotNull(storage, "storage map must not be null");
+        this.storageIsLocal = storageIsLocal;
+        initSlots();
+    }
+
+    /** interns the values already in storage (e.g. if reconstituting an entity) */
+    private void initSlots() {
+        if (!storageIsLocal) return;
+        slots = AttributeSlots.forType(entity.getClass());
+        slotValues = new AtomicReferenceArray<Object>(slots.size());
+        synchronized (this) {
+            for (Map.Entry<Collection<String>, Object> entry : values.entrySet()) {
+                setSlotValue(slots.getOrAssign(DOTS.join(entry.getKey())), entry.getValue());
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        initSlots();
     }
 
     public Map<Collection<String>, Object> asRawMap() {
@@ -53,7 +103,7 @@ public final class AttributeMap implements Serializable {
     public Map<String, Object> asMap() {
         Map<String, Object> result = Maps.newLinkedHashMap();
         for (Map.Entry<Collection<String>, Object> entry : values.entrySet()) {
-            String sensorName = Joiner.on('.').join(entry.getKey());
+            String sensorName = DOTS.join(entry.getKey());
             Object val = (isNull(entry.getValue())) ? null : entry.getValue();
             result.put(sensorName, val);
         }
@@ -80,10 +130,32 @@ public final class AttributeMap implements Serializable {
             log.trace("setting sensor {}={} for {}", new Object[] {path, newValue, entity});
         }
 
+        return update(path, DOTS.join(path), newValue);
+    }
+
+    private synchronized <T> T update(Collection<String> path, String name, T newValue) {
         T oldValue = (T) values.put(path, newValue);
+        if (slots != null) setSlotValue(slots.getOrAssign(name), newValue);
         return (isNull(oldValue)) ? null : oldValue;
     }
 
+    /** must be called when synchronized on this, as it may replace the array; a no-op if there is no slot (i.e. -1) */
+    private void setSlotValue(int slot, Object val) {
+        if (slot < 0) return;
+        AtomicReferenceArray<Object> current = slotValues;
+        if (slot >= current.length()) {
+            // grow to all the slots assigned for the type so far, so that is rarely repeated
+            AtomicReferenceArray<Object> grown = new AtomicReferenceArray<Object>(Math.max(slot+1, slots.size()));
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            grown.set(slot, val);
+            slotValues = grown;
+        } else {
+            current.set(slot, val);
+        }
+    }
+
     private void checkPath(Collection<String> path) {
         Preconditions.checkNotNull(path, "path can't be null");
         Preconditions.checkArgument(!path.isEmpty(), "path can't be empty");
@@ -105,7 +177,10 @@ public final class AttributeMap implements Serializable {
             }
         }
 
-        T oldValue = (T) update(attribute.getNameParts(), newValue);
+        if (newValue == null) {
+            newValue = typedNull();
+        }
+        T oldValue = (T) update(attribute.getNameParts(), attribute.getName(), newValue);
         
         return (isNull(oldValue)) ? null : oldValue;
     }
@@ -115,7 +190,7 @@ public final class AttributeMap implements Serializable {
             log.debug("removing attribute {} on {}", attribute.getName(), entity);
         }
 
-        remove(attribute.getNameParts());
+        remove(attribute.getNameParts(), attribute.getName());
     }
 
     // TODO path must be ordered(and legal to contain duplicates like "a.b.a"; list would be better
@@ -126,7 +201,15 @@ public final class AttributeMap implements Serializable {
             log.trace("removing sensor {} for {}", new Object[] {path, entity});
         }
 
+        remove(path, DOTS.join(path));
+    }
+
+    private synchronized void remove(Collection<String> path, String name) {
         values.remove(path);
+        int slot = (slots != null) ? slots.get(name) : -1;
+        if (slot >= 0 && slot < slotValues.length()) {
+            slotValues.set(slot, null);
+        }
     }
 
     /**
@@ -141,12 +224,23 @@ public final class AttributeMap implements Serializable {
         // or the leaf value if only one value. Arguably that is not required - what is/was the use-case?
         // 
         checkPath(path);
-        Object result = values.get(path);
-        return (isNull(result)) ? null : result;
+        return getValue(path, (slots != null) ? DOTS.join(path) : null);
     }
 
     public <T> T getValue(AttributeSensor<T> sensor) {
-        return (T) getValue(sensor.getNameParts());
+        return (T) getValue(sensor.getNameParts(), sensor.getName());
+    }
+
+    private Object getValue(Collection<String> path, String name) {
+        int slot = (slots != null) ? slots.get(name) : -1;
+        Object result;
+        if (slot >= 0) {
+            AtomicReferenceArray<Object> current = slotValues;
+            result = (slot < current.length()) ? current.get(slot) : null;
+        } else {
+            result = values.get(path);
+        }
+        return (isNull(result)) ? null : result;
     }
 
     @SuppressWarnings("unchecked")
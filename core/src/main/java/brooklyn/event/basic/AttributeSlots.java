@@ -0,0 +1,66 @@
+package brooklyn.event.basic;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Interns attribute names to small integer slots, shared by all entities of a type, so that each
+ * {@link AttributeMap} can hold its values in an array indexed by slot.
+ * <p>
+ * Slots are only ever added, in the order the attribute names are first used by an entity of the type,
+ * up to {@link #MAX_SLOTS}. The types are weakly referenced, so their classes can still be unloaded.
+ */
+final class AttributeSlots {
+
+    /**
+     * The most slots assigned for a type, which bounds the array held by each entity of the type;
+     * attributes beyond this (e.g. sensors named dynamically, per member) are not given a slot.
+     */
+    static final int MAX_SLOTS = 256;
+
+    private static final ConcurrentMap<Class<?>, AttributeSlots> BY_TYPE = new MapMaker().weakKeys().makeMap();
+
+    static AttributeSlots forType(Class<?> type) {
+        AttributeSlots result = BY_TYPE.get(type);
+        if (result == null) {
+            AttributeSlots newSlots = new AttributeSlots();
+            result = BY_TYPE.putIfAbsent(type, newSlots);
+            if (result == null) result = newSlots;
+        }
+        return result;
+    }
+
+    private final ConcurrentMap<String, Integer> slots = new ConcurrentHashMap<String, Integer>();
+    private volatile int size;
+
+    private AttributeSlots() {
+    }
+
+    /** @return the slot of the attribute, or -1 if it has no slot */
+    int get(String name) {
+        Integer result = slots.get(name);
+        return (result == null) ? -1 : result;
+    }
+
+    /** @return the slot of the attribute, assigning a new slot if necessary; or -1 if all slots are assigned */
+    int getOrAssign(String name) {
+        Integer result = slots.get(name);
+        if (result != null) return result;
+        synchronized (this) {
+            result = slots.get(name);
+            if (result == null) {
+                if (size >= MAX_SLOTS) return -1;
+                result = size;
+                slots.put(name, result);
+                size++;
+            }
+            return result;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -25,7 +25,7 @@ public class BasicSensor<T> implements Sensor<T> {
     private Class<? super T> type;
     private String name;
     private String description;
-    private transient List<String> nameParts;
+    private transient volatile List<String> nameParts;
     
     // FIXME In groovy, fields were `public final` with a default constructor; do we need the gson?
     public BasicSensor() { /* for gson */ }
@@ -61,9 +61,11 @@ public class BasicSensor<T> implements Sensor<T> {
     public String getName() { return name; }
  
     /** @see Sensor#getNameParts() */
-    public synchronized List<String> getNameParts() {
-        if (nameParts==null) nameParts = ImmutableList.copyOf(dots.split(name));
-        return nameParts; 
+    public List<String> getNameParts() {
+        // benign race: the list is immutable, so at worst it is computed more than once
+        List<String> result = nameParts;
+        if (result==null) nameParts = result = ImmutableList.copyOf(dots.split(name));
+        return result; 
     }
  
     /** @see Sensor#getDescription() */
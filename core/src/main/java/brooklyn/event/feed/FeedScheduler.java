@@ -0,0 +1,383 @@
+package brooklyn.event.feed;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.util.task.DynamicTasks;
+import brooklyn.util.task.ScheduledTask;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Runs the periodic polls of feeds from a single hashed timing wheel, shared by all {@link Poller}s
+ * of a management context, rather than each poll job having its own {@link ScheduledTask} which
+ * creates a new task for every poll.
+ * <ul>
+ *   <li>The first poll of each target is delayed by a random jitter (less than its period, and at most
+ *       the configured maximum), so that the polls of many entities started together are spread out.
+ *   <li>Polls scheduled with the same (non-null) key and the same period are coalesced: the job of one
+ *       of them (initially the first) is called once each period, and its result passed to the handlers 
+ *       of all of them.
+ *   <li>A poll which falls due while the previous poll of the same target is still running is skipped,
+ *       and counted as an overrun.
+ *   <li>Polls are run on the given executor without a task, so a poll job cannot queue sub-tasks
+ *       (e.g. with {@link DynamicTasks}).
+ * </ul>
+ * Polls are run to within one tick of their due time; see {@link #getMetrics()} for the lag and overruns.
+ */
+public class FeedScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(FeedScheduler.class);
+
+    public static final Duration DEFAULT_TICK = Duration.millis(10);
+    public static final Duration DEFAULT_MAX_JITTER = Duration.ONE_SECOND;
+
+    /** number of buckets in the wheel; a power of two */
+    private static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    /** a scheduled poll, as returned by {@link FeedScheduler#schedule(Object, Callable, PollHandler, Duration)} */
+    public interface Registration {
+        /** stops passing poll results to this registration's handler; the poll stops when it has no handlers */
+        void cancel();
+    }
+
+    private final Executor executor;
+    private final long tickNanos;
+    private final long maxJitterNanos;
+    private final long startNanos;
+    private final Thread wheelThread;
+    private volatile boolean running = true;
+
+    /** the targets to be added to the wheel, on its next tick */
+    private final Queue<Target> pendingTargets = new ConcurrentLinkedQueue<Target>();
+    /** the buckets of the wheel; only accessed by the wheel thread */
+    private final List<List<Target>> wheel;
+
+    /** targets which can be coalesced, by key and period; guarded by this */
+    private final Map<Object, Target> coalescableTargets = Maps.newHashMap();
+    /** guarded by this */
+    private final Random random = new Random();
+
+    private final AtomicInteger targetCount = new AtomicInteger();
+    private final AtomicLong pollCount = new AtomicLong();
+    private final AtomicLong overrunCount = new AtomicLong();
+    private final AtomicLong totalLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    public FeedScheduler(String name, Executor executor) {
+        this(name, executor, DEFAULT_TICK, DEFAULT_MAX_JITTER);
+    }
+
+    public FeedScheduler(String name, Executor executor, Duration tick, Duration maxJitter) {
+        this.executor = checkNotNull(executor, "executor");
+        this.tickNanos = checkNotNull(tick, "tick").toNanoseconds();
+        this.maxJitterNanos = checkNotNull(maxJitter, "maxJitter").toNanoseconds();
+        checkArgument(tickNanos > 0, "tick must be positive: %s", tick);
+
+        wheel = Lists.newArrayListWithCapacity(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayList<Target>());
+        }
+
+        startNanos = System.nanoTime();
+        wheelThread = new Thread(new Runnable() {
+            public void run() {
+                runWheel();
+            }}, name);
+        wheelThread.setDaemon(true);
+        wheelThread.start();
+    }
+
+    /**
+     * Schedules the job to be called every period, with the result (or failure) passed to the handler.
+     *
+     * @param key if non-null, polls with an equal key and the same period are coalesced, calling the job
+     *            of only one of them (the first, until it is cancelled); so the key must identify everything the job polls
+     */
+    public synchronized <V> Registration schedule(@Nullable Object key, Callable<V> job, PollHandler<? super V> handler, Duration period) {
+        checkState(running, "Feed scheduler stopped");
+        checkNotNull(job, "job");
+        checkNotNull(handler, "handler");
+        long periodNanos = checkNotNull(period, "period").toNanoseconds();
+        checkArgument(periodNanos > 0, "period must be positive: %s", period);
+
+        Object targetKey = (key == null) ? null : ImmutableList.of(key, periodNanos);
+        Target target = (targetKey == null) ? null : coalescableTargets.get(targetKey);
+        boolean isNew = (target == null);
+        if (isNew) {
+            target = new Target(targetKey, job, periodNanos);
+            if (targetKey != null) coalescableTargets.put(targetKey, target);
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        Subscriber result = new Subscriber(target, job, (PollHandler) handler);
+        target.subscribers.add(result);
+
+        if (isNew) {
+            long jitterBound = Math.min(periodNanos, maxJitterNanos);
+            long jitter = (jitterBound > 0) ? (long) (random.nextDouble() * jitterBound) : 0;
+            target.deadline = System.nanoTime() + jitter;
+            targetCount.incrementAndGet();
+            pendingTargets.add(target);
+        }
+        return result;
+    }
+
+    private synchronized void unsubscribe(Subscriber subscriber) {
+        Target target = subscriber.target;
+        if (!target.subscribers.remove(subscriber)) return;
+        if (target.subscribers.isEmpty()) {
+            target.cancelled = true;
+            targetCount.decrementAndGet();
+            if (target.key != null) coalescableTargets.remove(target.key);
+        } else if (target.job == subscriber.job) {
+            // the job may use state of its (now stopped) poller, so hand over to a remaining subscriber's job
+            target.job = target.subscribers.get(0).job;
+        }
+    }
+
+    /** stops all polling; polls already running are not interrupted */
+    public void shutdown() {
+        running = false;
+        wheelThread.interrupt();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** the number of distinct polls being scheduled (i.e. after coalescing) */
+    public int getTargetCount() {
+        return targetCount.get();
+    }
+
+    /** the number of polls run */
+    public long getPollCount() {
+        return pollCount.get();
+    }
+
+    /** the number of polls skipped because the previous poll of the same target was still running */
+    public long getOverrunCount() {
+        return overrunCount.get();
+    }
+
+    /** the longest delay between a poll falling due and it starting to run */
+    public Duration getMaxLag() {
+        return Duration.nanos(maxLagNanos.get());
+    }
+
+    /** the mean delay between a poll falling due and it starting to run */
+    public Duration getMeanLag() {
+        long polls = pollCount.get();
+        return Duration.nanos((polls == 0) ? 0 : totalLagNanos.get() / polls);
+    }
+
+    public Map<String, Object> getMetrics() {
+        return ImmutableMap.<String, Object>of(
+                "targets", getTargetCount(),
+                "polls", getPollCount(),
+                "overruns", getOverrunCount(),
+                "meanLag", getMeanLag(),
+                "maxLag", getMaxLag());
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("thread", wheelThread.getName()).add("targets", getTargetCount()).toString();
+    }
+
+    private void runWheel() {
+        // tick t is processed once the time is startNanos+(t+1)*tickNanos, for targets due by then
+        long tick = 0;
+        List<Target> due = Lists.newArrayList();
+        while (running) {
+            long sleepNanos = startNanos + (tick+1)*tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) break;
+                    Thread.currentThread().interrupt();
+                    log.warn("Feed scheduler "+this+" interrupted; stopping");
+                    running = false;
+                    break;
+                }
+            }
+
+            try {
+                Target pending;
+                while ((pending = pendingTargets.poll()) != null) {
+                    insert(pending, tick);
+                }
+
+                for (Iterator<Target> iter = wheel.get((int) (tick & WHEEL_MASK)).iterator(); iter.hasNext();) {
+                    Target target = iter.next();
+                    if (target.cancelled) {
+                        iter.remove();
+                    } else if (target.rounds > 0) {
+                        target.rounds--;
+                    } else {
+                        iter.remove();
+                        due.add(target);
+                    }
+                }
+                long now = System.nanoTime();
+                for (Target target : due) {
+                    fire(target, now);
+                    insert(target, tick+1);
+                }
+            } catch (Throwable t) {
+                // keep going; one bad target must not stop all feeds
+                log.warn("Error in feed scheduler "+this+" (continuing)", t);
+            } finally {
+                due.clear();
+            }
+            tick++;
+        }
+        if (log.isDebugEnabled()) log.debug("Feed scheduler {} stopped; {}", this, getMetrics());
+    }
+
+    /** adds the target to the wheel, in the bucket for its deadline but not before the given tick */
+    private void insert(Target target, long firstTick) {
+        long deadlineTick = (target.deadline - startNanos + tickNanos - 1) / tickNanos - 1;
+        long targetTick = Math.max(deadlineTick, firstTick);
+        target.rounds = (targetTick - firstTick) / WHEEL_SIZE;
+        wheel.get((int) (targetTick & WHEEL_MASK)).add(target);
+    }
+
+    private void fire(Target target, long now) {
+        if (target.inFlight.compareAndSet(false, true)) {
+            target.runDeadline = target.deadline;
+            try {
+                executor.execute(target);
+            } catch (RejectedExecutionException e) {
+                target.inFlight.set(false);
+                if (running) log.warn("Feed scheduler "+this+" unable to run poll "+target.job+": "+e);
+            }
+        } else {
+            overrunCount.incrementAndGet();
+            if (log.isTraceEnabled()) log.trace("Skipping poll {}, as previous poll still running", target.job);
+        }
+
+        long next = target.deadline + target.periodNanos;
+        // if more than a period behind (e.g. after a long GC pause) then don't try to catch up
+        target.deadline = (next - now > 0) ? next : now + target.periodNanos;
+    }
+
+    private void recordLag(long lagNanos) {
+        if (lagNanos < 0) lagNanos = 0;
+        pollCount.incrementAndGet();
+        totalLagNanos.addAndGet(lagNanos);
+        long max;
+        while (lagNanos > (max = maxLagNanos.get())) {
+            if (maxLagNanos.compareAndSet(max, lagNanos)) break;
+        }
+    }
+
+    /** a poll job, with the handlers of all the polls coalesced into it */
+    private class Target implements Runnable {
+        final Object key;
+        /** the job of one of the subscribers (guarded by the scheduler for writes) */
+        volatile Callable<?> job;
+        final long periodNanos;
+        final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+        final AtomicBoolean inFlight = new AtomicBoolean();
+        volatile boolean cancelled;
+        volatile long runDeadline;
+
+        // only accessed by the wheel thread, after the target is first queued
+        long deadline;
+        long rounds;
+
+        Target(Object key, Callable<?> job, long periodNanos) {
+            this.key = key;
+            this.job = job;
+            this.periodNanos = periodNanos;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (cancelled) return;
+                recordLag(System.nanoTime() - runDeadline);
+
+                Object val = null;
+                Exception error = null;
+                try {
+                    val = this.job.call();
+                } catch (Exception e) {
+                    error = e;
+                }
+                for (Subscriber subscriber : subscribers) {
+                    subscriber.handle(val, error);
+                }
+            } finally {
+                inFlight.set(false);
+            }
+        }
+    }
+
+    private class Subscriber implements Registration {
+        final Target target;
+        final Callable<?> job;
+        final PollHandler<Object> handler;
+
+        Subscriber(Target target, Callable<?> job, PollHandler<Object> handler) {
+            this.target = target;
+            this.job = job;
+            this.handler = handler;
+        }
+
+        @Override
+        public void cancel() {
+            unsubscribe(this);
+        }
+
+        void handle(Object val, Exception error) {
+            try {
+                if (error != null) {
+                    if (log.isDebugEnabled()) log.debug("Poll "+target.job+" handling "+error+" using "+handler);
+                    handler.onException(error);
+                } else if (handler.checkSuccess(val)) {
+                    handler.onSuccess(val);
+                } else {
+                    handler.onFailure(val);
+                }
+            } catch (Exception e) {
+                try {
+                    handler.onException(e);
+                } catch (Exception e2) {
+                    log.warn("Poll handler "+handler+" failed handling "+e+" (continuing)", e2);
+                }
+            }
+        }
+    }
+}
@@ -11,10 +11,13 @@ import brooklyn.entity.basic.BrooklynTaskTags;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
+import brooklyn.management.internal.ManagementContextInternal;
 import brooklyn.management.Task;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.task.DynamicSequentialTask;
 import brooklyn.util.task.ScheduledTask;
+import brooklyn.util.task.TaskBuilder;
+import brooklyn.util.task.TaskTags;
 import brooklyn.util.task.Tasks;
 import brooklyn.util.time.Duration;
 
@@ -27,6 +30,9 @@ import com.google.common.base.Objects;
  * The jobs will then be executed periodically, and the handler called for the result/failure.
  * 
  * Assumes the schedule+start will be done single threaded, and that stop will not be done concurrently.
+ * <p>
+ * If the management context has a shared {@link FeedScheduler}, the jobs are scheduled with that;
+ * otherwise each job is run by its own {@link ScheduledTask}.
  */
 public class Poller<V> {
     public static final Logger log = LoggerFactory.getLogger(Poller.class);
@@ -36,14 +42,20 @@ public class Poller<V> {
     private final Set<PollJob<V>> pollJobs = new LinkedHashSet<PollJob<V>>();
     private final Set<Task<?>> oneOffTasks = new LinkedHashSet<Task<?>>();
     private final Set<ScheduledTask> tasks = new LinkedHashSet<ScheduledTask>();
+    private final Set<FeedScheduler.Registration> registrations = new LinkedHashSet<FeedScheduler.Registration>();
     private volatile boolean running = false;
+    private volatile boolean blockingIo = false;
     
     private static class PollJob<V> {
+        final Object coalesceKey;
+        final Callable<V> job;
         final PollHandler<? super V> handler;
         final Duration pollPeriod;
         final Runnable wrappedJob;
         
-        PollJob(final Callable<V> job, final PollHandler<? super V> handler, Duration period) {
+        PollJob(Object coalesceKey, final Callable<V> job, final PollHandler<? super V> handler, Duration period) {
+            this.coalesceKey = coalesceKey;
+            this.job = job;
             this.handler = handler;
             this.pollPeriod = period;
             
@@ -71,6 +83,17 @@ public class Poller<V> {
         this.entity = entity;
     }
     
+    /**
+     * Sets whether the poll jobs block on I/O (e.g. remote calls), in which case their tasks are tagged
+     * {@link TaskTags#BLOCKING_IO_TASK}, so that (in bounded execution mode) they cannot starve other tasks.
+     */
+    public void setBlockingIo(boolean blockingIo) {
+        if (running) {
+            throw new IllegalStateException("Cannot change blocking-io after poller has started");
+        }
+        this.blockingIo = blockingIo;
+    }
+    
     /** Submits a one-off poll job; recommended that callers supply to-String so that task has a decent description */
     public void submit(Callable<?> job) {
         if (running) {
@@ -83,10 +106,20 @@ public class Poller<V> {
         scheduleAtFixedRate(job, handler, Duration.millis(period));
     }
     public void scheduleAtFixedRate(Callable<V> job, PollHandler<? super V> handler, Duration period) {
+        scheduleAtFixedRate(null, job, handler, period);
+    }
+    /**
+     * As {@link #scheduleAtFixedRate(Callable, PollHandler, Duration)}, but where the job may be coalesced
+     * with other pollers' jobs which have an equal key and period (if a shared {@link FeedScheduler} is in use),
+     * so that only one of the jobs is called and its result passed to all their handlers.
+     * 
+     * @param coalesceKey must identify everything polled by the job, or null if not to be coalesced
+     */
+    public void scheduleAtFixedRate(Object coalesceKey, Callable<V> job, PollHandler<? super V> handler, Duration period) {
         if (running) {
             throw new IllegalStateException("Cannot schedule additional tasks after poller has started");
         }
-        PollJob<V> foo = new PollJob<V>(job, handler, period);
+        PollJob<V> foo = new PollJob<V>(coalesceKey, job, handler, period);
         pollJobs.add(foo);
     }
 
@@ -104,16 +137,30 @@ public class Poller<V> {
         running = true;
         
         for (final Callable<?> oneOffJob : oneOffJobs) {
-            Task<?> task = Tasks.builder().dynamic(false).body((Callable<Object>) oneOffJob).name("Poll").description("One-time poll job "+oneOffJob).build();
-            oneOffTasks.add(((EntityInternal)entity).getExecutionContext().submit(task));
+            TaskBuilder<Object> taskBuilder = Tasks.builder().dynamic(false).body((Callable<Object>) oneOffJob).name("Poll").description("One-time poll job "+oneOffJob);
+            if (blockingIo) taskBuilder.tag(TaskTags.BLOCKING_IO_TASK);
+            oneOffTasks.add(((EntityInternal)entity).getExecutionContext().submit(taskBuilder.build()));
         }
         
+        FeedScheduler scheduler = getFeedScheduler();
         for (final PollJob<V> pollJob : pollJobs) {
             final String scheduleName = pollJob.handler.getDescription();
+            if (pollJob.pollPeriod.compareTo(Duration.ZERO) > 0 && scheduler != null) {
+                try {
+                    registrations.add(scheduler.schedule(pollJob.coalesceKey, pollJob.job, pollJob.handler, pollJob.pollPeriod));
+                    continue;
+                } catch (IllegalStateException e) {
+                    if (scheduler.isRunning()) throw e;
+                    // management context stopped concurrently; fall back to a task, as below
+                    scheduler = null;
+                }
+            }
             if (pollJob.pollPeriod.compareTo(Duration.ZERO) > 0) {
                 Callable<Task<?>> pollingTaskFactory = new Callable<Task<?>>() {
                     public Task<?> call() {
-                        DynamicSequentialTask<Void> task = new DynamicSequentialTask<Void>(MutableMap.of("displayName", scheduleName, "entity", entity), 
+                        MutableMap<String, Object> flags = MutableMap.<String, Object>of("displayName", scheduleName, "entity", entity);
+                        if (blockingIo) flags.put("tag", TaskTags.BLOCKING_IO_TASK);
+                        DynamicSequentialTask<Void> task = new DynamicSequentialTask<Void>(flags, 
                             new Callable<Void>() { public Void call() { pollJob.wrappedJob.run(); return null; } } );
                         BrooklynTaskTags.setTransient(task);
                         return task;
@@ -127,6 +174,23 @@ public class Poller<V> {
         }
     }
     
+    /**
+     * The management context's shared feed scheduler, or null if each poll job should have its own task:
+     * either there is no shared scheduler, or the management context is stopping, in which case the tasks
+     * are submitted as they always have been (and do not run once its execution manager is shut down).
+     */
+    private FeedScheduler getFeedScheduler() {
+        ManagementContextInternal mgmt = (ManagementContextInternal) ((EntityInternal)entity).getManagementContext();
+        if (!mgmt.isRunning()) return null;
+        try {
+            FeedScheduler result = mgmt.getFeedScheduler();
+            return (result != null && result.isRunning()) ? result : null;
+        } catch (IllegalStateException e) {
+            if (mgmt.isRunning()) throw e;
+            return null;
+        }
+    }
+    
     public void stop() {
         if (log.isDebugEnabled()) log.debug("Stopping poll for {} (using {})", new Object[] {entity, this});
         if (!running) { 
@@ -141,8 +205,12 @@ public class Poller<V> {
         for (ScheduledTask task : tasks) {
             task.cancel();
         }
+        for (FeedScheduler.Registration registration : registrations) {
+            registration.cancel();
+        }
         oneOffTasks.clear();
         tasks.clear();
+        registrations.clear();
     }
 
     public boolean isRunning() {
@@ -0,0 +1,92 @@
+package brooklyn.event.feed.http;
+
+import java.net.URI;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.http.HttpTool;
+
+/**
+ * Polls with conditional GETs: once a URI has returned an {@code ETag} or {@code Last-Modified} header,
+ * subsequent polls of it send {@code If-None-Match} or {@code If-Modified-Since}, and a 304 (Not Modified)
+ * response is returned as the previous value, without the server re-sending the body.
+ * <p>
+ * Headers explicitly configured for the poll take precedence. Endpoints which do not return
+ * validators are polled exactly as with {@link HttpTool#httpGet(HttpClient, URI, Map)}.
+ */
+class ConditionalHttpGet {
+
+    /** the last full response, and its validators */
+    private static class Validated {
+        final URI uri;
+        final HttpPollValue value;
+        final String etag;
+        final String lastModified;
+
+        Validated(URI uri, HttpPollValue value, String etag, String lastModified) {
+            this.uri = uri;
+            this.value = value;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private volatile Validated validated;
+
+    public HttpPollValue get(HttpClient httpClient, URI uri, Map<String,String> headers) {
+        HttpGet req = new HttpTool.HttpGetBuilder(uri).headers(headers).build();
+
+        Validated previous = validated;
+        boolean conditional = false;
+        if (previous != null && previous.uri.equals(uri)) {
+            if (previous.etag != null && !req.containsHeader(HttpHeaders.IF_NONE_MATCH)) {
+                req.addHeader(HttpHeaders.IF_NONE_MATCH, previous.etag);
+                conditional = true;
+            }
+            if (previous.lastModified != null && !req.containsHeader(HttpHeaders.IF_MODIFIED_SINCE)) {
+                req.addHeader(HttpHeaders.IF_MODIFIED_SINCE, previous.lastModified);
+                conditional = true;
+            }
+        }
+
+        long startTime = System.currentTimeMillis();
+        try {
+            HttpResponse response = httpClient.execute(req);
+            try {
+                int code = response.getStatusLine().getStatusCode();
+                if (conditional && code == HttpStatus.SC_NOT_MODIFIED) {
+                    long latency = System.currentTimeMillis() - startTime;
+                    HttpPollValue last = previous.value;
+                    return new HttpPollValue(last.getResponseCode(), last.getHeaderLists(), last.getContent(), startTime, latency, latency);
+                }
+
+                HttpPollValue result = new HttpPollValue(response, startTime);
+                String etag = headerValue(response, HttpHeaders.ETAG);
+                String lastModified = headerValue(response, HttpHeaders.LAST_MODIFIED);
+                if (code == HttpStatus.SC_OK && (etag != null || lastModified != null)) {
+                    validated = new Validated(uri, result, etag, lastModified);
+                } else {
+                    validated = null;
+                }
+                return result;
+            } finally {
+                EntityUtils.consume(response.getEntity());
+            }
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    private static String headerValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return (header == null) ? null : header.getValue();
+    }
+}
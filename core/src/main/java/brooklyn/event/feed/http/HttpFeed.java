@@ -4,12 +4,15 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.net.URI;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nullable;
+
 import org.apache.http.auth.Credentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.HttpClient;
@@ -17,11 +20,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
 import brooklyn.event.feed.Poller;
+import brooklyn.management.internal.ManagementContextInternal;
 import brooklyn.util.http.HttpTool;
 import brooklyn.util.http.HttpTool.HttpClientBuilder;
 import brooklyn.util.time.Duration;
@@ -183,17 +188,23 @@ public class HttpFeed extends AbstractFeed {
         }
     }
     
+    /** 
+     * Identifies a poll, both to group the polls of a feed and to coalesce polls across feeds: so polls of a
+     * fixed URI are equal if the URIs are, but polls using a URI provider only if the provider is the same.
+     */
     private static class HttpPollIdentifier {
         final String method;
         final Supplier<URI> uriProvider;
+        final URI fixedUri;
         final Map<String,String> headers;
         final byte[] body;
         final Optional<Credentials> credentials;
 
-        private HttpPollIdentifier(String method, Supplier<URI> uriProvider, Map<String, String> headers, byte[] body,
+        private HttpPollIdentifier(String method, Supplier<URI> uriProvider, @Nullable URI fixedUri, Map<String, String> headers, byte[] body,
                                    Optional<Credentials> credentials) {
             this.method = checkNotNull(method, "method").toLowerCase();
             this.uriProvider = checkNotNull(uriProvider, "uriProvider");
+            this.fixedUri = fixedUri;
             this.headers = checkNotNull(headers, "headers");
             this.body = body;
             this.credentials = checkNotNull(credentials, "credentials");
@@ -208,7 +219,7 @@ public class HttpFeed extends AbstractFeed {
 
         @Override
         public int hashCode() {
-            return Objects.hashCode(method, uriProvider, headers, body, credentials);
+            return Objects.hashCode(method, (fixedUri != null) ? fixedUri : uriProvider, headers, Arrays.hashCode(body), credentials);
         }
         
         @Override
@@ -218,9 +229,9 @@ public class HttpFeed extends AbstractFeed {
             }
             HttpPollIdentifier o = (HttpPollIdentifier) other;
             return Objects.equal(method, o.method) &&
-                    Objects.equal(uriProvider, o.uriProvider) &&
+                    ((fixedUri != null) ? fixedUri.equals(o.fixedUri) : (o.fixedUri == null && uriProvider == o.uriProvider)) &&
                     Objects.equal(headers, o.headers) &&
-                    Objects.equal(body, o.body) &&
+                    Arrays.equals(body, o.body) &&
                     Objects.equal(credentials, o.credentials);
         }
     }
@@ -230,6 +241,7 @@ public class HttpFeed extends AbstractFeed {
     
     protected HttpFeed(Builder builder) {
         super(builder.entity);
+        poller.setBlockingIo(true);
         Map<String,String> baseHeaders = ImmutableMap.copyOf(checkNotNull(builder.headers, "headers"));
         
         for (HttpPollConfig<?> config : builder.polls) {
@@ -243,23 +255,25 @@ public class HttpFeed extends AbstractFeed {
             Optional<Credentials> credentials = Optional.fromNullable(builder.credentials);
             
             Supplier<URI> baseUriProvider = builder.baseUriProvider;
+            URI fixedUri = null;
             if (builder.baseUri!=null) {
                 if (baseUriProvider!=null)
                     throw new IllegalStateException("Not permitted to supply baseUri and baseUriProvider");
                 Map<String,String> baseUriVars = ImmutableMap.copyOf(checkNotNull(builder.baseUriVars, "baseUriVars"));
-                URI uri = config.buildUri(builder.baseUri, baseUriVars);
-                baseUriProvider = Suppliers.ofInstance(uri);
+                fixedUri = config.buildUri(builder.baseUri, baseUriVars);
+                baseUriProvider = Suppliers.ofInstance(fixedUri);
             } else if (!builder.baseUriVars.isEmpty()) {
                 throw new IllegalStateException("Not permitted to supply URI vars when using a URI provider");
             }
             checkNotNull(baseUriProvider);
 
-            polls.put(new HttpPollIdentifier(method, baseUriProvider, headers, body, credentials), configCopy);
+            polls.put(new HttpPollIdentifier(method, baseUriProvider, fixedUri, headers, body, credentials), configCopy);
         }
     }
 
     @Override
     protected void preStart() {
+        final HttpPollConnections connections = ((ManagementContextInternal)((EntityInternal)entity).getManagementContext()).getHttpPollConnections();
         for (final HttpPollIdentifier pollInfo : polls.keySet()) {
             // Though HttpClients are thread safe and can take advantage of connection pooling
             // and authentication caching, the httpcomponents documentation says:
@@ -267,7 +281,7 @@ public class HttpFeed extends AbstractFeed {
             //     threads of execution, it is highly recommended that each thread maintains its
             //     own dedicated instance of HttpContext.
             //  http://hc.apache.org/httpcomponents-client-ga/tutorial/html/connmgmt.html
-            final HttpClient httpClient = createHttpClient(pollInfo);
+            final HttpClient httpClient = createHttpClient(pollInfo, connections);
 
             Set<HttpPollConfig<?>> configs = polls.get(pollInfo);
             long minPeriod = Integer.MAX_VALUE;
@@ -281,40 +295,50 @@ public class HttpFeed extends AbstractFeed {
             Callable<HttpPollValue> pollJob;
             
             if (pollInfo.method.equals("get")) {
+                final ConditionalHttpGet conditionalGet = new ConditionalHttpGet();
                 pollJob = new Callable<HttpPollValue>() {
                     public HttpPollValue call() throws Exception {
                         if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
-                        return HttpTool.httpGet(httpClient, pollInfo.uriProvider.get(), pollInfo.headers);
+                        connections.closeIdleConnectionsIfDue();
+                        return conditionalGet.get(httpClient, pollInfo.uriProvider.get(), pollInfo.headers);
                     }};
             } else if (pollInfo.method.equals("post")) {
                 pollJob = new Callable<HttpPollValue>() {
                     public HttpPollValue call() throws Exception {
                         if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
+                        connections.closeIdleConnectionsIfDue();
                         return HttpTool.httpPost(httpClient, pollInfo.uriProvider.get(), pollInfo.headers, pollInfo.body);
                     }};
             } else if (pollInfo.method.equals("head")) {
                 pollJob = new Callable<HttpPollValue>() {
                     public HttpPollValue call() throws Exception {
                         if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
+                        connections.closeIdleConnectionsIfDue();
                         return HttpTool.httpHead(httpClient, pollInfo.uriProvider.get(), pollInfo.headers);
                     }};
             } else {
                 throw new IllegalStateException("Unexpected http method: "+pollInfo.method);
             }
             
-            getPoller().scheduleAtFixedRate(pollJob, new DelegatingPollHandler<HttpPollValue>(handlers), minPeriod);
+            // identical requests (e.g. from several entities to one shared endpoint) can be coalesced
+            getPoller().scheduleAtFixedRate(pollInfo, pollJob, new DelegatingPollHandler<HttpPollValue>(handlers), Duration.millis(minPeriod));
         }
     }
 
     // TODO Should we really trustAll for https? Make configurable?
-    private HttpClient createHttpClient(HttpPollIdentifier pollIdentifier) {
+    private HttpClient createHttpClient(HttpPollIdentifier pollIdentifier, HttpPollConnections connections) {
         URI uri = pollIdentifier.uriProvider.get();
+        // connections are pooled and kept alive across all feeds of the management context; the pool's https scheme already trusts all,
+        // so https(false) stops the builder registering a scheme of its own on the shared pool
         HttpClientBuilder builder = HttpTool.httpClientBuilder()
-                .trustAll()
+                .clientConnectionManager(connections.connectionManager())
+                .https(false)
                 .laxRedirect(true);
         if (uri != null) builder.uri(uri);
         if (uri != null) builder.credential(pollIdentifier.credentials);
-        return builder.build();
+        HttpClient result = builder.build();
+        connections.configure(result);
+        return result;
     }
 
     @SuppressWarnings("unchecked")
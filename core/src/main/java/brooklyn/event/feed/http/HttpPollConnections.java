@@ -0,0 +1,103 @@
+package brooklyn.event.feed.http;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.http.HttpTool;
+import brooklyn.util.time.Duration;
+
+/**
+ * The connections used by the {@link HttpFeed}s of a management context: a pool shared by all its feeds,
+ * in which connections are kept alive (as allowed by each server) and re-used for subsequent polls
+ * of the same host, rather than each feed having its own client and connections.
+ * <p>
+ * The limits are set by {@link brooklyn.config.BrooklynServerConfig#HTTP_POLL_MAX_CONNECTIONS} etc;
+ * the pool is shut down when the management context terminates (after which polls fail).
+ * <p>
+ * The pool's https scheme trusts all certificates and host names, as {@link HttpFeed} always has.
+ */
+public class HttpPollConnections {
+
+    /** how long a connection may be idle before it is closed (if the server has not closed it already) */
+    public static final long MAX_IDLE_MILLIS = 30*1000;
+
+    private final PoolingClientConnectionManager connectionManager;
+    private final Duration connectionRequestTimeout;
+    private final AtomicLong lastIdleCheck = new AtomicLong(System.currentTimeMillis());
+    private volatile boolean shutdown;
+
+    /**
+     * @param maxConnections maximum concurrent connections overall
+     * @param maxConnectionsPerRoute maximum concurrent connections to any one host (and port)
+     * @param connectionRequestTimeout how long a poll waits for a connection when at a limit, before failing
+     */
+    public HttpPollConnections(int maxConnections, int maxConnectionsPerRoute, Duration connectionRequestTimeout) {
+        this.connectionRequestTimeout = checkNotNull(connectionRequestTimeout, "connectionRequestTimeout");
+        SchemeRegistry schemes = SchemeRegistryFactory.createDefault();
+        try {
+            schemes.register(new Scheme("https", 443, new SSLSocketFactory(new HttpTool.TrustAllStrategy(), SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER)));
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+        connectionManager = new PoolingClientConnectionManager(schemes);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+    }
+
+    /** the shared connection manager; callers must not shut it down */
+    public ClientConnectionManager connectionManager() {
+        return connectionManager;
+    }
+
+    public int getMaxConnections() {
+        return connectionManager.getMaxTotal();
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return connectionManager.getDefaultMaxPerRoute();
+    }
+
+    public Duration getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    /** sets the given client (using {@link #connectionManager()}) to wait at most the connection request timeout for a connection */
+    public void configure(HttpClient client) {
+        HttpClientParams.setConnectionManagerTimeout(client.getParams(), connectionRequestTimeout.toMilliseconds());
+    }
+
+    /**
+     * Closes connections which have been idle for longer than {@link #MAX_IDLE_MILLIS}, if not checked
+     * within that time; called on each poll, as the pool has no thread of its own to do so.
+     */
+    void closeIdleConnectionsIfDue() {
+        long now = System.currentTimeMillis();
+        long last = lastIdleCheck.get();
+        if (now - last > MAX_IDLE_MILLIS && lastIdleCheck.compareAndSet(last, now)) {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(MAX_IDLE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** closes all connections; subsequent polls fail */
+    public void shutdown() {
+        shutdown = true;
+        connectionManager.shutdown();
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+}
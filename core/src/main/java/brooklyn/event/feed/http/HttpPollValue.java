@@ -9,7 +9,9 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,14 +43,14 @@ public class HttpPollValue {
         this.startTime = startTime; 
         
         try {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            response.getEntity().getContentLength();
             durationMillisOfFirstResponse = System.currentTimeMillis() - startTime;
             
-            ByteStreams.copy(response.getEntity().getContent(), out);
-            content = out.toByteArray();
+            // read straight into an array of the content length, where known, rather than copying via a growing buffer;
+            // responses without a body (e.g. to HEAD, or 304 Not Modified) have no entity
+            HttpEntity entity = response.getEntity();
+            byte[] entityContent = (entity == null) ? null : EntityUtils.toByteArray(entity);
+            content = (entityContent == null) ? new byte[0] : entityContent;
             
-            response.getEntity().getContentLength();
             durationMillisOfFullContent = System.currentTimeMillis() - startTime;
             if (log.isTraceEnabled())
                 log.trace("HttpPollValue latency "+Time.makeTimeStringRounded(durationMillisOfFirstResponse)+" / "+Time.makeTimeStringRounded(durationMillisOfFullContent)+", content size "+content.length);
@@ -61,7 +63,7 @@ public class HttpPollValue {
             long startTime, long durationMillisOfFirstResponse, long durationMillisOfFullContent) {
         this.response = null;
         this.responseCode = responseCode;
-        this.headerLists.putAll(headers);
+        this.headerLists = Collections.unmodifiableMap(Maps.newLinkedHashMap(headers));
         this.content = content;
         this.startTime = startTime;
         this.durationMillisOfFirstResponse = durationMillisOfFirstResponse;
@@ -79,7 +81,7 @@ public class HttpPollValue {
 
     public String getReasonPhrase() {
         synchronized (mutex) {
-            if (reasonPhrase == null) {
+            if (reasonPhrase == null && response != null) {
                 reasonPhrase = response.getStatusLine().getReasonPhrase();
             }
         }
@@ -158,6 +158,7 @@ public class ShellFeed extends AbstractFeed {
     
     protected ShellFeed(Builder builder) {
         super(builder.entity);
+        poller.setBlockingIo(true);
         
         for (ShellPollConfig<?> config : builder.polls) {
             ShellPollConfig<?> configCopy = new ShellPollConfig(config);
@@ -29,6 +29,7 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 
@@ -81,6 +82,7 @@ public class SshFeed extends AbstractFeed {
         private TimeUnit periodUnits = TimeUnit.MILLISECONDS;
         private List<SshPollConfig<?>> polls = Lists.newArrayList();
         private boolean execAsCommand = false;
+        private boolean batchPolls = false;
         private volatile boolean built;
         
         public Builder entity(EntityLocal val) {
@@ -114,6 +116,14 @@ public class SshFeed extends AbstractFeed {
             execAsCommand = false;
             return this;
         }
+        /**
+         * Whether to run all the commands polled with the same period in one ssh round trip, as a single 
+         * command (so without uploading a script), each in its own sub-shell and with its output delimited.
+         */
+        public Builder batchPolls(boolean val) {
+            batchPolls = val;
+            return this;
+        }
         public SshFeed build() {
             built = true;
             SshFeed result = new SshFeed(this);
@@ -153,6 +163,7 @@ public class SshFeed extends AbstractFeed {
     
     private final SshMachineLocation machine;
     private final boolean execAsCommand;
+    private final boolean batchPolls;
     
     // Treat as immutable once built
     private final SetMultimap<SshPollIdentifier, SshPollConfig<?>> polls = HashMultimap.<SshPollIdentifier,SshPollConfig<?>>create();
@@ -167,8 +178,10 @@ public class SshFeed extends AbstractFeed {
 
     protected SshFeed(Builder builder) {
         super(builder.entity);
+        poller.setBlockingIo(true);
         machine = checkNotNull(builder.machine != null ? builder.machine : getMachineOfEntity(builder.entity), "machine");
         execAsCommand = builder.execAsCommand;
+        batchPolls = builder.batchPolls;
         
         for (SshPollConfig<?> config : builder.polls) {
             SshPollConfig<?> configCopy = new SshPollConfig(config);
@@ -181,6 +194,10 @@ public class SshFeed extends AbstractFeed {
 
     @Override
     protected void preStart() {
+        if (batchPolls) {
+            registerBatchedPollers();
+            return;
+        }
         for (final SshPollIdentifier pollInfo : polls.keySet()) {
             Set<SshPollConfig<?>> configs = polls.get(pollInfo);
             long minPeriod = Integer.MAX_VALUE;
@@ -201,6 +218,36 @@ public class SshFeed extends AbstractFeed {
         }
     }
     
+    /**
+     * Registers to poll all the commands with one job for each poll period, which runs them in one ssh round trip.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void registerBatchedPollers() {
+        Map<Long, SshPollBatch> batchesByPeriod = Maps.newLinkedHashMap();
+        
+        for (SshPollIdentifier pollInfo : polls.keySet()) {
+            Set<SshPollConfig<?>> configs = polls.get(pollInfo);
+            long minPeriod = Integer.MAX_VALUE;
+            Set<AttributePollHandler<SshPollValue>> handlers = Sets.newLinkedHashSet();
+
+            for (SshPollConfig<?> config : configs) {
+                handlers.add(new AttributePollHandler<SshPollValue>(config, entity, this));
+                if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
+            }
+            
+            SshPollBatch batch = batchesByPeriod.get(minPeriod);
+            if (batch == null) {
+                batch = new SshPollBatch(machine);
+                batchesByPeriod.put(minPeriod, batch);
+            }
+            batch.add(pollInfo.command, pollInfo.env, new DelegatingPollHandler(handlers));
+        }
+        
+        for (Map.Entry<Long, SshPollBatch> entry : batchesByPeriod.entrySet()) {
+            ((Poller) poller).scheduleAtFixedRate(entry.getValue(), entry.getValue().handler(), entry.getKey());
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private Poller<SshPollValue> getPoller() {
         return (Poller<SshPollValue>) poller;
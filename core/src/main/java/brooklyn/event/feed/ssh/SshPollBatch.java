@@ -0,0 +1,189 @@
+package brooklyn.event.feed.ssh;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.event.feed.PollHandler;
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.text.Identifiers;
+import brooklyn.util.text.StringEscapes.BashStringEscapes;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Polls several commands on a machine in one ssh round trip: the commands are run in turn, each in
+ * its own sub-shell with its own environment, as a single command over the machine's pooled ssh
+ * connection (so with no script upload), and their stdout and stderr are delimited by markers.
+ * The output of each command (or the failure to get it) is passed to that command's handler,
+ * as it would be when polling the command on its own.
+ */
+class SshPollBatch implements Callable<List<SshPollValue>> {
+
+    private static final Logger log = LoggerFactory.getLogger(SshPollBatch.class);
+
+    private final SshMachineLocation machine;
+    private final List<String> commands = Lists.newArrayList();
+    private final List<Map<String, String>> envs = Lists.newArrayList();
+    private final List<PollHandler<? super SshPollValue>> handlers = Lists.newArrayList();
+    /** delimits the output of each command; random so that it will not appear in the output itself */
+    private final String marker = "BROOKLYN-SSHFEED-"+Identifiers.makeRandomId(8);
+
+    SshPollBatch(SshMachineLocation machine) {
+        this.machine = machine;
+    }
+
+    void add(String command, Map<String, String> env, PollHandler<? super SshPollValue> handler) {
+        commands.add(command);
+        envs.add(env);
+        handlers.add(handler);
+    }
+
+    String getMarker() {
+        return marker;
+    }
+
+    /** the command to run all the polled commands */
+    String toCommand() {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < commands.size(); i++) {
+            result.append("echo ").append(marker).append(" ").append(i).append(" begin; ")
+                    .append("echo ").append(marker).append(" ").append(i).append(" begin >&2\n");
+            result.append("(\n");
+            for (Map.Entry<String, String> entry : envs.get(i).entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null) continue;
+                result.append("export ").append(entry.getKey()).append("=").append(BashStringEscapes.wrapBash(entry.getValue())).append("\n");
+            }
+            result.append(commands.get(i)).append("\n");
+            result.append(")\n");
+            // echo newlines first, in case the command's output does not end with one
+            result.append("BROOKLYN_SSHFEED_EXIT=$?; ")
+                    .append("echo; echo ").append(marker).append(" ").append(i).append(" exit $BROOKLYN_SSHFEED_EXIT; ")
+                    .append("echo >&2; echo ").append(marker).append(" ").append(i).append(" end >&2\n");
+        }
+        return result.toString();
+    }
+
+    /** @return the value of each command, in order; null if its output could not be found */
+    @Override
+    public List<SshPollValue> call() {
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        if (log.isTraceEnabled()) log.trace("Ssh polling for {}, executing batch of {} commands", machine, commands.size());
+
+        machine.execCommands(MutableMap.<String,Object>of("out", stdout, "err", stderr), "ssh-feed", ImmutableList.of(toCommand()));
+        return parse(new String(stdout.toByteArray()), new String(stderr.toByteArray()));
+    }
+
+    /**
+     * Also accepts the output of a session with a pty (e.g. if the machine is configured with
+     * {@link SshMachineLocation#ALLOCATE_PTY}), where lines end with \r\n and stderr is merged into stdout,
+     * so the stderr begin marker follows the stdout one; the stderr of each command is then empty.
+     */
+    List<SshPollValue> parse(String stdout, String stderr) {
+        stdout = stdout.replace("\r\n", "\n");
+        stderr = stderr.replace("\r\n", "\n");
+        List<SshPollValue> result = Lists.newArrayList();
+        for (int i = 0; i < commands.size(); i++) {
+            String begin = marker+" "+i+" begin\n";
+            // end markers start with the newline echoed after each command, which is not part of its output
+            String[] out = extract(stdout, begin, "\n"+marker+" "+i+" exit ");
+            String[] err = extract(stderr, begin, "\n"+marker+" "+i+" end");
+            if (out != null && out[0].startsWith(begin)) {
+                // stderr merged into stdout
+                out[0] = out[0].substring(begin.length());
+            }
+            Integer exitStatus = null;
+            if (out != null) {
+                int eol = out[1].indexOf('\n');
+                try {
+                    exitStatus = Integer.parseInt((eol >= 0 ? out[1].substring(0, eol) : out[1]).trim());
+                } catch (NumberFormatException e) {
+                    // treat as missing output
+                }
+            }
+            if (exitStatus == null) {
+                result.add(null);
+            } else {
+                result.add(new SshPollValue(machine, exitStatus, out[0], (err != null) ? err[0] : ""));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the text between the begin and end markers, and the text after the end marker;
+     *         or null if the markers are not found
+     */
+    private static String[] extract(String output, String begin, String end) {
+        int start = output.indexOf(begin);
+        if (start < 0) return null;
+        start += begin.length();
+        int finish = output.indexOf(end, start);
+        if (finish < 0) return null;
+        return new String[] {output.substring(start, finish), output.substring(finish + end.length())};
+    }
+
+    /** the handler for the whole batch, passing each command's value or failure to its handler */
+    PollHandler<List<SshPollValue>> handler() {
+        return new PollHandler<List<SshPollValue>>() {
+            @Override
+            public boolean checkSuccess(List<SshPollValue> val) {
+                return true;
+            }
+
+            @Override
+            public void onSuccess(List<SshPollValue> val) {
+                for (int i = 0; i < handlers.size(); i++) {
+                    SshPollValue value = (i < val.size()) ? val.get(i) : null;
+                    handle(handlers.get(i), value, commands.get(i));
+                }
+            }
+
+            @Override
+            public void onFailure(List<SshPollValue> val) {
+                // checkSuccess is always true
+            }
+
+            @Override
+            public void onException(Exception exception) {
+                for (PollHandler<? super SshPollValue> handler : handlers) {
+                    handler.onException(exception);
+                }
+            }
+
+            @Override
+            public String getDescription() {
+                return "ssh commands "+commands+" on "+machine;
+            }
+        };
+    }
+
+    private void handle(PollHandler<? super SshPollValue> handler, SshPollValue value, String command) {
+        if (value == null) {
+            handler.onException(new IllegalStateException("No output from command on "+machine+" (in batch of "+commands.size()+"): "+command));
+            return;
+        }
+        try {
+            if (handler.checkSuccess(value)) {
+                handler.onSuccess(value);
+            } else {
+                handler.onFailure(value);
+            }
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) log.debug("Handler "+handler+" failed for "+value, e);
+            handler.onException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SshPollBatch["+machine+", "+commands+"]";
+    }
+}
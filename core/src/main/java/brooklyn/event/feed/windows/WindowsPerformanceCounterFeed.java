@@ -132,6 +132,7 @@ public class WindowsPerformanceCounterFeed extends AbstractFeed {
 
     protected WindowsPerformanceCounterFeed(Builder builder) {
         super(checkNotNull(builder.entity, "builder.entity"));
+        poller.setBlockingIo(true);
         entity = builder.entity;
         period = builder.period;
         periodUnits = builder.periodUnits;
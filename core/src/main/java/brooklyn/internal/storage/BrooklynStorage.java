@@ -84,4 +84,10 @@ public interface BrooklynStorage {
     void terminate();
     
     Map<String, Object> getStorageMetrics();
+
+    /**
+     * Whether the data is held only within this JVM, rather than shared (e.g. in a distributed datagrid);
+     * if so, a map's contents are only changed through the map returned by {@link #getMap(String)}.
+     */
+    boolean isLocal();
 }
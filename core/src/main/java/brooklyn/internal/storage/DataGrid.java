@@ -23,4 +23,10 @@ public interface DataGrid {
     void terminate();
     
     Map<String, Object> getDatagridMetrics();
+
+    /**
+     * Whether the maps are held only within this JVM, so are only changed through this datagrid
+     * (and callers may keep their own copy of the contents).
+     */
+    boolean isLocal();
 }
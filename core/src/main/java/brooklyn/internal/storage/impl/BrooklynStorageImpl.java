@@ -106,4 +106,9 @@ public class BrooklynStorageImpl implements BrooklynStorage {
                 "refsMapSize", ""+refsMap.size(),
                 "listsMapSize", ""+listsMap.size());
     }
+
+    @Override
+    public boolean isLocal() {
+        return datagrid.isLocal();
+    }
 }
@@ -65,4 +65,9 @@ public class InmemoryDatagrid implements DataGrid {
             return ImmutableMap.<String, Object>of("size", maps.size(), "createCount", creationCounter.get());
         }
     }
+
+    @Override
+    public boolean isLocal() {
+        return true;
+    }
 }
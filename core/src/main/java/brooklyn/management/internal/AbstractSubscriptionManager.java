@@ -71,7 +71,7 @@ public abstract class AbstractSubscriptionManager implements SubscriptionManager
      * interface:
      * <ul>
      * <li>subscriberExecutionManagerTag - a tag to pass to execution manager (without setting any execution semantics / TaskPreprocessor);
-     *      if not supplied and there is a subscriber, this will be inferred from the subscriber and set up with SingleThreadedScheduler
+     *      if not supplied and there is a subscriber, this will be inferred from the subscriber and set up with SerialTaskScheduler
      * <li>eventFilter - a Predicate&lt;SensorEvent&gt; instance to filter what events are delivered
      * </ul>
      * 
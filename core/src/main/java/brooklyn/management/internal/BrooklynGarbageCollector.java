@@ -1,13 +1,24 @@
 package brooklyn.management.internal;
 
-import java.util.Collections;
-import java.util.Comparator;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,10 +37,6 @@ import brooklyn.util.task.BasicExecutionManager;
 import brooklyn.util.task.ExecutionListener;
 import brooklyn.util.text.Strings;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
-
 /**
  * Deletes record of old tasks, to prevent space leaks and the eating up of more and more memory.
  * 
@@ -41,10 +48,18 @@ import com.google.common.collect.Lists;
  *   <li>Max task age - the time after which a completed task will be automatically deleted
  *       (i.e. any task completed more than maxTaskAge+period milliseconds ago will definitely 
  *       be deleted.
+ *   <li>Max tasks in memory - an optional cap on the total number of tasks; completed tasks are 
+ *       deleted oldest first, at submission time, when it is exceeded 
  * </ul>
  * 
  * The default is to check with a period of one minute, to keep at most 100 tasks per tag, and to
  * delete old completed tasks after one day.
+ * <p>
+ * Collection is incremental: completed tasks are handed to the collector as they finish, and are
+ * recorded in an expiry queue (in order of end time) and in a queue per tag (with a count of the tasks
+ * in it not yet deleted, for the per-tag cap). Each check works through these in slices of at most
+ * {@link #GC_SLICE_SIZE} tasks, so its cost is proportional to the number of tasks completed or expired
+ * since the last check, rather than to the number of tasks in memory.
  * 
  * @author aled
  */
@@ -68,6 +83,43 @@ public class BrooklynGarbageCollector {
             "the number of milliseconds after which a completed task will be automatically deleted", 
             TimeUnit.DAYS.toMillis(1));
     
+    public static final ConfigKey<Integer> MAX_TASKS_IN_MEMORY = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.gc.maxTasksInMemory", 
+            "the maximum number of tasks to be kept in memory across all tags; when exceeded, completed tasks are deleted " +
+            "(oldest first) as new tasks are submitted, rather than waiting for the periodic check (default no limit)", 
+            null);
+    
+    public static final ConfigKey<Integer> GC_SLICE_SIZE = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.gc.sliceSize", 
+            "the maximum number of completed tasks to process in one go, before yielding the gc thread", 
+            1000);
+    
+    /** record of a completed (top-level) task, without a reference to the task itself */
+    private static class CompletedTask {
+        final String id;
+        final long endTimeUtc;
+        final List<TagQueue> queues = new ArrayList<TagQueue>(2);
+        boolean deleted;
+        CompletedTask(String id, long endTimeUtc) {
+            this.id = id;
+            this.endTimeUtc = endTimeUtc;
+        }
+    }
+    
+    /**
+     * The completed tasks with a tag, in order of end time. Tasks deleted through another tag (or by age)
+     * stay in the queue until they reach its head, or until it is compacted, but are not counted as live.
+     */
+    private static class TagQueue {
+        final Object tag;
+        final Deque<CompletedTask> tasks = new ArrayDeque<CompletedTask>();
+        int live;
+        boolean overCap;
+        TagQueue(Object tag) {
+            this.tag = tag;
+        }
+    }
+    
     private final BasicExecutionManager executionManager;
     private final BrooklynStorage storage;
     private final ScheduledExecutorService executor;
@@ -75,8 +127,42 @@ public class BrooklynGarbageCollector {
     private final int maxTasksPerTag;
     private final long maxTaskAge;
     private final boolean doSystemGc;
+    private final int sliceSize;
     private volatile boolean running = true;
 
+    /** tasks completed since last processed by the gc thread */
+    private final Queue<Task<?>> newlyCompleted = new ConcurrentLinkedQueue<Task<?>>();
+    
+    // the below are only accessed from the gc thread (apart from removing tag queues on unmanage)
+    /** completed tasks in order of end time, for expiry by age */
+    private final Deque<CompletedTask> expiryQueue = new ArrayDeque<CompletedTask>();
+    /** per tag, the completed tasks in order of end time */
+    private final ConcurrentMap<Object, TagQueue> completedByTag = new ConcurrentHashMap<Object, TagQueue>();
+    /** tag queues still over the per-tag cap when a slice ran out of budget */
+    private final Queue<TagQueue> overCapQueues = new ArrayDeque<TagQueue>();
+    
+    private final AtomicLong tasksReclaimed = new AtomicLong();
+    private long lastRateSampleTime = System.currentTimeMillis();
+    private long lastRateSampleCount = 0;
+    private volatile double tasksReclaimedPerSecond = 0;
+    
+    /** whether a follow-on slice is queued on the gc thread; only accessed from that thread */
+    private boolean sliceQueued = false;
+    
+    private final Runnable gcSlice = new Runnable() {
+        @Override public void run() {
+            try {
+                sliceQueued = gcTasksSlice() && running;
+                if (sliceQueued) executor.execute(this);
+            } catch (RuntimeInterruptedException e) {
+                throw e; // graceful shutdown
+            } catch (Throwable t) {
+                LOG.warn("Error during management-context GC", t);
+                throw Exceptions.propagate(t);
+            }
+        }
+    };
+
     
     public BrooklynGarbageCollector(BrooklynProperties brooklynProperties, BasicExecutionManager executionManager, BrooklynStorage storage) {
         this.executionManager = executionManager;
@@ -86,6 +172,10 @@ public class BrooklynGarbageCollector {
         maxTasksPerTag = brooklynProperties.getConfig(MAX_TASKS_PER_TAG);
         maxTaskAge = brooklynProperties.getConfig(MAX_TASK_AGE);
         doSystemGc = brooklynProperties.getConfig(DO_SYSTEM_GC);
+        sliceSize = Math.max(1, brooklynProperties.getConfig(GC_SLICE_SIZE));
+        
+        Integer maxTasksInMemory = brooklynProperties.getConfig(MAX_TASKS_IN_MEMORY);
+        if (maxTasksInMemory != null) executionManager.setMaxTasksInMemory(maxTasksInMemory);
         
         executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
                 @Override public Thread newThread(Runnable r) {
@@ -102,7 +192,11 @@ public class BrooklynGarbageCollector {
                 @Override public void run() {
                     try {
                         logUsage("brooklyn gc (before)");
-                        gcTasks();
+                        if (!sliceQueued && gcTasksSlice()) {
+                            sliceQueued = true;
+                            executor.execute(gcSlice);
+                        }
+                        updateReclaimRate();
                         logUsage("brooklyn gc (after)");
                         
                         if (doSystemGc) {
@@ -136,10 +230,49 @@ public class BrooklynGarbageCollector {
                 executionManager.getNumActiveTasks()+" active, "+
                 executionManager.getNumInMemoryTasks()+" in memory "+
                 "("+executionManager.getNumIncompleteTasks()+" incomplete and "+
-                executionManager.getTotalTasksSubmitted()+" total submitted)"
+                executionManager.getTotalTasksSubmitted()+" total submitted); "+
+                "gc: "+tasksReclaimed.get()+" tasks reclaimed ("+String.format("%.1f", tasksReclaimedPerSecond)+"/s), "+
+                (getRetainedHeapBytes() >= 0 ? Strings.makeSizeString(getRetainedHeapBytes()) : "unknown")+" retained after last jvm collection"
                 );
     }
     
+    /** total number of tasks deleted by this collector (by age, per-tag cap, or as transient) */
+    public long getTotalTasksReclaimed() {
+        return tasksReclaimed.get();
+    }
+    
+    /** the rate at which tasks were deleted, per second, between the last two periodic checks */
+    public double getTasksReclaimedPerSecond() {
+        return tasksReclaimedPerSecond;
+    }
+    
+    /**
+     * Heap in use immediately after the most recent JVM garbage collection (summed over heap pools),
+     * i.e. the memory retained by live objects including the tasks in memory; or -1 if not available.
+     */
+    public long getRetainedHeapBytes() {
+        long result = 0;
+        boolean found = false;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) continue;
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage == null) continue;
+            result += usage.getUsed();
+            found = true;
+        }
+        return found ? result : -1;
+    }
+    
+    private void updateReclaimRate() {
+        long now = System.currentTimeMillis();
+        long count = tasksReclaimed.get();
+        if (now > lastRateSampleTime) {
+            tasksReclaimedPerSecond = (count - lastRateSampleCount) * 1000.0 / (now - lastRateSampleTime);
+        }
+        lastRateSampleTime = now;
+        lastRateSampleCount = count;
+    }
+    
     public void shutdownNow() {
         running = false;
         if (executor != null) executor.shutdownNow();
@@ -151,15 +284,24 @@ public class BrooklynGarbageCollector {
         executionManager.deleteTag(BrooklynTaskTags.tagForContextEntity(entity));
         executionManager.deleteTag(BrooklynTaskTags.tagForCallerEntity(entity));
         executionManager.deleteTag(BrooklynTaskTags.tagForTargetEntity(entity));
+        completedByTag.remove(entity);
+        completedByTag.remove(BrooklynTaskTags.tagForContextEntity(entity));
+        completedByTag.remove(BrooklynTaskTags.tagForCallerEntity(entity));
+        completedByTag.remove(BrooklynTaskTags.tagForTargetEntity(entity));
     }
     
     public void onUnmanaged(Location loc) {
-        // No-op currently; no tasks are tracked through their location
+        // No tasks are deleted through their location; but stop tracking any tagged with it
+        completedByTag.remove(loc);
     }
     
     public void onTaskDone(Task<?> task) {
         if (shouldDeleteTask(task)) {
             executionManager.deleteTask(task);
+            tasksReclaimed.incrementAndGet();
+        } else if (!task.getTags().contains(ManagementContextInternal.SUB_TASK_TAG)) {
+            // sub-tasks are deleted along with their parent
+            newlyCompleted.add(task);
         }
     }
     
@@ -177,53 +319,136 @@ public class BrooklynGarbageCollector {
     }
 
     /**
-     * Deletes old tasks. The age/number of tasks to keep is controlled by fields like 
-     * {@link #maxTasksPerTag} and {@link #maxTaskAge}. 
+     * Deletes old tasks, doing at most {@link #sliceSize} units of work. The age/number of tasks to keep 
+     * is controlled by fields like {@link #maxTasksPerTag} and {@link #maxTaskAge}. 
+     * 
+     * @return true if there is more to do
      */
-    private void gcTasks() {
-        if (!running) return;
+    private boolean gcTasksSlice() {
+        if (!running) return false;
+        
+        int budget = sliceSize;
+        while (budget > 0 && !overCapQueues.isEmpty()) {
+            budget -= enforceCap(overCapQueues.peek(), budget);
+            if (!overCapQueues.peek().overCap) overCapQueues.poll();
+        }
+        while (budget > 0) {
+            Task<?> task = newlyCompleted.poll();
+            if (task == null) break;
+            budget--;
+            if (!task.isDone()) {
+                // listeners are notified just before the task's future completes; look again later
+                newlyCompleted.add(task);
+                break;
+            }
+            if (executionManager.getTask(task.getId()) == null) continue; // already deleted
+            budget -= recordCompleted(task, budget);
+        }
         
-        Set<Object> taskTags = executionManager.getTaskTags();
-        for (Object tag : taskTags) {
+        if (maxTaskAge > 0) {
+            long expiry = System.currentTimeMillis() - maxTaskAge;
+            while (budget > 0 && !expiryQueue.isEmpty() && expiryQueue.peekFirst().endTimeUtc < expiry) {
+                budget--;
+                delete(expiryQueue.pollFirst());
+            }
+            compactExpiryQueueIfStale();
+        }
+        
+        return budget <= 0;
+    }
+    
+    /** @return the units of work done, at most the given budget (beyond recording the task itself) */
+    private int recordCompleted(Task<?> task, int budget) {
+        CompletedTask completed = new CompletedTask(task.getId(), task.getEndTimeUtc());
+        if (maxTaskAge > 0) expiryQueue.addLast(completed);
+        
+        int work = 0;
+        for (Object tag : task.getTags()) {
             if (tag == null || tag.equals(ManagementContextInternal.EFFECTOR_TAG) 
                     || tag.equals(ManagementContextInternal.SUB_TASK_TAG)
                     || tag.equals(ManagementContextInternal.NON_TRANSIENT_TASK_TAG)
                     || tag.equals(ManagementContextInternal.TRANSIENT_TASK_TAG)) {
                 continue; // there'll be other tags
             }
-            
-            // For each tag, we find the tasks with that tag; we ignore sub-tasks
-            // as those will be automatically GC'ed by the parent task at the appropriate point.
-            Set<Task<?>> tasksWithTag = executionManager.getTasksWithTag(tag);
-            Iterable<Task<?>> topTasksWithTag = Iterables.filter(tasksWithTag, new Predicate<Task<?>>() {
-                    @Override public boolean apply(Task<?> input) {
-                        return input != null && !input.getTags().contains(ManagementContextInternal.SUB_TASK_TAG);
-                    }});
-            
-            int numTasksToDelete = (Iterables.size(topTasksWithTag) - maxTasksPerTag);
-            if (numTasksToDelete > 0 || maxTaskAge > 0) {
-                List<Task<?>> sortedTasks = Lists.newArrayList(topTasksWithTag);
-                Collections.sort(sortedTasks, new Comparator<Task<?>>() {
-                    @Override public int compare(Task<?> t1, Task<?> t2) {
-                        long end1 = t1.isDone() ? t1.getEndTimeUtc() : Long.MAX_VALUE;
-                        long end2 = t2.isDone() ? t2.getEndTimeUtc() : Long.MAX_VALUE;
-                        return (end1 < end2) ? -1 : ((end1 == end2) ? 0 : 1);
-                    }
-                });
-                if (numTasksToDelete > 0) {
-                    for (Task<?> taskToDelete : sortedTasks.subList(0, numTasksToDelete)) {
-                        if (!taskToDelete.isDone()) break;
-                        executionManager.deleteTask(taskToDelete);
-                    }
-                }
-                if (maxTaskAge > 0) {
-                    for (Task<?> taskContender : sortedTasks.subList((numTasksToDelete > 0 ? numTasksToDelete : 0), sortedTasks.size())) {
-                        if (taskContender.isDone() && (System.currentTimeMillis() - taskContender.getEndTimeUtc() > maxTaskAge)) {
-                            executionManager.deleteTask(taskContender);
-                        } else {
-                            break; // all subsequent tasks will be newer; stop looking
-                        }
-                    }
+            TagQueue queue = completedByTag.get(tag);
+            if (queue == null) {
+                queue = new TagQueue(tag);
+                completedByTag.put(tag, queue);
+            }
+            queue.tasks.addLast(completed);
+            queue.live++;
+            completed.queues.add(queue);
+            if (!queue.overCap) {
+                work += enforceCap(queue, budget - work);
+                if (queue.overCap) overCapQueues.add(queue);
+            }
+        }
+        return work;
+    }
+    
+    /**
+     * Deletes the oldest tasks with the tag while more than {@link #maxTasksPerTag} are live, doing at most
+     * the given units of work; if that is not enough, the queue is left marked as {@link TagQueue#overCap}.
+     * 
+     * @return the units of work done
+     */
+    private int enforceCap(TagQueue queue, int budget) {
+        int work = 0;
+        while (queue.live > maxTasksPerTag && work < budget) {
+            work++;
+            // the head is never a deleted task; one deleted other than by this collector (e.g. by the
+            // execution manager's cap on tasks in memory) is just dropped
+            delete(queue.tasks.peekFirst());
+        }
+        queue.overCap = (queue.live > maxTasksPerTag);
+        return work;
+    }
+    
+    /**
+     * Tasks deleted because of a per-tag cap (or by other means) are not removed from the expiry queue
+     * until they would have expired; so if it has grown to more than twice the tasks in memory, rebuild it.
+     */
+    private void compactExpiryQueueIfStale() {
+        if (expiryQueue.size() <= sliceSize || expiryQueue.size() <= 2*executionManager.getNumInMemoryTasks()) return;
+        Iterator<CompletedTask> ci = expiryQueue.iterator();
+        while (ci.hasNext()) {
+            CompletedTask completed = ci.next();
+            if (completed.deleted || executionManager.getTask(completed.id) == null) {
+                ci.remove();
+                markDeleted(completed);
+            }
+        }
+    }
+    
+    private void delete(CompletedTask completed) {
+        if (completed.deleted) return;
+        markDeleted(completed);
+        Task<?> task = executionManager.getTask(completed.id);
+        if (task != null) {
+            executionManager.deleteTask(task);
+            tasksReclaimed.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Stops counting the task as live in each of its tag queues, dropping it (and any other deleted tasks)
+     * from the head of the queues; a queue that becomes empty is discarded, and one holding more deleted
+     * than live tasks is compacted.
+     */
+    private void markDeleted(CompletedTask completed) {
+        if (completed.deleted) return;
+        completed.deleted = true;
+        for (TagQueue queue : completed.queues) {
+            queue.live--;
+            while (!queue.tasks.isEmpty() && queue.tasks.peekFirst().deleted) {
+                queue.tasks.pollFirst();
+            }
+            if (queue.tasks.isEmpty()) {
+                completedByTag.remove(queue.tag, queue);
+            } else if (queue.tasks.size() > 2*queue.live) {
+                Iterator<CompletedTask> ci = queue.tasks.iterator();
+                while (ci.hasNext()) {
+                    if (ci.next().deleted) ci.remove();
                 }
             }
         }
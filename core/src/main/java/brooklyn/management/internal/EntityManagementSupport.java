@@ -344,7 +344,7 @@ public class EntityManagementSupport {
         }
         @Override
         public void onAttributeChanged(AttributeSensor<?> attribute) {
-            getManagementContext().getRebindManager().getChangeListener().onChanged(entity);
+            getManagementContext().getRebindManager().getChangeListener().onAttributeChanged(entity, attribute);
         }
         @Override
         public void onConfigChanged(ConfigKey<?> key) {
@@ -18,12 +18,15 @@ import org.slf4j.LoggerFactory;
 
 import brooklyn.config.BrooklynProperties;
 import brooklyn.config.BrooklynProperties.Factory.Builder;
+import brooklyn.config.BrooklynServerConfig;
 import brooklyn.entity.Application;
 import brooklyn.entity.Effector;
 import brooklyn.entity.Entity;
 import brooklyn.entity.drivers.downloads.BasicDownloadsManager;
 import brooklyn.entity.effector.Effectors;
 import brooklyn.entity.proxying.InternalEntityFactory;
+import brooklyn.event.feed.FeedScheduler;
+import brooklyn.event.feed.http.HttpPollConnections;
 import brooklyn.internal.storage.DataGridFactory;
 import brooklyn.location.Location;
 import brooklyn.management.AccessController;
@@ -34,10 +37,15 @@ import brooklyn.management.SubscriptionManager;
 import brooklyn.management.Task;
 import brooklyn.util.task.BasicExecutionContext;
 import brooklyn.util.task.BasicExecutionManager;
+import brooklyn.util.task.BoundedTaskExecutorStrategy;
+import brooklyn.util.task.TaskTags;
+import brooklyn.util.task.VirtualThreadTaskExecutorStrategy;
 import brooklyn.util.text.Strings;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
 /**
@@ -82,6 +90,8 @@ public class LocalManagementContext extends AbstractManagementContext {
     private String managementPlaneId;
     private String managementNodeId;
     private BasicExecutionManager execution;
+    private FeedScheduler feedScheduler;
+    private HttpPollConnections httpPollConnections;
     private SubscriptionManager subscriptions;
     private LocalEntityManager entityManager;
     private final LocalLocationManager locationManager;
@@ -233,7 +243,7 @@ public class LocalManagementContext extends AbstractManagementContext {
         if (!isRunning()) throw new IllegalStateException("Management context no longer running");
 
         if (subscriptions == null) {
-            subscriptions = new LocalSubscriptionManager(getExecutionManager());
+            subscriptions = new LocalSubscriptionManager(getExecutionManager(), configMap);
         }
         return subscriptions;
     }
@@ -244,15 +254,77 @@ public class LocalManagementContext extends AbstractManagementContext {
 
         if (execution == null) {
             execution = new BasicExecutionManager(getManagementNodeId());
+            configureExecutionMode(execution);
             gc = new BrooklynGarbageCollector(configMap, execution, getStorage());
         }
         return execution;
     }
 
+    @Override
+    public synchronized FeedScheduler getFeedScheduler() {
+        if (!isRunning()) throw new IllegalStateException("Management context no longer running");
+
+        if (feedScheduler == null) {
+            String mode = configMap.getConfig(BrooklynServerConfig.FEED_SCHEDULER);
+            if (Strings.isBlank(mode) || BrooklynServerConfig.FEED_SCHEDULER_TASK.equalsIgnoreCase(mode)) {
+                return null;
+            } else if (BrooklynServerConfig.FEED_SCHEDULER_SHARED.equalsIgnoreCase(mode)) {
+                getExecutionManager();
+                // polls are run as blocking-io tasks would be, so they are bounded by any executor strategy
+                feedScheduler = new FeedScheduler("brooklyn-feedscheduler-"+getManagementNodeId(), 
+                        execution.getExecutorForTags(ImmutableList.of(TaskTags.BLOCKING_IO_TASK)));
+            } else {
+                throw new IllegalArgumentException("Unsupported "+BrooklynServerConfig.FEED_SCHEDULER.getName()+" '"+mode+"'");
+            }
+        }
+        return feedScheduler;
+    }
+
+    @Override
+    public synchronized HttpPollConnections getHttpPollConnections() {
+        if (httpPollConnections == null) {
+            httpPollConnections = new HttpPollConnections(
+                    configMap.getConfig(BrooklynServerConfig.HTTP_POLL_MAX_CONNECTIONS),
+                    configMap.getConfig(BrooklynServerConfig.HTTP_POLL_MAX_CONNECTIONS_PER_ROUTE),
+                    configMap.getConfig(BrooklynServerConfig.HTTP_POLL_CONNECTION_REQUEST_TIMEOUT));
+            // a feed started while terminating gets connections already shut down, so it cannot leak a pool
+            if (!isRunning()) httpPollConnections.shutdown();
+        }
+        return httpPollConnections;
+    }
+
+    protected void configureExecutionMode(BasicExecutionManager execution) {
+        String mode = configMap.getConfig(BrooklynServerConfig.EXECUTION_MODE);
+        if (Strings.isBlank(mode) || BrooklynServerConfig.EXECUTION_MODE_UNBOUNDED.equalsIgnoreCase(mode)) {
+            return;
+        } else if (BrooklynServerConfig.EXECUTION_MODE_BOUNDED.equalsIgnoreCase(mode)) {
+            String blockingTagsString = configMap.getConfig(BrooklynServerConfig.EXECUTION_BLOCKING_TASK_TAGS);
+            List<String> blockingTags = (blockingTagsString==null) ? ImmutableList.<String>of() :
+                    ImmutableList.copyOf(Splitter.on(",").trimResults().omitEmptyStrings().split(blockingTagsString));
+            execution.setExecutorStrategy(new BoundedTaskExecutorStrategy(execution.getDaemonThreadFactory(), 
+                    configMap.getConfig(BrooklynServerConfig.EXECUTION_MAX_THREADS), 
+                    configMap.getConfig(BrooklynServerConfig.EXECUTION_MAX_BLOCKING_THREADS), 
+                    blockingTags));
+        } else if (BrooklynServerConfig.EXECUTION_MODE_VIRTUAL.equalsIgnoreCase(mode)) {
+            if (VirtualThreadTaskExecutorStrategy.isSupported()) {
+                execution.setExecutorStrategy(new VirtualThreadTaskExecutorStrategy("brooklyn-execmanager-"+getManagementNodeId()+"-virtual-"));
+            } else {
+                log.info("Virtual threads not supported in this JVM ("+System.getProperty("java.version")+"); "+
+                        "using "+BrooklynServerConfig.EXECUTION_MODE_UNBOUNDED+" execution mode instead");
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported "+BrooklynServerConfig.EXECUTION_MODE.getName()+" '"+mode+"'");
+        }
+    }
+
     @Override
     public void terminate() {
         INSTANCES.remove(this);
         super.terminate();
+        if (feedScheduler != null) feedScheduler.shutdown();
+        synchronized (this) {
+            if (httpPollConnections != null) httpPollConnections.shutdown();
+        }
         if (execution != null) execution.shutdownNow();
         if (gc != null) gc.shutdownNow();
     }
@@ -5,6 +5,7 @@ import static brooklyn.util.JavaGroovyEquivalents.groovyTruth;
 import static brooklyn.util.JavaGroovyEquivalents.join;
 import static brooklyn.util.JavaGroovyEquivalents.mapOf;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -18,29 +19,92 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.BrooklynProperties;
+import brooklyn.config.ConfigKey;
 import brooklyn.entity.Entity;
+import brooklyn.entity.basic.AbstractEntity;
+import brooklyn.event.AttributeSensor;
 import brooklyn.event.Sensor;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
+import brooklyn.event.basic.BasicConfigKey;
 import brooklyn.management.ExecutionManager;
 import brooklyn.management.SubscriptionHandle;
 import brooklyn.management.SubscriptionManager;
 import brooklyn.util.task.BasicExecutionManager;
-import brooklyn.util.task.SingleThreadedScheduler;
+import brooklyn.util.task.SerialTaskScheduler;
 import brooklyn.util.text.Identifiers;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Multimaps;
 
 /**
  * A {@link SubscriptionManager} that stores subscription details locally.
+ * <p>
+ * If {@link #INDEXED_DISPATCH} is set, {@link #publish(SensorEvent)} looks up subscriptions in a
+ * copy-on-write index of per-(entity,sensor) arrays, with the wildcard subscriptions already merged in.
+ * Index entries are built lazily on first publish, and invalidated on subscribe/unsubscribe, so that
+ * publishing an event takes no lock and allocates nothing to find its subscribers.
+ * <p>
+ * If {@link #BATCHED_DELIVERY} is set, events are not submitted as one task per event per subscriber; instead
+ * each subscriber execution-manager tag has a {@link SubscriptionDeliveryQueue} which is drained in batches by
+ * a single task. Subscriptions to attribute sensors can then also request "latest value wins" delivery 
+ * by passing the {@link #COALESCE_FLAG} flag, set to true.
  */
 public class LocalSubscriptionManager extends AbstractSubscriptionManager {
     
     private static final Logger LOG = LoggerFactory.getLogger(LocalSubscriptionManager.class);
 
+    public static final ConfigKey<Boolean> INDEXED_DISPATCH = new BasicConfigKey<Boolean>(
+            Boolean.class, "brooklyn.subscriptions.indexedDispatch", 
+            "whether to publish events using a lock-free index of subscriptions per entity and sensor (rather than " +
+            "computing the matching subscriptions under a lock for every event)", 
+            false);
+    
+    public static final ConfigKey<Boolean> BATCHED_DELIVERY = new BasicConfigKey<Boolean>(
+            Boolean.class, "brooklyn.subscriptions.batchedDelivery", 
+            "whether to deliver events through a buffer per subscriber, drained in batches by a single task " +
+            "(rather than submitting a task per event per subscriber)", 
+            false);
+    
+    public static final ConfigKey<Integer> DELIVERY_BUFFER_SIZE = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.subscriptions.batchedDelivery.bufferSize", 
+            "the initial capacity of each subscriber's delivery buffer, when using batched delivery (grown as needed, up to the max buffer size)", 
+            1024);
+    
+    public static final ConfigKey<Integer> DELIVERY_MAX_BUFFER_SIZE = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.subscriptions.batchedDelivery.maxBufferSize", 
+            "the maximum number of events buffered for each subscriber, when using batched delivery; " +
+            "when full, new events are handled according to the overflow policy", 
+            65536);
+    
+    public static final String DELIVERY_OVERFLOW_DROP = "drop";
+    public static final String DELIVERY_OVERFLOW_BLOCK = "block";
+    
+    public static final ConfigKey<String> DELIVERY_OVERFLOW_POLICY = new BasicConfigKey<String>(
+            String.class, "brooklyn.subscriptions.batchedDelivery.overflowPolicy", 
+            "what to do with an event for a subscriber whose delivery buffer is full, when using batched delivery: " +
+            "'"+DELIVERY_OVERFLOW_DROP+"' (drop it, counting and logging dropped events) or '"+DELIVERY_OVERFLOW_BLOCK+"' " +
+            "(block the publisher until there is space; a listener publishing to its own full buffer still drops)", 
+            DELIVERY_OVERFLOW_DROP);
+    
+    public static final ConfigKey<Integer> DELIVERY_MAX_BATCH_SIZE = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.subscriptions.batchedDelivery.maxBatchSize", 
+            "the maximum number of events delivered by a single task, when using batched delivery", 
+            100);
+    
+    /** 
+     * Subscription flag: if true, and {@link #BATCHED_DELIVERY} is enabled, then for attribute sensors
+     * only the latest pending value is delivered (per source and sensor); intermediate values may be skipped.
+     */
+    public static final String COALESCE_FLAG = "coalesce";
+    
+    @SuppressWarnings("rawtypes")
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
     protected final ExecutionManager em;
     
     private final String tostring = "SubscriptionContext("+Identifiers.getBase64IdFromValue(System.identityHashCode(this), 5)+")";
@@ -55,8 +119,54 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsByToken = new ConcurrentHashMap<Object, Set<Subscription>>();
     
+    private final boolean indexedDispatch;
+    private final boolean batchedDelivery;
+    private final int deliveryBufferSize;
+    private final int deliveryMaxBufferSize;
+    private final boolean deliveryBlockWhenFull;
+    private final int deliveryMaxBatchSize;
+    
+    /** delivery queues keyed by subscriber execution-manager tag; only used if {@link #batchedDelivery} */
+    protected final ConcurrentMap<Object, SubscriptionDeliveryQueue> deliveryQueues = new ConcurrentHashMap<Object, SubscriptionDeliveryQueue>();
+    
+    /**
+     * Subscriptions (including wildcards) to deliver to, keyed by event source (see {@link #indexKey(Entity)})
+     * then sensor; weak keys so that the index does not keep unmanaged entities alive.
+     * Only used if {@link #indexedDispatch}.
+     */
+    @SuppressWarnings("rawtypes")
+    private final ConcurrentMap<Entity, ConcurrentMap<Sensor<?>, Subscription[]>> dispatchIndex = new MapMaker().weakKeys().makeMap();
+    
+    /** incremented on every change to the subscriptions, so that lazy index population can detect a concurrent change */
+    private final AtomicLong dispatchIndexGeneration = new AtomicLong();
+    
     public LocalSubscriptionManager(ExecutionManager m) {
+        this(m, BrooklynProperties.Factory.newEmpty());
+    }
+
+    public LocalSubscriptionManager(ExecutionManager m, BrooklynProperties brooklynProperties) {
         this.em = m;
+        this.indexedDispatch = brooklynProperties.getConfig(INDEXED_DISPATCH);
+        this.batchedDelivery = brooklynProperties.getConfig(BATCHED_DELIVERY);
+        this.deliveryBufferSize = brooklynProperties.getConfig(DELIVERY_BUFFER_SIZE);
+        this.deliveryMaxBufferSize = brooklynProperties.getConfig(DELIVERY_MAX_BUFFER_SIZE);
+        String overflowPolicy = brooklynProperties.getConfig(DELIVERY_OVERFLOW_POLICY);
+        if (DELIVERY_OVERFLOW_BLOCK.equalsIgnoreCase(overflowPolicy)) {
+            this.deliveryBlockWhenFull = true;
+        } else if (overflowPolicy==null || DELIVERY_OVERFLOW_DROP.equalsIgnoreCase(overflowPolicy)) {
+            this.deliveryBlockWhenFull = false;
+        } else {
+            throw new IllegalArgumentException("Unsupported "+DELIVERY_OVERFLOW_POLICY.getName()+" '"+overflowPolicy+"'");
+        }
+        this.deliveryMaxBatchSize = brooklynProperties.getConfig(DELIVERY_MAX_BATCH_SIZE);
+    }
+    
+    public boolean isIndexedDispatch() {
+        return indexedDispatch;
+    }
+    
+    public boolean isBatchedDelivery() {
+        return batchedDelivery;
     }
         
     public long getNumSubscriptions() {
@@ -87,6 +197,7 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
             s.subscriberExecutionManagerTagSupplied = false;
         }
         s.eventFilter = (Predicate<SensorEvent<T>>) flags.remove("eventFilter");
+        s.coalesce = Boolean.TRUE.equals(flags.remove(COALESCE_FLAG));
         s.flags = flags;
         
         if (LOG.isDebugEnabled()) LOG.debug("Creating subscription {} for {} on {} {} in {}", new Object[] {s.id, s.subscriber, producer, sensor, this});
@@ -95,8 +206,9 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         if (s.subscriber!=null) {
             addToMapOfSets(subscriptionsBySubscriber, s.subscriber, s);
         }
+        invalidateDispatchIndex(s);
         if (!s.subscriberExecutionManagerTagSupplied && s.subscriberExecutionManagerTag!=null) {
-            ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class);
+            ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SerialTaskScheduler.class);
         }
         return s;
     }
@@ -130,10 +242,15 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         if (s.subscriber!=null) {
             boolean b3 = removeFromMapOfCollections(subscriptionsBySubscriber, s.subscriber, s);
             assert b3 == b2;
+            if (!s.subscriberExecutionManagerTagSupplied && !subscriptionsBySubscriber.containsKey(s.subscriber)) {
+                // tag is unique to this subscriber; any events already queued still hold a reference to the queue
+                deliveryQueues.remove(s.subscriberExecutionManagerTag);
+            }
         }
+        invalidateDispatchIndex(s);
 
         // FIXME ALEX - this seems wrong
-        ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class);
+        ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SerialTaskScheduler.class);
         return result;
     }
 
@@ -143,31 +260,152 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         
         // delivery in parallel/background, using execution manager
         
-        // subscriptions, should define SingleThreadedScheduler for any subscriber ID tag
+        // subscriptions, should define SerialTaskScheduler for any subscriber ID tag
         // in order to ensure callbacks are invoked in the order they are submitted
         // (recommend exactly one per subscription to prevent deadlock)
         // this is done with:
-        // em.setTaskSchedulerForTag(subscriberId, SingleThreadedScheduler.class);
+        // em.setTaskSchedulerForTag(subscriberId, SerialTaskScheduler.class);
         
         //note, generating the notifications must be done in the calling thread to preserve order
         //e.g. emit(A); emit(B); should cause onEvent(A); onEvent(B) in that order
         if (LOG.isTraceEnabled()) LOG.trace("{} got event {}", this, event);
         totalEventsPublishedCount.incrementAndGet();
         
+        if (indexedDispatch && event.getSource()!=null && event.getSensor()!=null) {
+            Subscription[] subs = getDispatchSubscriptions(event.getSource(), event.getSensor());
+            if (subs.length > 0) {
+                if (LOG.isTraceEnabled()) LOG.trace("sending {}, {} to {}", new Object[] {event.getSensor().getName(), event, join(Arrays.asList(subs), ",")});
+                for (Subscription s : subs) {
+                    deliver(s, event);
+                }
+            }
+            return;
+        }
+        
         Set<Subscription> subs = (Set<Subscription>) ((Set<?>) getSubscriptionsForEntitySensor(event.getSource(), event.getSensor()));
         if (groovyTruth(subs)) {
             if (LOG.isTraceEnabled()) LOG.trace("sending {}, {} to {}", new Object[] {event.getSensor().getName(), event, join(subs, ",")});
             for (Subscription s : subs) {
-                if (s.eventFilter!=null && !s.eventFilter.apply(event))
-                    continue;
-                final Subscription sAtClosureCreation = s;
-                em.submit(mapOf("tag", s.subscriberExecutionManagerTag), new Runnable() {
-                    public void run() {
-                        sAtClosureCreation.listener.onEvent(event);
-                    }});
+                deliver(s, event);
+            }
+        }
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    protected <T> void deliver(Subscription s, final SensorEvent<T> event) {
+        if (s.eventFilter!=null && !s.eventFilter.apply(event))
+            return;
+        if (batchedDelivery && s.subscriberExecutionManagerTag!=null) {
+            if (getDeliveryQueue(s.subscriberExecutionManagerTag).enqueue(s, event, s.coalesce && event.getSensor() instanceof AttributeSensor)) {
                 totalEventsDeliveredCount.incrementAndGet();
             }
+            return;
+        }
+        final Subscription sAtClosureCreation = s;
+        em.submit(mapOf("tag", s.subscriberExecutionManagerTag), new Runnable() {
+            public void run() {
+                sAtClosureCreation.listener.onEvent(event);
+            }});
+        totalEventsDeliveredCount.incrementAndGet();
+    }
+    
+    private SubscriptionDeliveryQueue getDeliveryQueue(Object tag) {
+        SubscriptionDeliveryQueue result = deliveryQueues.get(tag);
+        if (result==null) {
+            result = new SubscriptionDeliveryQueue(em, tag, deliveryBufferSize, deliveryMaxBufferSize, deliveryBlockWhenFull, deliveryMaxBatchSize);
+            SubscriptionDeliveryQueue old = deliveryQueues.putIfAbsent(tag, result);
+            if (old!=null) result = old;
         }
+        return result;
+    }
+    
+    /** number of events buffered awaiting delivery, across all subscribers (always 0 unless using batched delivery) */
+    public long getNumEventsQueuedForDelivery() {
+        long result = 0;
+        for (SubscriptionDeliveryQueue q : deliveryQueues.values()) {
+            result += q.getQueueLength();
+        }
+        return result;
+    }
+    
+    /** number of events replaced by a later value before being delivered (always 0 unless using batched delivery) */
+    public long getTotalEventsCoalesced() {
+        long result = 0;
+        for (SubscriptionDeliveryQueue q : deliveryQueues.values()) {
+            result += q.getCoalescedCount();
+        }
+        return result;
+    }
+    
+    /** number of events dropped because a subscriber's delivery buffer was full (always 0 unless using batched delivery) */
+    public long getTotalEventsDropped() {
+        long result = 0;
+        for (SubscriptionDeliveryQueue q : deliveryQueues.values()) {
+            result += q.getDroppedCount();
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the subscriptions matching the given source and sensor from the dispatch index,
+     * populating the index entry (under the lock used for subscribing) if not present.
+     */
+    @SuppressWarnings("rawtypes")
+    private Subscription[] getDispatchSubscriptions(Entity source, Sensor<?> sensor) {
+        Entity key = indexKey(source);
+        ConcurrentMap<Sensor<?>, Subscription[]> bySensor = dispatchIndex.get(key);
+        if (bySensor!=null) {
+            Subscription[] result = bySensor.get(sensor);
+            if (result!=null) return result;
+        }
+        
+        long generation = dispatchIndexGeneration.get();
+        Set<SubscriptionHandle> subs = getSubscriptionsForEntitySensor(source, sensor);
+        Subscription[] result = subs.isEmpty() ? NO_SUBSCRIPTIONS : subs.toArray(new Subscription[subs.size()]);
+        if (bySensor==null) {
+            bySensor = new ConcurrentHashMap<Sensor<?>, Subscription[]>();
+            ConcurrentMap<Sensor<?>, Subscription[]> old = dispatchIndex.putIfAbsent(key, bySensor);
+            if (old!=null) bySensor = old;
+        }
+        bySensor.put(sensor, result);
+        if (dispatchIndexGeneration.get()!=generation) {
+            // subscriptions changed while we were computing; the invalidation may have run before our put
+            bySensor.remove(sensor, result);
+        }
+        return result;
+    }
+    
+    /** clears all entries in the dispatch index which the given subscription could match */
+    @SuppressWarnings("rawtypes")
+    private void invalidateDispatchIndex(Subscription s) {
+        if (!indexedDispatch) return;
+        dispatchIndexGeneration.incrementAndGet();
+        if (s.producer!=null) {
+            invalidateDispatchIndex(dispatchIndex.get(indexKey(s.producer)), s.sensor);
+        } else {
+            // wildcard producer: could match any entry
+            for (ConcurrentMap<Sensor<?>, Subscription[]> bySensor : dispatchIndex.values()) {
+                invalidateDispatchIndex(bySensor, s.sensor);
+            }
+        }
+    }
+    
+    @SuppressWarnings("rawtypes")
+    private static void invalidateDispatchIndex(ConcurrentMap<Sensor<?>, Subscription[]> bySensor, Sensor<?> sensor) {
+        if (bySensor==null) return;
+        if (sensor!=null) {
+            bySensor.remove(sensor);
+        } else {
+            bySensor.clear();
+        }
+    }
+    
+    /**
+     * The key for the given entity in the dispatch index, which is by identity: the proxy where there is one,
+     * as events are published with the proxy as their source but subscriptions may be to the real entity.
+     */
+    private static Entity indexKey(Entity entity) {
+        return (entity instanceof AbstractEntity) ? ((AbstractEntity)entity).getProxyIfAvailable() : entity;
     }
     
     @Override
@@ -11,6 +11,8 @@ import brooklyn.entity.Entity;
 import brooklyn.entity.basic.BrooklynTaskTags;
 import brooklyn.entity.basic.ConfigKeys;
 import brooklyn.entity.proxying.InternalEntityFactory;
+import brooklyn.event.feed.FeedScheduler;
+import brooklyn.event.feed.http.HttpPollConnections;
 import brooklyn.internal.storage.BrooklynStorage;
 import brooklyn.location.Location;
 import brooklyn.management.ManagementContext;
@@ -56,6 +58,18 @@ public interface ManagementContextInternal extends ManagementContext {
     UsageManager getUsageManager();
 
     InternalEntityFactory getEntityFactory();
+
+    /**
+     * The scheduler shared by the feeds of all entities, or null if each feed's poller
+     * should schedule its own task (see {@link brooklyn.config.BrooklynServerConfig#FEED_SCHEDULER}).
+     */
+    FeedScheduler getFeedScheduler();
+    
+    /**
+     * The pool of connections shared by the http feeds of all entities
+     * (see {@link brooklyn.config.BrooklynServerConfig#HTTP_POLL_MAX_CONNECTIONS}).
+     */
+    HttpPollConnections getHttpPollConnections();
     
     /**
      * Registers an entity that has been created, but that has not yet begun to be managed.
@@ -21,6 +21,8 @@ import brooklyn.entity.basic.AbstractEntity;
 import brooklyn.entity.drivers.EntityDriverManager;
 import brooklyn.entity.drivers.downloads.DownloadResolverManager;
 import brooklyn.entity.proxying.InternalEntityFactory;
+import brooklyn.event.feed.FeedScheduler;
+import brooklyn.event.feed.http.HttpPollConnections;
 import brooklyn.entity.rebind.ChangeListener;
 import brooklyn.entity.rebind.RebindManager;
 import brooklyn.internal.storage.BrooklynStorage;
@@ -199,6 +201,18 @@ public class NonDeploymentManagementContext implements ManagementContextInternal
         return initialManagementContext.getStorage();
     }
     
+    @Override
+    public FeedScheduler getFeedScheduler() {
+        checkInitialManagementContextReal();
+        return initialManagementContext.getFeedScheduler();
+    }
+    
+    @Override
+    public HttpPollConnections getHttpPollConnections() {
+        checkInitialManagementContextReal();
+        return initialManagementContext.getHttpPollConnections();
+    }
+
     @Override
     public RebindManager getRebindManager() {
         // There was a race where EffectorUtils on invoking an effector calls:
@@ -23,6 +23,8 @@ class Subscription<T> implements SubscriptionHandle {
     public final SensorEventListener<? super T> listener;
     public Map<String,Object> flags;
     public Predicate<SensorEvent<T>> eventFilter;
+    /** whether only the latest pending value should be delivered, if delivery is batched */
+    public boolean coalesce;
 
     public Subscription(Entity producer, Sensor<T> sensor, SensorEventListener<? super T> listener) {
         this.producer = producer;
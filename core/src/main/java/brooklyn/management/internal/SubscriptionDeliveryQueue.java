@@ -0,0 +1,228 @@
+package brooklyn.management.internal;
+
+import static brooklyn.util.JavaGroovyEquivalents.mapOf;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.event.SensorEvent;
+import brooklyn.management.ExecutionManager;
+import brooklyn.util.exceptions.Exceptions;
+
+import com.google.common.base.Objects;
+
+/**
+ * Buffers events for a single subscriber (or rather, a single subscriber execution-manager tag),
+ * and delivers them in batches from one task at a time, rather than submitting a task per event.
+ * <p>
+ * Events are held in a ring buffer of the given initial capacity, grown as needed up to a maximum capacity.
+ * When that is full (e.g. because the listener is slow), a new event either blocks the publisher until there
+ * is space, or is dropped (and counted, with a warning logged), as configured. A listener publishing an event
+ * to its own full queue is never blocked (it would wait for itself): the event is dropped.
+ * <p>
+ * Subscriptions marked to coalesce (see {@link LocalSubscriptionManager#COALESCE_FLAG}) only ever have
+ * one event pending per source and sensor: a newer event replaces the value of the pending one, keeping its
+ * position in the buffer, so the listener sees the latest value without the intermediate ones.
+ */
+class SubscriptionDeliveryQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SubscriptionDeliveryQueue.class);
+
+    @SuppressWarnings("rawtypes")
+    private static class PendingEvent {
+        final Subscription subscription;
+        final Object coalesceKey;
+        SensorEvent event;
+
+        PendingEvent(Subscription subscription, SensorEvent event, Object coalesceKey) {
+            this.subscription = subscription;
+            this.event = event;
+            this.coalesceKey = coalesceKey;
+        }
+    }
+
+    private static class CoalesceKey {
+        final Subscription<?> subscription;
+        final SensorEvent<?> event;
+
+        CoalesceKey(Subscription<?> subscription, SensorEvent<?> event) {
+            this.subscription = subscription;
+            this.event = event;
+        }
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(subscription, event.getSource(), event.getSensor());
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CoalesceKey)) return false;
+            CoalesceKey o = (CoalesceKey) obj;
+            return subscription.equals(o.subscription) && Objects.equal(event.getSource(), o.event.getSource())
+                    && Objects.equal(event.getSensor(), o.event.getSensor());
+        }
+    }
+
+    private final ExecutionManager em;
+    private final Object tag;
+    private final int maxBatchSize;
+    private final int maxCapacity;
+    private final boolean blockWhenFull;
+
+    // guarded by this
+    private PendingEvent[] buffer;
+    private int head;
+    private int size;
+    private boolean drainScheduled;
+    private boolean warnedOverflow;
+    /** the thread delivering a batch, if any */
+    private Thread drainThread;
+    private final Map<Object, PendingEvent> pendingByCoalesceKey = new HashMap<Object, PendingEvent>();
+
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final Runnable drainJob = new Runnable() {
+        @Override public void run() {
+            drain();
+        }
+        @Override public String toString() {
+            return "SubscriptionDelivery["+tag+"]";
+        }
+    };
+
+    /**
+     * @param maxCapacity the most events buffered; at least the initial capacity
+     * @param blockWhenFull whether to block the publisher when full, rather than drop the event
+     */
+    SubscriptionDeliveryQueue(ExecutionManager em, Object tag, int initialCapacity, int maxCapacity, boolean blockWhenFull, int maxBatchSize) {
+        this.em = em;
+        this.tag = tag;
+        this.buffer = new PendingEvent[Math.max(1, initialCapacity)];
+        this.maxCapacity = Math.max(buffer.length, maxCapacity);
+        this.blockWhenFull = blockWhenFull;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /** 
+     * adds the event for delivery, scheduling a drain if one is not already pending;
+     * if full, blocks until there is space or drops the event (see {@link SubscriptionDeliveryQueue})
+     * 
+     * @return false if the event was dropped
+     */
+    @SuppressWarnings("rawtypes")
+    boolean enqueue(Subscription s, SensorEvent<?> event, boolean coalesce) {
+        synchronized (this) {
+            Object coalesceKey = null;
+            if (coalesce) {
+                coalesceKey = new CoalesceKey(s, event);
+                PendingEvent pending = pendingByCoalesceKey.get(coalesceKey);
+                if (pending!=null) {
+                    pending.event = event;
+                    coalescedCount.incrementAndGet();
+                    return true;
+                }
+            }
+            while (size >= maxCapacity) {
+                if (!blockWhenFull || Thread.currentThread() == drainThread) {
+                    droppedCount.incrementAndGet();
+                    if (!warnedOverflow) {
+                        LOG.warn("Subscription delivery buffer for "+tag+" full at "+maxCapacity+" events; dropping events (listener may be too slow)");
+                        warnedOverflow = true;
+                    }
+                    return false;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw Exceptions.propagate(e);
+                }
+            }
+            PendingEvent pending = new PendingEvent(s, event, coalesceKey);
+            if (size == buffer.length) grow();
+            buffer[(head + size) % buffer.length] = pending;
+            size++;
+            if (coalesceKey!=null) pendingByCoalesceKey.put(coalesceKey, pending);
+
+            if (drainScheduled) return true;
+            drainScheduled = true;
+        }
+        em.submit(mapOf("tag", tag), drainJob);
+        return true;
+    }
+
+    private void grow() {
+        if (LOG.isDebugEnabled()) LOG.debug("Subscription delivery buffer for "+tag+" full at "+buffer.length+" events; growing");
+        PendingEvent[] newBuffer = new PendingEvent[(int) Math.min((long)buffer.length*2, maxCapacity)];
+        for (int i=0; i<size; i++) {
+            newBuffer[i] = buffer[(head + i) % buffer.length];
+        }
+        buffer = newBuffer;
+        head = 0;
+    }
+
+    /** delivers up to one batch of events, resubmitting itself if more remain (so other tasks for the tag get a turn) */
+    @SuppressWarnings("unchecked")
+    private void drain() {
+        PendingEvent[] batch;
+        synchronized (this) {
+            int batchSize = Math.min(size, maxBatchSize);
+            batch = new PendingEvent[batchSize];
+            for (int i=0; i<batchSize; i++) {
+                batch[i] = buffer[head];
+                buffer[head] = null;
+                head = (head + 1) % buffer.length;
+                if (batch[i].coalesceKey!=null) pendingByCoalesceKey.remove(batch[i].coalesceKey);
+            }
+            size -= batchSize;
+            drainThread = Thread.currentThread();
+            if (blockWhenFull) notifyAll();
+        }
+        batchCount.incrementAndGet();
+
+        try {
+            for (PendingEvent pending : batch) {
+                try {
+                    pending.subscription.listener.onEvent(pending.event);
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    LOG.warn("Error delivering "+pending.event+" to "+pending.subscription+" (continuing): "+e, e);
+                }
+            }
+        } finally {
+            boolean more;
+            synchronized (this) {
+                drainThread = null;
+                more = size > 0;
+                if (!more) drainScheduled = false;
+            }
+            if (more) em.submit(mapOf("tag", tag), drainJob);
+        }
+    }
+
+    public synchronized int getQueueLength() {
+        return size;
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /** number of events dropped because the buffer was full */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SubscriptionDeliveryQueue["+tag+"]";
+    }
+}
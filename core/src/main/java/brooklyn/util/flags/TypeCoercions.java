@@ -18,6 +18,8 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -75,52 +77,105 @@ public class TypeCoercions {
         
         if (targetType.isInstance(value)) return (T) value;
 
+        return (T) getCoercionPlan(value.getClass(), targetType).coerce(value, (Class)targetType);
+    }
+
+    /**
+     * How to coerce values of one type to another; the choice of strategy depends only on the types,
+     * so is made once per pair of types (see {@link #getCoercionPlan(Class, Class)}).
+     */
+    private static abstract class CoercionPlan {
+        abstract Object coerce(Object value, Class<?> targetType);
+    }
+    
+    /** plans by target type, then by value type; cleared when adapters are registered, as that may change the plan */
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, CoercionPlan>> coercionPlans = 
+            new ConcurrentHashMap<Class<?>, ConcurrentMap<Class<?>, CoercionPlan>>();
+    
+    private static CoercionPlan getCoercionPlan(Class<?> valueType, Class<?> targetType) {
+        ConcurrentMap<Class<?>, CoercionPlan> plansToTarget = coercionPlans.get(targetType);
+        CoercionPlan result = (plansToTarget != null) ? plansToTarget.get(valueType) : null;
+        if (result != null) return result;
+        
+        // synchronized with registerAdapter, so a plan is never computed from an out-of-date registry
+        synchronized (TypeCoercions.class) {
+            plansToTarget = coercionPlans.get(targetType);
+            if (plansToTarget == null) {
+                plansToTarget = new ConcurrentHashMap<Class<?>, CoercionPlan>();
+                coercionPlans.put(targetType, plansToTarget);
+            }
+            result = plansToTarget.get(valueType);
+            if (result == null) {
+                result = newCoercionPlan(valueType, targetType);
+                plansToTarget.put(valueType, result);
+            }
+            return result;
+        }
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static CoercionPlan newCoercionPlan(Class<?> valueType, Class<?> targetType) {
         //deal with primitive->primitive casting
-        if (isPrimitiveOrBoxer(targetType) && isPrimitiveOrBoxer(value.getClass())) {
+        if (isPrimitiveOrBoxer(targetType) && isPrimitiveOrBoxer(valueType)) {
             // Don't just rely on Java to do its normal casting later; if caller writes
             // long `l = coerce(new Integer(1), Long.class)` then letting java do its casting will fail,
             // because an Integer will not automatically be unboxed and cast to a long
-            return castPrimitive(value, (Class<T>)targetType);
+            return new CoercionPlan() {
+                @Override Object coerce(Object value, Class<?> targetType) {
+                    return castPrimitive(value, targetType);
+                }};
         }
 
         //deal with string->primitive
-        if (value instanceof String && isPrimitiveOrBoxer(targetType)) {
-            return stringToPrimitive((String)value, (Class<T>)targetType);
+        if (String.class.equals(valueType) && isPrimitiveOrBoxer(targetType)) {
+            return new CoercionPlan() {
+                @Override Object coerce(Object value, Class<?> targetType) {
+                    return stringToPrimitive((String)value, targetType);
+                }};
         }
 
         //deal with primitive->string
-        if (isPrimitiveOrBoxer(value.getClass()) && targetType.equals(String.class)) {
-            return (T) value.toString();
+        if (isPrimitiveOrBoxer(valueType) && targetType.equals(String.class)) {
+            return new CoercionPlan() {
+                @Override Object coerce(Object value, Class<?> targetType) {
+                    return value.toString();
+                }};
         }
 
         //look for value.asType where Type is castable to targetType
         String targetTypeSimpleName = getVerySimpleName(targetType);
         if (targetTypeSimpleName!=null && targetTypeSimpleName.length()>0) {
-            for (Method m: value.getClass().getMethods()) {
+            for (final Method m: valueType.getMethods()) {
                 if (m.getName().startsWith("as") && m.getParameterTypes().length==0 &&
                         targetType.isAssignableFrom(m.getReturnType()) ) {
                     if (m.getName().equals("as"+getVerySimpleName(m.getReturnType()))) {
-                        try {
-                            return (T) m.invoke(value);
-                        } catch (Exception e) {
-                            throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
-                        }
+                        return new CoercionPlan() {
+                            @Override Object coerce(Object value, Class<?> targetType) {
+                                try {
+                                    return m.invoke(value);
+                                } catch (Exception e) {
+                                    throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
+                                }
+                            }};
                     }
                 }
             }
         }
         
         //now look for static TargetType.fromType(Type t) where value instanceof Type  
-        for (Method m: targetType.getMethods()) {
+        for (final Method m: targetType.getMethods()) {
             if (((m.getModifiers()&Modifier.STATIC)==Modifier.STATIC) && 
                     m.getName().startsWith("from") && m.getParameterTypes().length==1 &&
-                    m.getParameterTypes()[0].isInstance(value)) {
+                    m.getParameterTypes()[0].isAssignableFrom(valueType)) {
                 if (m.getName().equals("from"+getVerySimpleName(m.getParameterTypes()[0]))) {
-                    try {
-                        return (T) m.invoke(null, value);
-                    } catch (Exception e) {
-                        throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
-                    }
+                    return new CoercionPlan() {
+                        @Override Object coerce(Object value, Class<?> targetType) {
+                            try {
+                                return m.invoke(null, value);
+                            } catch (Exception e) {
+                                throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
+                            }
+                        }};
                 }
             }
         }
@@ -128,41 +183,56 @@ public class TypeCoercions {
        //ENHANCEMENT could look in type hierarchy of both types for a conversion method...
         
         //primitives get run through again boxed up
-        Class boxedT = UNBOXED_TO_BOXED_TYPES.get(targetType);
-        Class boxedVT = UNBOXED_TO_BOXED_TYPES.get(value.getClass());
+        final Class boxedT = UNBOXED_TO_BOXED_TYPES.get(targetType);
+        final Class boxedVT = UNBOXED_TO_BOXED_TYPES.get(valueType);
         if (boxedT!=null || boxedVT!=null) {
-            try {
-                if (boxedT==null) boxedT=targetType;
-                Object boxedV;
-                if (boxedVT==null) { boxedV = value; }
-                else { boxedV = boxedVT.getConstructor(value.getClass()).newInstance(value); }
-                return (T) coerce(boxedV, boxedT);
-            } catch (Exception e) {
-                throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): unboxing failed, "+e);
-            }
+            return new CoercionPlan() {
+                @Override Object coerce(Object value, Class<?> targetType) {
+                    try {
+                        Class boxedTarget = (boxedT==null) ? targetType : boxedT;
+                        Object boxedV;
+                        if (boxedVT==null) { boxedV = value; }
+                        else { boxedV = boxedVT.getConstructor(value.getClass()).newInstance(value); }
+                        return TypeCoercions.coerce(boxedV, boxedTarget);
+                    } catch (Exception e) {
+                        throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): unboxing failed, "+e);
+                    }
+                }};
         }
 
         if (targetType.isEnum()) {
-            try {
-                return (T) Enum.valueOf((Class)targetType, ""+value);
-            } catch (IllegalArgumentException e) {
-                // some enums (eg Lifecycle) use a tostring which is different, not ideal...
-                return (T) Enum.valueOf((Class)targetType, (""+value).toUpperCase());
-            }
+            return new CoercionPlan() {
+                @Override Object coerce(Object value, Class<?> targetType) {
+                    try {
+                        return Enum.valueOf((Class)targetType, ""+value);
+                    } catch (IllegalArgumentException e) {
+                        // some enums (eg Lifecycle) use a tostring which is different, not ideal...
+                        return Enum.valueOf((Class)targetType, (""+value).toUpperCase());
+                    }
+                }};
         }
 
         //now look in registry - TODO use registry first?
-        Map<?,?> adaptersToTarget = registeredAdapters.get(targetType);
+        Map<Class,Function> adaptersToTarget = registeredAdapters.get(targetType);
         if (adaptersToTarget!=null) {
-            for (Map.Entry e: adaptersToTarget.entrySet()) {
-                if ( ((Class)e.getKey()).isInstance(value) ) {
-                    return (T) ((Function)e.getValue()).apply(value);
+            synchronized (adaptersToTarget) {
+                for (Map.Entry<Class,Function> e: adaptersToTarget.entrySet()) {
+                    if (e.getKey().isAssignableFrom(valueType)) {
+                        final Function adapter = e.getValue();
+                        return new CoercionPlan() {
+                            @Override Object coerce(Object value, Class<?> targetType) {
+                                return adapter.apply(value);
+                            }};
+                    }
                 }
             }
         }
                 
         //not found
-        throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): no adapter known");
+        return new CoercionPlan() {
+            @Override Object coerce(Object value, Class<?> targetType) {
+                throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): no adapter known");
+            }};
     }
 
     /**
@@ -269,6 +339,11 @@ public class TypeCoercions {
         }
         
         try {
+            // common cases directly, rather than reflectively
+            if (wrappedType == Integer.class) return (T) Integer.valueOf(value);
+            if (wrappedType == Long.class) return (T) Long.valueOf(value);
+            if (wrappedType == Boolean.class) return (T) Boolean.valueOf(value);
+            if (wrappedType == Double.class) return (T) Double.valueOf(value);
             return (T) wrappedType.getMethod("valueOf", String.class).invoke(null, value);
         } catch (Exception e) {
             ClassCoercionException tothrow = new ClassCoercionException("Cannot coerce type String to "+targetType.getCanonicalName()+" ("+value+"): adapting failed");
@@ -332,6 +407,8 @@ public class TypeCoercions {
             registeredAdapters.put(targetType, sources);
         }
         sources.put(sourceType, fn);
+        // the new adapter may apply where another strategy (or none) was chosen
+        coercionPlans.clear();
     }
     
     static {
@@ -15,6 +15,7 @@ import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
@@ -33,18 +34,22 @@ import brooklyn.management.ExecutionManager;
 import brooklyn.management.HasTaskChildren;
 import brooklyn.management.Task;
 import brooklyn.management.TaskAdaptable;
+import brooklyn.util.collections.MutableMap;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.text.Identifiers;
 
 import com.google.common.base.CaseFormat;
-import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
- * TODO javadoc
+ * Manages the execution of {@link Task}s, and the records of tasks by tag and by id.
+ * <p>
+ * By default task jobs run on an unbounded cached thread pool; a {@link TaskExecutorStrategy} can be set
+ * (see {@link #setExecutorStrategy(TaskExecutorStrategy)}) to bound the threads used, e.g. 
+ * {@link BoundedTaskExecutorStrategy}.
  */
 public class BasicExecutionManager implements ExecutionManager {
     private static final Logger log = LoggerFactory.getLogger(BasicExecutionManager.class);
@@ -73,19 +78,17 @@ public class BasicExecutionManager implements ExecutionManager {
     private final ThreadFactory daemonThreadFactory;
     
     private final ExecutorService runner;
+    
+    private volatile TaskExecutorStrategy executorStrategy;
         
 	private final ScheduledExecutorService delayedRunner;
 	
-    // TODO Could have a set of all knownTasks; but instead we're having a separate set per tag,
-    // so the same task could be listed multiple times if it has multiple tags...
-
-    //access to the below is synchronized in code in this class, to allow us to preserve order while guaranteeing thread-safe
-    //(but more testing is needed before we are sure it is thread-safe!)
-    //synch blocks are as finely grained as possible for efficiency
-    //Not using a CopyOnWriteArraySet for each, because profiling showed this being a massive perf bottleneck.
-    private ConcurrentMap<Object,Set<Task<?>>> tasksByTag = new ConcurrentHashMap<Object,Set<Task<?>>>();
+    // Tasks are indexed by id and by each tag they have when submitted (with sequence numbers giving submission order);
+    // see TaskIndex. Tags added to a task after submission are not indexed.
+    private final TaskIndex taskIndex = new TaskIndex();
     
-    private ConcurrentMap<String,Task<?>> tasksById = new ConcurrentHashMap<String,Task<?>>();
+    /** if positive, finished tasks are evicted (oldest first) when more than this many tasks are in memory */
+    private volatile int maxTasksInMemory = 0;
 
     private ConcurrentMap<Object, TaskScheduler> schedulerByTag = new ConcurrentHashMap<Object, TaskScheduler>();
     
@@ -130,6 +133,52 @@ public class BasicExecutionManager implements ExecutionManager {
     public void shutdownNow() {
         runner.shutdownNow();
         delayedRunner.shutdownNow();
+        TaskExecutorStrategy strategy = executorStrategy;
+        if (strategy!=null) strategy.shutdownNow();
+    }
+    
+    /** the thread factory used for the (unbounded) default executor; available for use by {@link TaskExecutorStrategy} instances */
+    public ThreadFactory getDaemonThreadFactory() {
+        return daemonThreadFactory;
+    }
+    
+    /** the default executor, unbounded, used if there is no {@link TaskExecutorStrategy} */
+    public ExecutorService getDefaultExecutor() {
+        return runner;
+    }
+    
+    /**
+     * An executor for jobs which are not themselves tasks (e.g. polls run by a shared 
+     * {@link brooklyn.event.feed.FeedScheduler}), running each job on the executor that the 
+     * {@link TaskExecutorStrategy} (if any, when the job is executed) chooses for a task with the given tags, 
+     * so such jobs are bounded and routed as tasks are.
+     */
+    public Executor getExecutorForTags(Collection<?> tags) {
+        final Task<?> prototype = new BasicTask<Void>(MutableMap.of("tags", ImmutableList.copyOf(tags)), new Runnable() {
+            @Override public void run() {}
+        });
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                TaskExecutorStrategy strategy = executorStrategy;
+                (strategy!=null ? strategy.getExecutor(prototype) : runner).execute(command);
+            }
+        };
+    }
+    
+    /**
+     * Sets the strategy for choosing the executor for subsequently submitted tasks 
+     * (other than those with a {@link TaskScheduler}), or null to use the default unbounded executor.
+     * Any previous strategy is shut down.
+     */
+    public void setExecutorStrategy(TaskExecutorStrategy strategy) {
+        TaskExecutorStrategy old = executorStrategy;
+        executorStrategy = strategy;
+        if (old!=null && old!=strategy) old.shutdownNow();
+    }
+    
+    public TaskExecutorStrategy getExecutorStrategy() {
+        return executorStrategy;
     }
     
     public void addListener(ExecutionListener listener) {
@@ -147,11 +196,9 @@ public class BasicExecutionManager implements ExecutionManager {
      * a reference to it as a tag.
      */
     public void deleteTag(Object tag) {
-        Set<Task<?>> tasks = tasksByTag.remove(tag);
-        if (tasks != null) {
-            for (Task<?> task : tasks) {
-                deleteTask(task);
-            }
+        Set<Task<?>> tasks = taskIndex.removeTag(tag);
+        for (Task<?> task : tasks) {
+            deleteTask(task);
         }
     }
 
@@ -168,13 +215,7 @@ public class BasicExecutionManager implements ExecutionManager {
     }
 
     protected boolean deleteTaskNonRecursive(Task<?> task) {
-        Set<?> tags = checkNotNull(task, "task").getTags();
-        for (Object tag : tags) {
-            Set<Task<?>> tasks = getMutableTasksWithTagOrNull(tag);
-            if (tasks != null) tasks.remove(task);
-        }
-        Task<?> removed = tasksById.remove(task.getId());
-        return removed != null;
+        return taskIndex.remove(checkNotNull(task, "task"));
     }
 
     public boolean isShutdown() {
@@ -194,30 +235,55 @@ public class BasicExecutionManager implements ExecutionManager {
     }
 
     public long getNumInMemoryTasks() {
-        return tasksById.size();
+        return taskIndex.size();
     }
 
-    private Set<Task<?>> getMutableTasksWithTag(Object tag) {
-        Preconditions.checkNotNull(tag);
-        tasksByTag.putIfAbsent(tag, Collections.synchronizedSet(new LinkedHashSet<Task<?>>()));
-        return tasksByTag.get(tag);
+    /** number of finished tasks evicted because there were more than {@link #getMaxTasksInMemory()} */
+    public long getNumEvictedTasks() {
+        return taskIndex.getEvictedCount();
     }
-
-    private Set<Task<?>> getMutableTasksWithTagOrNull(Object tag) {
-        return tasksByTag.get(tag);
+    
+    public int getMaxTasksInMemory() {
+        return maxTasksInMemory;
+    }
+    
+    /**
+     * Sets a cap on the number of tasks kept in memory: when exceeded on submission, finished tasks are 
+     * deleted, oldest submitted first. Zero or negative means no cap (the default).
+     */
+    public void setMaxTasksInMemory(int maxTasksInMemory) {
+        this.maxTasksInMemory = maxTasksInMemory;
+    }
+    
+    private void evictIfOverCapacity() {
+        int max = maxTasksInMemory;
+        if (max <= 0 || taskIndex.size() <= max) return;
+        // evict a little below the cap, so we do not evict on every submission
+        List<Task<?>> evicted = taskIndex.evictFinished(max - Math.max(1, max/10));
+        if (log.isTraceEnabled()) log.trace("{} evicted {} finished tasks, as more than {} in memory", new Object[] {this, evicted.size(), max});
     }
 
     @Override
     public Task<?> getTask(String id) {
-        return tasksById.get(id);
+        return taskIndex.get(id);
     }
     
     @Override
     public Set<Task<?>> getTasksWithTag(Object tag) {
-        Set<Task<?>> result = getMutableTasksWithTag(tag);
-        synchronized (result) {
-            return (Set<Task<?>>)Collections.unmodifiableSet(new LinkedHashSet<Task<?>>(result));
-        }
+        return Collections.unmodifiableSet(taskIndex.getTasksWithTag(tag));
+    }
+    
+    /**
+     * Returns a page of the tasks with the given tag, most recently submitted first; 
+     * e.g. the last N tasks in the context of an entity.
+     */
+    public List<Task<?>> getMostRecentTasksWithTag(Object tag, int offset, int limit) {
+        return Collections.unmodifiableList(taskIndex.getMostRecentTasksWithTag(tag, offset, limit));
+    }
+    
+    /** number of tasks (in memory) with the given tag */
+    public int getNumTasksWithTag(Object tag) {
+        return taskIndex.countWithTag(tag);
     }
     
     @Override
@@ -232,25 +298,10 @@ public class BasicExecutionManager implements ExecutionManager {
 
     @Override
     public Set<Task<?>> getTasksWithAllTags(Iterable<?> tags) {
-        //NB: for this method retrieval for multiple tags could be made (much) more efficient (if/when it is used with multiple tags!)
-        //by first looking for the least-used tag, getting those tasks, and then for each of those tasks
-        //checking whether it contains the other tags (looking for second-least used, then third-least used, etc)
-        Set<Task<?>> result = new LinkedHashSet<Task<?>>();
-        boolean first = true;
-        Iterator<?> ti = tags.iterator();
-        while (ti.hasNext()) {
-            Object tag = ti.next();
-            if (first) { 
-                first = false;
-                result.addAll(getTasksWithTag(tag));
-            } else {
-                result.retainAll(getTasksWithTag(tag));
-            }
-        }
-        return Collections.unmodifiableSet(result);
+        return Collections.unmodifiableSet(taskIndex.getTasksWithAllTags(tags));
     }
 
-    public Set<Object> getTaskTags() { return Collections.unmodifiableSet(Sets.newLinkedHashSet(tasksByTag.keySet())); }
+    public Set<Object> getTaskTags() { return Collections.unmodifiableSet(Sets.newLinkedHashSet(taskIndex.getTags())); }
 
     public Task<?> submit(Runnable r) { return submit(new LinkedHashMap<Object,Object>(1), r); }
     public Task<?> submit(Map<?,?> flags, Runnable r) { return submit(flags, new BasicTask<Void>(flags, r)); }
@@ -279,7 +330,7 @@ public class BasicExecutionManager implements ExecutionManager {
 	@SuppressWarnings("unchecked")
     protected Task<?> submitNewScheduledTask(final Map<?,?> flags, final ScheduledTask task) {
 		task.submitTimeUtc = System.currentTimeMillis();
-		tasksById.put(task.getId(), task);
+		taskIndex.addById(task);
 		if (!task.isDone()) {
 			task.result = delayedRunner.schedule(new Callable<Object>() { @SuppressWarnings("rawtypes")
             public Object call() {
@@ -328,7 +379,6 @@ public class BasicExecutionManager implements ExecutionManager {
         if (task instanceof ScheduledTask)
             return (Task<T>) submitNewScheduledTask(flags, (ScheduledTask)task);
         
-        tasksById.put(task.getId(), task);
         totalTaskCount.incrementAndGet();
         
         beforeSubmit(flags, task);
@@ -388,7 +438,8 @@ public class BasicExecutionManager implements ExecutionManager {
 			if (schedulers.size()>1) log.warn("multiple schedulers detected, using only the first, for "+task+": "+schedulers);
             future = schedulers.iterator().next().submit(job);
         } else {
-            future = runner.submit(job);
+            TaskExecutorStrategy strategy = executorStrategy;
+            future = (strategy!=null ? strategy.getExecutor(task) : runner).submit(job);
         }
         // on completion, listeners get triggered above; here, below we ensure they get triggered on cancel
         // (and we make sure the same ExecutionList is used in the future as in the task)
@@ -417,9 +468,8 @@ public class BasicExecutionManager implements ExecutionManager {
         if (flags.get("tag")!=null) ((TaskInternal<?>)task).getMutableTags().add(flags.remove("tag"));
         if (flags.get("tags")!=null) ((TaskInternal<?>)task).getMutableTags().addAll((Collection<?>)flags.remove("tags"));
 
-        for (Object tag: ((TaskInternal<?>)task).getTags()) {
-            getMutableTasksWithTag(tag).add(task);
-        }
+        taskIndex.add(task, ((TaskInternal<?>)task).getTags());
+        evictIfOverCapacity();
     }
 
     protected void beforeStart(Map<?,?> flags, Task<?> task) {
@@ -455,6 +505,7 @@ public class BasicExecutionManager implements ExecutionManager {
         }
         ((TaskInternal<?>)task).setThread(null);
         synchronized (task) { task.notifyAll(); }
+        taskIndex.markFinished(task);
 
         for (ExecutionListener listener : listeners) {
             try {
@@ -30,6 +30,7 @@ import brooklyn.management.HasTaskChildren;
 import brooklyn.management.Task;
 import brooklyn.util.GroovyJavaMethods;
 import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.task.BoundedTaskExecutorStrategy.BoundedPool;
 import brooklyn.util.text.Identifiers;
 import brooklyn.util.text.Strings;
 import brooklyn.util.time.Duration;
@@ -297,13 +298,17 @@ public class BasicTask<T> implements TaskInternal<T> {
 
     @Override
     public T get() throws InterruptedException, ExecutionException {
+        BoundedPool waitingPool = null;
         try {
-            if (!isDone())
+            if (!isDone()) {
                 Tasks.setBlockingTask(this);
+                waitingPool = BoundedTaskExecutorStrategy.beginWaiting();
+            }
             blockUntilStarted();
             return result.get();
         } finally {
             Tasks.resetBlockingTask();
+            BoundedTaskExecutorStrategy.endWaiting(waitingPool);
         }
     }
 
@@ -353,6 +358,7 @@ public class BasicTask<T> implements TaskInternal<T> {
     @Override
     public boolean blockUntilEnded(Duration timeout) {
         Long endTime = timeout==null ? null : System.currentTimeMillis() + timeout.toMillisecondsRoundingUp();
+        BoundedPool waitingPool = isDone() ? null : BoundedTaskExecutorStrategy.beginWaiting();
         try { 
             boolean started = blockUntilStarted(timeout);
             if (!started) return false;
@@ -369,6 +375,8 @@ public class BasicTask<T> implements TaskInternal<T> {
             if (!(t instanceof TimeoutException) && log.isDebugEnabled())
                 log.debug("call from "+Thread.currentThread()+", blocking until '"+this+"' finishes, ended with error: "+t);
             return isDone(); 
+        } finally {
+            BoundedTaskExecutorStrategy.endWaiting(waitingPool);
         }
     }
 
@@ -379,6 +387,15 @@ public class BasicTask<T> implements TaskInternal<T> {
     
     @Override
     public T get(Duration duration) throws InterruptedException, ExecutionException, TimeoutException {
+        BoundedPool waitingPool = isDone() ? null : BoundedTaskExecutorStrategy.beginWaiting();
+        try {
+            return getWaiting(duration);
+        } finally {
+            BoundedTaskExecutorStrategy.endWaiting(waitingPool);
+        }
+    }
+    
+    private T getWaiting(Duration duration) throws InterruptedException, ExecutionException, TimeoutException {
         long start = System.currentTimeMillis();
         Long end  = duration==null ? null : start + duration.toMillisecondsRoundingUp();
         while (end==null || end > System.currentTimeMillis()) {
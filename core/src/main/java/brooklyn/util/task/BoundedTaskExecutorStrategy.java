@@ -0,0 +1,202 @@
+package brooklyn.util.task;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import brooklyn.management.Task;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Runs tasks on bounded pools, so that a burst of submissions (e.g. feed polls, or effectors 
+ * across a large cluster) queues rather than creating an unbounded number of threads.
+ * <p>
+ * There is one pool for general (typically CPU-light) tasks, and a separate pool for tasks 
+ * which block on I/O, selected by having any of the given tags (e.g. {@link TaskTags#BLOCKING_IO_TASK}),
+ * so that slow ssh or http calls cannot starve the other tasks.
+ * <p>
+ * Unlike a plain fixed-size pool, a pool grows by one thread for each of its threads which is blocked 
+ * waiting for another task (see {@link BasicTask#get()}), and shrinks again when the wait ends. 
+ * So each pool always has its configured number of threads free to make progress, whichever thread 
+ * (of this pool, of the other pool, or not of any pool) submitted the task being waited on; 
+ * otherwise tasks blocked on queued tasks could deadlock. Tasks which block in other ways 
+ * (e.g. on I/O, or on latches) are not compensated for, and should be tagged as blocking.
+ */
+public class BoundedTaskExecutorStrategy implements TaskExecutorStrategy {
+
+    private static final ThreadLocal<BoundedPool> CURRENT_POOL = new ThreadLocal<BoundedPool>();
+    
+    /** 
+     * a pool of the given size, plus one for each thread blocked waiting for a task (threads time out when idle),
+     * whose threads know which pool they belong to
+     */
+    public static class BoundedPool {
+        private final String name;
+        private final int maxThreads;
+        private final ThreadPoolExecutor executor;
+        private final AtomicLong maxQueueDepthSeen = new AtomicLong();
+        private final AtomicLong maxBlockedSeen = new AtomicLong();
+        private int blocked; // guarded by this
+        
+        BoundedPool(String name, int maxThreads, final ThreadFactory threadFactory) {
+            Preconditions.checkArgument(maxThreads > 0, "maxThreads must be positive for %s", name);
+            this.name = name;
+            this.maxThreads = maxThreads;
+            this.executor = new ThreadPoolExecutor(maxThreads, maxThreads, 1L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), 
+                    new ThreadFactory() {
+                        @Override public Thread newThread(final Runnable r) {
+                            return threadFactory.newThread(new Runnable() {
+                                @Override public void run() {
+                                    CURRENT_POOL.set(BoundedPool.this);
+                                    r.run();
+                                }});
+                        }});
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+        
+        synchronized void beginBlocking() {
+            blocked++;
+            if (blocked > maxBlockedSeen.get()) maxBlockedSeen.set(blocked);
+            resize();
+        }
+        
+        synchronized void endBlocking() {
+            blocked--;
+            resize();
+        }
+        
+        private void resize() {
+            int size = maxThreads + blocked;
+            // keep core <= max at each step; raising the core size starts threads for any queued tasks
+            if (size > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(size);
+                executor.setCorePoolSize(size);
+            } else {
+                executor.setCorePoolSize(size);
+                executor.setMaximumPoolSize(size);
+            }
+        }
+        
+        ExecutorService getExecutor() {
+            int depth = executor.getQueue().size();
+            if (depth > maxQueueDepthSeen.get()) maxQueueDepthSeen.set(depth);
+            return executor;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        /** the configured size, excluding threads added while others are blocked */
+        public int getMaxThreads() {
+            return maxThreads;
+        }
+        
+        /** number of threads currently added because others are blocked waiting for tasks */
+        public synchronized int getBlockedCount() {
+            return blocked;
+        }
+        
+        /** highest number of threads blocked waiting for tasks at once */
+        public long getMaxBlockedSeen() {
+            return maxBlockedSeen.get();
+        }
+        
+        public int getActiveCount() {
+            return executor.getActiveCount();
+        }
+        
+        /** number of tasks waiting for a thread */
+        public int getQueueDepth() {
+            return executor.getQueue().size();
+        }
+        
+        /** (approximate) highest queue depth observed when submitting */
+        public long getMaxQueueDepthSeen() {
+            return maxQueueDepthSeen.get();
+        }
+        
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("name", name).add("maxThreads", getMaxThreads())
+                    .add("blocked", getBlockedCount()).add("active", getActiveCount()).add("queued", getQueueDepth()).toString();
+        }
+    }
+    
+    private final BoundedPool generalPool;
+    private final BoundedPool blockingPool;
+    private final Set<Object> blockingTags;
+    
+    /**
+     * @param threadFactory factory for the threads of both pools
+     * @param maxThreads maximum threads for general tasks
+     * @param maxBlockingThreads maximum threads for tasks with any of the blocking tags
+     * @param blockingTags tags identifying tasks which block on I/O
+     */
+    public BoundedTaskExecutorStrategy(ThreadFactory threadFactory, int maxThreads, int maxBlockingThreads, Collection<?> blockingTags) {
+        this.generalPool = new BoundedPool("general", maxThreads, threadFactory);
+        this.blockingPool = new BoundedPool("blocking", maxBlockingThreads, threadFactory);
+        this.blockingTags = ImmutableSet.copyOf(blockingTags);
+    }
+    
+    /**
+     * To be called by a thread about to wait for a task to complete; if the thread belongs to a bounded pool, 
+     * that pool grows by one thread until {@link #endWaiting(BoundedPool)} is called with the returned pool.
+     * 
+     * @return the pool of the current thread, or null if it is not in a bounded pool
+     */
+    @Nullable
+    static BoundedPool beginWaiting() {
+        BoundedPool pool = CURRENT_POOL.get();
+        if (pool != null) pool.beginBlocking();
+        return pool;
+    }
+    
+    /** @see #beginWaiting() */
+    static void endWaiting(@Nullable BoundedPool pool) {
+        if (pool != null) pool.endBlocking();
+    }
+    
+    @Override
+    public ExecutorService getExecutor(Task<?> task) {
+        BoundedPool pool = isBlocking(task) ? blockingPool : generalPool;
+        return pool.getExecutor();
+    }
+
+    protected boolean isBlocking(Task<?> task) {
+        if (blockingTags.isEmpty()) return false;
+        for (Object tag : task.getTags()) {
+            if (blockingTags.contains(tag)) return true;
+        }
+        return false;
+    }
+    
+    @Override
+    public void shutdownNow() {
+        generalPool.executor.shutdownNow();
+        blockingPool.executor.shutdownNow();
+    }
+    
+    public BoundedPool getGeneralPool() {
+        return generalPool;
+    }
+    
+    public BoundedPool getBlockingPool() {
+        return blockingPool;
+    }
+    
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("general", generalPool).add("blocking", blockingPool).toString();
+    }
+}
@@ -0,0 +1,153 @@
+package brooklyn.util.task;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.management.Task;
+
+/**
+ * Ensures that {@link Task}s execute with in-order single-threaded semantics, as a lock-free
+ * serial executor (an actor-style mailbox).
+ * <p>
+ * Tasks presented through {@link #submit(Callable)} run in submission order. No thread is held
+ * while the mailbox is empty: the first submission to an empty mailbox hands a drain job to the
+ * executor, which runs queued jobs one after another until the mailbox is empty (re-submitting
+ * itself periodically, so that a busy tag does not hold on to a pool thread indefinitely).
+ * <p>
+ * Queue length and queueing latency (time from submission until the job starts) are recorded,
+ * for reporting per tag via {@link BasicExecutionManager#getTaskSchedulerForTag(Object)}.
+ *
+ * @see SingleThreadedScheduler
+ */
+public class SerialTaskScheduler implements TaskScheduler, CanSetName {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SerialTaskScheduler.class);
+
+    /** jobs run by one drain job before it yields its thread back to the executor */
+    private static final int MAX_JOBS_PER_DRAIN = 32;
+
+    private final Queue<QueuedJob<?>> mailbox = new ConcurrentLinkedQueue<QueuedJob<?>>();
+
+    /** jobs submitted and not yet finished (including any running); the drain job runs iff this is non-zero */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong startedCount = new AtomicLong();
+    private final AtomicLong totalQueueLatencyNanos = new AtomicLong();
+    private final AtomicLong maxQueueLatencyNanos = new AtomicLong();
+    private volatile int lastSizeWarn = 0;
+
+    private volatile ExecutorService executor;
+
+    private volatile String name;
+
+    private final Runnable drainJob = new Runnable() {
+        @Override public void run() {
+            drain();
+        }
+        @Override public String toString() {
+            return "drain["+SerialTaskScheduler.this+"]";
+        }
+    };
+
+    private class QueuedJob<T> extends FutureTask<T> {
+        final long submitTimeNanos = System.nanoTime();
+
+        QueuedJob(Callable<T> c) {
+            super(c);
+        }
+
+        @Override
+        public void run() {
+            recordStart(System.nanoTime() - submitTimeNanos);
+            super.run();
+        }
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name!=null ? "SerialTaskScheduler["+name+"]" : super.toString();
+    }
+
+    @Override
+    public void injectExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> c) {
+        QueuedJob<T> job = new QueuedJob<T>(c);
+        submittedCount.incrementAndGet();
+        // add before incrementing, so the drain job always finds a job when pending is non-zero
+        mailbox.add(job);
+        int size = pending.getAndIncrement();
+        if (size==0) {
+            executor.execute(drainJob);
+        } else if ((size == 50 || (size<=500 && (size%100)==0) || (size%1000)==0) && size!=lastSizeWarn) {
+            LOG.warn("{} is backing up, {} tasks queued", this, size);
+            lastSizeWarn = size;
+        }
+        return job;
+    }
+
+    private void drain() {
+        for (int i=0; i<MAX_JOBS_PER_DRAIN; i++) {
+            QueuedJob<?> job = mailbox.poll();
+            // job is never null here, as pending was incremented after the add; cancelled jobs do nothing when run
+            job.run();
+            if (pending.decrementAndGet()==0) return;
+        }
+        // more to do, but give other work a turn on this thread
+        executor.execute(drainJob);
+    }
+
+    private void recordStart(long queueLatencyNanos) {
+        startedCount.incrementAndGet();
+        totalQueueLatencyNanos.addAndGet(queueLatencyNanos);
+        long max = maxQueueLatencyNanos.get();
+        while (queueLatencyNanos > max && !maxQueueLatencyNanos.compareAndSet(max, queueLatencyNanos)) {
+            max = maxQueueLatencyNanos.get();
+        }
+    }
+
+    /** number of jobs waiting or running */
+    public int getQueueLength() {
+        return pending.get();
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /** number of jobs which have been started (or skipped, if cancelled while queued) */
+    public long getStartedCount() {
+        return startedCount.get();
+    }
+
+    /** mean time jobs waited in the queue before starting, in milliseconds */
+    public double getMeanQueueLatencyMillis() {
+        long started = startedCount.get();
+        if (started==0) return 0;
+        return ((double)totalQueueLatencyNanos.get()) / started / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /** longest time a job waited in the queue before starting, in milliseconds */
+    public double getMaxQueueLatencyMillis() {
+        return ((double)maxQueueLatencyNanos.get()) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
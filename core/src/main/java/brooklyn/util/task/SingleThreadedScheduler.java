@@ -27,6 +27,8 @@ import brooklyn.management.Task;
  * This implementation does so by blocking on a {@link ConcurrentLinkedQueue}, <em>after</em>
  * the task is started in a thread (and {@link Task#isBegun()} returns true), but (of course)
  * <em>before</em> the {@link TaskInternal#getJob()} actually gets invoked.
+ * 
+ * @see SerialTaskScheduler for a lock-free alternative, which also records queueing metrics
  */
 public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
     private static final Logger LOG = LoggerFactory.getLogger(SingleThreadedScheduler.class);
@@ -0,0 +1,22 @@
+package brooklyn.util.task;
+
+import java.util.concurrent.ExecutorService;
+
+import brooklyn.management.Task;
+
+/**
+ * Chooses the executor on which {@link BasicExecutionManager} runs the job of each submitted task
+ * (for tasks not handled by a {@link TaskScheduler}).
+ * <p>
+ * Implementations must not change task semantics: a task may block waiting for other tasks,
+ * including ones it submits itself, so must never be starved of threads to run those.
+ *
+ * @see BasicExecutionManager#setExecutorStrategy(TaskExecutorStrategy)
+ */
+public interface TaskExecutorStrategy {
+
+    /** @return the executor to use for the given (newly submitted) task */
+    public ExecutorService getExecutor(Task<?> task);
+
+    public void shutdownNow();
+}
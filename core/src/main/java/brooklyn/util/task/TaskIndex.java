@@ -0,0 +1,212 @@
+package brooklyn.util.task;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import brooklyn.management.Task;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * The records of tasks known to a {@link BasicExecutionManager}, by id and by tag.
+ * <p>
+ * Each task is given a sequence number when first indexed, so the per-tag structures are sorted
+ * by submission order. They are {@link ConcurrentSkipListMap}s, so lookups, removal and (newest-first,
+ * paginated) queries take no lock and do not copy the whole set. Tasks which have ended are also kept
+ * in a structure in the same order (see {@link #markFinished(Task)}), so they can be evicted oldest-first
+ * when a cap on the number of tasks is exceeded, without scanning past those still running.
+ */
+public class TaskIndex {
+
+    private static class Entry {
+        final Task<?> task;
+        final long seq;
+        /** the tags under which the task was indexed (the task's tags may change later) */
+        final Object[] tags;
+        Entry(Task<?> task, long seq, Object[] tags) {
+            this.task = task;
+            this.seq = seq;
+            this.tags = tags;
+        }
+    }
+
+    private final AtomicLong nextSeq = new AtomicLong();
+    private final ConcurrentMap<String, Entry> byId = new ConcurrentHashMap<String, Entry>();
+    private final ConcurrentSkipListMap<Long, Task<?>> bySeq = new ConcurrentSkipListMap<Long, Task<?>>();
+    private final ConcurrentSkipListMap<Long, Task<?>> finishedBySeq = new ConcurrentSkipListMap<Long, Task<?>>();
+    private final ConcurrentMap<Object, ConcurrentSkipListMap<Long, Task<?>>> byTag = new ConcurrentHashMap<Object, ConcurrentSkipListMap<Long, Task<?>>>();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    /** records the task by id only (no-op if already recorded) */
+    public void addById(Task<?> task) {
+        add(task, Collections.emptySet());
+    }
+
+    /** records the task by id and under each of the given tags (no-op if already recorded) */
+    public void add(Task<?> task, Set<?> tags) {
+        if (byId.containsKey(task.getId())) return;
+        long seq = nextSeq.incrementAndGet();
+        Object[] tagsArray = tags.toArray();
+        Entry entry = new Entry(task, seq, tagsArray);
+        // fill the other structures before publishing by id, so a concurrent remove finds them all
+        bySeq.put(seq, task);
+        for (Object tag : tagsArray) {
+            getOrCreateTagMap(tag).put(seq, task);
+        }
+        if (byId.putIfAbsent(task.getId(), entry)!=null) {
+            // recorded concurrently by another caller; undo ours
+            removeEntries(entry);
+            return;
+        }
+        if (task.isDone()) markFinished(task);
+    }
+
+    /**
+     * records that the task has ended, making it a candidate for {@link #evictFinished(int)}
+     * (no-op if the task is not recorded)
+     */
+    public void markFinished(Task<?> task) {
+        Entry entry = byId.get(task.getId());
+        if (entry==null) return;
+        finishedBySeq.put(entry.seq, task);
+        // if removed concurrently, its removal may have preceded our put
+        if (byId.get(task.getId())!=entry) finishedBySeq.remove(entry.seq);
+    }
+
+    private ConcurrentSkipListMap<Long, Task<?>> getOrCreateTagMap(Object tag) {
+        Preconditions.checkNotNull(tag);
+        ConcurrentSkipListMap<Long, Task<?>> result = byTag.get(tag);
+        if (result==null) {
+            result = new ConcurrentSkipListMap<Long, Task<?>>();
+            ConcurrentSkipListMap<Long, Task<?>> old = byTag.putIfAbsent(tag, result);
+            if (old!=null) result = old;
+        }
+        return result;
+    }
+
+    /** @return true if the task was known (and is now removed) */
+    public boolean remove(Task<?> task) {
+        Entry entry = byId.remove(task.getId());
+        if (entry==null) return false;
+        removeEntries(entry);
+        return true;
+    }
+
+    private void removeEntries(Entry entry) {
+        bySeq.remove(entry.seq);
+        finishedBySeq.remove(entry.seq);
+        for (Object tag : entry.tags) {
+            ConcurrentSkipListMap<Long, Task<?>> tasks = byTag.get(tag);
+            if (tasks!=null) tasks.remove(entry.seq);
+        }
+    }
+
+    /** forgets the tag, returning the tasks which had it (which are not themselves removed) */
+    public Set<Task<?>> removeTag(Object tag) {
+        ConcurrentSkipListMap<Long, Task<?>> tasks = byTag.remove(tag);
+        if (tasks==null) return Collections.emptySet();
+        return new LinkedHashSet<Task<?>>(tasks.values());
+    }
+
+    public Task<?> get(String id) {
+        Entry entry = byId.get(id);
+        return (entry!=null) ? entry.task : null;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public Set<Object> getTags() {
+        return byTag.keySet();
+    }
+
+    /** @return number of tasks with the given tag (in time linear in that number, as for any concurrent collection) */
+    public int countWithTag(Object tag) {
+        ConcurrentSkipListMap<Long, Task<?>> tasks = byTag.get(tag);
+        return (tasks==null) ? 0 : tasks.size();
+    }
+
+    /** @return a snapshot of the tasks with the given tag, in submission order */
+    public Set<Task<?>> getTasksWithTag(Object tag) {
+        ConcurrentSkipListMap<Long, Task<?>> tasks = byTag.get(tag);
+        if (tasks==null) return Collections.emptySet();
+        return new LinkedHashSet<Task<?>>(tasks.values());
+    }
+
+    /**
+     * @return up to <code>limit</code> tasks with the given tag, most recently submitted first,
+     * skipping the <code>offset</code> most recent
+     */
+    public List<Task<?>> getMostRecentTasksWithTag(Object tag, int offset, int limit) {
+        Preconditions.checkArgument(offset >= 0 && limit >= 0, "offset and limit must be non-negative");
+        ConcurrentSkipListMap<Long, Task<?>> tasks = byTag.get(tag);
+        List<Task<?>> result = Lists.newArrayList();
+        if (tasks==null) return result;
+        Iterator<Task<?>> ti = tasks.descendingMap().values().iterator();
+        for (int i=0; i<offset && ti.hasNext(); i++) ti.next();
+        while (result.size() < limit && ti.hasNext()) result.add(ti.next());
+        return result;
+    }
+
+    /** @return the tasks which have all the given tags, in submission order; looks up from the least-used tag */
+    public Set<Task<?>> getTasksWithAllTags(Iterable<?> tags) {
+        List<ConcurrentSkipListMap<Long, Task<?>>> maps = Lists.newArrayList();
+        for (Object tag : tags) {
+            ConcurrentSkipListMap<Long, Task<?>> tasks = byTag.get(tag);
+            if (tasks==null || tasks.isEmpty()) return Collections.emptySet();
+            maps.add(tasks);
+        }
+        if (maps.isEmpty()) return Collections.emptySet();
+
+        ConcurrentSkipListMap<Long, Task<?>> smallest = maps.get(0);
+        for (ConcurrentSkipListMap<Long, Task<?>> tasks : maps) {
+            // size() is linear, but cheap compared with retaining against the larger maps
+            if (tasks.size() < smallest.size()) smallest = tasks;
+        }
+        Set<Task<?>> result = new LinkedHashSet<Task<?>>();
+        outer: for (Map.Entry<Long, Task<?>> entry : smallest.entrySet()) {
+            for (ConcurrentSkipListMap<Long, Task<?>> tasks : maps) {
+                if (tasks!=smallest && !tasks.containsKey(entry.getKey())) continue outer;
+            }
+            result.add(entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Removes finished tasks, oldest submitted first, until there are at most <code>targetSize</code>
+     * tasks (or no finished tasks remain). Only tasks passed to {@link #markFinished(Task)} are considered,
+     * so tasks still running are not scanned.
+     *
+     * @return the tasks removed
+     */
+    public List<Task<?>> evictFinished(int targetSize) {
+        List<Task<?>> result = Lists.newArrayList();
+        int excess = size() - targetSize;
+        if (excess <= 0) return result;
+        for (Task<?> task : finishedBySeq.values()) {
+            if (result.size() >= excess) break;
+            // a task is marked when it ends, which may be just before its result is set
+            if (task.isDone() && remove(task)) {
+                result.add(task);
+            }
+        }
+        evictedCount.addAndGet(result.size());
+        return result;
+    }
+
+    /** number of tasks removed by {@link #evictFinished(int)} */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+}
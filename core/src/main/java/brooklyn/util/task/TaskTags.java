@@ -17,6 +17,10 @@ public class TaskTags {
     /** marks a task which is a subtask of another */
     public static final String SUB_TASK_TAG = "SUB-TASK";
 
+    /** marks a task which spends most of its time blocked on I/O (e.g. ssh or http calls);
+     * see {@link BoundedTaskExecutorStrategy} */
+    public static final String BLOCKING_IO_TASK = "blocking-io";
+
     public static void addTagDynamically(TaskAdaptable<?> task, final Object tag) {
         ((BasicTask<?>)task.asTask()).applyTagModifier(new Function<Set<Object>, Void>() {
             public Void apply(@Nullable Set<Object> input) {
@@ -0,0 +1,80 @@
+package brooklyn.util.task;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.management.Task;
+import brooklyn.util.exceptions.Exceptions;
+
+/**
+ * Runs each task on its own virtual thread, where the JVM supports them (Java 21+), so that very
+ * many concurrent tasks which block on I/O (ssh commands, http and jmx polls, waiting for attributes)
+ * do not each hold a platform thread.
+ * <p>
+ * Virtual threads are looked up reflectively, as brooklyn compiles against older JVMs;
+ * use {@link #isSupported()} to check before constructing, and otherwise keep the default executor.
+ * <p>
+ * {@link BasicExecutionManager#getPerThreadCurrentTask()} and {@link Tasks#current()} are thread-locals,
+ * which virtual threads support, so are unaffected. Note a virtual thread blocking inside a 
+ * <code>synchronized</code> block pins its carrier thread (on current JVMs), so code which does that
+ * heavily gets less benefit.
+ */
+public class VirtualThreadTaskExecutorStrategy implements TaskExecutorStrategy {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadTaskExecutorStrategy.class);
+
+    private final ExecutorService executor;
+
+    /** @return true if this JVM can create virtual threads */
+    public static boolean isSupported() {
+        try {
+            newVirtualThreadFactory("brooklyn-virtual-check-");
+            return true;
+        } catch (Exception e) {
+            if (log.isTraceEnabled()) log.trace("Virtual threads not supported: "+e);
+            return false;
+        }
+    }
+    
+    /**
+     * @param threadNamePrefix prefix for thread names, to which a counter is appended
+     * @throws IllegalStateException if virtual threads are not supported
+     */
+    public VirtualThreadTaskExecutorStrategy(String threadNamePrefix) {
+        try {
+            ThreadFactory threadFactory = newVirtualThreadFactory(threadNamePrefix);
+            Method newThreadPerTaskExecutor = java.util.concurrent.Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            executor = (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            throw new IllegalStateException("Virtual threads not supported in this JVM ("+System.getProperty("java.version")+")", e);
+        }
+    }
+
+    /** equivalent to <code>Thread.ofVirtual().name(prefix, 0).factory()</code> */
+    private static ThreadFactory newVirtualThreadFactory(String threadNamePrefix) throws Exception {
+        Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+        Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+        builder = builderType.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 0L);
+        return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+    }
+    
+    @Override
+    public ExecutorService getExecutor(Task<?> task) {
+        return executor;
+    }
+
+    @Override
+    public void shutdownNow() {
+        executor.shutdownNow();
+    }
+    
+    @Override
+    public String toString() {
+        return "VirtualThreadTaskExecutorStrategy";
+    }
+}
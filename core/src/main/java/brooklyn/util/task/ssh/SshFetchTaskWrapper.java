@@ -13,6 +13,7 @@ import brooklyn.management.TaskWrapper;
 import brooklyn.util.config.ConfigBag;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.task.TaskBuilder;
+import brooklyn.util.task.TaskTags;
 import brooklyn.util.task.Tasks;
 import brooklyn.util.task.system.ProcessTaskWrapper;
 
@@ -39,7 +40,7 @@ public class SshFetchTaskWrapper implements TaskWrapper<String> {
     SshFetchTaskWrapper(SshFetchTaskFactory factory) {
         this.remoteFile = Preconditions.checkNotNull(factory.remoteFile, "remoteFile");
         this.machine = Preconditions.checkNotNull(factory.machine, "machine");
-        TaskBuilder<String> tb = TaskBuilder.<String>builder().dynamic(false).name("ssh fetch "+factory.remoteFile);
+        TaskBuilder<String> tb = TaskBuilder.<String>builder().dynamic(false).name("ssh fetch "+factory.remoteFile).tag(TaskTags.BLOCKING_IO_TASK);
         task = tb.body(new SshFetchJob()).build();
         config = factory.getConfig();
     }
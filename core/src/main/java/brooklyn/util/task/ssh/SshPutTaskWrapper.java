@@ -11,6 +11,7 @@ import brooklyn.management.TaskWrapper;
 import brooklyn.util.config.ConfigBag;
 import brooklyn.util.internal.ssh.SshTool;
 import brooklyn.util.task.TaskBuilder;
+import brooklyn.util.task.TaskTags;
 import brooklyn.util.task.Tasks;
 import brooklyn.util.task.system.ProcessTaskWrapper;
 
@@ -32,7 +33,7 @@ public class SshPutTaskWrapper extends SshPutTaskStub implements TaskWrapper<Voi
     // package private as only AbstractSshTaskFactory should invoke
     SshPutTaskWrapper(SshPutTaskFactory constructor) {
         super(constructor);
-        TaskBuilder<Void> tb = TaskBuilder.<Void>builder().dynamic(false).name(getSummary());
+        TaskBuilder<Void> tb = TaskBuilder.<Void>builder().dynamic(false).name(getSummary()).tag(TaskTags.BLOCKING_IO_TASK);
         task = tb.body(new SshPutJob()).build();
     }
     
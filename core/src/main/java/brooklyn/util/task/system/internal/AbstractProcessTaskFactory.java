@@ -11,6 +11,7 @@ import brooklyn.entity.basic.BrooklynTaskTags;
 import brooklyn.location.basic.SshMachineLocation;
 import brooklyn.util.stream.Streams;
 import brooklyn.util.task.TaskBuilder;
+import brooklyn.util.task.TaskTags;
 import brooklyn.util.task.system.ProcessTaskFactory;
 import brooklyn.util.task.system.ProcessTaskStub;
 import brooklyn.util.task.system.ProcessTaskWrapper;
@@ -150,6 +151,7 @@ public abstract class AbstractProcessTaskFactory<T extends AbstractProcessTaskFa
     /** creates the TaskBuilder which can be further customized; typically invoked by the initial {@link #newTask()} */
     public TaskBuilder<Object> constructCustomizedTaskBuilder() {
         TaskBuilder<Object> tb = TaskBuilder.builder().dynamic(false).name("ssh: "+getSummary());
+        tb.tag(TaskTags.BLOCKING_IO_TASK);
         
         tb.tag(BrooklynTaskTags.tagForStream(BrooklynTaskTags.STREAM_STDIN, 
                 Streams.byteArrayOfString(Strings.join(commands, "\n"))));
@@ -179,6 +179,47 @@ public class EnrichersTest {
         EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 5);
     }
 
+    @Test
+    public void testAggregatingGroupMaxUpdatedOnMemberChanges() {
+        group.addMember(entity);
+        group.addMember(entity2);
+        group.addEnricher(Enrichers.builder()
+                .aggregating(NUM1)
+                .publishing(NUM2)
+                .fromMembers()
+                .computingMax()
+                .build());
+        
+        entity.setAttribute(NUM1, 2);
+        entity2.setAttribute(NUM1, 3);
+        EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 3);
+        
+        entity2.setAttribute(NUM1, 1);
+        EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 2);
+        
+        group.removeMember(entity);
+        EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 1);
+    }
+    
+    @Test
+    public void testAggregatingGroupAverageWithDefaultValue() {
+        group.addMember(entity);
+        group.addMember(entity2);
+        group.addEnricher(Enrichers.builder()
+                .aggregating(NUM1)
+                .publishing(NUM2)
+                .fromMembers()
+                .computingAverage()
+                .defaultValueForUnreportedSensors(0)
+                .build());
+        
+        entity.setAttribute(NUM1, 4);
+        EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 2);
+        
+        entity2.setAttribute(NUM1, 8);
+        EntityTestUtils.assertAttributeEqualsEventually(group, NUM2, 6);
+    }
+    
     @Test
     public void testAggregatingExcludingBlankString() {
         group.addMember(entity);
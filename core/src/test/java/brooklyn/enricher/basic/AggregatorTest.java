@@ -0,0 +1,64 @@
+package brooklyn.enricher.basic;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.enricher.Enrichers;
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.BasicGroup;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
+import brooklyn.test.EntityTestUtils;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+
+public class AggregatorTest {
+
+    public static final AttributeSensor<Double> VAL = Sensors.newDoubleSensor("test.val");
+    public static final AttributeSensor<Double> SUM = Sensors.newDoubleSensor("test.sum");
+    
+    private TestApplication app;
+    private TestEntity entity;
+    private TestEntity entity2;
+    private BasicGroup group;
+    
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        app = ApplicationBuilder.newManagedApp(TestApplication.class);
+        entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        entity2 = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        group = app.createAndManageChild(EntitySpec.create(BasicGroup.class));
+    }
+    
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (app != null) Entities.destroyAll(app.getManagementContext());
+    }
+
+    @Test
+    public void testIncrementalSumRecalculatedToDiscardFloatingPointDrift() {
+        entity.setAttribute(VAL, 0d);
+        entity2.setAttribute(VAL, 1d);
+        group.addMember(entity);
+        group.addMember(entity2);
+        group.addEnricher(Enrichers.builder()
+                .aggregating(VAL)
+                .publishing(SUM)
+                .fromMembers()
+                .computingSum()
+                .build());
+        EntityTestUtils.assertAttributeEqualsEventually(group, SUM, 1d);
+        
+        // each time, adding 1e16 to the running sum loses entity2's 1, and removing it leaves 0;
+        // the last of these updates is a removal which rebuilds the sum from the members' values
+        for (int i = 0; i < Aggregator.RECALCULATE_AFTER_REMOVALS; i++) {
+            entity.setAttribute(VAL, 1e16);
+            entity.setAttribute(VAL, 0d);
+        }
+        entity2.setAttribute(VAL, 2d);
+        EntityTestUtils.assertAttributeEqualsEventually(group, SUM, 2d);
+    }
+}
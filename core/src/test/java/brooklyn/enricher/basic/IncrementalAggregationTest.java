@@ -0,0 +1,105 @@
+package brooklyn.enricher.basic;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import brooklyn.enricher.basic.IncrementalAggregation.Accumulator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+public class IncrementalAggregationTest {
+
+    @Test
+    public void testSumAndMeanTrackAddsAndRemoves() {
+        Accumulator<Number, Number> sum = IncrementalAggregation.sum(null, 0).newAccumulator();
+        Accumulator<Number, Number> mean = IncrementalAggregation.mean(null, null).newAccumulator();
+        assertEquals(sum.get(), 0);
+        assertNull(mean.get());
+        
+        for (Accumulator<Number, Number> accumulator : ImmutableList.of(sum, mean)) {
+            accumulator.add(1);
+            accumulator.add(2);
+            accumulator.add(null);
+            accumulator.add(6);
+            accumulator.remove(2);
+        }
+        assertEquals(sum.get(), 7d);
+        assertEquals(mean.get(), 3.5d);
+    }
+    
+    @Test
+    public void testSumOfIntegralValuesIsExact() {
+        Accumulator<Number, Number> sum = IncrementalAggregation.sum(null, 0).newAccumulator();
+        sum.add(1L << 60);
+        sum.add(1);
+        sum.add(Long.MAX_VALUE);
+        sum.remove(Long.MAX_VALUE);
+        sum.remove(1L << 60);
+        assertEquals(sum.get(), 1d);
+        
+        // integral values are summed separately, so are not lost when adding and removing a large double
+        sum.add(1e17);
+        sum.remove(1e17);
+        assertEquals(sum.get(), 1d);
+    }
+    
+    @Test
+    public void testMinAndMaxWithDuplicates() {
+        Accumulator<Number, Number> min = IncrementalAggregation.min().newAccumulator();
+        Accumulator<Number, Number> max = IncrementalAggregation.max().newAccumulator();
+        for (Accumulator<Number, Number> accumulator : ImmutableList.of(min, max)) {
+            accumulator.add(3);
+            accumulator.add(1);
+            accumulator.add(1);
+            accumulator.add(5);
+            accumulator.remove(1);
+            accumulator.remove(5);
+        }
+        assertEquals(min.get(), 1d);
+        assertEquals(max.get(), 3d);
+    }
+    
+    @Test
+    public void testQuantileWithinRelativeAccuracy() {
+        double accuracy = 0.01;
+        Accumulator<Number, Number> median = IncrementalAggregation.quantile(0.5, accuracy).newAccumulator();
+        Accumulator<Number, Number> p90 = IncrementalAggregation.quantile(0.9, accuracy).newAccumulator();
+        Random random = new Random(1234);
+        List<Double> vals = Lists.newArrayList();
+        for (int i = 0; i < 1000; i++) {
+            double val = random.nextDouble() * 1000;
+            vals.add(val);
+            median.add(val);
+            p90.add(val);
+        }
+        // remove the lower half, leaving 500..999 (by insertion order), so quantiles must track removals
+        for (Double val : vals.subList(0, 500)) {
+            median.remove(val);
+            p90.remove(val);
+        }
+        List<Double> remaining = Lists.newArrayList(vals.subList(500, 1000));
+        Collections.sort(remaining);
+        assertWithinAccuracy(median.get().doubleValue(), remaining.get(249), accuracy);
+        assertWithinAccuracy(p90.get().doubleValue(), remaining.get(449), accuracy);
+    }
+    
+    @Test
+    public void testQuantileOfNegativeAndZeroValues() {
+        Number result = IncrementalAggregation.quantile(0.5, 0.01).apply(ImmutableList.<Number>of(-10, 0, 0, 5, 20));
+        assertEquals(result, 0d);
+        result = IncrementalAggregation.quantile(0, 0.01).apply(ImmutableList.<Number>of(-10, 0, 0, 5, 20));
+        assertWithinAccuracy(result.doubleValue(), -10, 0.01);
+    }
+    
+    private static void assertWithinAccuracy(double actual, double expected, double accuracy) {
+        double error = Math.abs(actual - expected) / Math.abs(expected);
+        assertEquals(error <= accuracy, true, "actual="+actual+"; expected="+expected);
+    }
+}
@@ -134,4 +134,63 @@ public class AttributeMapTest {
         assertEquals(map.getValue(childSensor), "childValue")
         assertEquals(map.getValue(sensor), "parentValue")
     }
+    
+    @Test
+    public void testStoredNullAndRemovedSensors() {
+        BasicAttributeSensor<String> sensor1 = [ String, "a", "" ]
+        BasicAttributeSensor<String> sensor2 = [ String, "b.c", "" ]
+        
+        map.update(sensor1, null)
+        map.update(sensor2, "2val")
+        assertEquals(map.asMap(), [a:null, "b.c":"2val"])
+        
+        map.remove(sensor2)
+        assertEquals(map.getValue(sensor2), null)
+        assertEquals(map.getValue(["b","c"]), null)
+        assertEquals(map.asMap(), [a:null])
+        assertEquals(map.asRawMap().keySet(), [["a"]] as Set)
+    }
+    
+    @Test
+    public void testValuesInStorageCanBeRetrieved() {
+        BasicAttributeSensor<String> sensor = [ String, "b.c", "" ]
+        Map storage = Collections.synchronizedMap(new LinkedHashMap())
+        storage.put(["b","c"], "storedVal")
+        
+        AttributeMap map2 = new AttributeMap(new TestEntityImpl(app), storage)
+        
+        assertEquals(map2.getValue(sensor), "storedVal")
+        assertEquals(map2.asMap(), ["b.c":"storedVal"])
+    }
+    
+    @Test
+    public void testChangesToSharedStorageAreVisible() {
+        BasicAttributeSensor<String> sensor = [ String, "b.c", "" ]
+        Map storage = Collections.synchronizedMap(new LinkedHashMap())
+        AttributeMap map2 = new AttributeMap(new TestEntityImpl(app), storage, false)
+        
+        map2.update(sensor, "myval")
+        storage.put(["b","c"], "changedElsewhere")
+        
+        assertEquals(map2.getValue(sensor), "changedElsewhere")
+        assertEquals(map2.getValue(["b","c"]), "changedElsewhere")
+    }
+    
+    @Test
+    public void testManyDynamicallyNamedSensors() {
+        // more than the slots for a type, so some are only held in storage
+        List<BasicAttributeSensor<Integer>> sensors = []
+        for (int i = 0; i < 300; i++) {
+            BasicAttributeSensor<Integer> nextSensor = [ Integer, "attributeMapTest.dynamic"+i, "" ]
+            map.update(nextSensor, i)
+            sensors.add(nextSensor)
+        }
+        
+        for (int i = 0; i < 300; i++) {
+            assertEquals(map.getValue(sensors.get(i)), i)
+        }
+        map.remove(sensors.get(299))
+        assertEquals(map.getValue(sensors.get(299)), null)
+        assertEquals(map.asMap().size(), 299)
+    }
 }
@@ -183,6 +183,35 @@ public class EntityConfigMapUsageTest {
         assertEquals(e3.getConfig(strKey), "aval");
     }
 
+    @Test
+    public void testConfigChangesVisibleAfterValuesRetrieved() throws Exception {
+        TestEntity parent = app.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(strKey, "aval"));
+        TestEntity entity = parent.createAndManageChild(EntitySpec.create(TestEntity.class));
+        assertEquals(entity.getConfig(strKey), "aval");
+        assertEquals(entity.getConfig(intKeyWithDefault), (Integer)1);
+
+        parent.setConfig(strKey, "diffval");
+        assertEquals(entity.getConfig(strKey), "diffval");
+        
+        entity.setConfig(strKey, "ownval");
+        entity.setConfig(intKeyWithDefault, 2);
+        assertEquals(entity.getConfig(strKey), "ownval");
+        assertEquals(entity.getConfig(intKeyWithDefault), (Integer)2);
+    }
+
+    @Test
+    public void testSameNamedKeysOfDifferentTypesEachGetCoercedValue() throws Exception {
+        ConfigKey<String> intKeyAsString = new BasicConfigKey<String>(String.class, intKey.getName(), "b key, as a string");
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(intKey, 2));
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals(entity.getConfig(intKey), (Integer)2);
+            assertEquals(entity.getConfig(intKeyAsString), "2");
+        }
+    }
+    
     // This has been relaxed to a warning, with a message saying "may not be supported in future versions"
     @Test(enabled=false)
     public void testConfigCannotBeSetAfterApplicationIsStarted() throws Exception {
@@ -0,0 +1,112 @@
+package brooklyn.entity.rebind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterInMemory;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.mementos.BrooklynMemento;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+
+import com.google.common.collect.Lists;
+
+public class PeriodicDeltaChangeListenerTest {
+
+    private static final int NUM_ENTITIES = 50;
+    private static final int NUM_UPDATES = 100;
+
+    private LocalManagementContext managementContext;
+    private BrooklynMementoPersisterInMemory persister;
+    private ExecutorService executor;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        managementContext = new LocalManagementContext();
+        persister = new BrooklynMementoPersisterInMemory(getClass().getClassLoader(), false);
+        ((RebindManagerImpl)managementContext.getRebindManager()).setPeriodicPersistPeriod(1);
+        managementContext.getRebindManager().setPersister(persister);
+        managementContext.getRebindManager().start();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (executor != null) executor.shutdownNow();
+        if (managementContext != null) Entities.destroyAll(managementContext);
+    }
+
+    @Test
+    public void testPersistsLatestValuesOfConcurrentChanges() throws Exception {
+        TestApplication app = ApplicationBuilder.newManagedApp(EntitySpec.create(TestApplication.class), managementContext);
+        final List<TestEntity> entities = Lists.newArrayList();
+        for (int i = 0; i < NUM_ENTITIES; i++) {
+            entities.add(app.createAndManageChild(EntitySpec.create(TestEntity.class)));
+        }
+
+        // each entity is updated by its own thread, while persistence is running
+        List<Future<?>> futures = Lists.newArrayList();
+        for (final TestEntity entity : entities) {
+            futures.add(executor.submit(new Callable<Void>() {
+                public Void call() {
+                    for (int i = 0; i < NUM_UPDATES; i++) {
+                        entity.setAttribute(TestEntity.SEQUENCE, i);
+                    }
+                    return null;
+                }}));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        RebindTestUtils.waitForPersisted(app);
+
+        BrooklynMemento memento = persister.loadMemento(null);
+        for (TestEntity entity : entities) {
+            assertEquals(memento.getEntityMemento(entity.getId()).getAttributes().get(TestEntity.SEQUENCE), NUM_UPDATES-1, "entity="+entity);
+        }
+    }
+
+    @Test
+    public void testForgetsPatchCountsOfEntitiesUnmanagedWhilePersisting() throws Exception {
+        TestApplication app = ApplicationBuilder.newManagedApp(EntitySpec.create(TestApplication.class), managementContext);
+        final List<TestEntity> entities = Lists.newArrayList();
+        for (int i = 0; i < NUM_ENTITIES; i++) {
+            entities.add(app.createAndManageChild(EntitySpec.create(TestEntity.class)));
+        }
+        RebindTestUtils.waitForPersisted(app);
+
+        // each entity's attribute is changed (so patched) just before it is unmanaged, while persistence is running
+        List<Future<?>> futures = Lists.newArrayList();
+        for (final TestEntity entity : entities) {
+            futures.add(executor.submit(new Callable<Void>() {
+                public Void call() {
+                    for (int i = 0; i < NUM_UPDATES; i++) {
+                        entity.setAttribute(TestEntity.SEQUENCE, i);
+                    }
+                    Entities.unmanage(entity);
+                    return null;
+                }}));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        RebindTestUtils.waitForPersisted(app);
+        RebindTestUtils.waitForPersisted(app);
+
+        PeriodicDeltaChangeListener listener = ((RebindManagerImpl)managementContext.getRebindManager()).getPeriodicDeltaChangeListener();
+        assertTrue(listener.getPatchTrackedEntityCount() <= 1, "tracked="+listener.getPatchTrackedEntityCount());
+    }
+}
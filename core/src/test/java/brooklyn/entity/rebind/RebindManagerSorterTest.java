@@ -1,10 +1,12 @@
 package brooklyn.entity.rebind;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
@@ -23,6 +25,7 @@ import brooklyn.test.entity.TestApplication;
 import brooklyn.test.entity.TestEntity;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 
 public class RebindManagerSorterTest {
@@ -95,6 +98,43 @@ public class RebindManagerSorterTest {
         assertOrder(sortedNodes, ImmutableList.of(e1a, e1b));
     }
     
+    @Test
+    public void testParentFirstReconstructorHoldsBackChildrenUntilParentAdded() throws Exception {
+        TestEntity e1a = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        TestEntity e1b = e1a.createAndManageChild(EntitySpec.create(TestEntity.class));
+        TestEntity e2a = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        
+        Map<String, EntityMemento> nodes = toMementos(ImmutableList.of(e1b, e2a, e1a, app));
+        Map<String, EntityMemento> reconstructed = reconstructParentFirst(nodes, nodes.keySet());
+        assertOrder(reconstructed, ImmutableList.of(app, e1a, e1b), ImmutableList.of(app, e2a));
+    }
+    
+    @Test
+    public void testParentFirstReconstructorWhenParentNotAdded() throws Exception {
+        TestEntity e1a = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        TestEntity e1b = e1a.createAndManageChild(EntitySpec.create(TestEntity.class));
+        
+        // app was instantiated, but is not added (e.g. deleted between the two loads)
+        Map<String, EntityMemento> nodes = toMementos(ImmutableList.of(e1b, e1a));
+        Map<String, EntityMemento> reconstructed = reconstructParentFirst(nodes, ImmutableSet.of(app.getId(), e1a.getId(), e1b.getId()));
+        assertOrder(reconstructed, ImmutableList.of(e1a, e1b));
+        assertEquals(reconstructed.size(), 2);
+    }
+    
+    private Map<String, EntityMemento> reconstructParentFirst(Map<String, EntityMemento> nodes, Set<String> knownIds) {
+        final Map<String, EntityMemento> result = Maps.newLinkedHashMap();
+        RebindManagerImpl.ParentFirstReconstructor<EntityMemento> reconstructor = new RebindManagerImpl.ParentFirstReconstructor<EntityMemento>(knownIds) {
+            @Override protected void reconstruct(EntityMemento node) {
+                result.put(node.getId(), node);
+            }
+        };
+        for (EntityMemento node : nodes.values()) {
+            reconstructor.add(node);
+        }
+        reconstructor.finish();
+        return result;
+    }
+    
     private void assertOrder(Map<String, ? extends TreeNode> nodes, Iterable<? extends Identifiable>... orders) {
         List<String> actualOrder = ImmutableList.copyOf(nodes.keySet());
         String errmsg = "actualOrder="+actualOrder+"; requiredSubOrderings="+Arrays.toString(orders);
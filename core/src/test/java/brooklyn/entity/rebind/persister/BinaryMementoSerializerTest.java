@@ -0,0 +1,197 @@
+package brooklyn.entity.rebind.persister;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.Lifecycle;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.rebind.dto.EntityAttributesPatch;
+import brooklyn.entity.rebind.dto.MementosGenerators;
+import brooklyn.entity.rebind.persister.XmlMementoSerializerTest.LookupContextImpl;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
+import brooklyn.location.Location;
+import brooklyn.location.LocationSpec;
+import brooklyn.location.basic.SimulatedLocation;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.collections.MutableSet;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.reflect.TypeToken;
+
+public class BinaryMementoSerializerTest {
+
+    private BinaryMementoSerializer<Object> serializer;
+    private TestApplication app;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        serializer = new BinaryMementoSerializer<Object>(BinaryMementoSerializerTest.class.getClassLoader());
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (app != null) Entities.destroyAll(app.getManagementContext());
+    }
+
+    @Test
+    public void testSimpleValues() throws Exception {
+        assertSerializeAndDeserialize("abc");
+        assertSerializeAndDeserialize(123);
+        assertSerializeAndDeserialize(-123456789012L);
+        assertSerializeAndDeserialize(1.5d);
+        assertSerializeAndDeserialize(true);
+        assertSerializeAndDeserialize(new Date(1234567));
+        assertSerializeAndDeserialize(Lifecycle.RUNNING);
+    }
+
+    @Test
+    public void testCollections() throws Exception {
+        assertSerializeAndDeserialize(MutableSet.of("123"));
+        assertSerializeAndDeserialize(ImmutableSet.of("123"));
+        assertSerializeAndDeserialize(MutableList.of("123", null));
+        assertSerializeAndDeserialize(ImmutableList.of("123"));
+        assertSerializeAndDeserialize(MutableMap.of("mykey", "myval"));
+        assertSerializeAndDeserialize(ImmutableMap.of("mykey", ImmutableList.of(1, 2)));
+        assertSerializeAndDeserialize(new TreeMap<String, String>(ImmutableMap.of("b", "1", "a", "2")));
+    }
+
+    @Test
+    public void testPreservesCollectionTypeAndOrder() throws Exception {
+        Map<String, Integer> obj = new LinkedHashMap<String, Integer>();
+        obj.put("b", 1);
+        obj.put("a", 2);
+        Map<?, ?> result = assertSerializeAndDeserialize(obj);
+        assertEquals(result.getClass(), LinkedHashMap.class);
+        assertEquals(ImmutableList.copyOf(result.keySet()), ImmutableList.of("b", "a"));
+
+        Set<?> immutable = assertSerializeAndDeserialize(ImmutableSet.of("x", "y"));
+        assertTrue(immutable instanceof ImmutableSet, "type="+immutable.getClass());
+    }
+
+    @Test
+    public void testConfigKeysAndSensorsWrittenNatively() throws Exception {
+        ConfigKey<String> key = ConfigKeys.newConfigKey(String.class, "my.key", "my description", "mydefault");
+        ConfigKey<Map<String, List<Integer>>> genericKey = ConfigKeys.newConfigKey(new TypeToken<Map<String, List<Integer>>>() {}, "my.genericKey");
+        AttributeSensor<Integer> sensor = Sensors.newIntegerSensor("my.sensor", "my description");
+        AttributeSensor<Map<String, Object>> genericSensor = Sensors.newSensor(new TypeToken<Map<String, Object>>() {}, "my.genericSensor", "my description");
+
+        for (Object obj : ImmutableList.of(key, genericKey)) {
+            ConfigKey<?> result = assertSerializeAndDeserializeNatively((ConfigKey<?>) obj);
+            assertEquals(result.getTypeToken(), ((ConfigKey<?>) obj).getTypeToken());
+            assertEquals(result.getDescription(), ((ConfigKey<?>) obj).getDescription());
+            assertEquals(result.getDefaultValue(), ((ConfigKey<?>) obj).getDefaultValue());
+        }
+        for (Object obj : ImmutableList.of(sensor, genericSensor)) {
+            AttributeSensor<?> result = assertSerializeAndDeserializeNatively((AttributeSensor<?>) obj);
+            assertEquals(result.getTypeToken(), ((AttributeSensor<?>) obj).getTypeToken());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testEntityAttributesPatchWrittenNatively() throws Exception {
+        AttributeSensor<String> dynamicSensor = Sensors.newStringSensor("my.dynamicSensor");
+        app = ApplicationBuilder.newManagedApp(TestApplication.class);
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        entity.setAttribute(TestEntity.SEQUENCE, 123);
+        entity.setAttribute(dynamicSensor, "myval");
+        EntityMemento base = MementosGenerators.newEntityMemento(entity);
+        
+        entity.setAttribute(TestEntity.SEQUENCE, 456);
+        EntityAttributesPatch patch = EntityAttributesPatch.newInstance(entity, ImmutableList.of(TestEntity.SEQUENCE, dynamicSensor));
+        byte[] bytes = serializer.toBytes(patch);
+        assertNoXml(bytes);
+        EntityAttributesPatch result = (EntityAttributesPatch) serializer.fromBytes(bytes);
+
+        assertEquals(result.getEntityId(), entity.getId());
+        assertEquals(result.getAttributes(), ImmutableMap.of(TestEntity.SEQUENCE.getName(), 456, dynamicSensor.getName(), "myval"));
+        Map<AttributeSensor, Object> attributes = result.applyTo(base).getAttributes();
+        assertEquals(attributes.get(TestEntity.SEQUENCE), 456);
+        assertEquals(attributes.get(dynamicSensor), "myval");
+    }
+
+    @Test
+    public void testEntityAndLocationRefs() throws Exception {
+        app = ApplicationBuilder.newManagedApp(TestApplication.class);
+        Location loc = app.getManagementContext().getLocationManager().createLocation(LocationSpec.create(SimulatedLocation.class));
+        serializer.setLookupContext(new LookupContextImpl(ImmutableMap.of(app.getId(), app), ImmutableMap.of(loc.getId(), loc)));
+
+        List<?> result = assertSerializeAndDeserialize(ImmutableList.<Object>of(app, loc));
+        assertEquals(result.get(0), app);
+        assertEquals(result.get(1), loc);
+    }
+
+    @Test
+    public void testReadsXml() throws Exception {
+        XmlMementoSerializer<Object> xmlSerializer = new XmlMementoSerializer<Object>(BinaryMementoSerializerTest.class.getClassLoader());
+        Object obj = MutableMap.of("mykey", MutableList.of("myval"));
+
+        assertEquals(serializer.fromBytes(xmlSerializer.toBytes(obj)), obj);
+        assertEquals(serializer.fromString(xmlSerializer.toString(obj)), obj);
+    }
+
+    @Test
+    public void testEntityMementoIsSmallerThanXml() throws Exception {
+        app = ApplicationBuilder.newManagedApp(TestApplication.class);
+        TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        entity.setAttribute(TestEntity.NAME, "myname");
+        entity.setAttribute(TestEntity.SEQUENCE, 123);
+        serializer.setLookupContext(new LookupContextImpl(ImmutableMap.<String, Entity>of(app.getId(), app, entity.getId(), entity), ImmutableMap.<String, Location>of()));
+
+        EntityMemento memento = MementosGenerators.newEntityMemento(entity);
+        byte[] bytes = serializer.toBytes(memento);
+        EntityMemento result = (EntityMemento) serializer.fromBytes(bytes);
+
+        assertEquals(result.getId(), memento.getId());
+        assertEquals(result.getType(), memento.getType());
+        assertEquals(result.getParent(), app.getId());
+        assertEquals(result.getAttributes().get(TestEntity.NAME), "myname");
+        assertEquals(result.getAttributes().get(TestEntity.SEQUENCE), 123);
+
+        int xmlSize = new XmlMementoSerializer<Object>(BinaryMementoSerializerTest.class.getClassLoader()).toString(memento).getBytes(Charsets.UTF_8).length;
+        assertTrue(bytes.length < xmlSize, "binary="+bytes.length+"; xml="+xmlSize);
+    }
+
+    private <T> T assertSerializeAndDeserializeNatively(T obj) throws Exception {
+        assertNoXml(serializer.toBytes(obj));
+        return assertSerializeAndDeserialize(obj);
+    }
+
+    private void assertNoXml(byte[] bytes) {
+        String string = new String(bytes, Charsets.ISO_8859_1);
+        assertFalse(string.contains("<"), string);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T assertSerializeAndDeserialize(T obj) throws Exception {
+        Object deserialized = serializer.fromBytes(serializer.toBytes(obj));
+        assertEquals(deserialized, obj);
+        assertEquals(serializer.fromString(serializer.toString(obj)), obj);
+        return (T) deserialized;
+    }
+}
@@ -0,0 +1,199 @@
+package brooklyn.entity.rebind.persister;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.Application;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.rebind.PeriodicDeltaChangeListener;
+import brooklyn.entity.rebind.RebindManagerImpl;
+import brooklyn.entity.rebind.RebindTestUtils;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+
+import com.google.common.collect.Iterables;
+import com.google.common.io.Files;
+
+public class BrooklynMementoPersisterToJournalTest {
+
+    private ClassLoader classLoader = getClass().getClassLoader();
+    private File mementoDir;
+    private LocalManagementContext origManagementContext;
+    private LocalManagementContext newManagementContext;
+    private BrooklynMementoPersisterToJournal origPersister;
+    private TestApplication origApp;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        mementoDir = Files.createTempDir();
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (origManagementContext != null) Entities.destroyAll(origManagementContext);
+        if (newManagementContext != null) Entities.destroyAll(newManagementContext);
+        if (mementoDir != null) RebindTestUtils.deleteMementoDir(mementoDir);
+    }
+
+    private void newOrigApp(long maxSegmentBytes, int compactAfterSegments) {
+        newOrigApp(new BrooklynMementoPersisterToJournal(mementoDir, classLoader, maxSegmentBytes, compactAfterSegments));
+    }
+
+    private void newOrigApp(BrooklynMementoPersisterToJournal persister) {
+        origManagementContext = new LocalManagementContext();
+        origPersister = persister;
+        ((RebindManagerImpl)origManagementContext.getRebindManager()).setPeriodicPersistPeriod(1);
+        origManagementContext.getRebindManager().setPersister(origPersister);
+        origManagementContext.getRebindManager().start();
+        origApp = ApplicationBuilder.newManagedApp(EntitySpec.create(TestApplication.class), origManagementContext);
+    }
+
+    /** waits for writes, then stops the original persister so that the journal is no longer appended to */
+    private TestApplication rebind() throws Exception {
+        RebindTestUtils.waitForPersisted(origApp);
+        origManagementContext.getRebindManager().stop();
+
+        newManagementContext = new LocalManagementContext();
+        newManagementContext.getRebindManager().setPersister(new BrooklynMementoPersisterToJournal(mementoDir, classLoader));
+        List<Application> newApps = newManagementContext.getRebindManager().rebind(classLoader);
+        return (TestApplication) Iterables.getOnlyElement(newApps);
+    }
+
+    @Test
+    public void testRestoresLatestStateFromJournal() throws Exception {
+        newOrigApp(BrooklynMementoPersisterToJournal.DEFAULT_MAX_SEGMENT_BYTES, BrooklynMementoPersisterToJournal.DEFAULT_COMPACT_AFTER_SEGMENTS);
+        TestEntity origE = origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        TestEntity origRemoved = origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        for (int i = 0; i < 10; i++) {
+            origE.setAttribute(TestEntity.NAME, "val"+i);
+            RebindTestUtils.waitForPersisted(origApp);
+        }
+        Entities.unmanage(origRemoved);
+
+        TestApplication newApp = rebind();
+
+        assertEquals(newApp.getId(), origApp.getId());
+        Entity newE = Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newE.getId(), origE.getId());
+        assertEquals(newE.getAttribute(TestEntity.NAME), "val9");
+        assertTrue(origPersister.getSyncCount() > 0);
+    }
+
+    @Test
+    public void testCompactsIntoSnapshot() throws Exception {
+        // every flush starts a new segment, so compaction is triggered frequently
+        newOrigApp(1, 2);
+        TestEntity origE = origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        for (int i = 0; i < 10; i++) {
+            origE.setAttribute(TestEntity.NAME, "val"+i);
+            RebindTestUtils.waitForPersisted(origApp);
+        }
+
+        TestApplication newApp = rebind();
+
+        assertTrue(origPersister.getCompactionCount() > 0);
+        assertTrue(new File(mementoDir, "journal").list().length < 10, "segments not compacted");
+        Entity newE = Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newE.getAttribute(TestEntity.NAME), "val9");
+    }
+
+    @Test
+    public void testRestoresAttributesJournalledAsPatches() throws Exception {
+        newOrigApp(BrooklynMementoPersisterToJournal.DEFAULT_MAX_SEGMENT_BYTES, BrooklynMementoPersisterToJournal.DEFAULT_COMPACT_AFTER_SEGMENTS);
+        AttributeSensor<String> dynamicSensor = Sensors.newStringSensor("test.dynamic");
+        AttributeSensor<Entity> refSensor = Sensors.newSensor(Entity.class, "test.ref");
+        TestEntity origE = origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        origE.setAttribute(TestEntity.NAME, "myname");
+        RebindTestUtils.waitForPersisted(origApp);
+        int lastVal = PeriodicDeltaChangeListener.MAX_PATCHES_BEFORE_FULL+9;
+
+        // more changes than the patches allowed before a complete memento is written again
+        for (int i = 0; i <= lastVal; i++) {
+            origE.setAttribute(TestEntity.SEQUENCE, i);
+            origE.setAttribute(dynamicSensor, "val"+i);
+            origE.setAttribute(refSensor, (i % 2 == 0) ? origApp : origE);
+            RebindTestUtils.waitForPersisted(origApp);
+        }
+        long patchCount = ((RebindManagerImpl)origManagementContext.getRebindManager()).getPeriodicDeltaChangeListener().getPatchCount();
+
+        TestApplication newApp = rebind();
+
+        assertTrue(patchCount > 0, "patchCount="+patchCount);
+        Entity newE = Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newE.getAttribute(TestEntity.NAME), "myname");
+        assertEquals(newE.getAttribute(TestEntity.SEQUENCE), (Integer) lastVal);
+        assertEquals(newE.getAttribute(dynamicSensor), "val"+lastVal);
+        assertEquals(newE.getAttribute(refSensor).getId(), ((lastVal % 2 == 0) ? origApp : origE).getId());
+    }
+
+    @Test
+    public void testIgnoresTornFrameAtEndOfSegment() throws Exception {
+        newOrigApp(BrooklynMementoPersisterToJournal.DEFAULT_MAX_SEGMENT_BYTES, BrooklynMementoPersisterToJournal.DEFAULT_COMPACT_AFTER_SEGMENTS);
+        TestEntity origE = origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        origE.setAttribute(TestEntity.NAME, "myname");
+        RebindTestUtils.waitForPersisted(origApp);
+        origManagementContext.getRebindManager().stop();
+
+        // simulate a crash part-way through appending a frame (a length, but only part of the payload)
+        File[] segments = new File(mementoDir, "journal").listFiles();
+        File lastSegment = segments[0];
+        for (File segment : segments) {
+            if (segment.getName().compareTo(lastSegment.getName()) > 0) lastSegment = segment;
+        }
+        FileOutputStream out = new FileOutputStream(lastSegment, true);
+        try {
+            out.write(new byte[] {0, 0, 1, 0, 1, 2, 3});
+        } finally {
+            out.close();
+        }
+
+        TestApplication newApp = rebind();
+
+        Entity newE = Iterables.getOnlyElement(newApp.getChildren());
+        assertNotNull(newE);
+        assertEquals(newE.getAttribute(TestEntity.NAME), "myname");
+    }
+
+    @Test
+    public void testWritesDeltasAgainToNewSegmentAfterWriteFailure() throws Exception {
+        final AtomicInteger failuresRemaining = new AtomicInteger(0);
+        // every flush starts a new segment, but without compaction
+        newOrigApp(new BrooklynMementoPersisterToJournal(mementoDir, classLoader, 1, Integer.MAX_VALUE) {
+            @Override FileOutputStream openSegment(File file) throws IOException {
+                if (failuresRemaining.getAndDecrement() > 0) throw new IOException("simulated failure opening "+file);
+                return super.openSegment(file);
+            }
+        });
+        TestEntity origE = origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+        origE.setAttribute(TestEntity.NAME, "myname");
+        RebindTestUtils.waitForPersisted(origApp);
+
+        // the next write fails twice to start a new segment, so is retried
+        failuresRemaining.set(2);
+        origE.setAttribute(TestEntity.NAME, "mynewname");
+        RebindTestUtils.waitForPersisted(origApp);
+        assertTrue(failuresRemaining.get() < 0, "failuresRemaining="+failuresRemaining);
+
+        TestApplication newApp = rebind();
+
+        Entity newE = Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newE.getAttribute(TestEntity.NAME), "mynewname");
+    }
+}
@@ -38,6 +38,12 @@ public class MementoFileWriterTest {
             @Override public String fromString(String string) {
                 return string;
             }
+            @Override public byte[] toBytes(String memento) {
+                return memento.getBytes(Charsets.UTF_8);
+            }
+            @Override public String fromBytes(byte[] bytes) {
+                return new String(bytes, Charsets.UTF_8);
+            }
             @Override public void setLookupContext(LookupContext lookupContext) {
             }
             @Override public void unsetLookupContext() {
@@ -0,0 +1,167 @@
+package brooklyn.entity.rebind.persister;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.entity.basic.Lifecycle;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.rebind.dto.EntityAttributesPatch;
+import brooklyn.entity.rebind.dto.MementosGenerators;
+import brooklyn.entity.rebind.persister.XmlMementoSerializerTest.LookupContextImpl;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
+import brooklyn.location.Location;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.qa.performance.AbstractPerformanceTest;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Measures writing and reading a representative set of mementos with the {@link XmlMementoSerializer} and
+ * with the {@link BinaryMementoSerializer}, as done for each change when persisting: the mementos of an app
+ * and its entities (with static and dynamic config keys and sensors), and attribute patches for each entity.
+ */
+public class MementoSerializerPerformanceTest extends AbstractPerformanceTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MementoSerializerPerformanceTest.class);
+
+    private static final int NUM_ENTITIES = 10;
+
+    /** the most the binary form of the mementos may be, as a fraction of the size of the XML */
+    private static final double MAX_SIZE_RATIO = 0.5;
+
+    /** the least the binary round-trip rate must be, as a multiple of the XML round-trip rate */
+    private static final double MIN_SPEEDUP = 2;
+
+    private static final ConfigKey<String> DYNAMIC_CONFIG = ConfigKeys.newStringConfigKey("test.dynamicConfig", "dynamic config", "mydefault");
+    private static final AttributeSensor<String> DYNAMIC_SENSOR = Sensors.newStringSensor("test.dynamicSensor", "dynamic sensor");
+
+    private XmlMementoSerializer<Object> xmlSerializer;
+    private BinaryMementoSerializer<Object> binarySerializer;
+    private List<Object> mementos;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() {
+        super.setUp();
+        Map<String, Entity> entities = Maps.newLinkedHashMap();
+        entities.put(app.getId(), app);
+        List<TestEntity> children = Lists.newArrayList();
+        for (int i = 0; i < NUM_ENTITIES; i++) {
+            TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class)
+                    .configure(TestEntity.CONF_NAME, "myconfname"+i)
+                    .configure(TestEntity.CONF_MAP_THING, MutableMap.of("mykey", "myval", "mykey2", "myval2"))
+                    .configure(TestEntity.CONF_LIST_THING, MutableList.of("a", "b", "c"))
+                    .configure(DYNAMIC_CONFIG, "myval"+i));
+            entity.setAttribute(TestEntity.NAME, "myname"+i);
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+            entity.setAttribute(TestEntity.SERVICE_STATE, Lifecycle.RUNNING);
+            entity.setAttribute(DYNAMIC_SENSOR, "myval"+i);
+            entities.put(entity.getId(), entity);
+            children.add(entity);
+        }
+
+        mementos = Lists.newArrayList();
+        mementos.add(MementosGenerators.newEntityMemento(app));
+        for (TestEntity entity : children) {
+            mementos.add(MementosGenerators.newEntityMemento(entity));
+        }
+        for (TestEntity entity : children) {
+            entity.setAttribute(TestEntity.SEQUENCE, entity.getAttribute(TestEntity.SEQUENCE) + 1);
+            mementos.add(EntityAttributesPatch.newInstance(entity, ImmutableList.of(TestEntity.SEQUENCE, DYNAMIC_SENSOR)));
+        }
+
+        LookupContextImpl lookupContext = new LookupContextImpl(entities, MutableMap.<String, Location>of());
+        xmlSerializer = new XmlMementoSerializer<Object>(MementoSerializerPerformanceTest.class.getClassLoader());
+        xmlSerializer.setLookupContext(lookupContext);
+        binarySerializer = new BinaryMementoSerializer<Object>(MementoSerializerPerformanceTest.class.getClassLoader());
+        binarySerializer.setLookupContext(lookupContext);
+    }
+
+    protected int numIterations() {
+        return 1000;
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testXmlRoundTrip() {
+        assertRoundTrips(xmlSerializer);
+        measureAndAssert("xmlMementoRoundTrip", numIterations(), 50 * PERFORMANCE_EXPECTATION, newRoundTrip(xmlSerializer));
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testBinaryRoundTrip() {
+        assertRoundTrips(binarySerializer);
+        measureAndAssert("binaryMementoRoundTrip", numIterations(), 100 * PERFORMANCE_EXPECTATION, newRoundTrip(binarySerializer));
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testBinaryIsSmallerAndFasterThanXml() {
+        for (Object memento : mementos) {
+            String binary = new String(binarySerializer.toBytes(memento), Charsets.ISO_8859_1);
+            assertFalse(binary.contains("<"), "memento embedded as xml: "+memento);
+        }
+        int xmlSize = size(xmlSerializer);
+        int binarySize = size(binarySerializer);
+
+        int numIterations = numIterations();
+        long xmlMillis = measure("xmlMementoRoundTrip", numIterations, newRoundTrip(xmlSerializer));
+        long binaryMillis = measure("binaryMementoRoundTrip", numIterations, newRoundTrip(binarySerializer));
+
+        String msg = "xml="+xmlMillis+"ms ("+xmlSize+" bytes); binary="+binaryMillis+"ms ("+binarySize+" bytes); "+
+                "for "+numIterations+" round trips of "+mementos.size()+" mementos";
+        LOG.info(msg);
+        System.out.println("\n"+msg+"\n");
+        assertTrue(binarySize <= xmlSize * MAX_SIZE_RATIO, msg);
+        assertTrue(Math.max(binaryMillis, 1) * MIN_SPEEDUP <= xmlMillis, msg);
+    }
+
+    private int size(MementoSerializer<Object> serializer) {
+        int result = 0;
+        for (Object memento : mementos) {
+            result += serializer.toBytes(memento).length;
+        }
+        return result;
+    }
+
+    private void assertRoundTrips(MementoSerializer<Object> serializer) {
+        for (Object memento : mementos) {
+            Object result = serializer.fromBytes(serializer.toBytes(memento));
+            if (memento instanceof EntityAttributesPatch) {
+                assertEquals(((EntityAttributesPatch) result).getAttributes(), ((EntityAttributesPatch) memento).getAttributes());
+            } else {
+                EntityMemento expected = (EntityMemento) memento;
+                EntityMemento actual = (EntityMemento) result;
+                assertEquals(actual.getId(), expected.getId());
+                assertEquals(actual.getAttributes(), expected.getAttributes());
+                assertEquals(actual.getConfig(), expected.getConfig());
+            }
+        }
+    }
+
+    private Runnable newRoundTrip(final MementoSerializer<Object> serializer) {
+        return new Runnable() {
+            public void run() {
+                for (Object memento : mementos) {
+                    serializer.fromBytes(serializer.toBytes(memento));
+                }
+            }};
+    }
+}
@@ -0,0 +1,183 @@
+package brooklyn.entity.rebind.persister;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.rebind.dto.MementosGenerators;
+import brooklyn.entity.rebind.persister.StreamingMementoPersister.MementoVisitor;
+import brooklyn.entity.rebind.persister.XmlMementoSerializerTest.LookupContextImpl;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
+import brooklyn.location.Location;
+import brooklyn.location.LocationSpec;
+import brooklyn.location.basic.LocationInternal;
+import brooklyn.location.basic.SimulatedLocation;
+import brooklyn.management.ManagementContext;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.mementos.LocationMemento;
+import brooklyn.mementos.PolicyMemento;
+import brooklyn.policy.basic.AbstractPolicy;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.flags.SetFromFlag;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class ParallelMementoLoaderTest {
+
+    private static final int NUM_LOCATIONS = 10;
+    private static final int NUM_ENTITIES = 100;
+    private static final int NUM_THREADS = 8;
+    private static final int NUM_LOADS = 10;
+
+    private static final AttributeSensor<Entity> ENTITY_REF = Sensors.newSensor(Entity.class, "test.entityRef");
+    private static final AttributeSensor<Location> LOCATION_REF = Sensors.newSensor(Location.class, "test.locationRef");
+
+    private TestApplication app;
+    private ManagementContext managementContext;
+    private XmlMementoSerializer<Object> serializer;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        app = ApplicationBuilder.newManagedApp(TestApplication.class);
+        managementContext = app.getManagementContext();
+        serializer = new XmlMementoSerializer<Object>(ParallelMementoLoaderTest.class.getClassLoader());
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (managementContext != null) Entities.destroyAll(managementContext);
+    }
+
+    /**
+     * Deserializes entity and location references of several types on many threads at once, with
+     * a lookup context that fails if asked for a reference as the wrong type.
+     */
+    @Test
+    public void testConcurrentlyDeserializesMixedReferences() throws Exception {
+        Map<String, Entity> entities = Maps.newLinkedHashMap();
+        Map<String, Location> locations = Maps.newLinkedHashMap();
+        Map<String, Entity> expectedEntityRefs = Maps.newLinkedHashMap();
+        Map<String, Location> expectedLocationRefs = Maps.newLinkedHashMap();
+        List<Callable<byte[]>> locationRecords = Lists.newArrayList();
+        List<Callable<byte[]>> policyRecords = Lists.newArrayList();
+        List<Callable<byte[]>> entityRecords = Lists.newArrayList();
+
+        List<Location> locationList = Lists.newArrayList();
+        for (int i = 0; i < NUM_LOCATIONS; i++) {
+            Class<? extends SimulatedLocation> type = (i % 2 == 0) ? SimulatedLocation.class : OtherSimulatedLocation.class;
+            Location location = managementContext.getLocationManager().createLocation(LocationSpec.create(type));
+            locations.put(location.getId(), location);
+            locationList.add(location);
+            locationRecords.add(record(((LocationInternal)location).getRebindSupport().getMemento()));
+        }
+
+        entities.put(app.getId(), app);
+        for (int i = 0; i < NUM_ENTITIES; i++) {
+            TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+            Entity entityRef = (i % 2 == 0) ? app : entity;
+            Location locationRef = locationList.get(i % NUM_LOCATIONS);
+            entity.setAttribute(ENTITY_REF, entityRef);
+            entity.setAttribute(LOCATION_REF, locationRef);
+            entities.put(entity.getId(), entity);
+            expectedEntityRefs.put(entity.getId(), entityRef);
+            expectedLocationRefs.put(entity.getId(), locationRef);
+            entityRecords.add(record(((EntityInternal)entity).getRebindSupport().getMemento()));
+
+            ReffingPolicy policy = new ReffingPolicy(MutableMap.of("entityRef", entityRef, "locationRef", locationRef));
+            expectedEntityRefs.put(policy.getId(), entityRef);
+            expectedLocationRefs.put(policy.getId(), locationRef);
+            policyRecords.add(record(MementosGenerators.newPolicyMemento(policy)));
+        }
+
+        serializer.setLookupContext(new LookupContextImpl(entities, locations));
+        try {
+            for (int i = 0; i < NUM_LOADS; i++) {
+                CollectingVisitor visitor = new CollectingVisitor();
+                new ParallelMementoLoader(serializer, NUM_THREADS).load(visitor, ImmutableList.of(locationRecords, policyRecords, entityRecords));
+
+                assertEquals(visitor.locations.size(), NUM_LOCATIONS);
+                assertEquals(visitor.policies.size(), NUM_ENTITIES);
+                assertEquals(visitor.entities.size(), NUM_ENTITIES);
+                for (PolicyMemento memento : visitor.policies) {
+                    assertEquals(memento.getFlags().get("entityRef"), expectedEntityRefs.get(memento.getId()));
+                    assertEquals(memento.getFlags().get("locationRef"), expectedLocationRefs.get(memento.getId()));
+                }
+                for (EntityMemento memento : visitor.entities) {
+                    assertEquals(getAttribute(memento, ENTITY_REF), expectedEntityRefs.get(memento.getId()));
+                    assertEquals(getAttribute(memento, LOCATION_REF), expectedLocationRefs.get(memento.getId()));
+                }
+            }
+        } finally {
+            serializer.unsetLookupContext();
+        }
+    }
+
+    private Callable<byte[]> record(Object memento) {
+        final byte[] bytes = serializer.toBytes(memento);
+        return new Callable<byte[]>() {
+            @Override public byte[] call() {
+                return bytes;
+            }
+        };
+    }
+
+    private static Object getAttribute(EntityMemento memento, AttributeSensor<?> sensor) {
+        for (Map.Entry<AttributeSensor, Object> entry : memento.getAttributes().entrySet()) {
+            if (entry.getKey().getName().equals(sensor.getName())) {
+                assertNotNull(entry.getValue(), sensor.getName()+" in "+memento.getId());
+                return entry.getValue();
+            }
+        }
+        throw new AssertionError("No attribute "+sensor.getName()+" in "+memento.getId());
+    }
+
+    private static class CollectingVisitor implements MementoVisitor {
+        final List<LocationMemento> locations = Lists.newArrayList();
+        final List<PolicyMemento> policies = Lists.newArrayList();
+        final List<EntityMemento> entities = Lists.newArrayList();
+
+        @Override public void visit(LocationMemento memento) {
+            locations.add(memento);
+        }
+        @Override public void visit(PolicyMemento memento) {
+            policies.add(memento);
+        }
+        @Override public void visit(EntityMemento memento) {
+            entities.add(memento);
+        }
+    }
+
+    public static class OtherSimulatedLocation extends SimulatedLocation {
+        public OtherSimulatedLocation() {
+        }
+    }
+
+    public static class ReffingPolicy extends AbstractPolicy {
+        @SetFromFlag
+        Entity entityRef;
+
+        @SetFromFlag
+        Location locationRef;
+
+        public ReffingPolicy(Map<?,?> flags) {
+            super(flags);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package brooklyn.event.feed;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.test.Asserts;
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.Lists;
+
+public class FeedSchedulerTest {
+
+    private static final Duration PERIOD = Duration.millis(20);
+
+    private ExecutorService executor;
+    private FeedScheduler scheduler;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        executor = Executors.newCachedThreadPool();
+        scheduler = new FeedScheduler("feedscheduler-test", executor, Duration.millis(5), Duration.millis(10));
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (scheduler != null) scheduler.shutdown();
+        if (executor != null) executor.shutdownNow();
+    }
+
+    @Test
+    public void testPollsRepeatedly() throws Exception {
+        final CountingJob job = new CountingJob();
+        final RecordingHandler handler = new RecordingHandler();
+        scheduler.schedule(null, job, handler, PERIOD);
+
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(handler.values.size() >= 3, "values="+handler.values);
+            }});
+        assertTrue(scheduler.getPollCount() >= 3, "metrics="+scheduler.getMetrics());
+    }
+
+    @Test
+    public void testCoalescesPollsWithSameKeyAndPeriod() throws Exception {
+        final CountingJob job1 = new CountingJob();
+        final CountingJob job2 = new CountingJob();
+        final RecordingHandler handler1 = new RecordingHandler();
+        final RecordingHandler handler2 = new RecordingHandler();
+        scheduler.schedule("http://example.com", job1, handler1, PERIOD);
+        scheduler.schedule("http://example.com", job2, handler2, PERIOD);
+        assertEquals(scheduler.getTargetCount(), 1);
+
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(handler2.values.size() >= 3, "values="+handler2.values);
+            }});
+        assertEquals(job2.count.get(), 0);
+        assertTrue(job1.count.get() >= 3);
+        assertTrue(handler1.values.size() >= 3);
+    }
+
+    @Test
+    public void testCoalescedPollUsesRemainingJobWhenFirstCancelled() throws Exception {
+        final CountingJob job1 = new CountingJob();
+        final CountingJob job2 = new CountingJob();
+        FeedScheduler.Registration registration1 = scheduler.schedule("http://example.com", job1, new RecordingHandler(), PERIOD);
+        scheduler.schedule("http://example.com", job2, new RecordingHandler(), PERIOD);
+        registration1.cancel();
+        assertEquals(scheduler.getTargetCount(), 1);
+
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(job2.count.get() >= 3, "count="+job2.count);
+            }});
+        int job1Count = job1.count.get();
+        Thread.sleep(PERIOD.toMilliseconds()*3);
+        assertEquals(job1.count.get(), job1Count);
+    }
+
+    @Test
+    public void testDoesNotCoalescePollsWithDifferentPeriods() throws Exception {
+        scheduler.schedule("http://example.com", new CountingJob(), new RecordingHandler(), PERIOD);
+        scheduler.schedule("http://example.com", new CountingJob(), new RecordingHandler(), PERIOD.multiply(2));
+        assertEquals(scheduler.getTargetCount(), 2);
+    }
+
+    @Test
+    public void testSkipsPollWhilePreviousStillRunning() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        RecordingHandler handler = new RecordingHandler();
+        scheduler.schedule(null, new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    latch.await();
+                    return calls.incrementAndGet();
+                }},
+                handler, PERIOD);
+
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(scheduler.getOverrunCount() >= 3, "metrics="+scheduler.getMetrics());
+            }});
+        assertEquals(calls.get(), 0);
+        latch.countDown();
+
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(calls.get() >= 2, "calls="+calls);
+            }});
+    }
+
+    @Test
+    public void testStopsPollingWhenCancelled() throws Exception {
+        final CountingJob job = new CountingJob();
+        final RecordingHandler handler1 = new RecordingHandler();
+        final RecordingHandler handler2 = new RecordingHandler();
+        FeedScheduler.Registration registration1 = scheduler.schedule("key", job, handler1, PERIOD);
+        FeedScheduler.Registration registration2 = scheduler.schedule("key", job, handler2, PERIOD);
+
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(handler1.values.size() >= 1);
+            }});
+        registration1.cancel();
+        assertEquals(scheduler.getTargetCount(), 1);
+        final int handler1Count = handler1.values.size();
+        final int handler2Count = handler2.values.size();
+
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(handler2.values.size() >= handler2Count+3);
+            }});
+        // allowing for a poll in progress when cancelled
+        assertTrue(handler1.values.size() <= handler1Count+1);
+
+        registration2.cancel();
+        assertEquals(scheduler.getTargetCount(), 0);
+        Thread.sleep(PERIOD.multiply(2).toMilliseconds());
+        final int jobCount = job.count.get();
+        Asserts.succeedsContinually(new Runnable() {
+            public void run() {
+                assertEquals(job.count.get(), jobCount);
+            }});
+    }
+
+    @Test
+    public void testPassesExceptionsToHandler() throws Exception {
+        final RecordingHandler handler = new RecordingHandler();
+        scheduler.schedule(null, new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    throw new IllegalStateException("simulated failure");
+                }},
+                handler, PERIOD);
+
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(handler.exceptions.size() >= 2, "exceptions="+handler.exceptions);
+            }});
+    }
+
+    private static class CountingJob implements Callable<Integer> {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Integer call() {
+            return count.incrementAndGet();
+        }
+    }
+
+    private static class RecordingHandler implements PollHandler<Integer> {
+        final List<Integer> values = Lists.newCopyOnWriteArrayList();
+        final List<Exception> exceptions = Lists.newCopyOnWriteArrayList();
+
+        @Override public boolean checkSuccess(Integer val) {
+            return true;
+        }
+        @Override public void onSuccess(Integer val) {
+            values.add(val);
+        }
+        @Override public void onFailure(Integer val) {
+        }
+        @Override public void onException(Exception exception) {
+            exceptions.add(exception);
+        }
+        @Override public String getDescription() {
+            return "recording";
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package brooklyn.event.feed;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
 import java.util.concurrent.Callable;
@@ -12,13 +13,18 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import brooklyn.config.BrooklynProperties;
+import brooklyn.config.BrooklynServerConfig;
 import brooklyn.entity.basic.ApplicationBuilder;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.management.internal.LocalManagementContext;
 import brooklyn.test.Asserts;
 import brooklyn.test.entity.TestApplication;
 import brooklyn.test.entity.TestEntity;
 import brooklyn.util.collections.MutableMap;
+import brooklyn.util.task.BasicExecutionManager;
+import brooklyn.util.task.BoundedTaskExecutorStrategy;
 import brooklyn.util.task.DynamicTasks;
 import brooklyn.util.time.Duration;
 
@@ -39,7 +45,7 @@ public class PollerTest {
     
     @AfterMethod(alwaysRun=true)
     public void tearDown() throws Exception {
-        if (poller != null) poller.stop();
+        if (poller != null && poller.isRunning()) poller.stop();
         if (app != null) Entities.destroyAll(app.getManagementContext());
     }
     
@@ -87,4 +93,103 @@ public class PollerTest {
             }
         });
     }
+
+    @Test
+    public void testPollsUsingSharedScheduler() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(BrooklynServerConfig.FEED_SCHEDULER, BrooklynServerConfig.FEED_SCHEDULER_SHARED);
+        LocalManagementContext mgmt = new LocalManagementContext(props);
+        try {
+            TestApplication app2 = ApplicationBuilder.newManagedApp(EntitySpec.create(TestApplication.class), mgmt);
+            TestEntity entity2 = app2.createAndManageChild(EntitySpec.create(TestEntity.class));
+            Poller<Integer> poller2 = new Poller<Integer>(entity2);
+            final AtomicInteger counter = new AtomicInteger();
+            final AtomicInteger handled = new AtomicInteger();
+            poller2.scheduleAtFixedRate(
+                    new Callable<Integer>() {
+                        @Override public Integer call() {
+                            return counter.incrementAndGet();
+                        }
+                    },
+                    new PollHandler<Integer>() {
+                        @Override public boolean checkSuccess(Integer val) {
+                            return true;
+                        }
+                        @Override public void onSuccess(Integer val) {
+                            handled.incrementAndGet();
+                        }
+                        @Override public void onFailure(Integer val) {
+                        }
+                        @Override public void onException(Exception exception) {
+                        }
+                        @Override public String getDescription() {
+                            return "mypollhandler";
+                        }
+                    },
+                    Duration.millis(10));
+            poller2.start();
+            assertEquals(mgmt.getFeedScheduler().getTargetCount(), 1);
+
+            Asserts.succeedsEventually(new Runnable() {
+                @Override public void run() {
+                    assertTrue(handled.get() >= 3, "handled="+handled);
+                }
+            });
+
+            poller2.stop();
+            assertEquals(mgmt.getFeedScheduler().getTargetCount(), 0);
+        } finally {
+            Entities.destroyAll(mgmt);
+        }
+    }
+
+    @Test
+    public void testSharedSchedulerPollsRunOnBoundedBlockingPool() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(BrooklynServerConfig.FEED_SCHEDULER, BrooklynServerConfig.FEED_SCHEDULER_SHARED);
+        props.put(BrooklynServerConfig.EXECUTION_MODE, BrooklynServerConfig.EXECUTION_MODE_BOUNDED);
+        LocalManagementContext mgmt = new LocalManagementContext(props);
+        try {
+            final BoundedTaskExecutorStrategy strategy = (BoundedTaskExecutorStrategy) 
+                    ((BasicExecutionManager)mgmt.getExecutionManager()).getExecutorStrategy();
+            TestApplication app2 = ApplicationBuilder.newManagedApp(EntitySpec.create(TestApplication.class), mgmt);
+            TestEntity entity2 = app2.createAndManageChild(EntitySpec.create(TestEntity.class));
+            Poller<Integer> poller2 = new Poller<Integer>(entity2);
+            final AtomicInteger blockingPoolActive = new AtomicInteger(-1);
+            poller2.scheduleAtFixedRate(
+                    new Callable<Integer>() {
+                        @Override public Integer call() {
+                            // this poll is itself one of the active threads, if run on the blocking pool
+                            blockingPoolActive.set(strategy.getBlockingPool().getActiveCount());
+                            return 1;
+                        }
+                    },
+                    new PollHandler<Integer>() {
+                        @Override public boolean checkSuccess(Integer val) {
+                            return true;
+                        }
+                        @Override public void onSuccess(Integer val) {
+                        }
+                        @Override public void onFailure(Integer val) {
+                        }
+                        @Override public void onException(Exception exception) {
+                        }
+                        @Override public String getDescription() {
+                            return "mypollhandler";
+                        }
+                    },
+                    Duration.millis(10));
+            poller2.start();
+            assertEquals(mgmt.getFeedScheduler().getTargetCount(), 1);
+
+            Asserts.succeedsEventually(new Runnable() {
+                @Override public void run() {
+                    assertTrue(blockingPoolActive.get() >= 1, "blockingPoolActive="+blockingPoolActive);
+                }
+            });
+            poller2.stop();
+        } finally {
+            Entities.destroyAll(mgmt);
+        }
+    }
 }
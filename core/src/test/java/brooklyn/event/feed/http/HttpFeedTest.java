@@ -1,9 +1,13 @@
 package brooklyn.event.feed.http;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
 import java.net.URL;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
@@ -13,6 +17,8 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import brooklyn.config.BrooklynProperties;
+import brooklyn.config.BrooklynServerConfig;
 import brooklyn.entity.basic.ApplicationBuilder;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityLocal;
@@ -21,16 +27,20 @@ import brooklyn.event.AttributeSensor;
 import brooklyn.event.basic.Sensors;
 import brooklyn.location.Location;
 import brooklyn.location.basic.LocalhostMachineProvisioningLocation;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.management.internal.ManagementContextInternal;
 import brooklyn.test.Asserts;
 import brooklyn.test.entity.TestApplication;
 import brooklyn.test.entity.TestEntity;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.http.BetterMockWebServer;
+import brooklyn.util.time.Duration;
 
 import com.google.common.base.Functions;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.mockwebserver.MockResponse;
 
 public class HttpFeedTest {
@@ -90,6 +100,65 @@ public class HttpFeedTest {
         assertSensorEventually(SENSOR_STRING, "{\"foo\":\"myfoo\"}", TIMEOUT_MS);
     }
     
+    @Test
+    public void testCoalescesIdenticalPollsOfDifferentFeedsWithSharedScheduler() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(BrooklynServerConfig.FEED_SCHEDULER, BrooklynServerConfig.FEED_SCHEDULER_SHARED);
+        LocalManagementContext mgmt = new LocalManagementContext(props);
+        List<HttpFeed> feeds = Lists.newArrayList();
+        try {
+            TestApplication app2 = ApplicationBuilder.newManagedApp(EntitySpec.create(TestApplication.class), mgmt);
+            final List<TestEntity> entities = Lists.newArrayList();
+            for (int i = 0; i < 2; i++) {
+                TestEntity entity2 = app2.createAndManageChild(EntitySpec.create(TestEntity.class));
+                entities.add(entity2);
+                // equal (but not identical) bodies
+                feeds.add(HttpFeed.builder()
+                        .entity(entity2)
+                        .baseUrl(baseUrl)
+                        .poll(new HttpPollConfig<Integer>(SENSOR_INT)
+                                .method("post")
+                                .body("mybody".getBytes())
+                                .period(100)
+                                .onSuccess(HttpValueFunctions.responseCode()))
+                        .build());
+            }
+            assertEquals(mgmt.getFeedScheduler().getTargetCount(), 1);
+            
+            Asserts.succeedsEventually(new Runnable() {
+                @Override public void run() {
+                    for (TestEntity entity2 : entities) {
+                        assertEquals(entity2.getAttribute(SENSOR_INT), (Integer)200);
+                    }
+                }});
+        } finally {
+            for (HttpFeed feed2 : feeds) {
+                feed2.stop();
+            }
+            Entities.destroyAll(mgmt);
+        }
+    }
+    
+    @Test
+    public void testPollConnectionsAreConfiguredPerManagementContextAndShutDownOnTermination() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(BrooklynServerConfig.HTTP_POLL_MAX_CONNECTIONS_PER_ROUTE, 2);
+        props.put(BrooklynServerConfig.HTTP_POLL_CONNECTION_REQUEST_TIMEOUT, Duration.ONE_SECOND);
+        LocalManagementContext mgmt = new LocalManagementContext(props);
+        HttpPollConnections connections;
+        try {
+            connections = mgmt.getHttpPollConnections();
+            assertEquals(connections.getMaxConnectionsPerRoute(), 2);
+            assertEquals(connections.getConnectionRequestTimeout(), Duration.ONE_SECOND);
+            assertSame(mgmt.getHttpPollConnections(), connections);
+            assertNotSame(((ManagementContextInternal)app.getManagementContext()).getHttpPollConnections(), connections);
+            assertFalse(connections.isShutdown());
+        } finally {
+            Entities.destroyAll(mgmt);
+        }
+        assertTrue(connections.isShutdown());
+    }
+    
     @Test
     public void testPollsAndParsesHttpPostResponse() throws Exception {
         feed = HttpFeed.builder()
@@ -246,6 +315,39 @@ public class HttpFeedTest {
         assertSensorEventually(SENSOR_STRING, "error", TIMEOUT_MS);
     }
     
+    @Test
+    public void testPollsWithConditionalGetWhenServerReturnsETag() throws Exception {
+        server.shutdown();
+        server = BetterMockWebServer.newInstanceLocalhost();
+        server.enqueue(new MockResponse().setResponseCode(200).addHeader("ETag: \"v1\"").setBody("{\"foo\":\"myfoo\"}"));
+        for (int i = 0; i < 100; i++) {
+            server.enqueue(new MockResponse().setResponseCode(304));
+        }
+        server.play();
+
+        feed = HttpFeed.builder()
+                .entity(entity)
+                .baseUrl(server.getUrl("/"))
+                .poll(new HttpPollConfig<Integer>(SENSOR_INT)
+                        .period(100)
+                        .onSuccess(HttpValueFunctions.responseCode()))
+                .poll(new HttpPollConfig<String>(SENSOR_STRING)
+                        .period(100)
+                        .onSuccess(HttpValueFunctions.stringContentsFunction()))
+                .build();
+
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(server.getRequestCount() >= 3, "requests="+server.getRequestCount());
+            }});
+        assertEquals(server.takeRequest().getHeader("If-None-Match"), null);
+        assertEquals(server.takeRequest().getHeader("If-None-Match"), "\"v1\"");
+
+        // the not-modified responses are reported as the original value
+        assertEquals(entity.getAttribute(SENSOR_INT), (Integer)200);
+        assertEquals(entity.getAttribute(SENSOR_STRING), "{\"foo\":\"myfoo\"}");
+    }
+
     private <T> void assertSensorEventually(final AttributeSensor<T> sensor, final T expectedVal, long timeout) {
         Asserts.succeedsEventually(ImmutableMap.of("timeout", timeout), new Callable<Void>() {
             public Void call() {
@@ -0,0 +1,151 @@
+package brooklyn.event.feed.ssh;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.event.feed.PollHandler;
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+public class SshPollBatchTest {
+
+    private SshMachineLocation machine;
+    private SshPollBatch batch;
+    private RecordingHandler handler1;
+    private RecordingHandler handler2;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        machine = new SshMachineLocation(MutableMap.of("address", "localhost"));
+        batch = new SshPollBatch(machine);
+        handler1 = new RecordingHandler();
+        handler2 = new RecordingHandler();
+        batch.add("echo one", ImmutableMap.<String,String>of(), handler1);
+        batch.add("printf two; exit 3", ImmutableMap.of("GREETING", "hello world"), handler2);
+    }
+
+    @Test
+    public void testParsesOutputOfEachCommand() throws Exception {
+        String marker = batch.getMarker();
+        String stdout = marker+" 0 begin\none\n\n"+marker+" 0 exit 0\n"
+                + marker+" 1 begin\ntwo\n"+marker+" 1 exit 3\n";
+        String stderr = marker+" 0 begin\n\n"+marker+" 0 end\n"
+                + marker+" 1 begin\noops\n\n"+marker+" 1 end\n";
+
+        List<SshPollValue> values = batch.parse(stdout, stderr);
+        assertEquals(values.size(), 2);
+        assertEquals(values.get(0).getExitStatus(), 0);
+        assertEquals(values.get(0).getStdout(), "one\n");
+        assertEquals(values.get(0).getStderr(), "");
+        assertEquals(values.get(1).getExitStatus(), 3);
+        assertEquals(values.get(1).getStdout(), "two");
+        assertEquals(values.get(1).getStderr(), "oops\n");
+    }
+
+    @Test
+    public void testParsesNullWhenOutputOfCommandMissing() throws Exception {
+        String marker = batch.getMarker();
+        String stdout = marker+" 0 begin\none\n\n"+marker+" 0 exit 0\n"
+                + marker+" 1 begin\ntwo";
+        
+        List<SshPollValue> values = batch.parse(stdout, "");
+        assertEquals(values.get(0).getExitStatus(), 0);
+        assertEquals(values.get(0).getStderr(), "");
+        assertNull(values.get(1));
+    }
+
+    @Test
+    public void testParsesPtyOutputWithCrLfAndMergedStderr() throws Exception {
+        String marker = batch.getMarker();
+        String stdout = marker+" 0 begin\r\n"+marker+" 0 begin\r\none\r\n\r\n"+marker+" 0 exit 0\r\n\r\n"+marker+" 0 end\r\n"
+                + marker+" 1 begin\r\n"+marker+" 1 begin\r\ntwooops\r\n\r\n"+marker+" 1 exit 3\r\n\r\n"+marker+" 1 end\r\n";
+
+        List<SshPollValue> values = batch.parse(stdout, "");
+        assertEquals(values.size(), 2);
+        assertEquals(values.get(0).getExitStatus(), 0);
+        assertEquals(values.get(0).getStdout(), "one\n");
+        assertEquals(values.get(0).getStderr(), "");
+        assertEquals(values.get(1).getExitStatus(), 3);
+        assertEquals(values.get(1).getStdout(), "twooops\n");
+        assertEquals(values.get(1).getStderr(), "");
+    }
+
+    @Test
+    public void testPassesValueOrExceptionToEachHandler() throws Exception {
+        SshPollValue value = new SshPollValue(machine, 0, "one\n", "");
+        batch.handler().onSuccess(Lists.newArrayList(value, null));
+        
+        assertEquals(handler1.values, Lists.newArrayList(value));
+        assertTrue(handler1.exceptions.isEmpty());
+        assertTrue(handler2.values.isEmpty());
+        assertEquals(handler2.exceptions.size(), 1);
+    }
+
+    @Test
+    public void testPassesBatchExceptionToAllHandlers() throws Exception {
+        batch.handler().onException(new IllegalStateException("simulated failure"));
+        
+        assertEquals(handler1.exceptions.size(), 1);
+        assertEquals(handler2.exceptions.size(), 1);
+    }
+
+    @Test(groups="Integration")
+    public void testCommandRunsEachCommandInTurn() throws Exception {
+        batch.add("echo $GREETING; echo bad >&2; false", ImmutableMap.of("GREETING", "hello world"), new RecordingHandler());
+        
+        Process process = new ProcessBuilder("bash", "-c", batch.toCommand()).start();
+        String stdout = read(process.getInputStream());
+        String stderr = read(process.getErrorStream());
+        process.waitFor();
+        
+        List<SshPollValue> values = batch.parse(stdout, stderr);
+        assertEquals(values.get(0).getExitStatus(), 0);
+        assertEquals(values.get(0).getStdout(), "one\n");
+        assertEquals(values.get(1).getExitStatus(), 3);
+        assertEquals(values.get(1).getStdout(), "two");
+        assertEquals(values.get(2).getExitStatus(), 1);
+        assertEquals(values.get(2).getStdout(), "hello world\n");
+        assertEquals(values.get(2).getStderr(), "bad\n");
+    }
+
+    private static String read(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        int len;
+        while ((len = in.read(buf)) >= 0) {
+            out.write(buf, 0, len);
+        }
+        return new String(out.toByteArray());
+    }
+
+    private static class RecordingHandler implements PollHandler<SshPollValue> {
+        final List<SshPollValue> values = Lists.newArrayList();
+        final List<Exception> exceptions = Lists.newArrayList();
+
+        @Override public boolean checkSuccess(SshPollValue val) {
+            return true;
+        }
+        @Override public void onSuccess(SshPollValue val) {
+            values.add(val);
+        }
+        @Override public void onFailure(SshPollValue val) {
+        }
+        @Override public void onException(Exception exception) {
+            exceptions.add(exception);
+        }
+        @Override public String getDescription() {
+            return "recording";
+        }
+    }
+}
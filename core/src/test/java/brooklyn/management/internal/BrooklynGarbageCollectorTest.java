@@ -0,0 +1,140 @@
+package brooklyn.management.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.internal.storage.impl.BrooklynStorageImpl;
+import brooklyn.internal.storage.impl.inmemory.InmemoryDatagrid;
+import brooklyn.management.Task;
+import brooklyn.test.Asserts;
+import brooklyn.util.task.BasicExecutionManager;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+public class BrooklynGarbageCollectorTest {
+
+    private static final int TIMEOUT_MS = 10*1000;
+
+    private BasicExecutionManager em;
+    private BrooklynGarbageCollector gc;
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (gc != null) gc.shutdownNow();
+        if (em != null) em.shutdownNow();
+    }
+
+    private void newGarbageCollector(BrooklynProperties props) {
+        em = new BasicExecutionManager("mycontext");
+        gc = new BrooklynGarbageCollector(props, em, new BrooklynStorageImpl(new InmemoryDatagrid()));
+    }
+
+    @Test
+    public void testKeepsMostRecentlyCompletedTasksPerTag() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(BrooklynGarbageCollector.GC_PERIOD, 1);
+        props.put(BrooklynGarbageCollector.MAX_TASKS_PER_TAG, 2);
+        props.put(BrooklynGarbageCollector.GC_SLICE_SIZE, 3);
+        newGarbageCollector(props);
+
+        final List<Task<?>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            Task<?> task = em.submit(ImmutableMap.of("tags", ImmutableList.of("A", ManagementContextInternal.NON_TRANSIENT_TASK_TAG)), new NoopRunnable());
+            task.get();
+            tasks.add(task);
+        }
+
+        Asserts.succeedsEventually(ImmutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+            @Override public void run() {
+                assertEquals(em.getTasksWithTag("A"), ImmutableSet.of(tasks.get(8), tasks.get(9)));
+            }});
+        assertEquals(gc.getTotalTasksReclaimed(), 8);
+        assertNull(em.getTask(tasks.get(0).getId()));
+    }
+
+    @Test
+    public void testTasksDeletedThroughAnotherTagDoNotCountTowardsCap() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(BrooklynGarbageCollector.GC_PERIOD, 1);
+        props.put(BrooklynGarbageCollector.MAX_TASKS_PER_TAG, 2);
+        newGarbageCollector(props);
+
+        // t2 is deleted by the cap on B, leaving only t1 and t5 (within the cap) for A
+        Task<?> t1 = submitAndWait("A");
+        Task<?> t2 = submitAndWait("A", "B");
+        final Task<?> t3 = submitAndWait("B");
+        final Task<?> t4 = submitAndWait("B");
+        Asserts.succeedsEventually(ImmutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+            @Override public void run() {
+                assertEquals(em.getTasksWithTag("B"), ImmutableSet.of(t3, t4));
+            }});
+        Task<?> t5 = submitAndWait("A");
+        // completed tasks are processed in order, so once t6 is capped, t5 has been recorded
+        Task<?> t6 = submitAndWait("B");
+        final Set<Task<?>> expectedA = ImmutableSet.<Task<?>>of(t1, t5);
+        final Set<Task<?>> expectedB = ImmutableSet.<Task<?>>of(t4, t6);
+        Asserts.succeedsEventually(ImmutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+            @Override public void run() {
+                assertEquals(em.getTasksWithTag("B"), expectedB);
+            }});
+        assertEquals(em.getTasksWithTag("A"), expectedA);
+        assertNull(em.getTask(t2.getId()));
+        assertEquals(gc.getTotalTasksReclaimed(), 2);
+    }
+
+    @Test
+    public void testDeletesTasksByAge() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(BrooklynGarbageCollector.GC_PERIOD, 1);
+        props.put(BrooklynGarbageCollector.MAX_TASK_AGE, 100);
+        newGarbageCollector(props);
+
+        final Task<?> task = em.submit(ImmutableMap.of("tags", ImmutableList.of("A", ManagementContextInternal.NON_TRANSIENT_TASK_TAG)), new NoopRunnable());
+        task.get();
+
+        Asserts.succeedsEventually(ImmutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+            @Override public void run() {
+                assertNull(em.getTask(task.getId()));
+            }});
+        assertTrue(System.currentTimeMillis() - task.getEndTimeUtc() >= 100);
+        assertEquals(gc.getTotalTasksReclaimed(), 1);
+    }
+
+    @Test
+    public void testDeletesTransientTasksOnCompletion() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        newGarbageCollector(props);
+
+        final Task<?> task = em.submit(ImmutableMap.of("tag", ManagementContextInternal.TRANSIENT_TASK_TAG), new NoopRunnable());
+        task.get();
+
+        Asserts.succeedsEventually(ImmutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+            @Override public void run() {
+                assertNull(em.getTask(task.getId()));
+                assertEquals(gc.getTotalTasksReclaimed(), 1);
+            }});
+    }
+
+    private Task<?> submitAndWait(String... tags) throws Exception {
+        List<Object> allTags = Lists.<Object>newArrayList(tags);
+        allTags.add(ManagementContextInternal.NON_TRANSIENT_TASK_TAG);
+        Task<?> task = em.submit(ImmutableMap.of("tags", allTags), new NoopRunnable());
+        task.get();
+        return task;
+    }
+
+    private static class NoopRunnable implements Runnable {
+        @Override public void run() {}
+    }
+}
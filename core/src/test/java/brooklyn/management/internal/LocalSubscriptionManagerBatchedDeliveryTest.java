@@ -0,0 +1,67 @@
+package brooklyn.management.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.SensorEventListener;
+import brooklyn.test.Asserts;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Runs the {@link LocalSubscriptionManagerTest} tests with {@link LocalSubscriptionManager#BATCHED_DELIVERY} enabled,
+ * and tests coalescing of attribute values.
+ */
+public class LocalSubscriptionManagerBatchedDeliveryTest extends LocalSubscriptionManagerTest {
+
+    @Override
+    protected LocalManagementContext newManagementContext() {
+        BrooklynProperties brooklynProperties = BrooklynProperties.Factory.newEmpty();
+        brooklynProperties.put(LocalSubscriptionManager.BATCHED_DELIVERY, true);
+        return new LocalManagementContext(brooklynProperties);
+    }
+    
+    @Test
+    public void testCoalescingDeliversLatestValue() throws Exception {
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch firstEventReceived = new CountDownLatch(1);
+        final CountDownLatch releaseListener = new CountDownLatch(1);
+        LocalSubscriptionManager subscriptionManager = (LocalSubscriptionManager) app.getManagementContext().getSubscriptionManager();
+        
+        subscriptionManager.subscribe(MutableMap.<String,Object>of("subscriber", app, LocalSubscriptionManager.COALESCE_FLAG, true), 
+                entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+                    @Override public void onEvent(SensorEvent<Integer> event) {
+                        values.add(event.getValue());
+                        firstEventReceived.countDown();
+                        try {
+                            releaseListener.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }});
+        
+        entity.setSequenceValue(0);
+        assertTrue(firstEventReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        for (int i = 1; i <= 100; i++) {
+            entity.setSequenceValue(i);
+        }
+        releaseListener.countDown();
+        
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(values, ImmutableList.of(0, 100));
+            }});
+        assertEquals(subscriptionManager.getTotalEventsCoalesced(), 99);
+    }
+}
@@ -0,0 +1,17 @@
+package brooklyn.management.internal;
+
+import brooklyn.config.BrooklynProperties;
+
+/**
+ * Runs the {@link LocalSubscriptionManagerTest} tests with {@link LocalSubscriptionManager#INDEXED_DISPATCH} enabled.
+ */
+public class LocalSubscriptionManagerIndexedDispatchTest extends LocalSubscriptionManagerTest {
+
+    @Override
+    protected LocalManagementContext newManagementContext() {
+        BrooklynProperties brooklynProperties = BrooklynProperties.Factory.newEmpty();
+        brooklynProperties.put(LocalSubscriptionManager.INDEXED_DISPATCH, true);
+        return new LocalManagementContext(brooklynProperties);
+    }
+    
+}
@@ -1,6 +1,7 @@
 package brooklyn.management.internal;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
 import static org.testng.Assert.fail;
 
 import java.util.List;
@@ -30,17 +31,21 @@ import brooklyn.test.entity.TestEntity;
  */
 public class LocalSubscriptionManagerTest {
     
-    private static final int TIMEOUT_MS = 5000;
+    protected static final int TIMEOUT_MS = 5000;
     
-    private TestApplication app;
-    private TestEntity entity;
+    protected TestApplication app;
+    protected TestEntity entity;
     
     @BeforeMethod(alwaysRun=true)
     public void setup() {
-        app = ApplicationBuilder.newManagedApp(TestApplication.class);
+        app = ApplicationBuilder.newManagedApp(TestApplication.class, newManagementContext());
         entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
     }
 
+    protected LocalManagementContext newManagementContext() {
+        return new LocalManagementContext();
+    }
+    
     @AfterMethod(alwaysRun = true)
     public void tearDown(){
         if (app != null) Entities.destroyAll(app.getManagementContext());
@@ -129,6 +134,67 @@ public class LocalSubscriptionManagerTest {
         assertEquals(events.get(0).getSource().getId(), member.getId());
     }
     
+    @Test
+    public void testUnsubscribeStopsDeliveryOfSubsequentEvents() throws Exception {
+        final List<SensorEvent<Integer>> events = new CopyOnWriteArrayList<SensorEvent<Integer>>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        SubscriptionHandle handle = app.subscribe(entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                events.add(event);
+                latch.countDown();
+            }});
+        entity.setSequenceValue(1);
+        if (!latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            fail("Timeout waiting for Event on TestEntity listener");
+        }
+        
+        // a later wildcard subscription must be seen by publish, even after the first event has been delivered
+        final CountDownLatch wildcardLatch = new CountDownLatch(1);
+        app.subscribe(null, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                wildcardLatch.countDown();
+            }});
+        app.unsubscribe(entity, handle);
+        entity.setSequenceValue(2);
+        if (!wildcardLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            fail("Timeout waiting for Event on wildcard listener");
+        }
+        
+        assertEquals(events.size(), 1);
+        assertEquals(events.get(0).getValue(), (Integer)1);
+    }
+    
+    @Test
+    public void testUnsubscribeFromRealEntityStopsDeliveryOfEventsPublishedByProxy() throws Exception {
+        Entity realEntity = ((LocalEntityManager)app.getManagementContext().getEntityManager()).entitiesById.get(entity.getId());
+        assertNotSame(realEntity, entity);
+        final List<SensorEvent<Integer>> events = new CopyOnWriteArrayList<SensorEvent<Integer>>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        SubscriptionHandle handle = app.subscribe(realEntity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                events.add(event);
+                latch.countDown();
+            }});
+        entity.setSequenceValue(1);
+        if (!latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            fail("Timeout waiting for Event on TestEntity listener");
+        }
+        
+        final CountDownLatch wildcardLatch = new CountDownLatch(1);
+        app.subscribe(null, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                wildcardLatch.countDown();
+            }});
+        app.unsubscribe(realEntity, handle);
+        entity.setSequenceValue(2);
+        if (!wildcardLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            fail("Timeout waiting for Event on wildcard listener");
+        }
+        
+        assertEquals(events.size(), 1);
+        assertEquals(events.get(0).getValue(), (Integer)1);
+    }
+    
     // Regression test for ConcurrentModificationException in issue #327
     @Test(groups="Integration")
     public void testConcurrentSubscribingAndPublishing() throws Exception {
@@ -0,0 +1,146 @@
+package brooklyn.management.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.SensorEventListener;
+import brooklyn.event.basic.BasicSensorEvent;
+import brooklyn.event.basic.Sensors;
+import brooklyn.test.Asserts;
+import brooklyn.util.task.BasicExecutionManager;
+
+import com.google.common.collect.ImmutableList;
+
+public class SubscriptionDeliveryQueueTest {
+
+    private static final long TIMEOUT_MS = 10*1000;
+    private static final AttributeSensor<Integer> SEQUENCE = Sensors.newIntegerSensor("test.sequence");
+
+    private BasicExecutionManager em;
+    private ExecutorService publisher;
+    private List<Integer> values;
+    private CountDownLatch firstEventReceived;
+    private CountDownLatch releaseListener;
+    private Subscription<Integer> subscription;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        em = new BasicExecutionManager("mycontext");
+        publisher = Executors.newSingleThreadExecutor();
+        values = new CopyOnWriteArrayList<Integer>();
+        firstEventReceived = new CountDownLatch(1);
+        releaseListener = new CountDownLatch(1);
+        subscription = new Subscription<Integer>(null, SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                values.add(event.getValue());
+                firstEventReceived.countDown();
+                try {
+                    releaseListener.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }});
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (releaseListener != null) releaseListener.countDown();
+        if (publisher != null) publisher.shutdownNow();
+        if (em != null) em.shutdownNow();
+    }
+
+    @Test
+    public void testDropsAndCountsEventsWhenFull() throws Exception {
+        SubscriptionDeliveryQueue queue = new SubscriptionDeliveryQueue(em, "mytag", 2, 4, false, 1);
+
+        assertTrue(queue.enqueue(subscription, newEvent(0), false));
+        assertTrue(firstEventReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        for (int i = 1; i <= 10; i++) {
+            assertEquals(queue.enqueue(subscription, newEvent(i), false), i <= 4, "i="+i);
+        }
+        assertEquals(queue.getQueueLength(), 4);
+        assertEquals(queue.getDroppedCount(), 6);
+        releaseListener.countDown();
+
+        assertDeliveredEventually(ImmutableList.of(0, 1, 2, 3, 4));
+        assertEquals(queue.getDroppedCount(), 6);
+    }
+
+    @Test
+    public void testBlocksPublisherWhenFull() throws Exception {
+        final SubscriptionDeliveryQueue queue = new SubscriptionDeliveryQueue(em, "mytag", 2, 2, true, 1);
+
+        assertTrue(queue.enqueue(subscription, newEvent(0), false));
+        assertTrue(firstEventReceived.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        Future<?> publishing = publisher.submit(new Callable<Void>() {
+            public Void call() {
+                for (int i = 1; i <= 10; i++) {
+                    queue.enqueue(subscription, newEvent(i), false);
+                }
+                return null;
+            }});
+
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(queue.getQueueLength(), 2);
+            }});
+        Thread.sleep(100);
+        assertFalse(publishing.isDone());
+        assertEquals(queue.getQueueLength(), 2);
+
+        releaseListener.countDown();
+        publishing.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertDeliveredEventually(ImmutableList.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10));
+        assertEquals(queue.getDroppedCount(), 0);
+    }
+
+    @Test
+    public void testListenerPublishingToOwnFullQueueDropsRatherThanBlocks() throws Exception {
+        final List<Boolean> enqueued = new CopyOnWriteArrayList<Boolean>();
+        final SubscriptionDeliveryQueue[] queue = new SubscriptionDeliveryQueue[1];
+        final Subscription<Integer> republishing = new Subscription<Integer>(null, SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                values.add(event.getValue());
+                if (event.getValue() == 0) {
+                    for (int i = 1; i <= 3; i++) {
+                        enqueued.add(queue[0].enqueue(subscription, newEvent(i), false));
+                    }
+                }
+            }});
+        releaseListener.countDown();
+        queue[0] = new SubscriptionDeliveryQueue(em, "mytag", 2, 2, true, 1);
+
+        queue[0].enqueue(republishing, newEvent(0), false);
+
+        assertDeliveredEventually(ImmutableList.of(0, 1, 2));
+        assertEquals(enqueued, ImmutableList.of(true, true, false));
+        assertEquals(queue[0].getDroppedCount(), 1);
+    }
+
+    private SensorEvent<Integer> newEvent(int val) {
+        return new BasicSensorEvent<Integer>(SEQUENCE, null, val);
+    }
+
+    private void assertDeliveredEventually(final List<Integer> expected) {
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(values, expected);
+            }});
+    }
+}
@@ -0,0 +1,65 @@
+package brooklyn.qa.performance;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.event.basic.BasicConfigKey;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.flags.TypeCoercions;
+import brooklyn.util.time.Duration;
+
+/**
+ * Measures coercions as done when resolving config and setting fields from flags.
+ */
+public class TypeCoercionsPerformanceTest extends AbstractPerformanceTest {
+
+    private static final BasicConfigKey<Integer> INT_KEY = new BasicConfigKey<Integer>(Integer.class, "test.perf.int", "int key");
+    private static final BasicConfigKey<Duration> DURATION_KEY = new BasicConfigKey<Duration>(Duration.class, "test.perf.duration", "duration key");
+
+    protected int numIterations() {
+        return 100000;
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCoerceStringToPrimitive() {
+        int numIterations = numIterations();
+        double minRatePerSec = 100000 * PERFORMANCE_EXPECTATION;
+        final AtomicInteger i = new AtomicInteger();
+
+        measureAndAssert("coerceStringToInteger", numIterations, minRatePerSec, new Runnable() {
+            public void run() {
+                i.addAndGet(TypeCoercions.coerce("1", Integer.class));
+            }});
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCoerceViaRegisteredAdapter() {
+        int numIterations = numIterations();
+        double minRatePerSec = 100000 * PERFORMANCE_EXPECTATION;
+
+        measureAndAssert("coerceStringToDuration", numIterations, minRatePerSec, new Runnable() {
+            public void run() {
+                TypeCoercions.coerce("1s", Duration.class);
+            }});
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testGetConfigSetAsStringFlags() {
+        final TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(INT_KEY.getName(), "1")
+                .configure(DURATION_KEY.getName(), "1s"));
+        assertEquals(entity.getConfig(INT_KEY), (Integer)1);
+        int numIterations = numIterations();
+        double minRatePerSec = 10000 * PERFORMANCE_EXPECTATION;
+
+        measureAndAssert("getConfigSetAsStringFlags", numIterations, minRatePerSec, new Runnable() {
+            public void run() {
+                entity.getConfig(INT_KEY);
+                entity.getConfig(DURATION_KEY);
+            }});
+    }
+}
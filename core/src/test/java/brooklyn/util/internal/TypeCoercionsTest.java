@@ -14,6 +14,7 @@ import org.testng.annotations.Test;
 import brooklyn.util.flags.ClassCoercionException;
 import brooklyn.util.flags.TypeCoercions;
 
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.reflect.TypeToken;
@@ -136,6 +137,24 @@ public class TypeCoercionsTest {
         TypeCoercions.coerce(new Object(), TypeToken.of(Integer.class));
     }
 
+    @Test
+    public void testRegisteredAdapterUsedAfterFailedCoercion() {
+        try {
+            TypeCoercions.coerce(new WithoutAdapter(), WithFrom.class);
+            Assert.fail();
+        } catch (ClassCoercionException e) {
+            // expected
+        }
+        TypeCoercions.registerAdapter(WithoutAdapter.class, WithFrom.class, new Function<WithoutAdapter,WithFrom>() {
+            @Override public WithFrom apply(WithoutAdapter input) {
+                return WithFrom.fromString("4");
+            }});
+        assertEquals(TypeCoercions.coerce(new WithoutAdapter(), WithFrom.class).value, 4);
+    }
+
+    public static class WithoutAdapter {
+    }
+
     public static class WithAs {
         String value;
         public WithAs(Object x) { value = ""+x; }
@@ -0,0 +1,178 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.management.Task;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+public class BoundedTaskExecutorStrategyTest {
+
+    private BasicExecutionManager em;
+    private BoundedTaskExecutorStrategy strategy;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        em = new BasicExecutionManager("mycontext");
+        strategy = new BoundedTaskExecutorStrategy(em.getDaemonThreadFactory(), 2, 1, 
+                ImmutableList.of(TaskTags.BLOCKING_IO_TASK));
+        em.setExecutorStrategy(strategy);
+    }
+    
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (em != null) em.shutdownNow();
+    }
+
+    @Test
+    public void testRunsManyTasksWithBoundedThreads() throws Exception {
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        List<Task<?>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 20; i++) {
+            tasks.add(em.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    int now = concurrent.incrementAndGet();
+                    synchronized (maxConcurrent) {
+                        if (now > maxConcurrent.get()) maxConcurrent.set(now);
+                    }
+                    Thread.sleep(10);
+                    concurrent.decrementAndGet();
+                    return null;
+                }}));
+        }
+        for (Task<?> task : tasks) {
+            task.get();
+        }
+        assertTrue(maxConcurrent.get() <= 2, "maxConcurrent="+maxConcurrent);
+    }
+    
+    @Test
+    public void testNestedTaskDoesNotDeadlockWhenPoolSaturated() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        List<Task<?>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 2; i++) {
+            tasks.add(em.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    bothStarted.countDown();
+                    assertTrue(bothStarted.await(10, TimeUnit.SECONDS));
+                    // pool is now saturated by this and its sibling; the child must still get to run
+                    return em.submit(new Callable<String>() {
+                        public String call() {
+                            return "child";
+                        }}).get();
+                }}));
+        }
+        for (Task<?> task : tasks) {
+            assertEquals(task.get(), "child");
+        }
+        assertEquals(strategy.getGeneralPool().getMaxBlockedSeen(), 2);
+        assertEquals(strategy.getGeneralPool().getBlockedCount(), 0);
+    }
+    
+    @Test
+    public void testTasksWaitingForTasksSubmittedFromOutsidePoolDoNotDeadlock() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        List<Task<String>> children = Lists.newArrayList();
+        List<Task<?>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 2; i++) {
+            final Task<String> child = Tasks.<String>builder().name("child").body(new Callable<String>() {
+                public String call() {
+                    return "child";
+                }}).build();
+            children.add(child);
+            tasks.add(em.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    bothStarted.countDown();
+                    return child.get();
+                }}));
+        }
+        // both pool threads are now waiting; the children are queued behind them, submitted from this thread
+        assertTrue(bothStarted.await(10, TimeUnit.SECONDS));
+        for (Task<String> child : children) {
+            em.submit(child);
+        }
+        for (Task<?> task : tasks) {
+            assertEquals(task.get(10, TimeUnit.SECONDS), "child");
+        }
+    }
+    
+    @Test
+    public void testTaskWaitingForTaskInOtherPoolDoesNotDeadlock() throws Exception {
+        // the blocking pool's only thread waits (via the general pool) for another blocking task
+        Task<String> outer = em.submit(ImmutableMap.of("tag", TaskTags.BLOCKING_IO_TASK), new Callable<String>() {
+            public String call() throws Exception {
+                return em.submit(new Callable<String>() {
+                    public String call() throws Exception {
+                        return em.submit(ImmutableMap.of("tag", TaskTags.BLOCKING_IO_TASK), new Callable<String>() {
+                            public String call() {
+                                return "inner";
+                            }}).get();
+                    }}).get();
+            }});
+        assertEquals(outer.get(10, TimeUnit.SECONDS), "inner");
+        assertEquals(strategy.getBlockingPool().getMaxBlockedSeen(), 1);
+        assertEquals(strategy.getBlockingPool().getBlockedCount(), 0);
+    }
+    
+    @Test
+    public void testBlockingTaskUsesBlockingPool() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Task<?> blocking = em.submit(ImmutableMap.of("tag", TaskTags.BLOCKING_IO_TASK), new Callable<Void>() {
+            public Void call() throws Exception {
+                release.await();
+                return null;
+            }});
+        Task<?> blocked = em.submit(ImmutableMap.of("tag", TaskTags.BLOCKING_IO_TASK), new Callable<Void>() {
+            public Void call() throws Exception {
+                return null;
+            }});
+        
+        // general pool is unaffected by the blocking pool being full
+        assertEquals(em.submit(new Callable<String>() {
+            public String call() {
+                return "general";
+            }}).get(), "general");
+        assertEquals(strategy.getBlockingPool().getQueueDepth(), 1);
+        assertTrue(!blocked.isDone());
+        
+        release.countDown();
+        blocking.get();
+        blocked.get();
+    }
+
+    @Test
+    public void testExecutorForTagsRunsJobsOnPoolChosenByStrategy() throws Exception {
+        assertEquals(runAndGetPoolName(em.getExecutorForTags(ImmutableList.of(TaskTags.BLOCKING_IO_TASK))), "blocking");
+        assertEquals(runAndGetPoolName(em.getExecutorForTags(ImmutableList.of("other"))), "general");
+    }
+    
+    private String runAndGetPoolName(Executor executor) throws Exception {
+        final AtomicReference<String> result = new AtomicReference<String>();
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                BoundedTaskExecutorStrategy.BoundedPool pool = BoundedTaskExecutorStrategy.beginWaiting();
+                BoundedTaskExecutorStrategy.endWaiting(pool);
+                result.set(pool != null ? pool.getName() : null);
+                done.countDown();
+            }});
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        return result.get();
+    }
+}
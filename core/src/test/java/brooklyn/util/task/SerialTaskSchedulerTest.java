@@ -0,0 +1,125 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.management.Task;
+import brooklyn.test.Asserts;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class SerialTaskSchedulerTest {
+
+    private BasicExecutionManager em;
+    private SerialTaskScheduler scheduler;
+    
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        em = new BasicExecutionManager("mycontext");
+        em.setTaskSchedulerForTag("category1", SerialTaskScheduler.class);
+        scheduler = (SerialTaskScheduler) em.getTaskSchedulerForTag("category1");
+    }
+    
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (em != null) em.shutdownNow();
+    }
+    
+    @Test
+    public void testExecutesInOrder() throws Exception {
+        final int numTimes = 1000;
+        final List<Integer> result = new CopyOnWriteArrayList<Integer>();
+        Task<?> last = null;
+        for (int i = 0; i < numTimes; i++) {
+            final int counter = i;
+            last = em.submit(ImmutableMap.of("tag", "category1"), new Runnable() {
+                public void run() {
+                    result.add(counter);
+                }});
+        }
+        last.get();
+        
+        assertEquals(result.size(), numTimes);
+        for (int i = 0; i < numTimes; i++) {
+            assertEquals(result.get(i), (Integer)i);
+        }
+        assertEquals(scheduler.getSubmittedCount(), numTimes);
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(scheduler.getQueueLength(), 0);
+            }});
+    }
+    
+    @Test
+    public void testQueuedTasksDoNotRunConcurrently() throws Exception {
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        Task<?> last = null;
+        for (int i = 0; i < 100; i++) {
+            last = em.submit(ImmutableMap.of("tag", "category1"), new Callable<Void>() {
+                public Void call() throws Exception {
+                    int now = concurrent.incrementAndGet();
+                    if (now > maxConcurrent.get()) maxConcurrent.set(now);
+                    Thread.sleep(1);
+                    concurrent.decrementAndGet();
+                    return null;
+                }});
+        }
+        last.get();
+        assertEquals(maxConcurrent.get(), 1);
+    }
+    
+    @Test
+    public void testCancelQueuedTaskSkipsItAndRecordsLatency() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<String> result = new CopyOnWriteArrayList<String>();
+        em.submit(ImmutableMap.of("tag", "category1"), new Callable<Void>() {
+            public Void call() throws Exception {
+                latch.await();
+                return null;
+            }});
+        Task<?> cancelled = em.submit(ImmutableMap.of("tag", "category1"), new Runnable() {
+            public void run() {
+                result.add("cancelled");
+            }});
+        Task<?> next = em.submit(ImmutableMap.of("tag", "category1"), new Runnable() {
+            public void run() {
+                result.add("next");
+            }});
+        assertEquals(scheduler.getQueueLength(), 3);
+        
+        cancelled.cancel(true);
+        Thread.sleep(10);
+        latch.countDown();
+        next.get();
+        
+        assertEquals(result, ImmutableList.of("next"));
+        assertTrue(scheduler.getMaxQueueLatencyMillis() >= 10, "maxLatency="+scheduler.getMaxQueueLatencyMillis());
+    }
+    
+    @Test
+    public void testIdleSchedulerHoldsNoThread() throws Exception {
+        Task<?> task = em.submit(ImmutableMap.of("tag", "category1"), new Runnable() {
+            public void run() {}
+            });
+        task.get();
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(scheduler.getQueueLength(), 0);
+                assertEquals(em.getNumActiveTasks(), 0);
+            }});
+        assertTrue(scheduler.getMeanQueueLatencyMillis() < TimeUnit.SECONDS.toMillis(10));
+    }
+}
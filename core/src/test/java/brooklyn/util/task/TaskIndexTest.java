@@ -0,0 +1,146 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.management.Task;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+public class TaskIndexTest {
+
+    private BasicExecutionManager em;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        em = new BasicExecutionManager("mycontext");
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (em != null) em.shutdownNow();
+    }
+
+    @Test
+    public void testMostRecentTasksWithTagArePagedNewestFirst() throws Exception {
+        List<Task<?>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            tasks.add(em.submit(ImmutableMap.of("tag", "A"), new NoopRunnable()));
+        }
+
+        assertEquals(em.getMostRecentTasksWithTag("A", 0, 3), ImmutableList.of(tasks.get(9), tasks.get(8), tasks.get(7)));
+        assertEquals(em.getMostRecentTasksWithTag("A", 8, 5), ImmutableList.of(tasks.get(1), tasks.get(0)));
+        assertEquals(em.getMostRecentTasksWithTag("B", 0, 5), ImmutableList.of());
+        assertEquals(em.getNumTasksWithTag("A"), 10);
+        assertEquals(ImmutableList.copyOf(em.getTasksWithTag("A")), tasks);
+    }
+
+    @Test
+    public void testTasksWithAllTags() throws Exception {
+        Task<?> ab = em.submit(ImmutableMap.of("tags", ImmutableList.of("A", "B")), new NoopRunnable());
+        Task<?> a = em.submit(ImmutableMap.of("tag", "A"), new NoopRunnable());
+        Task<?> abc = em.submit(ImmutableMap.of("tags", ImmutableList.of("A", "B", "C")), new NoopRunnable());
+
+        assertEquals(ImmutableList.copyOf(em.getTasksWithAllTags(ImmutableList.of("A", "B"))), ImmutableList.of(ab, abc));
+        assertEquals(em.getTasksWithAllTags(ImmutableList.of("A", "C")), ImmutableSet.of(abc));
+        assertEquals(em.getTasksWithAllTags(ImmutableList.of("A", "D")), ImmutableSet.of());
+        assertEquals(em.getTasksWithAnyTag(ImmutableList.of("A")), ImmutableSet.of(ab, a, abc));
+    }
+
+    @Test
+    public void testDeleteTaskRemovesFromAllIndexes() throws Exception {
+        Task<?> t = em.submit(ImmutableMap.of("tags", ImmutableList.of("A", "B")), new NoopRunnable());
+        t.get();
+        em.deleteTask(t);
+
+        assertNull(em.getTask(t.getId()));
+        assertEquals(em.getTasksWithTag("A"), ImmutableSet.of());
+        assertEquals(em.getTasksWithTag("B"), ImmutableSet.of());
+        assertEquals(em.getNumInMemoryTasks(), 0);
+    }
+
+    @Test
+    public void testMaxTasksInMemoryEvictsOldestFinishedTasks() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        try {
+            Task<?> blocked = em.submit(ImmutableMap.of("tag", "A"), new Runnable() {
+                public void run() {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }});
+            em.setMaxTasksInMemory(10);
+
+            List<Task<?>> tasks = Lists.newArrayList();
+            for (int i = 0; i < 50; i++) {
+                Task<?> t = em.submit(ImmutableMap.of("tag", "A"), new NoopRunnable());
+                t.get();
+                tasks.add(t);
+            }
+
+            assertTrue(em.getNumInMemoryTasks() <= 10, "inMemory="+em.getNumInMemoryTasks());
+            assertTrue(em.getNumEvictedTasks() >= 40, "evicted="+em.getNumEvictedTasks());
+            // the unfinished task is kept, even though it is the oldest, as is the most recent
+            assertEquals(em.getTask(blocked.getId()), blocked);
+            assertEquals(em.getTask(tasks.get(49).getId()), tasks.get(49));
+            assertNull(em.getTask(tasks.get(0).getId()));
+            assertFalse(em.getTasksWithTag("A").contains(tasks.get(0)));
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void testMaxTasksInMemoryEvictsFinishedTasksWhenMostAreRunning() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        try {
+            List<Task<?>> blocked = Lists.newArrayList();
+            for (int i = 0; i < 20; i++) {
+                blocked.add(em.submit(ImmutableMap.of("tag", "A"), new Runnable() {
+                    public void run() {
+                        try {
+                            latch.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }}));
+            }
+            em.setMaxTasksInMemory(22);
+
+            List<Task<?>> tasks = Lists.newArrayList();
+            for (int i = 0; i < 50; i++) {
+                Task<?> t = em.submit(ImmutableMap.of("tag", "A"), new NoopRunnable());
+                t.get();
+                tasks.add(t);
+            }
+
+            assertTrue(em.getNumInMemoryTasks() <= 22, "inMemory="+em.getNumInMemoryTasks());
+            for (Task<?> t : blocked) {
+                assertEquals(em.getTask(t.getId()), t);
+            }
+            assertEquals(em.getTask(tasks.get(49).getId()), tasks.get(49));
+            assertNull(em.getTask(tasks.get(0).getId()));
+            assertEquals(em.getNumTasksWithTag("A"), em.getNumInMemoryTasks());
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    private static class NoopRunnable implements Runnable {
+        @Override public void run() {}
+    }
+}
@@ -0,0 +1,68 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.management.Task;
+
+import com.google.common.collect.Lists;
+
+public class VirtualThreadTaskExecutorStrategyTest {
+
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadTaskExecutorStrategyTest.class);
+    
+    private BasicExecutionManager em;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        em = new BasicExecutionManager("mycontext");
+    }
+    
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (em != null) em.shutdownNow();
+    }
+
+    @Test
+    public void testConstructorFailsIfUnsupported() throws Exception {
+        if (VirtualThreadTaskExecutorStrategy.isSupported()) return;
+        try {
+            new VirtualThreadTaskExecutorStrategy("test-");
+            fail("virtual threads reported as unsupported, but strategy created");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testTasksRunOnVirtualThreadsAndKnowCurrentTask() throws Exception {
+        if (!VirtualThreadTaskExecutorStrategy.isSupported()) {
+            log.info("Virtual threads not supported in this JVM; skipping "+this);
+            return;
+        }
+        em.setExecutorStrategy(new VirtualThreadTaskExecutorStrategy("test-virtual-"));
+        
+        List<Task<String>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            tasks.add(em.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    Thread.sleep(10);
+                    assertTrue(Thread.currentThread().getName().startsWith("test-virtual-"), "thread="+Thread.currentThread());
+                    return Tasks.current().getId();
+                }}));
+        }
+        for (Task<String> task : tasks) {
+            assertEquals(task.get(), task.getId());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package brooklyn.enricher;
+
+import brooklyn.entity.Entity;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.Sensor;
+import brooklyn.util.collections.TimeWindowedSamples;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Transforms {@link Sensor} data into an approximate percentile (e.g. the 95th percentile latency) of the 
+ * values received within a time window.
+ * <p>
+ * The distribution of values is tracked in equal-width buckets between the given lowest and highest values, 
+ * so the percentile is accurate to within half a bucket width (for values in that range), and is maintained 
+ * in constant time per value.
+ */
+public class RollingTimeWindowPercentileEnricher<T extends Number> extends RollingTimeWindowStatisticEnricher<T> {
+    
+    private final double percentile;
+    
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @param lowest the lowest value expected; lower values are counted as lowest
+     * @param highest the highest value expected; higher values are counted as highest
+     * @param buckets the number of buckets between lowest and highest
+     */
+    public RollingTimeWindowPercentileEnricher(Entity producer, AttributeSensor<T> source, 
+            AttributeSensor<Double> target, Duration timePeriod, double percentile, double lowest, double highest, int buckets) {
+        super(producer, source, target, 
+                new TimeWindowedSamples(Preconditions.checkNotNull(timePeriod, "timePeriod").toMilliseconds()).trackPercentiles(lowest, highest, buckets), 
+                null);
+        Preconditions.checkArgument(percentile >= 0 && percentile <= 100, "percentile %s must be between 0 and 100", percentile);
+        this.percentile = percentile;
+    }
+    
+    @Override
+    protected double compute(TimeWindowedSamples samples) {
+        return samples.getPercentile(percentile);
+    }
+}
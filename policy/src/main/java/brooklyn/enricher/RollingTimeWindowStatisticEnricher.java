@@ -0,0 +1,89 @@
+package brooklyn.enricher;
+
+import brooklyn.enricher.basic.AbstractTypeTransformingEnricher;
+import brooklyn.entity.Entity;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.Sensor;
+import brooklyn.event.SensorEvent;
+import brooklyn.util.collections.TimeWindowedSamples;
+import brooklyn.util.time.Duration;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Transforms {@link Sensor} data into a statistic (such as the mean, min, max, standard deviation or rate of change) 
+ * of the values received within a time window.
+ * <p>
+ * Unlike {@link RollingTimeWindowMeanEnricher}, the values are not weighted by time: each value received 
+ * in the window counts equally. The values are kept in a {@link TimeWindowedSamples}, so each statistic is 
+ * maintained in constant time per value, without allocating per value.
+ * <p>
+ * The statistic is null when there are no values in the window (or for the rate, fewer than two).
+ * 
+ * @see RollingTimeWindowPercentileEnricher
+ */
+public class RollingTimeWindowStatisticEnricher<T extends Number> extends AbstractTypeTransformingEnricher<T,Double> {
+    
+    public enum Statistic {
+        MEAN,
+        MIN,
+        MAX,
+        STANDARD_DEVIATION,
+        /** change per second, from the oldest value in the window to the latest */
+        RATE
+    }
+    
+    protected final TimeWindowedSamples samples;
+    private final Statistic statistic;
+    
+    public RollingTimeWindowStatisticEnricher(Entity producer, AttributeSensor<T> source, 
+            AttributeSensor<Double> target, Duration timePeriod, Statistic statistic) {
+        this(producer, source, target, new TimeWindowedSamples(Preconditions.checkNotNull(timePeriod, "timePeriod").toMilliseconds()), 
+                Preconditions.checkNotNull(statistic, "statistic"));
+    }
+    
+    protected RollingTimeWindowStatisticEnricher(Entity producer, AttributeSensor<T> source, 
+            AttributeSensor<Double> target, TimeWindowedSamples samples, Statistic statistic) {
+        super(producer, source, target);
+        this.samples = samples;
+        this.statistic = statistic;
+    }
+    
+    @Override
+    public void onEvent(SensorEvent<T> event) {
+        onEvent(event, event.getTimestamp());
+    }
+    
+    public void onEvent(SensorEvent<T> event, long eventTime) {
+        synchronized (samples) {
+            // Ignores null values; and values older than the latest (e.g. delivered out of order), which are dropped
+            if (event.getValue() != null && !samples.add(eventTime, event.getValue().doubleValue())) return;
+        }
+        entity.setAttribute((AttributeSensor<Double>)target, getValue(eventTime));
+    }
+    
+    public Double getValue() {
+        return getValue(System.currentTimeMillis());
+    }
+    
+    /** @return the statistic of the values in the window ending now; or null if there are insufficient values */
+    public Double getValue(long now) {
+        synchronized (samples) {
+            samples.prune(now);
+            double result = compute(samples);
+            return Double.isNaN(result) ? null : result;
+        }
+    }
+    
+    /** @return the statistic, or NaN if there are insufficient values; called when synchronized on the samples */
+    protected double compute(TimeWindowedSamples samples) {
+        switch (statistic) {
+        case MEAN: return samples.getMean();
+        case MIN: return samples.getMin();
+        case MAX: return samples.getMax();
+        case STANDARD_DEVIATION: return samples.getStandardDeviation();
+        case RATE: return samples.getRate();
+        default: throw new IllegalStateException("Unexpected statistic "+statistic+" for "+this);
+        }
+    }
+}
@@ -75,6 +75,8 @@ public class AutoScalerPolicy extends AbstractPolicy {
         private BasicNotificationSensor<?> poolOkSensor;
         private BasicNotificationSensor<? super MaxPoolSizeReachedEvent> maxSizeReachedSensor;
         private long maxReachedNotificationDelay;
+        private Boolean forecast;
+        private Long forecastHorizon;
         
         public Builder id(String val) {
             this.id = val; return this;
@@ -140,6 +142,12 @@ public class AutoScalerPolicy extends AbstractPolicy {
         public Builder maxReachedNotificationDelay(long val) {
             this.maxReachedNotificationDelay = val; return this;
         }
+        public Builder forecast(boolean val) {
+            this.forecast = val; return this;
+        }
+        public Builder forecastHorizon(long val) {
+            this.forecastHorizon = val; return this;
+        }
         public AutoScalerPolicy build() {
             return new AutoScalerPolicy(toFlags());
         }
@@ -163,6 +171,8 @@ public class AutoScalerPolicy extends AbstractPolicy {
                     .putIfNotNull("poolOkSensor", poolOkSensor)
                     .putIfNotNull("maxSizeReachedSensor", maxSizeReachedSensor)
                     .putIfNotNull("maxReachedNotificationDelay", maxReachedNotificationDelay)
+                    .putIfNotNull("forecast", forecast)
+                    .putIfNotNull("forecastHorizon", forecastHorizon)
                     .build();
         }
     }
@@ -308,6 +318,35 @@ public class AutoScalerPolicy extends AbstractPolicy {
             .defaultValue(0l)
             .build();
     
+    @SetFromFlag("forecast")
+    public static final ConfigKey<Boolean> FORECAST = BasicConfigKey.builder(Boolean.class)
+            .name("autoscaler.forecast")
+            .description("Whether to resize according to the metric forecast for when a resize would complete " +
+                    "(extrapolating the metric's recent trend), rather than according to the current metric alone")
+            .defaultValue(false)
+            .build();
+    
+    @SetFromFlag("forecastHorizon")
+    public static final ConfigKey<Long> FORECAST_HORIZON = BasicConfigKey.builder(Long.class)
+            .name("autoscaler.forecastHorizon")
+            .description("Time (milliseconds) ahead to forecast the metric, until the time taken by a resize to grow the pool has been measured")
+            .defaultValue(0l)
+            .build();
+    
+    @SetFromFlag("forecastLevelSmoothing")
+    public static final ConfigKey<Double> FORECAST_LEVEL_SMOOTHING = BasicConfigKey.builder(Double.class)
+            .name("autoscaler.forecastLevelSmoothing")
+            .description("Weight (0 to 1) given to each new metric value when forecasting; see MetricForecaster")
+            .defaultValue(0.5)
+            .build();
+    
+    @SetFromFlag("forecastTrendSmoothing")
+    public static final ConfigKey<Double> FORECAST_TREND_SMOOTHING = BasicConfigKey.builder(Double.class)
+            .name("autoscaler.forecastTrendSmoothing")
+            .description("Weight (0 to 1) given to each new change in the metric when forecasting its trend; see MetricForecaster")
+            .defaultValue(0.3)
+            .build();
+    
     private Entity poolEntity;
     
     private final AtomicBoolean executorQueued = new AtomicBoolean(false);
@@ -320,6 +359,12 @@ public class AutoScalerPolicy extends AbstractPolicy {
     
     private long maxReachedLastNotifiedTime;
     
+    /** forecasts the pool's total activity (i.e. the metric multiplied by the pool size), if forecasting */
+    private final MetricForecaster activityForecaster;
+    
+    /** the smoothed time taken by resizes that grew the pool, or -1 if not yet measured */
+    private volatile long resizeUpLatency = -1;
+    
     private final SensorEventListener<Map> utilizationEventHandler = new SensorEventListener<Map>() {
         public void onEvent(SensorEvent<Map> event) {
             Map<String, ?> properties = (Map<String, ?>) event.getValue();
@@ -357,6 +402,8 @@ public class AutoScalerPolicy extends AbstractPolicy {
         long maxResizeStabilizationDelay = Math.max(getResizeUpStabilizationDelay(), getResizeDownStabilizationDelay());
         recentDesiredResizes = new SizeHistory(maxResizeStabilizationDelay);
         
+        activityForecaster = new MetricForecaster(getConfig(FORECAST_LEVEL_SMOOTHING), getConfig(FORECAST_TREND_SMOOTHING));
+        
         // TODO Should re-use the execution manager's thread pool, somehow
         executor = Executors.newSingleThreadScheduledExecutor(newThreadFactory());
     }
@@ -459,6 +506,16 @@ public class AutoScalerPolicy extends AbstractPolicy {
     private long getMaxReachedNotificationDelay() {
         return getConfig(MAX_REACHED_NOTIFICATION_DELAY);
     }
+    
+    private boolean isForecasting() {
+        return Boolean.TRUE.equals(getConfig(FORECAST));
+    }
+    
+    /** how far ahead to forecast: the time a resize to grow the pool is expected to take */
+    private long getForecastHorizon() {
+        long result = resizeUpLatency;
+        return (result >= 0) ? result : getConfig(FORECAST_HORIZON);
+    }
 
     @Override
     protected <T> void doReconfigureConfig(ConfigKey<T> key, T val) {
@@ -575,6 +632,20 @@ public class AutoScalerPolicy extends AbstractPolicy {
         double metricLowerBoundD = getMetricLowerBound().doubleValue();
         int currentSize = getCurrentSizeOperator().apply(entity);
         double currentTotalActivity = currentSize * currentMetricD;
+        
+        if (isForecasting()) {
+            // Forecasts the total activity, which (unlike the metric) does not change just because the pool is resized.
+            // Resizes for the activity forecast for when a resize would complete, if that is higher, so as to scale 
+            // out ahead of a predicted breach; but does not scale back ahead of a predicted fall.
+            long now = System.currentTimeMillis();
+            activityForecaster.add(now, currentTotalActivity);
+            double forecastTotalActivity = activityForecaster.forecast(now + getForecastHorizon());
+            if (forecastTotalActivity > currentTotalActivity && currentSize > 0) {
+                if (LOG.isTraceEnabled()) LOG.trace("{} using forecast pool-metric for {}: {} (current {}, in {}ms)", new Object[] {this, poolEntity, forecastTotalActivity/currentSize, currentMetricD, getForecastHorizon()});
+                currentTotalActivity = forecastTotalActivity;
+                currentMetricD = forecastTotalActivity / currentSize;
+            }
+        }
         int unboundedSize;
         int desiredSize;
         
@@ -837,7 +908,18 @@ public class AutoScalerPolicy extends AbstractPolicy {
                 new Object[] {this, desiredPoolSize, currentPoolSize, getMinPoolSize(), getMaxPoolSize()});
         
         // TODO Should we use int throughout, rather than casting here?
+        long startTime = System.currentTimeMillis();
         getResizeOperator().resize(poolEntity, (int) desiredPoolSize);
+        if (desiredPoolSize > currentPoolSize) {
+            onResizeUpCompleted(System.currentTimeMillis() - startTime);
+        }
+    }
+    
+    /** records how long a resize to grow the pool took (e.g. to provision new VMs), as the horizon for forecasts */
+    private void onResizeUpCompleted(long duration) {
+        long previous = resizeUpLatency;
+        resizeUpLatency = (previous >= 0) ? (previous + duration) / 2 : duration;
+        if (LOG.isDebugEnabled()) LOG.debug("{} resize of {} took {}ms; expected time for resizes now {}ms", new Object[] {this, poolEntity, duration, resizeUpLatency});
     }
     
     /**
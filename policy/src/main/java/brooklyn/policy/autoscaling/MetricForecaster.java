@@ -0,0 +1,78 @@
+package brooklyn.policy.autoscaling;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * Forecasts a metric from its recent values, using Holt's linear trend method (double exponential smoothing):
+ * a smoothed level and a smoothed trend are updated with each value, in constant time and space, and the
+ * forecast is the level extrapolated along the trend.
+ * <p>
+ * Values may arrive at irregular intervals (as sensor values do), so the trend is per millisecond, and
+ * the smoothing is applied per value.
+ */
+public class MetricForecaster {
+
+    private final double levelSmoothing;
+    private final double trendSmoothing;
+
+    private long count = 0;
+    private long lastTimestamp;
+    private double level;
+    /** change in level per millisecond */
+    private double trend;
+
+    /**
+     * @param levelSmoothing weight (0 to 1) given to each new value, rather than to the previous forecast, in the level
+     * @param trendSmoothing weight (0 to 1) given to each new change in level, rather than to the previous trend
+     */
+    public MetricForecaster(double levelSmoothing, double trendSmoothing) {
+        Preconditions.checkArgument(levelSmoothing > 0 && levelSmoothing <= 1, "levelSmoothing %s must be in (0,1]", levelSmoothing);
+        Preconditions.checkArgument(trendSmoothing >= 0 && trendSmoothing <= 1, "trendSmoothing %s must be in [0,1]", trendSmoothing);
+        this.levelSmoothing = levelSmoothing;
+        this.trendSmoothing = trendSmoothing;
+    }
+
+    public synchronized void add(long timestamp, double value) {
+        if (count == 0) {
+            level = value;
+            trend = 0;
+        } else {
+            long interval = Math.max(0, timestamp - lastTimestamp);
+            double previousLevel = level;
+            level = levelSmoothing*value + (1-levelSmoothing)*(previousLevel + trend*interval);
+            if (interval > 0) {
+                trend = trendSmoothing*(level - previousLevel)/interval + (1-trendSmoothing)*trend;
+            }
+        }
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        count++;
+    }
+
+    /**
+     * @return the forecast value at the given time (normally in the future);
+     *         or NaN if there have been no values
+     */
+    public synchronized double forecast(long timestamp) {
+        if (count == 0) return Double.NaN;
+        return level + trend*Math.max(0, timestamp - lastTimestamp);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getLevel() {
+        return level;
+    }
+
+    /** the change in level per millisecond */
+    public synchronized double getTrend() {
+        return trend;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return Objects.toStringHelper(this).add("count", count).add("level", level).add("trend", trend).toString();
+    }
+}
@@ -35,6 +35,9 @@ public class BalancingStrategy<NodeType extends Entity, ItemType extends Movable
     private final String name;
     private final BalanceablePoolModel<NodeType, ItemType> model;
     private final PolicyUtilForPool<NodeType, ItemType> helper;
+    /** migrations permitted in the current rebalance; negative for no limit */
+    private int maxMigrationsInRebalance = -1;
+    private int migrationsInRebalance = 0;
 //    private boolean loggedColdestTooHigh = false;
 //    private boolean loggedHottestTooLow = false;
     
@@ -50,7 +53,35 @@ public class BalancingStrategy<NodeType extends Entity, ItemType extends Movable
     }
     
     public void rebalance() {
-        checkAndApplyOn(model.getPoolContents());
+        rebalance(-1);
+    }
+    
+    /**
+     * Moves items from hot containers and to cold containers, up to the given number of items.
+     * <p>
+     * Only containers outside their thresholds can need balancing, so for an {@link IndexedBalanceablePoolModel}
+     * just those containers are considered (rather than all containers in the pool), and the hottest and
+     * coldest containers to move items to and from are found from its index.
+     * 
+     * @param maxMigrations the maximum number of items to move; negative for no limit
+     * @return the number of items moved; if equal to maxMigrations, further balancing may be needed
+     */
+    public int rebalance(int maxMigrations) {
+        Collection<NodeType> nodes = (model instanceof IndexedBalanceablePoolModel)
+                ? ((IndexedBalanceablePoolModel<NodeType, ItemType>) model).getUnbalancedContainers()
+                : model.getPoolContents();
+        maxMigrationsInRebalance = maxMigrations;
+        migrationsInRebalance = 0;
+        try {
+            checkAndApplyOn(nodes);
+            return migrationsInRebalance;
+        } finally {
+            maxMigrationsInRebalance = -1;
+        }
+    }
+    
+    private boolean isMigrationLimitReached() {
+        return maxMigrationsInRebalance >= 0 && migrationsInRebalance >= maxMigrationsInRebalance;
     }
     
     public int getMaxMigrationsPerBalancingNode() {
@@ -91,6 +122,7 @@ public class BalancingStrategy<NodeType extends Entity, ItemType extends Movable
         if (getDataProvider().getPoolSize() >= 2) {
             boolean didBalancing = false;
             for (NodeType a : nonFrozenDirtyNodes) {
+                if (isMigrationLimitReached()) break;
                 didBalancing |= balanceItemsOnNodesInQuestion(a, gonnaGrow);
 //                getMutator().waitForAllTransitionsComplete();
             }
@@ -164,7 +196,7 @@ public class BalancingStrategy<NodeType extends Entity, ItemType extends Movable
             return false;
         }
         
-        while (nodeWorkrate > highThreshold && migrationCount < getMaxMigrationsPerBalancingNode()) {
+        while (nodeWorkrate > highThreshold && migrationCount < getMaxMigrationsPerBalancingNode() && !isMigrationLimitReached()) {
             iterationCount++;
             
             if (LOG.isDebugEnabled()) {
@@ -358,7 +390,7 @@ public class BalancingStrategy<NodeType extends Entity, ItemType extends Movable
         Location questionedLocation = getDataProvider().getLocation(questionedNode);
         
         double lowThreshold = model.getLowThreshold(questionedNode);
-        while (questionedNodeTotalWorkrate < lowThreshold) {
+        while (questionedNodeTotalWorkrate < lowThreshold && !isMigrationLimitReached()) {
             iters++;
             
             if (LOG.isDebugEnabled()) {
@@ -526,6 +558,7 @@ public class BalancingStrategy<NodeType extends Entity, ItemType extends Movable
     protected void moveItem(ItemType item, NodeType oldNode, NodeType newNode) {
         item.move(newNode);
         model.onItemMoved(item, newNode);
+        migrationsInRebalance++;
     }
     
     /**
@@ -0,0 +1,99 @@
+package brooklyn.policy.loadbalancing;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Indexes containers by their overshoot (total workrate minus high threshold), so that the hottest and
+ * coldest containers can be found without scanning the whole pool, and tracks which containers are
+ * outside their thresholds (and so may need balancing). Updated as each container's workrate changes,
+ * in O(log n).
+ * <p>
+ * Not thread-safe; callers must synchronize.
+ */
+class ContainerWorkrateIndex<ContainerType> {
+
+    private static class Entry<ContainerType> implements Comparable<Entry<?>> {
+        final ContainerType container;
+        final double overshoot;
+        final long seq;
+
+        Entry(ContainerType container, double overshoot, long seq) {
+            this.container = container;
+            this.overshoot = overshoot;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Entry<?> o) {
+            int result = Double.compare(overshoot, o.overshoot);
+            if (result != 0) return result;
+            return (seq < o.seq) ? -1 : ((seq == o.seq) ? 0 : 1);
+        }
+    }
+
+    private final NavigableSet<Entry<ContainerType>> entries = new TreeSet<Entry<ContainerType>>();
+    private final Map<ContainerType, Entry<ContainerType>> entriesByContainer = Maps.newHashMap();
+    private final Set<ContainerType> unbalanced = Sets.newLinkedHashSet();
+    private long nextSeq = 0;
+
+    /** adds the container, or updates its position if already present */
+    public void update(ContainerType container, double workrate, double lowThreshold, double highThreshold) {
+        remove(container);
+        Entry<ContainerType> entry = new Entry<ContainerType>(container, workrate - highThreshold, nextSeq++);
+        entries.add(entry);
+        entriesByContainer.put(container, entry);
+        if (workrate > highThreshold || workrate < lowThreshold) {
+            unbalanced.add(container);
+        }
+    }
+
+    public void remove(ContainerType container) {
+        Entry<ContainerType> entry = entriesByContainer.remove(container);
+        if (entry != null) entries.remove(entry);
+        unbalanced.remove(container);
+    }
+
+    public boolean contains(ContainerType container) {
+        return entriesByContainer.containsKey(container);
+    }
+
+    /** the containers whose workrate is above their high threshold or below their low threshold */
+    public Set<ContainerType> getUnbalanced() {
+        return ImmutableSet.copyOf(unbalanced);
+    }
+
+    /**
+     * @return the accepted container with the most spare capacity, or null if none has spare capacity
+     * @see PolicyUtilForPool#findColdestContainer(Set, LocationConstraint)
+     */
+    public ContainerType findColdest(Predicate<? super ContainerType> accept) {
+        return findFirst(entries.iterator(), accept, true);
+    }
+
+    /**
+     * @return the accepted container with the greatest overshoot, or null if none is over its high threshold
+     * @see PolicyUtilForPool#findHottestContainer(Set)
+     */
+    public ContainerType findHottest(Predicate<? super ContainerType> accept) {
+        return findFirst(entries.descendingIterator(), accept, false);
+    }
+
+    private ContainerType findFirst(Iterator<Entry<ContainerType>> iter, Predicate<? super ContainerType> accept, boolean cold) {
+        while (iter.hasNext()) {
+            Entry<ContainerType> entry = iter.next();
+            // all subsequent entries are even less suitable
+            if (cold ? entry.overshoot >= 0 : entry.overshoot <= 0) return null;
+            if (accept.apply(entry.container)) return entry.container;
+        }
+        return null;
+    }
+}
@@ -14,6 +14,7 @@ import org.slf4j.LoggerFactory;
 import brooklyn.location.Location;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicate;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimaps;
@@ -23,7 +24,7 @@ import com.google.common.collect.SetMultimap;
  * Standard implementation of {@link BalanceablePoolModel}, providing essential arithmetic for item and container
  * workrates and thresholds. See subclasses for specific requirements for migrating items.
  */
-public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements BalanceablePoolModel<ContainerType, ItemType> {
+public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements IndexedBalanceablePoolModel<ContainerType, ItemType> {
     
     private static final Logger LOG = LoggerFactory.getLogger(DefaultBalanceablePoolModel.class);
     
@@ -36,6 +37,10 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
      *  - Unfortunately changing threading model (so have a "rebalancer" thread, and a thread that 
      *    processes events to update the model), get ConcurrentModificationException if don't take
      *    copy of containerToItems.get(node)...
+     *  - With thousands of items, summing each container's items for every getTotalWorkrate (and so for
+     *    every search for the hottest/coldest container) dominated rebalancing. Hence the total workrate
+     *    of each container is now kept up-to-date as items change, and the containers are indexed by 
+     *    workrate (in workrateIndex), under workrateMutex so the totals stay consistent with the items.
      */
     
     // Concurrent maps cannot have null value; use this to represent when no container is supplied for an item 
@@ -49,6 +54,9 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
     private final SetMultimap<ContainerType, ItemType> containerToItems =  Multimaps.synchronizedSetMultimap(HashMultimap.<ContainerType, ItemType>create());
     private final Map<ItemType, Double> itemToWorkrate = new ConcurrentHashMap<ItemType, Double>();
     private final Set<ItemType> immovableItems = Collections.newSetFromMap(new ConcurrentHashMap<ItemType, Boolean>());
+    private final Map<ContainerType, Double> containerToWorkrate = new ConcurrentHashMap<ContainerType, Double>();
+    private final ContainerWorkrateIndex<ContainerType> workrateIndex = new ContainerWorkrateIndex<ContainerType>();
+    private final Object workrateMutex = new Object();
     
     private volatile double poolLowThreshold = 0;
     private volatile double poolHighThreshold = 0;
@@ -100,13 +108,8 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
     }
     
     @Override public double getTotalWorkrate(ContainerType container) {
-        double totalWorkrate = 0;
-        for (ItemType item : getItemsForContainer(container)) {
-            Double workrate = itemToWorkrate.get(item);
-            if (workrate != null)
-                totalWorkrate += Math.abs(workrate);
-        }
-        return totalWorkrate;
+        Double result = containerToWorkrate.get(container);
+        return (result != null) ? result : 0;
     }
     
     @Override public Map<ContainerType, Double> getContainerWorkrates() {
@@ -132,6 +135,24 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
         return true; // TODO?
     }
     
+    @Override public Set<ContainerType> getUnbalancedContainers() {
+        synchronized (workrateMutex) {
+            return workrateIndex.getUnbalanced();
+        }
+    }
+    
+    @Override public ContainerType findColdestContainer(Predicate<? super ContainerType> accept) {
+        synchronized (workrateMutex) {
+            return workrateIndex.findColdest(accept);
+        }
+    }
+    
+    @Override public ContainerType findHottestContainer(Predicate<? super ContainerType> accept) {
+        synchronized (workrateMutex) {
+            return workrateIndex.findHottest(accept);
+        }
+    }
+    
     
     // Mutators.
     
@@ -144,33 +165,43 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
             		"if onItemAdded subsequently received will get new container then", item, newNode);
             return;
         }
-        ContainerType newNodeNonNull = toNonNullContainer(newNode);
-        ContainerType oldNode = itemToContainer.put(item, newNodeNonNull);
-        if (oldNode != null && oldNode != NULL_CONTAINER) containerToItems.remove(oldNode, item);
-        if (newNode != null) containerToItems.put(newNode, item);
+        synchronized (workrateMutex) {
+            ContainerType newNodeNonNull = toNonNullContainer(newNode);
+            ContainerType oldNode = itemToContainer.put(item, newNodeNonNull);
+            if (oldNode != null && oldNode != NULL_CONTAINER) containerToItems.remove(oldNode, item);
+            if (newNode != null) containerToItems.put(newNode, item);
+            moveItemWorkrate(item, oldNode, newNode);
+        }
     }
     
     @Override
     public void onContainerAdded(ContainerType newContainer, double lowThreshold, double highThreshold) {
-        boolean added = containers.add(newContainer);
-        if (!added) {
-            // See LoadBalancingPolicy.onContainerAdded for possible explanation of why can get duplicate calls
-            LOG.debug("Duplicate container-added event for {}; ignoring", newContainer);
-            return;
+        synchronized (workrateMutex) {
+            boolean added = containers.add(newContainer);
+            if (!added) {
+                // See LoadBalancingPolicy.onContainerAdded for possible explanation of why can get duplicate calls
+                LOG.debug("Duplicate container-added event for {}; ignoring", newContainer);
+                return;
+            }
+            containerToLowThreshold.put(newContainer, lowThreshold);
+            containerToHighThreshold.put(newContainer, highThreshold);
+            poolLowThreshold += lowThreshold;
+            poolHighThreshold += highThreshold;
+            workrateIndex.update(newContainer, getTotalWorkrate(newContainer), lowThreshold, highThreshold);
         }
-        containerToLowThreshold.put(newContainer, lowThreshold);
-        containerToHighThreshold.put(newContainer, highThreshold);
-        poolLowThreshold += lowThreshold;
-        poolHighThreshold += highThreshold;
     }
     
     @Override
     public void onContainerRemoved(ContainerType oldContainer) {
-        containers.remove(oldContainer);
-        Double containerLowThreshold = containerToLowThreshold.remove(oldContainer);
-        Double containerHighThresold = containerToHighThreshold.remove(oldContainer);
-        poolLowThreshold -= (containerLowThreshold != null ? containerLowThreshold : 0);
-        poolHighThreshold -= (containerHighThresold != null ? containerHighThresold : 0);
+        synchronized (workrateMutex) {
+            containers.remove(oldContainer);
+            Double containerLowThreshold = containerToLowThreshold.remove(oldContainer);
+            Double containerHighThresold = containerToHighThreshold.remove(oldContainer);
+            poolLowThreshold -= (containerLowThreshold != null ? containerLowThreshold : 0);
+            poolHighThreshold -= (containerHighThresold != null ? containerHighThresold : 0);
+            workrateIndex.remove(oldContainer);
+            if (!containerToItems.containsKey(oldContainer)) containerToWorkrate.remove(oldContainer);
+        }
         
         // TODO: assert no orphaned items
     }
@@ -188,32 +219,45 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
         if (immovable)
             immovableItems.add(item);
         
-        ContainerType parentContainerNonNull = toNonNullContainer(parentContainer);
-        ContainerType oldNode = itemToContainer.put(item, parentContainerNonNull);
-        if (oldNode != null && oldNode != NULL_CONTAINER) containerToItems.remove(oldNode, item);
-        if (parentContainer != null) containerToItems.put(parentContainer, item);
+        synchronized (workrateMutex) {
+            ContainerType parentContainerNonNull = toNonNullContainer(parentContainer);
+            ContainerType oldNode = itemToContainer.put(item, parentContainerNonNull);
+            if (oldNode != null && oldNode != NULL_CONTAINER) containerToItems.remove(oldNode, item);
+            if (parentContainer != null) containerToItems.put(parentContainer, item);
+            moveItemWorkrate(item, oldNode, parentContainer);
+        }
     }
     
     @Override
     public void onItemRemoved(ItemType item) {
-        ContainerType oldNode = itemToContainer.remove(item);
-        if (oldNode != null && oldNode != NULL_CONTAINER) containerToItems.remove(oldNode, item);
-        Double workrate = itemToWorkrate.remove(item);
-        if (workrate != null)
-            currentPoolWorkrate -= workrate;
+        synchronized (workrateMutex) {
+            ContainerType oldNode = itemToContainer.remove(item);
+            if (oldNode != null && oldNode != NULL_CONTAINER) containerToItems.remove(oldNode, item);
+            Double workrate = itemToWorkrate.remove(item);
+            if (workrate != null) {
+                currentPoolWorkrate -= workrate;
+                if (oldNode != null && oldNode != NULL_CONTAINER) adjustContainerWorkrate(oldNode, -Math.abs(workrate));
+            }
+        }
         immovableItems.remove(item);
     }
     
     @Override
     public void onItemWorkrateUpdated(ItemType item, double newValue) {
-        if (hasItem(item)) {
-            Double oldValue = itemToWorkrate.put(item, newValue);
-            double delta = ( newValue - (oldValue != null ? oldValue : 0) );
-            currentPoolWorkrate += delta;
-        } else {
-            // Can happen when item removed - get notification of removal and workrate from group and item
-            // respectively, so can overtake each other
-            if (LOG.isDebugEnabled()) LOG.debug("Ignoring setting of workrate for unknown item {}, to {}", item, newValue);
+        synchronized (workrateMutex) {
+            if (hasItem(item)) {
+                Double oldValue = itemToWorkrate.put(item, newValue);
+                double delta = ( newValue - (oldValue != null ? oldValue : 0) );
+                currentPoolWorkrate += delta;
+                ContainerType container = itemToContainer.get(item);
+                if (container != null && container != NULL_CONTAINER) {
+                    adjustContainerWorkrate(container, Math.abs(newValue) - (oldValue != null ? Math.abs(oldValue) : 0));
+                }
+            } else {
+                // Can happen when item removed - get notification of removal and workrate from group and item
+                // respectively, so can overtake each other
+                if (LOG.isDebugEnabled()) LOG.debug("Ignoring setting of workrate for unknown item {}, to {}", item, newValue);
+            }
         }
     }
     
@@ -221,6 +265,29 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
         return itemToContainer.containsKey(item);
     }
     
+    /** moves the item's workrate (if known) from the old container's total to the new one's; caller must hold workrateMutex */
+    private void moveItemWorkrate(ItemType item, ContainerType oldNode, ContainerType newNode) {
+        Double workrate = itemToWorkrate.get(item);
+        if (workrate == null || (oldNode != null ? oldNode.equals(newNode) : newNode == null)) return;
+        if (oldNode != null && oldNode != NULL_CONTAINER) adjustContainerWorkrate(oldNode, -Math.abs(workrate));
+        if (newNode != null) adjustContainerWorkrate(newNode, Math.abs(workrate));
+    }
+    
+    /** caller must hold workrateMutex */
+    private void adjustContainerWorkrate(ContainerType container, double delta) {
+        double total;
+        if (!containerToItems.containsKey(container)) {
+            // avoid accumulating rounding errors
+            total = 0;
+        } else {
+            total = Math.max(0, getTotalWorkrate(container) + delta);
+        }
+        containerToWorkrate.put(container, total);
+        if (workrateIndex.contains(container)) {
+            workrateIndex.update(container, total, getLowThreshold(container), getHighThreshold(container));
+        }
+    }
+    
     
     // Additional methods for tests.
 
@@ -0,0 +1,28 @@
+package brooklyn.policy.loadbalancing;
+
+import java.util.Set;
+
+import com.google.common.base.Predicate;
+
+/**
+ * A {@link BalanceablePoolModel} which keeps its containers indexed by workrate as it is updated, so that
+ * a {@link BalancingStrategy} need only consider the containers which are outside their thresholds,
+ * and can find the hottest and coldest containers without scanning the whole pool.
+ */
+public interface IndexedBalanceablePoolModel<ContainerType, ItemType> extends BalanceablePoolModel<ContainerType, ItemType> {
+
+    /** the containers whose total workrate is above their high threshold or below their low threshold */
+    public Set<ContainerType> getUnbalancedContainers();
+
+    /**
+     * The accepted container with the maximum spare capacity (highThreshold - currentWorkrate),
+     * or null if none of the accepted containers has spare capacity.
+     */
+    public ContainerType findColdestContainer(Predicate<? super ContainerType> accept);
+
+    /**
+     * The accepted container with the maximum overshoot (currentWorkrate - highThreshold),
+     * or null if none of the accepted containers has an overshoot.
+     */
+    public ContainerType findHottestContainer(Predicate<? super ContainerType> accept);
+}
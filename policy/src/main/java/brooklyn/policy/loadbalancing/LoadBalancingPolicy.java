@@ -57,6 +57,13 @@ public class LoadBalancingPolicy<NodeType extends Entity, ItemType extends Movab
     @SetFromFlag(defaultVal="100")
     private long minPeriodBetweenExecs;
     
+    /**
+     * The maximum number of items to move in one rebalance, or negative for no limit; if reached,
+     * another rebalance is scheduled (after {@code minPeriodBetweenExecs}) to continue.
+     */
+    @SetFromFlag(defaultVal="100")
+    private int maxMigrationsPerRebalance;
+    
     private final AttributeSensor<? extends Number> metric;
     private final String lowThresholdConfigKeyName;
     private final String highThresholdConfigKeyName;
@@ -171,7 +178,11 @@ public class LoadBalancingPolicy<NodeType extends Entity, ItemType extends Movab
                     try {
                         executorTime = System.currentTimeMillis();
                         executorQueued.set(false);
-                        strategy.rebalance();
+                        int migrations = strategy.rebalance(maxMigrationsPerRebalance);
+                        if (maxMigrationsPerRebalance >= 0 && migrations >= maxMigrationsPerRebalance) {
+                            if (LOG.isDebugEnabled()) LOG.debug("{} moved {} items (the maximum); scheduling further rebalance", LoadBalancingPolicy.this, migrations);
+                            scheduleRebalance();
+                        }
                         
                         if (LOG.isDebugEnabled()) LOG.debug("{} post-rebalance: poolSize={}; workrate={}; lowThreshold={}; " + 
                                 "highThreshold={}", new Object[] {this, model.getPoolSize(), model.getCurrentPoolWorkrate(), 
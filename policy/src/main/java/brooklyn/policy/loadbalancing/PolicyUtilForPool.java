@@ -2,8 +2,11 @@ package brooklyn.policy.loadbalancing;
 
 import java.util.Set;
 
+import com.google.common.base.Predicate;
+
 /**
  * Provides conveniences for searching for hot/cold containers in a provided pool model.
+ * For an {@link IndexedBalanceablePoolModel}, the searches use its index rather than scanning all containers.
  * Ported from Monterey v3, with irrelevant bits removed.
  */
 public class PolicyUtilForPool<ContainerType, ItemType> {
@@ -23,7 +26,15 @@ public class PolicyUtilForPool<ContainerType, ItemType> {
      * Identifies the container with the maximum spare capacity (highThreshold - currentWorkrate),
      * returns null if none of the model's nodes has spare capacity.
      */
-    public ContainerType findColdestContainer(Set<ContainerType> excludedContainers, LocationConstraint locationConstraint) {
+    public ContainerType findColdestContainer(final Set<ContainerType> excludedContainers, final LocationConstraint locationConstraint) {
+        if (model instanceof IndexedBalanceablePoolModel) {
+            return ((IndexedBalanceablePoolModel<ContainerType, ItemType>) model).findColdestContainer(new Predicate<ContainerType>() {
+                @Override public boolean apply(ContainerType c) {
+                    return !excludedContainers.contains(c) && 
+                            (locationConstraint == null || locationConstraint.isPermitted(model.getLocation(c)));
+                }});
+        }
+        
         double maxSpareCapacity = 0;
         ContainerType coldest = null;
         
@@ -52,7 +63,14 @@ public class PolicyUtilForPool<ContainerType, ItemType> {
      * Identifies the container with the maximum overshoot (currentWorkrate - highThreshold),
      * returns null if none of the model's  nodes has an overshoot.
      */
-    public ContainerType findHottestContainer(Set<ContainerType> excludedContainers) {
+    public ContainerType findHottestContainer(final Set<ContainerType> excludedContainers) {
+        if (model instanceof IndexedBalanceablePoolModel) {
+            return ((IndexedBalanceablePoolModel<ContainerType, ItemType>) model).findHottestContainer(new Predicate<ContainerType>() {
+                @Override public boolean apply(ContainerType c) {
+                    return !excludedContainers.contains(c);
+                }});
+        }
+        
         double maxOvershoot = 0;
         ContainerType hottest = null;
         
@@ -0,0 +1,122 @@
+package brooklyn.enricher;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.enricher.RollingTimeWindowStatisticEnricher.Statistic;
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.EntityLocal;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.BasicSensorEvent;
+import brooklyn.event.basic.Sensors;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.time.Duration;
+
+public class RollingTimeWindowStatisticEnricherTest {
+
+    private static final double PRECISION = 0.000001;
+    
+    private TestApplication app;
+    private EntityLocal producer;
+
+    AttributeSensor<Integer> intSensor;
+    AttributeSensor<Double> statSensor;
+    
+    @BeforeMethod(alwaysRun=true)
+    public void before() {
+        app = ApplicationBuilder.newManagedApp(TestApplication.class);
+        producer = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        
+        intSensor = Sensors.newIntegerSensor("int sensor");
+        statSensor = Sensors.newDoubleSensor("stat sensor");
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void after() {
+        if (app != null) Entities.destroyAll(app.getManagementContext());
+    }
+
+    @Test
+    public void testMinAndMaxWithinWindow() {
+        RollingTimeWindowStatisticEnricher<Integer> min = newEnricher(Statistic.MIN);
+        RollingTimeWindowStatisticEnricher<Integer> max = newEnricher(Statistic.MAX);
+        
+        publish(min, 10, 1000L);
+        publish(min, 30, 1500L);
+        publish(min, 20, 2000L);
+        publish(max, 10, 1000L);
+        publish(max, 30, 1500L);
+        publish(max, 20, 2000L);
+        assertEquals(min.getValue(2000L), 10d);
+        assertEquals(max.getValue(2000L), 30d);
+        
+        assertEquals(min.getValue(2100L), 20d);
+        assertEquals(max.getValue(2600L), 20d);
+        assertNull(max.getValue(3100L));
+    }
+    
+    @Test
+    public void testMeanAndStandardDeviation() {
+        RollingTimeWindowStatisticEnricher<Integer> stddev = newEnricher(Statistic.STANDARD_DEVIATION);
+        
+        publish(stddev, 10, 1000L);
+        publish(stddev, 20, 1100L);
+        assertEquals(producer.getAttribute(statSensor), 5d, PRECISION);
+        
+        RollingTimeWindowStatisticEnricher<Integer> mean = newEnricher(Statistic.MEAN);
+        publish(mean, 10, 1000L);
+        publish(mean, 20, 1100L);
+        assertEquals(producer.getAttribute(statSensor), 15d, PRECISION);
+    }
+    
+    @Test
+    public void testIgnoresValuesDeliveredOutOfOrder() {
+        RollingTimeWindowStatisticEnricher<Integer> max = newEnricher(Statistic.MAX);
+        
+        publish(max, 10, 1000L);
+        publish(max, 20, 1500L);
+        publish(max, 99, 1200L);
+        assertEquals(producer.getAttribute(statSensor), 20d);
+        assertEquals(max.getValue(1500L), 20d);
+    }
+    
+    @Test
+    public void testRatePerSecond() {
+        RollingTimeWindowStatisticEnricher<Integer> rate = newEnricher(Statistic.RATE);
+        
+        publish(rate, 100, 1000L);
+        assertNull(producer.getAttribute(statSensor));
+        publish(rate, 150, 1500L);
+        assertEquals(producer.getAttribute(statSensor), 100d, PRECISION);
+    }
+    
+    @Test
+    public void testPercentile() {
+        RollingTimeWindowPercentileEnricher<Integer> percentile = new RollingTimeWindowPercentileEnricher<Integer>(
+                producer, intSensor, statSensor, Duration.ONE_SECOND, 90, 0, 1000, 1000);
+        producer.addEnricher(percentile);
+        
+        for (int i = 1; i <= 100; i++) {
+            publish(percentile, i, 1000L + i);
+        }
+        assertEquals(producer.getAttribute(statSensor), 90d, 1);
+    }
+    
+    private RollingTimeWindowStatisticEnricher<Integer> newEnricher(Statistic statistic) {
+        RollingTimeWindowStatisticEnricher<Integer> result = new RollingTimeWindowStatisticEnricher<Integer>(
+                producer, intSensor, statSensor, Duration.ONE_SECOND, statistic);
+        producer.addEnricher(result);
+        return result;
+    }
+    
+    private void publish(RollingTimeWindowStatisticEnricher<Integer> enricher, int val, long time) {
+        enricher.onEvent(new BasicSensorEvent<Integer>(intSensor, producer, val, time), time);
+    }
+}
@@ -112,6 +112,44 @@ public class AutoScalerPolicyMetricTest {
         executeUntilSucceeds(ImmutableMap.of("timeout", TIMEOUT_MS), currentSizeAsserter(tc, 0));
     }
     
+    @Test
+    public void testForecastIncrementsSizeAheadOfUpperBound() throws Exception {
+        tc.resize(1);
+        
+        AutoScalerPolicy policy = new AutoScalerPolicy.Builder().metric(MY_ATTRIBUTE).metricLowerBound(10).metricUpperBound(100)
+                .forecast(true)
+                .forecastHorizon(60*1000)
+                .build();
+        tc.addPolicy(policy);
+
+        // rising metric, still below upper bound, but forecast to exceed it long before a minute's time
+        for (int val = 50; val <= 90; val += 10) {
+            tc.setAttribute(MY_ATTRIBUTE, val);
+            Thread.sleep(50);
+        }
+        executeUntilSucceeds(ImmutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+            public void run() {
+                assertTrue(tc.getCurrentSize() > 1, "size="+tc.getCurrentSize());
+            }});
+    }
+    
+    @Test
+    public void testForecastDoesNotIncrementSizeForSteadyMetric() throws Exception {
+        tc.resize(1);
+        
+        AutoScalerPolicy policy = new AutoScalerPolicy.Builder().metric(MY_ATTRIBUTE).metricLowerBound(10).metricUpperBound(100)
+                .forecast(true)
+                .forecastHorizon(60*1000)
+                .build();
+        tc.addPolicy(policy);
+
+        for (int i = 0; i < 5; i++) {
+            tc.setAttribute(MY_ATTRIBUTE, 90);
+            Thread.sleep(50);
+        }
+        assertSucceedsContinually(ImmutableMap.of("timeout", SHORT_WAIT_MS), currentSizeAsserter(tc, 1));
+    }
+    
     @Test
     public void testObeysMinAndMaxSize() {
         tc.resize(4);
@@ -0,0 +1,164 @@
+package brooklyn.policy.autoscaling;
+
+import static org.testng.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestCluster;
+import brooklyn.util.time.Time;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+
+/**
+ * Replays traces of total workload through an {@link AutoScalerPolicy} attached to a cluster whose resizes take
+ * a simulated provisioning time, reporting how often the cluster was over capacity. Used to compare reactive and
+ * forecasting policies; recorded traces (one workload value per line, or the last column of comma-separated lines)
+ * can be replayed with {@link #main(String[])}.
+ */
+public class AutoScalerPolicyReplayTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AutoScalerPolicyReplayTest.class);
+
+    private static final AttributeSensor<Double> METRIC = Sensors.newDoubleSensor("autoscaler.test.replay.metric");
+    private static final double METRIC_UPPER_BOUND = 100;
+    private static final double METRIC_LOWER_BOUND = 10;
+
+    public static class ReplayResult {
+        public int samples;
+        public int overCapacitySamples;
+        public int maxSize;
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("samples", samples).add("overCapacitySamples", overCapacitySamples)
+                    .add("maxSize", maxSize).toString();
+        }
+    }
+
+    private TestApplication app;
+    private TestCluster cluster;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        app = ApplicationBuilder.newManagedApp(TestApplication.class);
+        cluster = app.createAndManageChild(EntitySpec.create(TestCluster.class)
+                .configure("initialSize", 1));
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (app != null) Entities.destroyAll(app.getManagementContext());
+    }
+
+    @Test(groups="Integration")
+    public void testForecastingIsOverCapacityLessThanReactiveForRisingWorkload() throws Exception {
+        // workload rises steadily, needing another member every 20 samples; provisioning takes 10 samples
+        List<Double> trace = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            trace.add(50d + 5*i);
+        }
+        long sampleInterval = 20;
+        long provisioningTime = 200;
+
+        ReplayResult reactive = replay(trace, sampleInterval, provisioningTime, false);
+        tearDown();
+        setUp();
+        ReplayResult forecasting = replay(trace, sampleInterval, provisioningTime, true);
+
+        LOG.info("Replayed rising workload: reactive {}; forecasting {}", reactive, forecasting);
+        assertTrue(forecasting.overCapacitySamples < reactive.overCapacitySamples, "reactive="+reactive+"; forecasting="+forecasting);
+    }
+
+    /**
+     * Sets the cluster's metric to each workload value divided by the cluster size in turn, waiting the given interval
+     * between values; resizes done by the policy wait for the given provisioning time before changing the cluster size.
+     */
+    public ReplayResult replay(List<Double> workloadTrace, long sampleInterval, final long provisioningTime, boolean forecast) {
+        AutoScalerPolicy policy = AutoScalerPolicy.builder()
+                .metric(METRIC)
+                .metricRange(METRIC_LOWER_BOUND, METRIC_UPPER_BOUND)
+                .forecast(forecast)
+                .forecastHorizon(provisioningTime)
+                .resizeOperator(new ResizeOperator() {
+                    @Override public Integer resize(Entity entity, Integer desiredSize) {
+                        if (desiredSize > cluster.getCurrentSize()) Time.sleep(provisioningTime);
+                        return cluster.resize(desiredSize);
+                    }})
+                .build();
+        cluster.addPolicy(policy);
+
+        ReplayResult result = new ReplayResult();
+        for (double workload : workloadTrace) {
+            int size = cluster.getCurrentSize();
+            result.samples++;
+            result.maxSize = Math.max(result.maxSize, size);
+            if (workload > size*METRIC_UPPER_BOUND) result.overCapacitySamples++;
+            cluster.setAttribute(METRIC, (size > 0) ? workload/size : workload);
+            Time.sleep(sampleInterval);
+        }
+        return result;
+    }
+
+    public static List<Double> readTrace(Reader reader) throws IOException {
+        List<Double> result = Lists.newArrayList();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] columns = line.split(",");
+            try {
+                result.add(Double.parseDouble(columns[columns.length-1].trim()));
+            } catch (NumberFormatException e) {
+                // e.g. a header line
+                LOG.debug("Ignoring line in trace: {}", line);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replays a recorded trace with and without forecasting.
+     * Usage: {@code AutoScalerPolicyReplayTest <traceFile> [sampleIntervalMillis] [provisioningTimeMillis]}
+     */
+    public static void main(String[] args) throws Exception {
+        List<Double> trace;
+        FileReader reader = new FileReader(args[0]);
+        try {
+            trace = readTrace(reader);
+        } finally {
+            reader.close();
+        }
+        long sampleInterval = (args.length > 1) ? Long.parseLong(args[1]) : 20;
+        long provisioningTime = (args.length > 2) ? Long.parseLong(args[2]) : 200;
+
+        AutoScalerPolicyReplayTest test = new AutoScalerPolicyReplayTest();
+        for (boolean forecast : new boolean[] {false, true}) {
+            test.setUp();
+            try {
+                ReplayResult result = test.replay(trace, sampleInterval, provisioningTime, forecast);
+                System.out.println((forecast ? "forecasting: " : "reactive: ")+result);
+            } finally {
+                test.tearDown();
+            }
+        }
+    }
+}
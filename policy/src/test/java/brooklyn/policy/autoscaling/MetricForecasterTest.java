@@ -0,0 +1,60 @@
+package brooklyn.policy.autoscaling;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class MetricForecasterTest {
+
+    private static final double PRECISION = 0.00001;
+    
+    @Test
+    public void testForecastIsNaNWithoutValues() throws Exception {
+        MetricForecaster forecaster = new MetricForecaster(0.5, 0.3);
+        assertTrue(Double.isNaN(forecaster.forecast(1000)));
+    }
+    
+    @Test
+    public void testForecastsConstantMetric() throws Exception {
+        MetricForecaster forecaster = new MetricForecaster(0.5, 0.3);
+        for (int i = 0; i < 10; i++) {
+            forecaster.add(i*1000, 42);
+        }
+        assertEquals(forecaster.forecast(100*1000), 42d, PRECISION);
+        assertEquals(forecaster.getTrend(), 0d, PRECISION);
+    }
+    
+    @Test
+    public void testForecastsLinearTrend() throws Exception {
+        MetricForecaster forecaster = new MetricForecaster(0.5, 0.3);
+        // rises by 1 per second
+        for (int i = 0; i < 100; i++) {
+            forecaster.add(i*1000, i);
+        }
+        assertEquals(forecaster.getTrend(), 0.001, 0.0001);
+        assertEquals(forecaster.forecast(99*1000 + 60*1000), 99d+60d, 1);
+    }
+    
+    @Test
+    public void testForecastsLinearTrendWithIrregularIntervals() throws Exception {
+        MetricForecaster forecaster = new MetricForecaster(0.5, 0.3);
+        long time = 0;
+        for (int i = 0; i < 100; i++) {
+            time += (i % 2 == 0) ? 500 : 1500;
+            forecaster.add(time, time/100d);
+        }
+        assertEquals(forecaster.getTrend(), 0.01, 0.001);
+        assertEquals(forecaster.forecast(time + 10*1000), (time + 10*1000)/100d, 10);
+    }
+    
+    @Test
+    public void testForecastDoesNotExtrapolateIntoPast() throws Exception {
+        MetricForecaster forecaster = new MetricForecaster(1, 1);
+        forecaster.add(1000, 10);
+        forecaster.add(2000, 20);
+        assertEquals(forecaster.forecast(2000), 20d, PRECISION);
+        assertEquals(forecaster.forecast(1000), 20d, PRECISION);
+        assertEquals(forecaster.forecast(3000), 30d, PRECISION);
+    }
+}
@@ -94,4 +94,72 @@ public class LoadBalancingModelTest {
         assertEquals(model.getContainerWorkrates(), ImmutableMap.of(container1, 0d, container2, 123d));
         assertEquals(model.getCurrentPoolWorkrate(), 123d);
     }
+    
+    @Test
+    public void testContainerWorkratesTrackItemChanges() throws Exception {
+        model.onContainerAdded(container1, 10d, 20d);
+        model.onContainerAdded(container2, 11d, 21d);
+        model.onItemAdded(item1, container1, false);
+        model.onItemAdded(item2, container1, false);
+        model.onItemWorkrateUpdated(item1, 5d);
+        model.onItemWorkrateUpdated(item2, 7d);
+        assertEquals(model.getTotalWorkrate(container1), 12d, PRECISION);
+        
+        model.onItemWorkrateUpdated(item2, 3d);
+        assertEquals(model.getTotalWorkrate(container1), 8d, PRECISION);
+        
+        model.onItemAdded(item2, container2, false);
+        assertEquals(model.getTotalWorkrate(container1), 5d, PRECISION);
+        assertEquals(model.getTotalWorkrate(container2), 3d, PRECISION);
+        
+        model.onItemRemoved(item1);
+        assertEquals(model.getTotalWorkrate(container1), 0d, PRECISION);
+        assertEquals(model.getContainerWorkrates(), ImmutableMap.of(container1, 0d, container2, 3d));
+    }
+    
+    @Test
+    public void testUnbalancedContainersAreThoseOutsideThresholds() throws Exception {
+        model.onContainerAdded(container1, 10d, 20d);
+        model.onContainerAdded(container2, 10d, 20d);
+        model.onItemAdded(item1, container1, false);
+        model.onItemAdded(item2, container2, false);
+        model.onItemWorkrateUpdated(item1, 15d);
+        model.onItemWorkrateUpdated(item2, 15d);
+        assertEquals(model.getUnbalancedContainers(), Collections.emptySet());
+        
+        model.onItemWorkrateUpdated(item1, 25d);
+        model.onItemWorkrateUpdated(item2, 5d);
+        assertEquals(model.getUnbalancedContainers(), ImmutableSet.of(container1, container2));
+        
+        model.onItemMoved(item1, container2);
+        assertEquals(model.getUnbalancedContainers(), ImmutableSet.of(container1, container2));
+        
+        model.onContainerRemoved(container1);
+        assertEquals(model.getUnbalancedContainers(), ImmutableSet.of(container2));
+    }
+    
+    @Test
+    public void testFindsHottestAndColdestContainers() throws Exception {
+        MockContainerEntity container3 = new MockContainerEntityImpl();
+        model.onContainerAdded(container1, 10d, 20d);
+        model.onContainerAdded(container2, 10d, 20d);
+        model.onContainerAdded(container3, 10d, 20d);
+        model.onItemAdded(item1, container1, false);
+        model.onItemAdded(item2, container2, false);
+        model.onItemAdded(item3, container3, false);
+        model.onItemWorkrateUpdated(item1, 30d);
+        model.onItemWorkrateUpdated(item2, 25d);
+        model.onItemWorkrateUpdated(item3, 2d);
+        
+        PolicyUtilForPool<MockContainerEntity, MockItemEntity> util = new PolicyUtilForPool<MockContainerEntity, MockItemEntity>(model);
+        assertEquals(util.findHottestContainer(ImmutableSet.<MockContainerEntity>of()), container1);
+        assertEquals(util.findHottestContainer(ImmutableSet.of(container1)), container2);
+        assertEquals(util.findHottestContainer(ImmutableSet.of(container1, container2)), null);
+        assertEquals(util.findColdestContainer(ImmutableSet.<MockContainerEntity>of()), container3);
+        assertEquals(util.findColdestContainer(ImmutableSet.of(container3)), null);
+        
+        model.onItemWorkrateUpdated(item1, 1d);
+        assertEquals(util.findHottestContainer(ImmutableSet.<MockContainerEntity>of()), container2);
+        assertEquals(util.findColdestContainer(ImmutableSet.<MockContainerEntity>of()), container1);
+    }
 }
@@ -0,0 +1,129 @@
+package brooklyn.event.feed.jmx;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.event.feed.PollHandler;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Polls a set of attributes, of any number of MBeans, as one job: with a single
+ * {@link JmxHelper#getAttributes(ObjectName, java.util.Collection)} call for each MBean,
+ * rather than a call for each attribute. The value of each attribute (or the failure to get it)
+ * is passed to that attribute's handler, as it would be when polling the attribute on its own.
+ */
+class JmxAttributeBatchPoll implements Callable<JmxAttributeBatchPoll.Result> {
+
+    private static final Logger log = LoggerFactory.getLogger(JmxAttributeBatchPoll.class);
+
+    /** the attribute values and failures of one poll, by object name */
+    static class Result {
+        /** values by attribute name, or null if the MBean was not found */
+        final Map<ObjectName, Map<String, Object>> values = Maps.newLinkedHashMap();
+        final Map<ObjectName, Exception> failures = Maps.newLinkedHashMap();
+    }
+
+    private final JmxHelper helper;
+    private final Map<ObjectName, Map<String, PollHandler<Object>>> handlers;
+
+    /**
+     * @param handlers the handler for each attribute, by object name then attribute name
+     */
+    JmxAttributeBatchPoll(JmxHelper helper, Map<ObjectName, Map<String, PollHandler<Object>>> handlers) {
+        this.helper = helper;
+        this.handlers = ImmutableMap.copyOf(handlers);
+    }
+
+    @Override
+    public Result call() {
+        Result result = new Result();
+        for (Map.Entry<ObjectName, Map<String, PollHandler<Object>>> entry : handlers.entrySet()) {
+            ObjectName objectName = entry.getKey();
+            try {
+                result.values.put(objectName, helper.getAttributes(objectName, entry.getValue().keySet()));
+            } catch (Exception e) {
+                // other MBeans may still be available
+                result.failures.put(objectName, e);
+            }
+        }
+        return result;
+    }
+
+    /** the handler for the whole batch, passing each value or failure to its attribute's handler */
+    PollHandler<Result> handler() {
+        return new PollHandler<Result>() {
+            @Override
+            public boolean checkSuccess(Result val) {
+                return true;
+            }
+
+            @Override
+            public void onSuccess(Result val) {
+                for (Map.Entry<ObjectName, Map<String, PollHandler<Object>>> entry : handlers.entrySet()) {
+                    ObjectName objectName = entry.getKey();
+                    Exception failure = val.failures.get(objectName);
+                    Map<String, Object> values = val.values.get(objectName);
+                    for (Map.Entry<String, PollHandler<Object>> attributeEntry : entry.getValue().entrySet()) {
+                        String attribute = attributeEntry.getKey();
+                        PollHandler<Object> handler = attributeEntry.getValue();
+                        if (failure != null) {
+                            handler.onException(failure);
+                        } else if (values == null) {
+                            // as for JmxHelper.getAttribute, when the MBean is not found
+                            handle(handler, null);
+                        } else if (values.containsKey(attribute)) {
+                            handle(handler, values.get(attribute));
+                        } else {
+                            handler.onException(new AttributeNotFoundException("No attribute "+attribute+" of "+objectName.getCanonicalName()+" at "+helper.getUrl()));
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Result val) {
+                // checkSuccess is always true
+            }
+
+            @Override
+            public void onException(Exception exception) {
+                for (Map<String, PollHandler<Object>> attributeHandlers : handlers.values()) {
+                    for (PollHandler<Object> handler : attributeHandlers.values()) {
+                        handler.onException(exception);
+                    }
+                }
+            }
+
+            @Override
+            public String getDescription() {
+                return "jmx attributes "+handlers.keySet()+" at "+helper.getUrl();
+            }
+        };
+    }
+
+    private static void handle(PollHandler<Object> handler, Object val) {
+        try {
+            if (handler.checkSuccess(val)) {
+                handler.onSuccess(val);
+            } else {
+                handler.onFailure(val);
+            }
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) log.debug("Handler "+handler+" failed for value "+val, e);
+            handler.onException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JmxAttributeBatchPoll["+helper.getUrl()+", "+handlers.keySet()+"]";
+    }
+}
@@ -27,6 +27,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 
@@ -85,6 +86,7 @@ public class JmxFeed extends AbstractFeed {
         private List<JmxAttributePollConfig<?>> attributePolls = Lists.newArrayList();
         private List<JmxOperationPollConfig<?>> operationPolls = Lists.newArrayList();
         private List<JmxNotificationSubscriptionConfig<?>> notificationSubscriptions = Lists.newArrayList();
+        private boolean batchAttributePolls = false;
         private volatile boolean built;
         
         public Builder entity(EntityLocal val) {
@@ -118,6 +120,15 @@ public class JmxFeed extends AbstractFeed {
             notificationSubscriptions.add(config);
             return this;
         }
+        /**
+         * Whether to poll all attributes with the same period as a single job, reading the attributes of each
+         * MBean with one call (rather than a call per attribute); and, unless a helper is supplied, to share
+         * the JMX connection with other such feeds for the same JMX url.
+         */
+        public Builder batchAttributePolls(boolean val) {
+            this.batchAttributePolls = val;
+            return this;
+        }
         public JmxFeed build() {
             built = true;
             JmxFeed result = new JmxFeed(this);
@@ -134,6 +145,7 @@ public class JmxFeed extends AbstractFeed {
     private final boolean ownHelper;
     private final String jmxUri;
     private final long jmxConnectionTimeout;
+    private final boolean batchAttributePolls;
     
     // Treat as immutable; never modified after constructor
     private final SetMultimap<String, JmxAttributePollConfig<?>> attributePolls = HashMultimap.<String,JmxAttributePollConfig<?>>create();
@@ -143,10 +155,13 @@ public class JmxFeed extends AbstractFeed {
 
     protected JmxFeed(Builder builder) {
         super(builder.entity);
+        poller.setBlockingIo(true);
         this.helper = (builder.helper != null) ? builder.helper : new JmxHelper(entity);
         this.ownHelper = (builder.helper == null);
         this.jmxUri = helper.getUrl();
         this.jmxConnectionTimeout = builder.jmxConnectionTimeout;
+        this.batchAttributePolls = builder.batchAttributePolls;
+        if (ownHelper && batchAttributePolls) helper.setShareConnection(true);
         
         for (JmxAttributePollConfig<?> config : builder.attributePolls) {
             JmxAttributePollConfig<?> configCopy = new JmxAttributePollConfig(config);
@@ -222,8 +237,12 @@ public class JmxFeed extends AbstractFeed {
         }
         
         // Setup polling of sensors
-        for (final String jmxAttributeName : attributePolls.keys()) {
-            registerAttributePoller(attributePolls.get(jmxAttributeName));
+        if (batchAttributePolls) {
+            registerBatchedAttributePollers();
+        } else {
+            for (final String jmxAttributeName : attributePolls.keys()) {
+                registerAttributePoller(attributePolls.get(jmxAttributeName));
+            }
         }
         
         // Setup polling of operations
@@ -305,6 +324,46 @@ public class JmxFeed extends AbstractFeed {
                 new DelegatingPollHandler(handlers), minPeriod);
     }
 
+    /**
+     * Registers to poll all the jmx-attributes, with one job for each poll period, which reads the attributes 
+     * of each ObjectName with a single call.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void registerBatchedAttributePollers() {
+        Map<Long, Map<ObjectName, Map<String, PollHandler<Object>>>> handlersByPeriod = Maps.newLinkedHashMap();
+        
+        for (String key : attributePolls.keySet()) {
+            Set<JmxAttributePollConfig<?>> configs = attributePolls.get(key);
+            Set<AttributePollHandler<Object>> handlers = Sets.newLinkedHashSet();
+            long minPeriod = Integer.MAX_VALUE;
+            
+            ObjectName objectName = Iterables.get(configs, 0).getObjectName();
+            String jmxAttributeName = Iterables.get(configs, 0).getAttributeName();
+            
+            for (JmxAttributePollConfig<?> config : configs) {
+                handlers.add(new AttributePollHandler<Object>(config, getEntity(), this));
+                if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
+            }
+            
+            Map<ObjectName, Map<String, PollHandler<Object>>> handlersByObjectName = handlersByPeriod.get(minPeriod);
+            if (handlersByObjectName == null) {
+                handlersByObjectName = Maps.newLinkedHashMap();
+                handlersByPeriod.put(minPeriod, handlersByObjectName);
+            }
+            Map<String, PollHandler<Object>> handlersByAttribute = handlersByObjectName.get(objectName);
+            if (handlersByAttribute == null) {
+                handlersByAttribute = Maps.newLinkedHashMap();
+                handlersByObjectName.put(objectName, handlersByAttribute);
+            }
+            handlersByAttribute.put(jmxAttributeName, new DelegatingPollHandler(handlers));
+        }
+        
+        for (Map.Entry<Long, Map<ObjectName, Map<String, PollHandler<Object>>>> entry : handlersByPeriod.entrySet()) {
+            JmxAttributeBatchPoll batch = new JmxAttributeBatchPoll(helper, entry.getValue());
+            getPoller().scheduleAtFixedRate((Callable) batch, (PollHandler) batch.handler(), entry.getKey());
+        }
+    }
+
     /**
      * Registers to subscribe to notifications for an ObjectName, where all the given configs are for that same ObjectName + filter.
      */
@@ -9,7 +9,9 @@ import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
@@ -18,6 +20,8 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
@@ -76,6 +80,18 @@ public class JmxHelper {
     // Tracks the MBeans we have failed to find, with a set keyed off the url
     private static final Map<String, Set<ObjectName>> notFoundMBeansByUrl = Collections.synchronizedMap(new WeakHashMap<String, Set<ObjectName>>());
 
+    /** Connectors shared by helpers with {@link #setShareConnection(boolean)}, by url and credentials; guarded by itself */
+    private static final Map<List<String>, SharedConnector> sharedConnectors = new LinkedHashMap<List<String>, SharedConnector>();
+
+    private static class SharedConnector {
+        final JMXConnector connector;
+        int users = 1;
+        
+        SharedConnector(JMXConnector connector) {
+            this.connector = connector;
+        }
+    }
+
     public static final Map<String, String> CLASSES = ImmutableMap.<String,String>builder()
             .put("Integer", Integer.TYPE.getName())
             .put("Long", Long.TYPE.getName())
@@ -141,6 +157,7 @@ public class JmxHelper {
     private boolean failedReconnecting;
     private long failedReconnectingTime;
     private int minTimeBetweenReconnectAttempts = 1000;
+    private volatile boolean shareConnection;
 
     // Tracks the MBeans we have failed to find for this JmsHelper's connection URL (so can log just once for each)
     private final Set<ObjectName> notFoundMBeans;
@@ -184,6 +201,15 @@ public class JmxHelper {
         minTimeBetweenReconnectAttempts = val;
     }
     
+    /**
+     * Whether to share one JMX connection with the other helpers for the same url and credentials that also
+     * share, rather than this helper opening its own; the connection is closed when the last of them disconnects.
+     * Must be set before connecting.
+     */
+    public void setShareConnection(boolean val) {
+        shareConnection = val;
+    }
+    
     public String getUrl(){
         return url;
     }
@@ -226,7 +252,8 @@ public class JmxHelper {
     }
     
     public synchronized void reconnect() throws IOException {
-        disconnect();
+        // the connection has failed, so a shared connection must not be re-used by other helpers either
+        disconnect(true);
 
         try {
             connect();
@@ -244,16 +271,86 @@ public class JmxHelper {
     }
 
     /** attempts to connect immediately */
-    @SuppressWarnings({ "rawtypes", "unchecked" })
     public synchronized void connect() throws IOException {
         if (connection != null) return;
 
         triedConnecting = true;
-        if (connector != null) connector.close();
+        if (connector != null) {
+            closeConnector(connector, false);
+            connector = null;
+        }
+        connector = (shareConnection) ? acquireSharedConnector() : newConnector();
+        connection = connector.getMBeanServerConnection();
+    }
+
+    private List<String> sharedConnectorKey() {
+        return Arrays.asList(url, user, password);
+    }
+    
+    private JMXConnector acquireSharedConnector() throws IOException {
+        List<String> key = sharedConnectorKey();
+        synchronized (sharedConnectors) {
+            SharedConnector existing = sharedConnectors.get(key);
+            if (existing != null) {
+                existing.users++;
+                return existing.connector;
+            }
+        }
+        // connect without holding the lock, as may take a long time
+        JMXConnector result = newConnector();
+        JMXConnector concurrentResult;
+        synchronized (sharedConnectors) {
+            SharedConnector existing = sharedConnectors.get(key);
+            if (existing == null) {
+                sharedConnectors.put(key, new SharedConnector(result));
+                return result;
+            }
+            existing.users++;
+            concurrentResult = existing.connector;
+        }
+        // another helper connected concurrently; use theirs
+        closeQuietly(result);
+        return concurrentResult;
+    }
+
+    /**
+     * Closes the connector, or if it is shared then releases it (closing it only if this was its last user,
+     * or if it is broken in which case no other helper should use it either).
+     */
+    private void closeConnector(JMXConnector connector, boolean broken) {
+        if (shareConnection) {
+            synchronized (sharedConnectors) {
+                SharedConnector existing = sharedConnectors.get(sharedConnectorKey());
+                if (existing == null || existing.connector != connector) {
+                    // already closed and discarded (e.g. as broken, by another helper)
+                    return;
+                }
+                existing.users--;
+                if (existing.users > 0 && !broken) return;
+                sharedConnectors.remove(sharedConnectorKey());
+            }
+        }
+        closeQuietly(connector);
+    }
+    
+    private void closeQuietly(JMXConnector connector) {
+        try {
+            connector.close();
+        } catch (Exception e) {
+            // close attempts to connect to close cleanly; and if it can't, it throws;
+            // often we disconnect as part of shutdown, even if the other side has already stopped --
+            // so swallow exceptions (no situations known where we need a clean closure on the remote side)
+            if (LOG.isDebugEnabled()) LOG.debug("Caught exception disconnecting from JMX at {} ({})", url, e.getMessage());
+            if (LOG.isTraceEnabled()) LOG.trace("Details for exception disconnecting JMX", e);
+        }
+    }
+    
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private JMXConnector newConnector() throws IOException {
         JMXServiceURL serviceUrl = new JMXServiceURL(url);
         Map env = getConnectionEnvVars();
         try {
-            connector = JMXConnectorFactory.connect(serviceUrl, env);
+            return JMXConnectorFactory.connect(serviceUrl, env);
         } catch (NullPointerException npe) {
             //some software -- eg WSO2 -- will throw an NPE exception if the JMX connection can't be created, instead of an IOException.
             //this is a break of contract with the JMXConnectorFactory.connect method, so this code verifies if the NPE is
@@ -266,7 +363,6 @@ public class JmxHelper {
                 throw npe;
             }
         }
-        connection = connector.getMBeanServerConnection();
     }
 
     @SuppressWarnings({ "rawtypes", "unchecked" })
@@ -375,17 +471,15 @@ public class JmxHelper {
      * This method is threadsafe.
      */
     public synchronized void disconnect() {
+        disconnect(false);
+    }
+    
+    private synchronized void disconnect(boolean broken) {
         triedConnecting = false;
         if (connector != null) {
             if (LOG.isDebugEnabled()) LOG.debug("Disconnecting from JMX URL {}", url);
             try {
-                connector.close();
-            } catch (Exception e) {
-                // close attempts to connect to close cleanly; and if it can't, it throws;
-                // often we disconnect as part of shutdown, even if the other side has already stopped --
-                // so swallow exceptions (no situations known where we need a clean closure on the remote side)
-                if (LOG.isDebugEnabled()) LOG.debug("Caught exception disconnecting from JMX at {} ({})", url, e.getMessage());
-                if (LOG.isTraceEnabled()) LOG.trace("Details for exception disconnecting JMX", e);
+                closeConnector(connector, broken);
             } finally {
                 connector = null;
                 connection = null;
@@ -563,6 +657,32 @@ public class JmxHelper {
         }
     }
 
+    /**
+     * Returns the given attributes of a JMX {@link ObjectName}, with a single call to the server, by attribute name.
+     * Attributes which could not be read (e.g. which do not exist) are omitted.
+     * If no matching MBean can be found then returns null.
+     */
+    public Map<String, Object> getAttributes(ObjectName objectName, Collection<String> attributes) {
+        final ObjectName realObjectName = toLiteralObjectName(objectName);
+        final String[] attributeNames = attributes.toArray(new String[attributes.size()]);
+        
+        if (realObjectName != null) {
+            AttributeList values = invokeWithReconnect(new Callable<AttributeList>() {
+                    public AttributeList call() throws Exception {
+                        return getConnectionOrFail().getAttributes(realObjectName, attributeNames);
+                    }});
+            
+            Map<String, Object> result = new LinkedHashMap<String, Object>();
+            for (Attribute value : values.asList()) {
+                result.put(value.getName(), value.getValue());
+            }
+            if (LOG.isTraceEnabled()) LOG.trace("From {}, for jmx attributes {}.{}, got values {}", new Object[] {url, objectName.getCanonicalName(), attributes, result});
+            return result;
+        } else {
+            return null;
+        }
+    }
+
     public void setAttribute(String objectName, String attribute, Object val) {
         setAttribute(createObjectName(objectName), attribute, val);
     }
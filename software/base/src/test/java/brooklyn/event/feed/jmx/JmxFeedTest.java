@@ -59,6 +59,7 @@ import brooklyn.test.entity.TestEntity;
 import brooklyn.test.entity.TestEntityImpl;
 
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
@@ -151,6 +152,52 @@ public class JmxFeedTest {
         assertSensorEventually(intAttribute, 64, TIMEOUT_MS);
     }
 
+    @Test
+    public void testBatchedJmxAttributePollerReturnsMBeanAttributes() throws Exception {
+        GeneralisedDynamicMBean mbean = jmxService.registerMBean(ImmutableMap.of(attributeName, 42, "mystringattrib", "abc"), objectName);
+
+        feed = JmxFeed.builder()
+                .entity(entity)
+                .batchAttributePolls(true)
+                .pollAttribute(new JmxAttributePollConfig<Integer>(intAttribute)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName(attributeName))
+                .pollAttribute(new JmxAttributePollConfig<String>(stringAttribute)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName("mystringattrib"))
+                .build();
+        
+        assertSensorEventually(intAttribute, 42, TIMEOUT_MS);
+        assertSensorEventually(stringAttribute, "abc", TIMEOUT_MS);
+
+        mbean.updateAttributeValue(attributeName, 64);
+        assertSensorEventually(intAttribute, 64, TIMEOUT_MS);
+    }
+
+    @Test
+    public void testBatchedJmxAttributePollerUsesErrorHandlerForMissingAttribute() throws Exception {
+        jmxService.registerMBean(ImmutableMap.of(attributeName, 42), objectName);
+
+        feed = JmxFeed.builder()
+                .entity(entity)
+                .batchAttributePolls(true)
+                .pollAttribute(new JmxAttributePollConfig<Integer>(intAttribute)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName(attributeName))
+                .pollAttribute(new JmxAttributePollConfig<String>(stringAttribute)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName("doesnotexist")
+                        .onException(Functions.constant("missing")))
+                .build();
+        
+        assertSensorEventually(intAttribute, 42, TIMEOUT_MS);
+        assertSensorEventually(stringAttribute, "missing", TIMEOUT_MS);
+    }
+
     @Test
     public void testJmxAttributeOfTypeTabularDataProviderConvertedToMap() throws Exception {
         // Create the CompositeType and TabularData
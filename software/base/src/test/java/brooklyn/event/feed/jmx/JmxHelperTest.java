@@ -2,6 +2,7 @@ package brooklyn.event.feed.jmx;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.fail;
 
 import java.io.IOException;
@@ -82,6 +83,33 @@ public class JmxHelperTest {
         assertEquals(jmxHelper.getAttribute(jmxObjectNameWithWildcard, "myattr"), "myval");
     }
 
+    @Test
+    public void testGetAttributes() throws Exception {
+        jmxService.registerMBean(MutableMap.of("myattr", "myval", "myattr2", "myval2"), objectName);
+        assertEquals(jmxHelper.getAttributes(jmxObjectName, ImmutableList.of("myattr", "myattr2", "doesnotexist")), 
+                ImmutableMap.of("myattr", "myval", "myattr2", "myval2"));
+    }
+
+    @Test
+    public void testSharedConnectionClosedWhenLastHelperDisconnects() throws Exception {
+        jmxService.registerMBean(MutableMap.of("myattr", "myval"), objectName);
+        JmxHelper helper1 = new JmxHelper(jmxService.getUrl());
+        JmxHelper helper2 = new JmxHelper(jmxService.getUrl());
+        helper1.setShareConnection(true);
+        helper2.setShareConnection(true);
+        try {
+            helper1.connect();
+            helper2.connect();
+            assertSame(helper1.getConnection(), helper2.getConnection());
+            
+            helper1.disconnect();
+            assertEquals(helper2.getAttribute(jmxObjectName, "myattr"), "myval");
+        } finally {
+            helper1.disconnect();
+            helper2.disconnect();
+        }
+    }
+
     @Test
     public void testSetAttribute() throws Exception {
         DynamicMBean mbean = jmxService.registerMBean(MutableMap.of("myattr", "myval"), objectName);
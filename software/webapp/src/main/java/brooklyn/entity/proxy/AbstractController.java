@@ -9,7 +9,9 @@ import brooklyn.entity.group.Cluster;
 import brooklyn.entity.proxying.ImplementedBy;
 import brooklyn.event.AttributeSensor;
 import brooklyn.event.basic.BasicAttributeSensorAndConfigKey;
+import brooklyn.event.basic.Sensors;
 import brooklyn.util.flags.SetFromFlag;
+import brooklyn.util.time.Duration;
 
 /**
  * Represents a controller mechanism for a {@link Cluster}.
@@ -25,6 +27,18 @@ public interface AbstractController extends SoftwareProcess, LoadBalancer {
     ConfigKey<ProxySslConfig> SSL_CONFIG = ConfigKeys.newConfigKey(ProxySslConfig.class,
             "proxy.ssl.config", "configuration (e.g. certificates) for SSL; will use SSL if set, not use SSL if not set");
 
+    @SetFromFlag("serverPoolUpdateWindow")
+    ConfigKey<Duration> SERVER_POOL_UPDATE_WINDOW = ConfigKeys.newConfigKey(Duration.class,
+            "proxy.serverpool.updateWindow", "Time to wait after a server pool member changes, so that further changes " +
+            "are applied in the same reconfiguration and reload (changes during a reload are always applied together afterwards)", 
+            Duration.ZERO);
+
+    AttributeSensor<Long> RELOAD_DURATION = Sensors.newLongSensor(
+            "proxy.reload.duration", "Time (in milliseconds) taken by the most recent reconfiguration and reload");
+
+    AttributeSensor<Integer> SERVER_POOL_UPDATE_BATCH_SIZE = Sensors.newIntegerSensor(
+            "proxy.serverpool.update.batchSize", "Number of server pool member changes applied in the most recent update");
+
     boolean isActive();
 
     ProxySslConfig getSslConfig();
@@ -5,6 +5,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 
@@ -29,8 +30,11 @@ import brooklyn.location.access.BrooklynAccessUtils;
 import brooklyn.management.Task;
 import brooklyn.mementos.EntityMemento;
 import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.guava.Maybe;
 import brooklyn.util.task.Tasks;
+import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
 
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
@@ -44,11 +48,13 @@ import com.google.common.net.HostAndPort;
  */
 public abstract class AbstractControllerImpl extends SoftwareProcessImpl implements AbstractController {
     
-    // TODO Should review synchronization model. Currently, all changes to the serverPoolTargets
-    // (and checking for potential changes) is done while synchronized on this. That means it 
-    // will also call update/reload while holding the lock. This is "conservative", but means
-    // sub-classes need to be extremely careful about any additional synchronization and of
-    // their implementations of update/reconfigureService/reload.
+    // Synchronization model: changes to serverPoolAddresses and serverPoolTargets are done while
+    // synchronized on this, but replace the collections rather than modifying them, so they can
+    // be read (e.g. by reconfigureService) without holding the lock. Server pool member changes 
+    // are queued, and applied in batches by a single task at a time, which works out the members' 
+    // addresses without holding the lock; update/reload is then done while synchronized on 
+    // reloadMutex (not on this), so there is at most one reload at a time and member changes 
+    // do not wait for it.
     
     private static final Logger LOG = LoggerFactory.getLogger(AbstractControllerImpl.class);
 
@@ -56,8 +62,17 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
     protected volatile boolean updateNeeded = true;
 
     protected AbstractMembershipTrackingPolicy serverPoolMemberTrackerPolicy;
-    protected Set<String> serverPoolAddresses = Sets.newLinkedHashSet();
-    protected Map<Entity,String> serverPoolTargets = Maps.newLinkedHashMap();
+    protected volatile Set<String> serverPoolAddresses = Sets.newLinkedHashSet();
+    protected volatile Map<Entity,String> serverPoolTargets = Maps.newLinkedHashMap();
+    
+    private final Object reloadMutex = new Object();
+    /** whether the last reload failed, so the next update must reload even if the configuration is unchanged */
+    private volatile boolean reloadFailed = false;
+    
+    /** server pool members which have changed, but not yet been applied; guarded by itself */
+    private final Set<Entity> pendingServerPoolMembers = Sets.newLinkedHashSet();
+    /** whether a task has been submitted to apply the pending members; guarded by pendingServerPoolMembers */
+    private boolean pendingServerPoolUpdateQueued = false;
     
     public AbstractControllerImpl() {
         this(MutableMap.of(), null, null);
@@ -283,6 +298,16 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
      */
     protected abstract void reconfigureService();
     
+    /**
+     * As {@link #reconfigureService()}, but returning whether the configuration was changed, and so whether 
+     * the caller should reload; by default always true. Implementations which can tell that the configuration
+     * is unchanged should override this, to skip reloading.
+     */
+    protected boolean reconfigureServiceIfChanged() {
+        reconfigureService();
+        return true;
+    }
+    
     public synchronized void updateNeeded() {
         if (updateNeeded) return;
         updateNeeded = true;
@@ -298,30 +323,62 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
     
     @Override
     public void update() {
-        Task<?> task = updateAsync();
-        if (task != null) task.getUnchecked();
+        synchronized (reloadMutex) {
+            long startTime = System.currentTimeMillis();
+            Task<?> task = updateAsync();
+            if (task != null) {
+                try {
+                    task.getUnchecked();
+                    reloadFailed = false;
+                } catch (RuntimeException e) {
+                    // the new configuration may have been deployed already, so the retry must reload
+                    reloadFailed = true;
+                    throw e;
+                }
+                setAttribute(RELOAD_DURATION, System.currentTimeMillis() - startTime);
+            }
+        }
     }
     
-    public synchronized Task<?> updateAsync() {
-        Task<?> result = null;
-        if (!isActive()) updateNeeded = true;
-        else {
-            updateNeeded = false;
+    /**
+     * Reconfigures the service for the current server pool, and if changed starts the reload.
+     * The pool is read while synchronized on this, but the reconfiguration (e.g. uploading config files)
+     * and reload are done holding only reloadMutex, so that member changes can still be applied meanwhile.
+     */
+    public Task<?> updateAsync() {
+        synchronized (reloadMutex) {
+            Set<String> addresses;
+            Map<Entity,String> targets;
+            synchronized (this) {
+                addresses = serverPoolAddresses;
+                targets = serverPoolTargets;
+                if (!isActive()) {
+                    updateNeeded = true;
+                    setAttribute(SERVER_POOL_TARGETS, addresses);
+                    return null;
+                }
+                updateNeeded = false;
+            }
+            
+            Task<?> result = null;
             LOG.debug("Updating {} in response to changes", this);
-            LOG.info("Updating {}, members {} with address {}", new Object[] {this, serverPoolTargets, serverPoolAddresses});
-            reconfigureService();
-            LOG.debug("Reloading {} in response to changes", this);
-            // reload should happen synchronously
-            result = invoke(RELOAD);
+            LOG.info("Updating {}, members {} with address {}", new Object[] {this, targets, addresses});
+            if (reconfigureServiceIfChanged() || reloadFailed) {
+                LOG.debug("Reloading {} in response to changes", this);
+                // reload should happen synchronously
+                result = invoke(RELOAD);
+            } else {
+                LOG.debug("Not reloading {}, as configuration unchanged", this);
+            }
+            setAttribute(SERVER_POOL_TARGETS, addresses);
+            return result;
         }
-        setAttribute(SERVER_POOL_TARGETS, serverPoolAddresses);
-        return result;
     }
 
     protected synchronized void resetServerPoolMemberTrackerPolicy() {
         serverPoolMemberTrackerPolicy.reset();
-        serverPoolAddresses.clear();
-        serverPoolTargets.clear();
+        Set<String> serverPoolAddresses = Sets.newLinkedHashSet();
+        Map<Entity,String> serverPoolTargets = Maps.newLinkedHashMap();
         if (groovyTruth(getServerPool())) {
             serverPoolMemberTrackerPolicy.setGroup(getServerPool());
             
@@ -341,19 +398,137 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
             
             LOG.info("Resetting {}, members {} with address {}", new Object[] {this, serverPoolTargets, serverPoolAddresses});
         }
+        this.serverPoolAddresses = serverPoolAddresses;
+        this.serverPoolTargets = serverPoolTargets;
         
         setAttribute(SERVER_POOL_TARGETS, serverPoolAddresses);
     }
 
-    protected synchronized void onServerPoolMemberChanged(Entity member) {
-        if (LOG.isTraceEnabled()) LOG.trace("For {}, considering membership of {} which is in locations {}", 
+    /**
+     * Queues the member to be considered for the server pool. Changes are applied in batches by a single
+     * task at a time, which waits for {@link AbstractController#SERVER_POOL_UPDATE_WINDOW} before applying 
+     * the changes queued so far; changes queued while it is applying a batch (and reloading) are applied 
+     * in the next batch.
+     */
+    protected void onServerPoolMemberChanged(Entity member) {
+        if (LOG.isTraceEnabled()) LOG.trace("For {}, queueing consideration of membership of {} which is in locations {}", 
                 new Object[] {this, member, member.getLocations()});
-        if (belongsInServerPool(member)) {
-            addServerPoolMember(member);
-        } else {
-            removeServerPoolMember(member);
+        synchronized (pendingServerPoolMembers) {
+            pendingServerPoolMembers.add(member);
+            if (pendingServerPoolUpdateQueued) return;
+            pendingServerPoolUpdateQueued = true;
+        }
+        Entities.submit(this, Tasks.builder().name("update-server-pool").body(new Runnable() {
+            @Override
+            public void run() {
+                applyPendingServerPoolMembers();
+            }
+        }).build());
+    }
+    
+    private void applyPendingServerPoolMembers() {
+        boolean finished = false;
+        try {
+            while (true) {
+                Duration window = getConfig(SERVER_POOL_UPDATE_WINDOW);
+                if (window != null && window.toMilliseconds() > 0) Time.sleep(window);
+                
+                Set<Entity> members;
+                synchronized (pendingServerPoolMembers) {
+                    if (pendingServerPoolMembers.isEmpty()) {
+                        pendingServerPoolUpdateQueued = false;
+                        finished = true;
+                        return;
+                    }
+                    members = ImmutableSet.copyOf(pendingServerPoolMembers);
+                    pendingServerPoolMembers.clear();
+                }
+                
+                // Work out the changes without holding the lock (the members' sensors may be changing anyway)
+                Map<Entity,String> added = Maps.newLinkedHashMap();
+                Set<Entity> removed = Sets.newLinkedHashSet();
+                for (Entity member : members) {
+                    if (belongsInServerPool(member)) {
+                        added.put(member, getAddressOfEntity(member));
+                    } else {
+                        removed.add(member);
+                    }
+                    if (LOG.isTraceEnabled()) LOG.trace("Done {} checkEntity {}", this, member);
+                }
+                
+                int changes = applyServerPoolChanges(added, removed);
+                if (changes > 0) {
+                    LOG.debug("Updating {} after {} server pool member changes (of {} members considered)", new Object[] {this, changes, members.size()});
+                    try {
+                        update();
+                        setAttribute(SERVER_POOL_UPDATE_BATCH_SIZE, changes);
+                    } catch (Exception e) {
+                        // the changes have been applied to the targets, so retry the update (which will include them)
+                        Exceptions.propagateIfFatal(e);
+                        LOG.warn("Problem updating "+this+" after server pool member changes (will retry)", e);
+                        updateNeeded();
+                    }
+                }
+            }
+        } finally {
+            if (!finished) {
+                // e.g. interrupted when stopping; leave any pending members for the next change to apply
+                synchronized (pendingServerPoolMembers) {
+                    pendingServerPoolUpdateQueued = false;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Updates serverPoolTargets and serverPoolAddresses for the given members, replacing the collections.
+     * 
+     * @param added members which belong in the server pool, with their (possibly null) addresses
+     * @param removed members which do not belong in the server pool
+     * @return the number of members whose addresses changed
+     */
+    protected synchronized int applyServerPoolChanges(Map<Entity,String> added, Collection<Entity> removed) {
+        Set<String> addresses = Sets.newLinkedHashSet(serverPoolAddresses);
+        Map<Entity,String> targets = Maps.newLinkedHashMap(serverPoolTargets);
+        int changes = 0;
+        
+        for (Map.Entry<Entity,String> entry : added.entrySet()) {
+            Entity member = entry.getKey();
+            String oldAddress = targets.get(member);
+            String newAddress = entry.getValue();
+            if (Objects.equal(oldAddress, newAddress)) {
+                if (LOG.isTraceEnabled()) LOG.trace("For {}, ignoring change in member {} because address still {}", new Object[] {this, member, newAddress});
+                continue;
+            }
+            if (newAddress == null) {
+                LOG.info("Removing from {}, member {} with old address {}, because inferred address is now null", new Object[] {this, member, oldAddress});
+            } else if (oldAddress != null) {
+                LOG.info("Replacing in {}, member {} with old address {}, new address {}", new Object[] {this, member, oldAddress, newAddress});
+            } else {
+                LOG.info("Adding to {}, new member {} with address {}", new Object[] {this, member, newAddress});
+            }
+            if (oldAddress != null) addresses.remove(oldAddress);
+            if (newAddress != null) addresses.add(newAddress);
+            targets.put(member, newAddress);
+            changes++;
+        }
+        
+        for (Entity member : removed) {
+            if (!targets.containsKey(member)) {
+                if (LOG.isTraceEnabled()) LOG.trace("For {}, not removing as don't have member {}", new Object[] {this, member});
+                continue;
+            }
+            String address = targets.remove(member);
+            if (address != null) addresses.remove(address);
+            LOG.info("Removing from {}, member {} with address {}", new Object[] {this, member, address});
+            changes++;
+        }
+        
+        if (changes > 0) {
+            serverPoolAddresses = addresses;
+            serverPoolTargets = targets;
         }
-        if (LOG.isTraceEnabled()) LOG.trace("Done {} checkEntity {}", this, member);
+        return changes;
     }
     
     protected boolean belongsInServerPool(Entity member) {
@@ -369,54 +544,24 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
         return true;
     }
     
-    protected synchronized void addServerPoolMember(Entity member) {
-        String oldAddress = serverPoolTargets.get(member);
-        String newAddress = getAddressOfEntity(member);
-        if (newAddress == null) {
-            if (oldAddress != null) {
-                LOG.info("Removing from {}, member {} with old address {}, because inferred address is now null", new Object[] {this, member, oldAddress});
-                serverPoolAddresses.remove(oldAddress);
-            }
-        } else if (Objects.equal(newAddress, oldAddress)) {
-            if (LOG.isTraceEnabled())
-                LOG.trace("Ignoring unchanged address "+oldAddress);
-            return;
-        } else {
-            if (oldAddress != null) {
-                LOG.info("Replacing in {}, member {} with old address {}, new address {}", new Object[] {this, member, oldAddress, newAddress});
-                serverPoolAddresses.remove(oldAddress);
-            } else {
-                LOG.info("Adding to {}, new member {} with address {}", new Object[] {this, member, newAddress});
-            }
-            serverPoolAddresses.add(newAddress);
-        }
-        
-        if (Objects.equal(oldAddress, newAddress)) {
-            if (LOG.isTraceEnabled()) LOG.trace("For {}, ignoring change in member {} because address still {}", new Object[] {this, member, newAddress});
-            return;
+    /** 
+     * Adds (or updates the address of) the member immediately, rather than queueing it; then, if changed, 
+     * updates and waits for the reload (see {@link #update()}). Must not be called while synchronized on this.
+     */
+    protected void addServerPoolMember(Entity member) {
+        if (applyServerPoolChanges(Collections.singletonMap(member, getAddressOfEntity(member)), Collections.<Entity>emptySet()) > 0) {
+            update();
         }
-        
-        // TODO this does it synchronously; an async method leaning on `updateNeeded` and `update` might
-        // be more appropriate, especially when this is used in a listener
-        updateAsync();
-        serverPoolTargets.put(member, newAddress);
     }
     
-    protected synchronized void removeServerPoolMember(Entity member) {
-        if (!serverPoolTargets.containsKey(member)) {
-            if (LOG.isTraceEnabled()) LOG.trace("For {}, not removing as don't have member {}", new Object[] {this, member});
-            return;
-        }
-        
-        String address = serverPoolTargets.get(member);
-        if (address != null) {
-            serverPoolAddresses.remove(address);
+    /** 
+     * Removes the member immediately, rather than queueing it; then, if changed, updates and waits 
+     * for the reload (see {@link #update()}). Must not be called while synchronized on this.
+     */
+    protected void removeServerPoolMember(Entity member) {
+        if (applyServerPoolChanges(Collections.<Entity,String>emptyMap(), Collections.singleton(member)) > 0) {
+            update();
         }
-        
-        LOG.info("Removing from {}, member {} with address {}", new Object[] {this, member, address});
-        
-        updateAsync();
-        serverPoolTargets.remove(member);
     }
     
     protected String getAddressOfEntity(Entity member) {
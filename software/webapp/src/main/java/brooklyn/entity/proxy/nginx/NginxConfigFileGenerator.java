@@ -18,6 +18,7 @@ package brooklyn.entity.proxy.nginx;
 import static java.lang.String.format;
 
 import java.util.Collection;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,10 +27,15 @@ import brooklyn.entity.proxy.ProxySslConfig;
 import brooklyn.util.text.Strings;
 
 import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 
 /**
  * Generates a configuration file for {@link NginxController}.
+ * <p>
+ * The upstream blocks (the servers to route to) can instead be generated as separate files, 
+ * included by the main configuration file, so that changes to the servers change only those 
+ * files; see {@link NginxController#INCREMENTAL_UPDATES}.
  */
 public class NginxConfigFileGenerator {
 
@@ -47,7 +53,45 @@ public class NginxConfigFileGenerator {
         this.nginx = (NginxController) driver.getEntity();
     }
 
+    /** the configuration file, including all upstream blocks */
     public String configFile() {
+        return configFile(false);
+    }
+
+    /** the configuration file, including the upstream blocks from the files given by {@link #upstreamConfigFiles()} */
+    public String configFileWithUpstreamIncludes() {
+        return configFile(true);
+    }
+
+    /** the name of the file (in the same directory as the configuration file) for the given upstream block */
+    public static String upstreamConfigFileName(String upstream) {
+        return "upstream-"+Strings.makeValidFilename(upstream)+".conf";
+    }
+
+    /**
+     * @return the upstream blocks, keyed by the name of the file for each (in the same directory as 
+     *         the configuration file)
+     * @see #configFileWithUpstreamIncludes()
+     */
+    public Map<String,String> upstreamConfigFiles() {
+        Map<String,String> result = Maps.newLinkedHashMap();
+        if (nginx.getServerPoolAddresses() != null && nginx.getServerPoolAddresses().size() > 0) {
+            StringBuilder upstream = new StringBuilder();
+            appendUpstream(upstream, nginx.getId(), nginx.getServerPoolAddresses());
+            result.put(upstreamConfigFileName(nginx.getId()), upstream.toString());
+        }
+        for (UrlMapping um : nginx.getUrlMappings()) {
+            Collection<String> addrs = um.getAttribute(UrlMapping.TARGET_ADDRESSES);
+            if (addrs != null && addrs.size() > 0) {
+                StringBuilder upstream = new StringBuilder();
+                appendUpstream(upstream, um.getUniqueLabel(), addrs);
+                result.put(upstreamConfigFileName(um.getUniqueLabel()), upstream.toString());
+            }
+        }
+        return result;
+    }
+
+    private String configFile(boolean includeUpstreams) {
         StringBuilder config = new StringBuilder();
         config.append("\n");
         config.append(format("pid %s;\n", driver.getPidFile()));
@@ -75,14 +119,11 @@ public class NginxConfigFileGenerator {
 
         // For basic round-robin across the server-pool
         if (nginx.getServerPoolAddresses() != null && nginx.getServerPoolAddresses().size() > 0) {
-            config.append(format("  upstream "+nginx.getId()+" {\n"));
-            if (nginx.isSticky()){
-                config.append("    sticky;\n");
-            }
-            for (String address : nginx.getServerPoolAddresses()) {
-                config.append("    server "+address+";\n");
+            if (includeUpstreams) {
+                appendUpstreamInclude(config, nginx.getId());
+            } else {
+                appendUpstream(config, nginx.getId(), nginx.getServerPoolAddresses());
             }
-            config.append("  }\n");
             config.append("  server {\n");
             config.append(getCodeForServerConfig());
             config.append("    listen "+nginx.getPort()+";\n");
@@ -107,14 +148,11 @@ public class NginxConfigFileGenerator {
         for (UrlMapping um : mappings) {
             Collection<String> addrs = um.getAttribute(UrlMapping.TARGET_ADDRESSES);
             if (addrs != null && addrs.size() > 0) {
-                config.append(format("  upstream "+um.getUniqueLabel()+" {\n"));
-                if (nginx.isSticky()){
-                    config.append("    sticky;\n");
-                }
-                for (String address: addrs) {
-                    config.append("    server "+address+";\n");
+                if (includeUpstreams) {
+                    appendUpstreamInclude(config, um.getUniqueLabel());
+                } else {
+                    appendUpstream(config, um.getUniqueLabel(), addrs);
                 }
-                config.append("  }\n");
             }
         }
 
@@ -193,6 +231,21 @@ public class NginxConfigFileGenerator {
         return config.toString();
     }
 
+    protected void appendUpstream(StringBuilder config, String upstream, Collection<String> addresses) {
+        config.append(format("  upstream "+upstream+" {\n"));
+        if (nginx.isSticky()){
+            config.append("    sticky;\n");
+        }
+        for (String address : addresses) {
+            config.append("    server "+address+";\n");
+        }
+        config.append("  }\n");
+    }
+
+    protected void appendUpstreamInclude(StringBuilder config, String upstream) {
+        config.append("  include "+upstreamConfigFileName(upstream)+";\n");
+    }
+
     protected String getCodeForServerConfig() {
         // See http://wiki.nginx.org/HttpProxyModule
         return ""+
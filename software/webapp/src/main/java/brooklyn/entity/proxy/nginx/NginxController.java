@@ -105,6 +105,12 @@ public interface NginxController extends AbstractController, HasShortName {
     ConfigKey<String> SERVER_CONF_TEMPLATE_URL = ConfigKeys.newStringConfigKey(
             "nginx.config.templateUrl", "The server.conf configuration file URL (FreeMarker template)");
 
+    @SetFromFlag("incrementalUpdates")
+    ConfigKey<Boolean> INCREMENTAL_UPDATES = ConfigKeys.newBooleanConfigKey(
+            "nginx.config.incremental", "Whether to write each upstream block to its own file, and on reconfiguration to upload " +
+            "only the files which have changed, checking the configuration with 'nginx -t' before it is reloaded " +
+            "(not supported with configTemplate)", false);
+
     @SetFromFlag("staticContentArchive")
     ConfigKey<String> STATIC_CONTENT_ARCHIVE_URL = ConfigKeys.newStringConfigKey(
             "nginx.config.staticContentArchiveUrl", "The URL of an archive file of static content (To be copied to the server)");
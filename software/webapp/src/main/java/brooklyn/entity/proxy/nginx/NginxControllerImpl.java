@@ -18,6 +18,7 @@ package brooklyn.entity.proxy.nginx;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -41,11 +42,16 @@ import brooklyn.util.file.ArchiveUtils;
 import brooklyn.util.stream.Streams;
 import brooklyn.util.text.Strings;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 
 /**
  * Implementation of the {@link NginxController} entity.
@@ -56,6 +62,8 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
 
     private volatile HttpFeed httpFeed;
     private final Set<String> installedKeysCache = Sets.newLinkedHashSet();
+    /** hashes of the configuration files last deployed, when doing incremental updates; guarded by itself */
+    private final Map<String, HashCode> deployedConfigFileHashes = Maps.newLinkedHashMap();
 
     @Override
     public void reload() {
@@ -72,6 +80,11 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
         return getConfig(STICKY);
     }
 
+    /** whether {@link NginxController#INCREMENTAL_UPDATES} is configured (and applies, i.e. no template is configured) */
+    public boolean isIncrementalUpdates() {
+        return Boolean.TRUE.equals(getConfig(INCREMENTAL_UPDATES)) && getConfig(SERVER_CONF_TEMPLATE_URL) == null;
+    }
+
     @Override
     public void connectSensors() {
         super.connectSensors();
@@ -143,6 +156,10 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
     }
 
     public void doExtraConfigurationDuringStart() {
+        // a new run dir, so upload all the config files
+        synchronized (deployedConfigFileHashes) {
+            deployedConfigFileHashes.clear();
+        }
         reconfigureService();
     }
 
@@ -167,8 +184,22 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
         ArchiveUtils.deploy(archiveUrl, driver.getMachine(), driver.getRunDir());
     }
 
+    @Override
+    protected boolean reconfigureServiceIfChanged() {
+        if (isIncrementalUpdates()) {
+            return reconfigureServiceIncrementally();
+        }
+        reconfigureService();
+        return true;
+    }
+
     @Override
     public void reconfigureService() {
+        if (isIncrementalUpdates()) {
+            reconfigureServiceIncrementally();
+            return;
+        }
+
         String cfg = getConfigFile();
         if (cfg == null) return;
 
@@ -191,6 +222,69 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
         }
     }
 
+    /**
+     * Generates the configuration with each upstream block in its own file, and uploads only the files whose 
+     * hash differs from that last deployed (so a change to the servers of one upstream uploads just that upstream's
+     * file); the configuration is then checked with {@code nginx -t}, so an invalid configuration is not reloaded.
+     * 
+     * @return whether any file was uploaded or deleted (so whether nginx needs to reload)
+     */
+    protected boolean reconfigureServiceIncrementally() {
+        NginxSshDriver driver = (NginxSshDriver) getDriver();
+        if (driver==null) {
+            if (LOG.isDebugEnabled())
+                LOG.debug("No driver for {}, so not reconfiguring (is entity stopping? state={})",
+                        this, getAttribute(NginxController.SERVICE_STATE));
+            return false;
+        }
+        if (!driver.isCustomizationCompleted()) {
+            if (LOG.isDebugEnabled()) LOG.debug("Reconfiguring {}, but driver's customization not yet complete so aborting", this);
+            return false;
+        }
+
+        NginxConfigFileGenerator generator = NginxConfigFileGenerator.generator(driver);
+        Map<String, String> files = Maps.newLinkedHashMap();
+        files.put("server.conf", generator.configFileWithUpstreamIncludes());
+        files.putAll(generator.upstreamConfigFiles());
+
+        // keys must be installed before the configuration referring to them is checked
+        installSslKeys("global", getSslConfig());
+        for (UrlMapping mapping : getUrlMappings()) {
+            installSslKeys(mapping.getDomain(), mapping.getConfig(UrlMapping.SSL_CONFIG));
+        }
+
+        synchronized (deployedConfigFileHashes) {
+            Map<String, HashCode> hashes = Maps.newLinkedHashMap();
+            Map<String, String> changedFiles = Maps.newLinkedHashMap();
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                HashCode hash = Hashing.md5().hashString(file.getValue(), Charsets.UTF_8);
+                hashes.put(file.getKey(), hash);
+                if (!hash.equals(deployedConfigFileHashes.get(file.getKey()))) {
+                    changedFiles.put(file.getKey(), file.getValue());
+                }
+            }
+            Set<String> deletedFiles = ImmutableSet.copyOf(Sets.difference(deployedConfigFileHashes.keySet(), files.keySet()));
+
+            if (changedFiles.isEmpty() && deletedFiles.isEmpty()) {
+                if (LOG.isDebugEnabled()) LOG.debug("Reconfiguring {}, but configuration unchanged", this);
+                return false;
+            }
+            if (LOG.isDebugEnabled()) LOG.debug("Reconfiguring {}, targetting {} and {}: uploading {}, deleting {}", 
+                    new Object[] {this, serverPoolAddresses, getUrlMappings(), changedFiles.keySet(), deletedFiles});
+
+            try {
+                driver.updateConfigFiles(changedFiles, deletedFiles);
+            } catch (RuntimeException e) {
+                // don't know exactly what was deployed, so upload all next time
+                deployedConfigFileHashes.clear();
+                throw e;
+            }
+            deployedConfigFileHashes.clear();
+            deployedConfigFileHashes.putAll(hashes);
+            return true;
+        }
+    }
+
     /**
      * Installs SSL keys named as {@code id.crt} and {@code id.key} where nginx can find them.
      * <p>
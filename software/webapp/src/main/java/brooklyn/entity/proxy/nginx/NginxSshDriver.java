@@ -17,7 +17,9 @@ package brooklyn.entity.proxy.nginx;
 
 import static java.lang.String.format;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -341,6 +343,57 @@ public class NginxSshDriver extends AbstractSoftwareProcessSshDriver implements
         stop();
     }
 
+    /**
+     * Uploads the given configuration files, and deletes the others given, then checks the configuration 
+     * with {@code nginx -t}. If the configuration is invalid, the previous files are restored (so a subsequent 
+     * reload will use the previous configuration) and an exception is thrown. Does not reload.
+     * 
+     * @param files the contents of the files to upload, keyed by name (relative to the conf directory)
+     * @param deletedFiles the names of files to delete (relative to the conf directory)
+     */
+    public void updateConfigFiles(Map<String, String> files, Collection<String> deletedFiles) {
+        if (files.isEmpty() && deletedFiles.isEmpty()) return;
+
+        String confDir = format("%s/conf", getRunDir());
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            getMachine().copyTo(Streams.newInputStreamWithContents(file.getValue()), format("%s/%s.new", confDir, file.getKey()));
+        }
+
+        // Keep a backup of each file changed, to restore if the new configuration is invalid
+        List<String> replace = Lists.newArrayList();
+        List<String> discardBackups = Lists.newArrayList();
+        List<String> restore = Lists.newArrayList();
+        for (String file : files.keySet()) {
+            replace.add(format("rm -f %1$s.bak ; if [ -f %1$s ] ; then cp %1$s %1$s.bak ; fi ; mv %1$s.new %1$s", file));
+            discardBackups.add(format("  rm -f %s.bak", file));
+            restore.add(format("  if [ -f %1$s.bak ] ; then mv %1$s.bak %1$s ; else rm -f %1$s ; fi", file));
+        }
+        for (String file : deletedFiles) {
+            replace.add(format("rm -f %1$s.bak ; if [ -f %1$s ] ; then mv %1$s %1$s.bak ; fi", file));
+            discardBackups.add(format("  rm -f %s.bak", file));
+            restore.add(format("  if [ -f %1$s.bak ] ; then mv %1$s.bak %1$s ; fi", file));
+        }
+
+        ScriptHelper script = newScript(MutableMap.of("usePidFile", false), "reconfiguring")
+                .body.append(format("cd %s", confDir))
+                .body.append(replace)
+                .body.append(format("if %s ; then", sudoIfPrivilegedPort(getHttpPort(), 
+                        format("%s/sbin/nginx -p %s/ -c conf/server.conf -t", getRunDir(), getRunDir()))))
+                .body.append(discardBackups)
+                .body.append("else")
+                .body.append(restore)
+                .body.append("  exit 1")
+                .body.append("fi")
+                .gatherOutput()
+                .failOnNonZeroResultCode(false);
+
+        int result = script.execute();
+        if (result != 0) {
+            log.warn("Invalid nginx configuration for {}, restored previous configuration: {}", entity, script.getResultStderr());
+            throw new IllegalStateException("Invalid nginx configuration for "+entity+" (nginx -t returned "+result+"): "+script.getResultStderr());
+        }
+    }
+
     private final ExecController reloadExecutor = new ExecController(
             entity+"->reload",
             new Runnable() {
@@ -1,6 +1,8 @@
 package brooklyn.entity.proxy;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.net.Inet4Address;
@@ -10,6 +12,14 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,8 +53,10 @@ import brooklyn.util.collections.MutableMap;
 import brooklyn.util.collections.MutableSet;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.flags.SetFromFlag;
+import brooklyn.util.time.Duration;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -86,10 +98,17 @@ public class AbstractControllerTest extends BrooklynAppUnitTestSupport {
     @ImplementedBy(TrackingAbstractControllerImpl.class)
     public static interface TrackingAbstractController extends AbstractController {
         List<Collection<String>> getUpdates();
+        int getReloadCount();
+        void failNextReloads(int count);
+        void blockNextReconfigure(CountDownLatch started, CountDownLatch release);
+        int applyServerPoolAddition(Entity member, String address);
     }
     
     public static class TrackingAbstractControllerImpl extends AbstractControllerImpl implements TrackingAbstractController {
         private final List<Collection<String>> updates = Lists.newCopyOnWriteArrayList();
+        private final AtomicInteger reloads = new AtomicInteger();
+        private final AtomicInteger reloadFailuresRemaining = new AtomicInteger();
+        private final AtomicReference<CountDownLatch[]> reconfigureBlocker = new AtomicReference<CountDownLatch[]>();
         
         @Override
         public List<Collection<String>> getUpdates() {
@@ -114,8 +133,42 @@ public class AbstractControllerTest extends BrooklynAppUnitTestSupport {
         public Class getDriverInterface() {
             return MockSshDriver.class;
         }
+        @Override
+        protected boolean reconfigureServiceIfChanged() {
+            CountDownLatch[] blocker = reconfigureBlocker.getAndSet(null);
+            if (blocker != null) {
+                blocker[0].countDown();
+                try {
+                    blocker[1].await();
+                } catch (InterruptedException e) {
+                    throw Exceptions.propagate(e);
+                }
+            }
+            int numUpdates = updates.size();
+            reconfigureService();
+            return updates.size() > numUpdates;
+        }
+        @Override
+        public int getReloadCount() {
+            return reloads.get();
+        }
+        @Override
+        public void failNextReloads(int count) {
+            reloadFailuresRemaining.set(count);
+        }
+        @Override
+        public void blockNextReconfigure(CountDownLatch started, CountDownLatch release) {
+            reconfigureBlocker.set(new CountDownLatch[] {started, release});
+        }
+        @Override
+        public int applyServerPoolAddition(Entity member, String address) {
+            return applyServerPoolChanges(ImmutableMap.of(member, address), ImmutableSet.<Entity>of());
+        }
         public void reload() {
-            // no-op
+            if (reloadFailuresRemaining.get() > 0 && reloadFailuresRemaining.getAndDecrement() > 0) {
+                throw new IllegalStateException("Simulated reload failure in "+this);
+            }
+            reloads.incrementAndGet();
         }
     }
 
@@ -222,6 +275,93 @@ public class AbstractControllerTest extends BrooklynAppUnitTestSupport {
         assertEventuallyAddressesMatch(ImmutableList.<Entity>of());
     }
 
+    @Test
+    public void testServerPoolMemberChangesWithinWindowAreUpdatedTogether() throws Exception {
+        controller = app.createAndManageChild(EntitySpec.create(TrackingAbstractController.class)
+                .configure("serverPool", cluster) 
+                .configure("portNumberSensor", ClusteredEntity.HTTP_PORT)
+                .configure("serverPoolUpdateWindow", Duration.ONE_SECOND)
+                .configure("domain", "mydomain"));
+        controller.start(Arrays.asList(loc));
+        
+        cluster.resize(5);
+        for (Entity it: cluster.getMembers()) { 
+            ((EntityLocal)it).setAttribute(ClusteredEntity.HTTP_PORT, 1234);
+            ((EntityLocal)it).setAttribute(Startable.SERVICE_UP, true);
+        }
+        assertEventuallyAddressesMatchCluster();
+        
+        List<Collection<String>> u = Lists.newArrayList(controller.getUpdates());
+        assertTrue(u.size() < 5, "expected members to be added in fewer updates, but got "+u);
+        assertTrue(controller.getAttribute(AbstractController.SERVER_POOL_UPDATE_BATCH_SIZE) > 1, 
+                "batchSize="+controller.getAttribute(AbstractController.SERVER_POOL_UPDATE_BATCH_SIZE));
+        assertNotNull(controller.getAttribute(AbstractController.RELOAD_DURATION));
+    }
+
+    @Test
+    public void testDoesNotReloadIfConfigurationUnchanged() throws Exception {
+        cluster.resize(1);
+        EntityLocal child = (EntityLocal) Iterables.getOnlyElement(cluster.getMembers());
+        child.setAttribute(ClusteredEntity.HTTP_PORT, 1234);
+        child.setAttribute(Startable.SERVICE_UP, true);
+        assertEventuallyAddressesMatchCluster();
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue(controller.getReloadCount() > 0);
+            }});
+        
+        int reloads = controller.getReloadCount();
+        controller.update();
+        assertEquals(controller.getReloadCount(), reloads);
+    }
+
+    @Test
+    public void testServerPoolUpdateRetriedIfReloadFails() throws Exception {
+        final int reloadsBefore = controller.getReloadCount();
+        controller.failNextReloads(1);
+        
+        cluster.resize(1);
+        EntityLocal child = (EntityLocal) Iterables.getOnlyElement(cluster.getMembers());
+        child.setAttribute(ClusteredEntity.HTTP_PORT, 1234);
+        child.setAttribute(Startable.SERVICE_UP, true);
+        
+        // no further member changes, so only a retry of the failed update will reload
+        Asserts.succeedsEventually(MutableMap.of("timeout", 15000), new Runnable() {
+            @Override public void run() {
+                assertTrue(controller.getReloadCount() > reloadsBefore, "reloads="+controller.getReloadCount());
+            }});
+        // the batch size is only reported for batches whose update succeeded
+        assertNull(controller.getAttribute(AbstractController.SERVER_POOL_UPDATE_BATCH_SIZE));
+        assertEventuallyAddressesMatchCluster();
+    }
+
+    @Test
+    public void testServerPoolChangesAppliedWhileReconfiguring() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        controller.blockNextReconfigure(started, release);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            cluster.resize(1);
+            EntityLocal child = (EntityLocal) Iterables.getOnlyElement(cluster.getMembers());
+            child.setAttribute(ClusteredEntity.HTTP_PORT, 1234);
+            child.setAttribute(Startable.SERVICE_UP, true);
+            assertTrue(started.await(10, TimeUnit.SECONDS), "reconfigure not started");
+            
+            // the update is blocked uploading its configuration; other member changes must not wait for it
+            final Entity other = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+            Future<Integer> future = executor.submit(new Callable<Integer>() {
+                @Override public Integer call() {
+                    return controller.applyServerPoolAddition(other, "1.2.3.4:5678");
+                }});
+            assertEquals(future.get(10, TimeUnit.SECONDS), (Integer)1);
+            assertTrue(controller.getServerPoolAddresses().contains("1.2.3.4:5678"));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void testUsesHostAndPortSensor() throws Exception {
         controller = app.createAndManageChild(EntitySpec.create(TrackingAbstractController.class)
@@ -0,0 +1,85 @@
+package brooklyn.entity.proxy.nginx;
+
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.basic.BasicGroup;
+import brooklyn.entity.proxy.nginx.NginxConfigFileGeneratorTest.GeneratorTestNginxController;
+import brooklyn.entity.proxy.nginx.NginxConfigFileGeneratorTest.StubNginxDriver;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.qa.performance.AbstractPerformanceTest;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Measures generation of the nginx configuration against the size of the server pool and the number of url mappings,
+ * in full and as separate upstream files (as done for {@link NginxController#INCREMENTAL_UPDATES}).
+ */
+public class NginxConfigFileGeneratorPerformanceTest extends AbstractPerformanceTest {
+
+    private BasicGroup urlMappings;
+    private GeneratorTestNginxController nginx;
+    private NginxConfigFileGenerator generator;
+    
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() {
+        super.setUp();
+        urlMappings = app.createAndManageChild(EntitySpec.create(BasicGroup.class));
+        nginx = app.createAndManageChild(EntitySpec.create(GeneratorTestNginxController.class)
+                .configure("urlMappings", urlMappings));
+        generator = NginxConfigFileGenerator.generator(new StubNginxDriver(nginx));
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testConfigFileAgainstServerPoolSize() {
+        for (int poolSize : new int[] {10, 100, 1000, 10000}) {
+            nginx.setServerPoolAddresses(addresses(0, poolSize));
+            int numIterations = 1000000 / poolSize;
+            double minRatePerSec = (1000000d / poolSize) * PERFORMANCE_EXPECTATION;
+            
+            measureAndAssert("configFile-pool"+poolSize, numIterations, minRatePerSec, new Runnable() {
+                public void run() {
+                    generator.configFile();
+                }});
+            measureAndAssert("upstreamConfigFiles-pool"+poolSize, numIterations, minRatePerSec, new Runnable() {
+                public void run() {
+                    generator.configFileWithUpstreamIncludes();
+                    generator.upstreamConfigFiles();
+                }});
+        }
+    }
+    
+    @Test(groups={"Integration", "Acceptance"})
+    public void testConfigFileAgainstUrlMappings() {
+        nginx.setServerPoolAddresses(addresses(0, 10));
+        int numMappings = 0;
+        for (int newNumMappings : new int[] {10, 100, 500}) {
+            for (; numMappings < newNumMappings; numMappings++) {
+                NginxConfigFileGeneratorTest.addUrlMapping(app, urlMappings, "app"+numMappings+".example.com", addresses(numMappings*10, 10));
+            }
+            int numIterations = 10000 / numMappings;
+            double minRatePerSec = (10000d / numMappings) * PERFORMANCE_EXPECTATION;
+            
+            measureAndAssert("configFile-mappings"+numMappings, numIterations, minRatePerSec, new Runnable() {
+                public void run() {
+                    generator.configFile();
+                }});
+            measureAndAssert("upstreamConfigFiles-mappings"+numMappings, numIterations, minRatePerSec, new Runnable() {
+                public void run() {
+                    generator.configFileWithUpstreamIncludes();
+                    generator.upstreamConfigFiles();
+                }});
+        }
+    }
+    
+    private static List<String> addresses(int first, int count) {
+        List<String> result = Lists.newArrayListWithCapacity(count);
+        for (int i = first; i < first+count; i++) {
+            result.add("10."+(i/65536 % 256)+"."+(i/256 % 256)+"."+(i % 256)+":8080");
+        }
+        return result;
+    }
+}
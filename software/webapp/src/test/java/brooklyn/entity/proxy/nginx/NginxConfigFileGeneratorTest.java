@@ -0,0 +1,128 @@
+package brooklyn.entity.proxy.nginx;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.BrooklynAppUnitTestSupport;
+import brooklyn.entity.basic.BasicGroup;
+import brooklyn.entity.basic.EntityLocal;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.proxying.ImplementedBy;
+import brooklyn.location.Location;
+import brooklyn.test.entity.TestApplication;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class NginxConfigFileGeneratorTest extends BrooklynAppUnitTestSupport {
+
+    private BasicGroup urlMappings;
+    private GeneratorTestNginxController nginx;
+    private NginxDriver driver;
+    
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        urlMappings = app.createAndManageChild(EntitySpec.create(BasicGroup.class));
+        nginx = app.createAndManageChild(EntitySpec.create(GeneratorTestNginxController.class)
+                .configure("urlMappings", urlMappings));
+        driver = new StubNginxDriver(nginx);
+    }
+
+    @Test
+    public void testConfigFileWithUpstreamIncludesIsEquivalentToConfigFile() throws Exception {
+        nginx.setServerPoolAddresses(ImmutableList.of("1.1.1.1:8080", "1.1.1.2:8080"));
+        addUrlMapping(app, urlMappings, "a.example.com", ImmutableList.of("1.1.1.3:8080"));
+        
+        NginxConfigFileGenerator generator = NginxConfigFileGenerator.generator(driver);
+        String configFile = generator.configFile();
+        String configFileWithIncludes = generator.configFileWithUpstreamIncludes();
+        Map<String, String> upstreams = generator.upstreamConfigFiles();
+        
+        assertEquals(upstreams.size(), 2, "upstreams="+upstreams);
+        for (Map.Entry<String, String> upstream : upstreams.entrySet()) {
+            String include = "  include "+upstream.getKey()+";\n";
+            assertTrue(configFileWithIncludes.contains(include), "include="+include+"; config="+configFileWithIncludes);
+            configFileWithIncludes = configFileWithIncludes.replace(include, upstream.getValue());
+        }
+        assertEquals(configFileWithIncludes, configFile);
+    }
+
+    @Test
+    public void testChangingServerPoolChangesOnlyItsUpstreamFile() throws Exception {
+        nginx.setServerPoolAddresses(ImmutableList.of("1.1.1.1:8080", "1.1.1.2:8080"));
+        addUrlMapping(app, urlMappings, "a.example.com", ImmutableList.of("1.1.1.3:8080"));
+        NginxConfigFileGenerator generator = NginxConfigFileGenerator.generator(driver);
+        String configFileBefore = generator.configFileWithUpstreamIncludes();
+        Map<String, String> upstreamsBefore = generator.upstreamConfigFiles();
+        
+        nginx.setServerPoolAddresses(ImmutableList.of("1.1.1.1:8080", "1.1.1.4:8080"));
+        String configFileAfter = generator.configFileWithUpstreamIncludes();
+        Map<String, String> upstreamsAfter = generator.upstreamConfigFiles();
+        
+        assertEquals(configFileAfter, configFileBefore);
+        assertEquals(upstreamsAfter.keySet(), upstreamsBefore.keySet());
+        List<String> changed = Lists.newArrayList();
+        for (String upstream : upstreamsAfter.keySet()) {
+            if (!upstreamsAfter.get(upstream).equals(upstreamsBefore.get(upstream))) changed.add(upstream);
+        }
+        assertEquals(changed, ImmutableList.of(NginxConfigFileGenerator.upstreamConfigFileName(nginx.getId())));
+        assertTrue(upstreamsAfter.get(changed.get(0)).contains("server 1.1.1.4:8080;"));
+        assertFalse(upstreamsAfter.get(changed.get(0)).contains("server 1.1.1.2:8080;"));
+    }
+
+    @Test
+    public void testUpstreamConfigFileNameIsValidFilename() throws Exception {
+        assertEquals(NginxConfigFileGenerator.upstreamConfigFileName("abc-my label/x"), "upstream-abc-my_label_x.conf");
+    }
+    
+    static UrlMapping addUrlMapping(TestApplication app, BasicGroup urlMappings, String domain, Collection<String> addresses) {
+        UrlMapping result = app.createAndManageChild(EntitySpec.create(UrlMapping.class).configure(UrlMapping.DOMAIN, domain));
+        ((EntityLocal) result).setAttribute(UrlMapping.TARGET_ADDRESSES, ImmutableSet.copyOf(addresses));
+        urlMappings.addMember(result);
+        return result;
+    }
+
+    @ImplementedBy(GeneratorTestNginxControllerImpl.class)
+    public static interface GeneratorTestNginxController extends NginxController {
+        void setServerPoolAddresses(Collection<String> addresses);
+    }
+    
+    public static class GeneratorTestNginxControllerImpl extends NginxControllerImpl implements GeneratorTestNginxController {
+        @Override
+        public void setServerPoolAddresses(Collection<String> addresses) {
+            serverPoolAddresses = Sets.newLinkedHashSet(addresses);
+        }
+    }
+    
+    /** A driver which just supplies the entity and files to the generator (and does nothing). */
+    public static class StubNginxDriver implements NginxDriver {
+        private final NginxController entity;
+        
+        public StubNginxDriver(NginxController entity) {
+            this.entity = entity;
+        }
+        @Override public EntityLocal getEntity() { return (EntityLocal) entity; }
+        @Override public Location getLocation() { return null; }
+        @Override public String getRunDir() { return "/tmp/nginx"; }
+        @Override public String getPidFile() { return "/tmp/nginx/logs/nginx.pid"; }
+        @Override public boolean isCustomizationCompleted() { return true; }
+        @Override public boolean isRunning() { return true; }
+        @Override public void rebind() {}
+        @Override public void start() {}
+        @Override public void restart() {}
+        @Override public void stop() {}
+        @Override public void kill() {}
+    }
+}
@@ -59,4 +59,9 @@ public class HazelcastDataGrid implements DataGrid {
     public Map<String, Object> getDatagridMetrics() {
         return ImmutableMap.<String,Object>of("name", hz.getName(), "isRunning", hz.getLifecycleService().isRunning());
     }
+
+    @Override
+    public boolean isLocal() {
+        return false;
+    }
 }
@@ -36,7 +36,11 @@ import brooklyn.entity.basic.StartableApplication;
 import brooklyn.entity.proxying.EntitySpec;
 import brooklyn.entity.rebind.RebindManager;
 import brooklyn.entity.rebind.RebindManagerImpl;
+import brooklyn.entity.rebind.persister.BinaryMementoSerializer;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToJournal;
 import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToMultiFile;
+import brooklyn.entity.rebind.persister.MementoSerializer;
+import brooklyn.entity.rebind.persister.XmlMementoSerializer;
 import brooklyn.entity.trait.Startable;
 import brooklyn.location.Location;
 import brooklyn.location.PortRange;
@@ -476,7 +480,7 @@ public class BrooklynLauncher {
                 }
     
                 RebindManager rebindManager = managementContext.getRebindManager();
-                BrooklynMementoPersister persister = new BrooklynMementoPersisterToMultiFile(persistenceDir, managementContext.getCatalog().getRootClassLoader());
+                BrooklynMementoPersister persister = newPersister(persistenceDir, managementContext.getCatalog().getRootClassLoader());
                 ((RebindManagerImpl)rebindManager).setPeriodicPersistPeriod(persistPeriod);
                 rebindManager.setPersister(persister);
                 
@@ -491,6 +495,30 @@ public class BrooklynLauncher {
         }
     }
 
+    protected BrooklynMementoPersister newPersister(File persistenceDir, ClassLoader classLoader) {
+        MementoSerializer<Object> serializer = newPersistenceSerializer(classLoader);
+        String format = managementContext.getConfig().getConfig(BrooklynServerConfig.PERSISTENCE_FORMAT);
+        if (BrooklynServerConfig.PERSISTENCE_FORMAT_JOURNAL.equalsIgnoreCase(format)) {
+            return new BrooklynMementoPersisterToJournal(persistenceDir, serializer, 
+                    BrooklynMementoPersisterToJournal.DEFAULT_MAX_SEGMENT_BYTES, BrooklynMementoPersisterToJournal.DEFAULT_COMPACT_AFTER_SEGMENTS);
+        } else if (format == null || BrooklynServerConfig.PERSISTENCE_FORMAT_MULTI_FILE.equalsIgnoreCase(format)) {
+            return new BrooklynMementoPersisterToMultiFile(persistenceDir, serializer);
+        } else {
+            throw new FatalConfigurationRuntimeException("Unknown persistence format '"+format+"' in "+BrooklynServerConfig.PERSISTENCE_FORMAT.getName());
+        }
+    }
+
+    protected MementoSerializer<Object> newPersistenceSerializer(ClassLoader classLoader) {
+        String serializer = managementContext.getConfig().getConfig(BrooklynServerConfig.PERSISTENCE_SERIALIZER);
+        if (BrooklynServerConfig.PERSISTENCE_SERIALIZER_BINARY.equalsIgnoreCase(serializer)) {
+            return new BinaryMementoSerializer<Object>(classLoader);
+        } else if (serializer == null || BrooklynServerConfig.PERSISTENCE_SERIALIZER_XML.equalsIgnoreCase(serializer)) {
+            return new XmlMementoSerializer<Object>(classLoader);
+        } else {
+            throw new FatalConfigurationRuntimeException("Unknown persistence serializer '"+serializer+"' in "+BrooklynServerConfig.PERSISTENCE_SERIALIZER.getName());
+        }
+    }
+
     protected void checkPersistenceDirAccessible(File persistenceDir) {
         if (!(persistenceDir.exists() && persistenceDir.isDirectory() && persistenceDir.canRead() && persistenceDir.canWrite())) {
             throw new FatalConfigurationRuntimeException("Invalid persistence directory "+persistenceDir+" because "+
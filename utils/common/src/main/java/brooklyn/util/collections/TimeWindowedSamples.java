@@ -0,0 +1,345 @@
+package brooklyn.util.collections;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Keeps the numeric samples that are in the given time-period (millis), with statistics of those samples
+ * (count, sum, mean, standard deviation, min, max, rate of change and, optionally, approximate percentiles)
+ * which are kept up-to-date as samples are added and expire, in constant time.
+ * <p>
+ * Unlike {@link TimeWindowedList}, the samples are held in ring buffers of primitives (which grow as needed),
+ * so that no objects are allocated per sample. A sample older than the latest (e.g. from an event delivered
+ * out of order) is dropped, as the statistics assume samples are in timestamp order.
+ * <p>
+ * Not thread-safe; callers must synchronize.
+ */
+public class TimeWindowedSamples {
+
+    /** number of expiries after which the running sums are recalculated, to discard accumulated rounding errors */
+    private static final int RECALCULATE_AFTER_EXPIRIES = 1024;
+
+    private volatile long timePeriod;
+    private final int minVals;
+
+    private long[] timestamps;
+    private double[] values;
+    /** index of the oldest sample */
+    private int head;
+    private int size;
+    /** sequence number of the oldest sample; each sample's sequence number is one more than its predecessor's */
+    private long headSeq;
+
+    private double sum;
+    private double sumOfSquares;
+    /** sum over all but the oldest sample of value multiplied by the time since the previous sample */
+    private double timeWeightedSum;
+    private int expiriesSinceRecalculated;
+
+    /** sequence numbers of samples with increasing values, so the oldest is the minimum */
+    private final LongDeque minCandidates;
+    /** sequence numbers of samples with decreasing values, so the oldest is the maximum */
+    private final LongDeque maxCandidates;
+
+    private double histogramLowest;
+    private double histogramBucketWidth;
+    private int[] histogram;
+
+    public TimeWindowedSamples(long timePeriod) {
+        this(timePeriod, 0);
+    }
+
+    /**
+     * @param timePeriod the time-period (millis) for which to keep samples
+     * @param minVals the minimum number of samples to keep, even if older than the time-period
+     */
+    public TimeWindowedSamples(long timePeriod, int minVals) {
+        this(timePeriod, minVals, 16);
+    }
+
+    public TimeWindowedSamples(long timePeriod, int minVals, int initialCapacity) {
+        Preconditions.checkArgument(initialCapacity > 0, "initialCapacity must be positive");
+        this.timePeriod = timePeriod;
+        this.minVals = minVals;
+        timestamps = new long[initialCapacity];
+        values = new double[initialCapacity];
+        minCandidates = new LongDeque(initialCapacity);
+        maxCandidates = new LongDeque(initialCapacity);
+    }
+
+    /**
+     * Tracks the distribution of samples in the given number of equal-width buckets between lowest and highest,
+     * so that {@link #getPercentile(double)} can be estimated (to within half a bucket width, for values in range).
+     * Must be called before any samples are added.
+     */
+    public TimeWindowedSamples trackPercentiles(double lowest, double highest, int buckets) {
+        Preconditions.checkState(size == 0, "percentiles must be tracked before samples added");
+        Preconditions.checkArgument(highest > lowest, "highest %s must be greater than lowest %s", highest, lowest);
+        Preconditions.checkArgument(buckets > 0, "buckets must be positive");
+        histogramLowest = lowest;
+        histogramBucketWidth = (highest - lowest) / buckets;
+        histogram = new int[buckets];
+        return this;
+    }
+
+    public void setTimePeriod(long newTimePeriod) {
+        timePeriod = newTimePeriod;
+    }
+
+    public long getTimePeriod() {
+        return timePeriod;
+    }
+
+    /**
+     * Adds a sample, discarding any samples which have then expired.
+     * 
+     * @return false if the sample was dropped, because it is older than the latest sample
+     */
+    public boolean add(long timestamp, double value) {
+        if (size > 0 && timestamp < timestamps[index(size-1)]) return false;
+        if (size == timestamps.length) grow();
+        long seq = headSeq + size;
+        int index = index(size);
+        timestamps[index] = timestamp;
+        values[index] = value;
+        if (size > 0) {
+            timeWeightedSum += value * (timestamp - timestamps[index(size-1)]);
+        }
+        size++;
+
+        sum += value;
+        sumOfSquares += value * value;
+        while (!minCandidates.isEmpty() && valueOf(minCandidates.peekLast()) >= value) minCandidates.removeLast();
+        minCandidates.addLast(seq);
+        while (!maxCandidates.isEmpty() && valueOf(maxCandidates.peekLast()) <= value) maxCandidates.removeLast();
+        maxCandidates.addLast(seq);
+        if (histogram != null) histogram[bucket(value)]++;
+
+        prune(timestamp);
+        return true;
+    }
+
+    /** Discards samples older than the time-period before now (but keeping at least minVals samples). */
+    public void prune(long now) {
+        long cutoff = now - timePeriod;
+        while (size > minVals && size > 0 && timestamps[head] < cutoff) {
+            removeOldest();
+        }
+    }
+
+    public void clear() {
+        while (size > 0) removeOldest();
+    }
+
+    private void removeOldest() {
+        double value = values[head];
+        sum -= value;
+        sumOfSquares -= value * value;
+        if (size > 1) {
+            int next = index(1);
+            timeWeightedSum -= values[next] * (timestamps[next] - timestamps[head]);
+        }
+        if (!minCandidates.isEmpty() && minCandidates.peekFirst() == headSeq) minCandidates.removeFirst();
+        if (!maxCandidates.isEmpty() && maxCandidates.peekFirst() == headSeq) maxCandidates.removeFirst();
+        if (histogram != null) histogram[bucket(value)]--;
+
+        head = index(1);
+        headSeq++;
+        size--;
+
+        if (size == 0) {
+            sum = 0;
+            sumOfSquares = 0;
+            timeWeightedSum = 0;
+            expiriesSinceRecalculated = 0;
+        } else if (++expiriesSinceRecalculated >= Math.max(size, RECALCULATE_AFTER_EXPIRIES)) {
+            recalculateSums();
+        }
+    }
+
+    private void recalculateSums() {
+        sum = 0;
+        sumOfSquares = 0;
+        timeWeightedSum = 0;
+        for (int i = 0; i < size; i++) {
+            double value = values[index(i)];
+            sum += value;
+            sumOfSquares += value * value;
+            if (i > 0) timeWeightedSum += value * (timestamps[index(i)] - timestamps[index(i-1)]);
+        }
+        expiriesSinceRecalculated = 0;
+    }
+
+    private void grow() {
+        int capacity = timestamps.length * 2;
+        long[] newTimestamps = new long[capacity];
+        double[] newValues = new double[capacity];
+        for (int i = 0; i < size; i++) {
+            newTimestamps[i] = timestamps[index(i)];
+            newValues[i] = values[index(i)];
+        }
+        timestamps = newTimestamps;
+        values = newValues;
+        head = 0;
+    }
+
+    private int index(int offset) {
+        return (head + offset) % timestamps.length;
+    }
+
+    private double valueOf(long seq) {
+        return values[index((int) (seq - headSeq))];
+    }
+
+    private int bucket(double value) {
+        int result = (int) Math.floor((value - histogramLowest) / histogramBucketWidth);
+        return Math.max(0, Math.min(histogram.length - 1, result));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    /** @return the mean of the samples, or NaN if there are none */
+    public double getMean() {
+        return (size == 0) ? Double.NaN : sum / size;
+    }
+
+    /** @return the (population) standard deviation of the samples, or NaN if there are none */
+    public double getStandardDeviation() {
+        if (size == 0) return Double.NaN;
+        double mean = sum / size;
+        return Math.sqrt(Math.max(0, sumOfSquares / size - mean * mean));
+    }
+
+    /** @return the minimum sample, or NaN if there are none */
+    public double getMin() {
+        return (size == 0) ? Double.NaN : valueOf(minCandidates.peekFirst());
+    }
+
+    /** @return the maximum sample, or NaN if there are none */
+    public double getMax() {
+        return (size == 0) ? Double.NaN : valueOf(maxCandidates.peekFirst());
+    }
+
+    /**
+     * @return the change per second from the oldest to the latest sample,
+     *         or NaN if there are fewer than two samples (or no time between them)
+     */
+    public double getRate() {
+        if (size < 2) return Double.NaN;
+        long interval = getLatestTimestamp() - timestamps[head];
+        if (interval <= 0) return Double.NaN;
+        return (getLatestValue() - values[head]) * 1000d / interval;
+    }
+
+    /**
+     * Returns the sum of each sample multiplied by the time (millis) since the previous sample, or since the
+     * given start time for the oldest sample (or zero if the oldest sample is before the start time).
+     * Divided by the time from start to the latest sample, this is the time-weighted mean, taking each value
+     * to apply from the previous sample to its own timestamp.
+     */
+    public double getTimeWeightedSum(long start) {
+        if (size == 0) return 0;
+        return values[head] * Math.max(0, timestamps[head] - start) + timeWeightedSum;
+    }
+
+    /**
+     * @return an estimate of the given percentile (0 to 100) of the samples, or NaN if there are none
+     * @throws IllegalStateException if percentiles are not being tracked
+     * @see #trackPercentiles(double, double, int)
+     */
+    public double getPercentile(double percentile) {
+        Preconditions.checkState(histogram != null, "percentiles not tracked");
+        Preconditions.checkArgument(percentile >= 0 && percentile <= 100, "percentile %s must be between 0 and 100", percentile);
+        if (size == 0) return Double.NaN;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * size));
+        long count = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            count += histogram[i];
+            if (count >= rank) {
+                // clamp to the actual range, for the outermost buckets in particular
+                double estimate = histogramLowest + (i + 0.5) * histogramBucketWidth;
+                return Math.max(getMin(), Math.min(getMax(), estimate));
+            }
+        }
+        return getMax();
+    }
+
+    /** @return the timestamp of the oldest sample; or -1 if there are none */
+    public long getOldestTimestamp() {
+        return (size == 0) ? -1 : timestamps[head];
+    }
+
+    /** @return the oldest sample; or NaN if there are none */
+    public double getOldestValue() {
+        return (size == 0) ? Double.NaN : values[head];
+    }
+
+    /** @return the timestamp of the latest sample; or -1 if there are none */
+    public long getLatestTimestamp() {
+        return (size == 0) ? -1 : timestamps[index(size-1)];
+    }
+
+    /** @return the latest sample; or NaN if there are none */
+    public double getLatestValue() {
+        return (size == 0) ? Double.NaN : values[index(size-1)];
+    }
+
+    @Override
+    public String toString() {
+        return "TimeWindowedSamples[size="+size+", period="+timePeriod+"ms, mean="+getMean()+", min="+getMin()+", max="+getMax()+"]";
+    }
+
+    /** A double-ended queue of longs, in a ring buffer which grows as needed. */
+    private static class LongDeque {
+        private long[] elements;
+        private int head;
+        private int size;
+
+        LongDeque(int initialCapacity) {
+            elements = new long[initialCapacity];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void addLast(long val) {
+            if (size == elements.length) {
+                long[] newElements = new long[elements.length * 2];
+                for (int i = 0; i < size; i++) {
+                    newElements[i] = elements[(head + i) % elements.length];
+                }
+                elements = newElements;
+                head = 0;
+            }
+            elements[(head + size) % elements.length] = val;
+            size++;
+        }
+
+        long peekFirst() {
+            return elements[head];
+        }
+
+        long peekLast() {
+            return elements[(head + size - 1) % elements.length];
+        }
+
+        void removeFirst() {
+            head = (head + 1) % elements.length;
+            size--;
+        }
+
+        void removeLast() {
+            size--;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package brooklyn.util.collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class TimeWindowedSamplesTest {
+
+    private static final double PRECISION = 0.000001;
+
+    @Test
+    public void testStatisticsWhenEmpty() {
+        TimeWindowedSamples samples = new TimeWindowedSamples(1000L);
+        assertEquals(samples.size(), 0);
+        assertTrue(Double.isNaN(samples.getMean()));
+        assertTrue(Double.isNaN(samples.getMin()));
+        assertTrue(Double.isNaN(samples.getMax()));
+        assertTrue(Double.isNaN(samples.getStandardDeviation()));
+        assertTrue(Double.isNaN(samples.getRate()));
+        assertEquals(samples.getLatestTimestamp(), -1);
+    }
+    
+    @Test
+    public void testStatisticsOfSamples() {
+        TimeWindowedSamples samples = new TimeWindowedSamples(1000L);
+        samples.add(0L, 2);
+        samples.add(100L, 4);
+        samples.add(200L, 4);
+        samples.add(300L, 4);
+        samples.add(400L, 5);
+        samples.add(500L, 5);
+        samples.add(600L, 7);
+        samples.add(700L, 9);
+        
+        assertEquals(samples.size(), 8);
+        assertEquals(samples.getSum(), 40d, PRECISION);
+        assertEquals(samples.getMean(), 5d, PRECISION);
+        assertEquals(samples.getStandardDeviation(), 2d, PRECISION);
+        assertEquals(samples.getMin(), 2d);
+        assertEquals(samples.getMax(), 9d);
+        assertEquals(samples.getRate(), (9d-2d)*1000/700, PRECISION);
+        assertEquals(samples.getLatestValue(), 9d);
+        assertEquals(samples.getOldestValue(), 2d);
+    }
+    
+    @Test
+    public void testKeepsOnlyRecentSamples() {
+        TimeWindowedSamples samples = new TimeWindowedSamples(1000L);
+        samples.add(0L, 10);
+        samples.add(500L, 1);
+        samples.add(1000L, 5);
+        assertEquals(samples.size(), 3);
+        
+        samples.add(1200L, 3);
+        assertEquals(samples.size(), 3);
+        assertEquals(samples.getMin(), 1d);
+        assertEquals(samples.getMax(), 5d);
+        assertEquals(samples.getMean(), 3d, PRECISION);
+        
+        samples.prune(1600L);
+        assertEquals(samples.size(), 2);
+        assertEquals(samples.getMin(), 3d);
+        assertEquals(samples.getMax(), 5d);
+        
+        samples.prune(5000L);
+        assertEquals(samples.size(), 0);
+        assertTrue(Double.isNaN(samples.getMin()));
+    }
+    
+    @Test
+    public void testDropsSamplesOlderThanLatest() {
+        TimeWindowedSamples samples = new TimeWindowedSamples(1000L);
+        assertTrue(samples.add(100L, 1));
+        assertTrue(samples.add(300L, 3));
+        assertFalse(samples.add(200L, 100));
+        assertTrue(samples.add(300L, 5));
+        
+        assertEquals(samples.size(), 3);
+        assertEquals(samples.getMax(), 5d);
+        assertEquals(samples.getLatestTimestamp(), 300L);
+        assertEquals(samples.getLatestValue(), 5d);
+        assertEquals(samples.getTimeWeightedSum(0L), 1d*100 + 3d*200 + 5d*0, PRECISION);
+        assertEquals(samples.getRate(), (5d-1d)*1000/200, PRECISION);
+    }
+    
+    @Test
+    public void testKeepsMinVals() {
+        TimeWindowedSamples samples = new TimeWindowedSamples(1000L, 1);
+        samples.add(0L, 10);
+        samples.add(100L, 20);
+        samples.prune(5000L);
+        assertEquals(samples.size(), 1);
+        assertEquals(samples.getLatestValue(), 20d);
+    }
+    
+    @Test
+    public void testTimeWeightedSum() {
+        TimeWindowedSamples samples = new TimeWindowedSamples(1000L);
+        samples.add(1000L, 10);
+        samples.add(1100L, 20);
+        samples.add(1300L, 30);
+        assertEquals(samples.getTimeWeightedSum(900L), 10*100 + 20*100 + 30*200, PRECISION);
+        assertEquals(samples.getTimeWeightedSum(1000L), 20*100 + 30*200, PRECISION);
+        
+        samples.add(2050L, 40);
+        assertEquals(samples.size(), 3);
+        assertEquals(samples.getTimeWeightedSum(1050L), 20*50 + 30*200 + 40*750, PRECISION);
+    }
+    
+    @Test
+    public void testPercentiles() {
+        TimeWindowedSamples samples = new TimeWindowedSamples(100000L).trackPercentiles(0, 100, 100);
+        for (int i = 1; i <= 100; i++) {
+            samples.add(i, i);
+        }
+        assertEquals(samples.getPercentile(50), 50d, 1);
+        assertEquals(samples.getPercentile(95), 95d, 1);
+        assertEquals(samples.getPercentile(100), 100d, 1);
+        assertEquals(samples.getPercentile(0), 1d, 1);
+    }
+    
+    @Test
+    public void testPercentilesClampedToActualRange() {
+        // one bucket, whose mid-point (50) is outside the range of the samples
+        TimeWindowedSamples samples = new TimeWindowedSamples(100000L).trackPercentiles(0, 100, 1);
+        samples.add(0L, 60);
+        samples.add(1L, 70);
+        assertEquals(samples.getPercentile(50), 60d);
+        
+        samples.clear();
+        samples.add(2L, 20);
+        samples.add(3L, 30);
+        assertEquals(samples.getPercentile(50), 30d);
+    }
+    
+    @Test
+    public void testMatchesRecalculatedStatisticsAsBuffersGrowAndWrap() {
+        Random random = new Random(1234);
+        int window = 50;
+        TimeWindowedSamples samples = new TimeWindowedSamples(window, 0, 4);
+        double[] vals = new double[5000];
+        for (int i = 0; i < vals.length; i++) {
+            vals[i] = random.nextDouble() * 100;
+            samples.add(i, vals[i]);
+            
+            int first = Math.max(0, i - window);
+            double sum = 0, min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+            for (int j = first; j <= i; j++) {
+                sum += vals[j];
+                min = Math.min(min, vals[j]);
+                max = Math.max(max, vals[j]);
+            }
+            assertEquals(samples.size(), i - first + 1);
+            assertEquals(samples.getSum(), sum, PRECISION);
+            assertEquals(samples.getMin(), min);
+            assertEquals(samples.getMax(), max);
+        }
+    }
+}